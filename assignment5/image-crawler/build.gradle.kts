@@ -1,3 +1,5 @@
+import org.jetbrains.kotlin.gradle.tasks.KotlinCompile
+
 plugins {
     id("java-library")
     kotlin("jvm")
@@ -33,7 +35,45 @@ dependencies {
     testImplementation(libs.junit)
 }
 
+// Filters uses the SIMD kernels in VectorFilters when the incubating
+// Vector API module is available and falls back to scalar loops when
+// it isn't (e.g., on Android). Only VectorFilters is compiled against
+// the module (by its own task, after compileKotlin and compileJava), so
+// javac's incubator warning is limited to builds that change that file.
+// Nothing else refers to VectorFilters at compile time: Filters loads it
+// by name through the FilterKernels interface. A JVM only uses the
+// kernels when it is started with
+//
+//   --add-modules jdk.incubator.vector
+//
+// which is passed to the tests and to every JavaExec (run) task below.
+// Other launchers (e.g., IDE run configurations) must add it to their
+// VM options.
+sourceSets.main {
+    java.exclude("**/VectorFilters.java")
+}
+
+val compileVectorJava by tasks.registering(JavaCompile::class) {
+    description = "Compiles VectorFilters against the incubating Vector API."
+    source = fileTree("src/main/java") { include("**/VectorFilters.java") }
+    classpath = sourceSets.main.get().compileClasspath +
+        files(tasks.compileJava.flatMap { it.destinationDirectory },
+              tasks.named<KotlinCompile>("compileKotlin").flatMap { it.destinationDirectory })
+    destinationDirectory.set(layout.buildDirectory.dir("classes/java/vector"))
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+sourceSets.main {
+    output.dir(mapOf("builtBy" to compileVectorJava),
+               compileVectorJava.flatMap { it.destinationDirectory })
+}
+
+tasks.withType<JavaExec>().configureEach {
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
 tasks.test {
+    jvmArgs("--add-modules", "jdk.incubator.vector")
     testLogging {
         events("failed") //,"passed", "skipped"
         outputs.upToDateWhen { false }
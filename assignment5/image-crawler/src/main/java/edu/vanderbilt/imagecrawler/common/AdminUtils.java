@@ -2,17 +2,28 @@ package edu.vanderbilt.imagecrawler.common;
 
 import static edu.vanderbilt.imagecrawler.platform.Cache.NOTAG;
 
-import org.apache.commons.io.FileUtils;
-
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.platform.JavaPlatform;
+import edu.vanderbilt.imagecrawler.platform.StorageCodec;
 
 /**
  * A Java utility class containing static methods used for project
@@ -24,6 +35,11 @@ public final class AdminUtils {
      */
     private AdminUtils() {}
 
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "AdminUtils";
+
     /**
      * HTML format string for a page title.
      */
@@ -45,6 +61,12 @@ public final class AdminUtils {
      * Builds a local web pages directory containing all the original
      * images that were downloaded to the specified cache directory srcDir.
      * This resulting directory is indexed and can used for a local crawl.
+     * The cache directory is traversed recursively and each web page path
+     * is decoded from the cache file name, so caches that use a hashed
+     * {@link edu.vanderbilt.imagecrawler.platform.CacheLayout} are
+     * supported. Each image is exported in a format that any image
+     * viewer can open (see {@link #exportCacheFile(File, File)}), and
+     * files that aren't images are skipped.
      *
      * @param srcDir  The cache source directory.
      * @param destDir The backup destination directory.
@@ -57,11 +79,10 @@ public final class AdminUtils {
                             String path = URLDecoder.decode(file.getName(), "UTF-8");
                             path = path.replaceFirst(NOTAG + "-", "");
                             File webFile = new File(destDir, path);
-                            FileUtils.copyFile(file, webFile);
-                            return 1;
+                            return exportCacheFile(file, webFile) ? 1 : 0;
                         }
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
+                    } catch (IOException e) {
+                        warn("Unable to export " + file + ": " + e);
                     }
                     return 0;
                 });
@@ -70,6 +91,99 @@ public final class AdminUtils {
         indexDirectory(destDir);
     }
 
+    /**
+     * Exports all the images in the specified cache directory (and its
+     * sub-directories) to the same relative paths in destDir (see
+     * {@link #exportCacheFile(File, File)}). A file that can't be
+     * exported is reported and skipped.
+     *
+     * @param srcDir  The cache source directory.
+     * @param destDir The destination directory.
+     * @return The number of exported images.
+     */
+    public static int exportCacheDir(File srcDir, File destDir) {
+        return Cache.traverseCache(srcDir,
+                file -> {
+                    String path = srcDir.toPath().relativize(file.toPath()).toString();
+                    try {
+                        return exportCacheFile(file, new File(destDir, path)) ? 1 : 0;
+                    } catch (IOException e) {
+                        warn("Unable to export " + file + ": " + e);
+                        return 0;
+                    }
+                });
+    }
+
+    /**
+     * Exports a single cached image to destFile. Images stored in an
+     * encoded format (e.g., PNG) are copied byte for byte, while
+     * images stored with a raw {@link StorageCodec}, which no other
+     * program can open, are converted to PNG. Files that aren't
+     * images (or are corrupt raw images) are reported and skipped.
+     *
+     * @param cacheFile The cache file.
+     * @param destFile  The destination file.
+     * @return {@code true} if the image was exported.
+     */
+    public static boolean exportCacheFile(File cacheFile, File destFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+                                                    StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(StorageCodec.HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+            }
+            header.flip();
+
+            StorageCodec codec = StorageCodec.detect(header);
+            if (codec == StorageCodec.PNG && !isImage(cacheFile)) {
+                warn("Skipping " + cacheFile + ": not an image.");
+                return false;
+            }
+
+            File dir = destFile.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory: " + dir);
+            }
+
+            if (codec == StorageCodec.PNG) {
+                Files.copy(cacheFile.toPath(),
+                           destFile.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                return true;
+            }
+
+            try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(destFile))) {
+                new JavaPlatform()
+                    .newImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                              null)
+                    .writeImage(out);
+            } catch (RuntimeException e) {
+                // The platform wraps decoding errors.
+                Files.deleteIfExists(destFile.toPath());
+                warn("Skipping corrupt " + codec + " image " + cacheFile + ": " + e);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return {@code true} if an image decoder recognizes the format
+     * of the file (only its first bytes are read).
+     */
+    private static boolean isImage(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            return in != null && ImageIO.getImageReaders(in).hasNext();
+        }
+    }
+
+    /**
+     * Reports a file that could not be exported.
+     */
+    private static void warn(String msg) {
+        System.out.println(TAG + "[WARNING]: " + msg);
+    }
+
     /**
      * Creates index.html files for the specified cache directory and
      * of it's all sub-directories. Each index.html file will contain
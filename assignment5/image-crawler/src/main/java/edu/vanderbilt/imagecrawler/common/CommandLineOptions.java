@@ -36,6 +36,9 @@ public class CommandLineOptions {
                     case "-o":
                         builder.downloadPath(argv[++argc]);
                         break;
+                    case "-s":
+                        builder.warmStart(argv[++argc].equals("true"));
+                        break;
                     case "-h":
                     default:
                         printUsage();
@@ -57,5 +60,6 @@ public class CommandLineOptions {
                                    "or \"file://android_assets/...\" " +
                                    "or \"file://java_resources/...\"");
         System.out.println("-o [downloadPath]");
+        System.out.println("-s [true|false] (warm start from the previous crawl)");
     }
 }
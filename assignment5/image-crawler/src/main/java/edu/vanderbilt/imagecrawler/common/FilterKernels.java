@@ -0,0 +1,68 @@
+package edu.vanderbilt.imagecrawler.common;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Kernels that apply the {@link Filters} algorithms to the pixels in
+ * [from, to) in place, reporting the number of pixels of that range
+ * processed so far to the {@link ProgressSink}.
+ * <p>
+ * The SIMD kernels ({@code VectorFilters}) are compiled separately
+ * against the incubating {@code jdk.incubator.vector} module, so
+ * nothing refers to that class at compile time: {@link #vectorized()}
+ * loads it by name when the JVM was started with {@code --add-modules
+ * jdk.incubator.vector}.
+ */
+interface FilterKernels {
+    /**
+     * Name of the class implementing the SIMD kernels.
+     */
+    String VECTOR_KERNELS = "edu.vanderbilt.imagecrawler.common.VectorFilters";
+
+    /**
+     * @return The number of pixels processed per vector.
+     */
+    int lanes();
+
+    int[] grayScale(int[] pixels,
+                    int from,
+                    int to,
+                    boolean hasAlpha,
+                    ProgressSink progress);
+
+    int[] sepia(int[] pixels,
+                int from,
+                int to,
+                boolean hasAlpha,
+                ProgressSink progress);
+
+    /**
+     * Requires tints in [0, 1].
+     */
+    int[] tint(int[] pixels,
+               int from,
+               int to,
+               boolean hasAlpha,
+               float redTint,
+               float greenTint,
+               float blueTint,
+               ProgressSink progress);
+
+    /**
+     * @return The SIMD kernels, or null if the Vector API is not
+     * available (it never is on Android) or doesn't vectorize ints on
+     * this CPU.
+     */
+    @Nullable
+    static FilterKernels vectorized() {
+        try {
+            Class.forName("jdk.incubator.vector.IntVector");
+            FilterKernels kernels = (FilterKernels) Class.forName(VECTOR_KERNELS)
+                    .getDeclaredConstructor()
+                    .newInstance();
+            return kernels.lanes() > 1 ? kernels : null;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
@@ -4,99 +4,351 @@ import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
 import kotlin.math.min
 
 /**
- * Platform independent filter algorithms.
+ * Platform independent filter algorithms. Each filter runs the SIMD
+ * [FilterKernels] when the JVM provides the Vector API
+ * (started with `--add-modules jdk.incubator.vector`) and otherwise
+ * falls back to the scalar loops, which produce identical pixels.
+ * Large images are filtered in parallel stripes (see [ParallelFilter]).
+ *
+ * All filters process the pixels in tiles of [TILE] pixels: the inner
+ * loop over a tile is a straight-line kernel without calls, and
+ * cancellation is checked and progress reported to a [ProgressSink]
+ * only between tiles.
  */
 object Filters {
-    @JvmStatic
-    fun grayScale(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray {
-        // A common pixel-by-pixel grayscale conversion algorithm
-        // using values obtained from en.wikipedia.org/wiki/Grayscale.
-        for (i in pixels.indices) {
-            val pixel = pixels[i]
+    /**
+     * Number of pixels processed between cancellation checks and
+     * progress reports. It's also the number of pixels [applyAll] runs
+     * through all filters at a time, small enough for the source tile
+     * and its outputs to stay in the CPU cache.
+     */
+    const val TILE = 4096
+
+    /**
+     * Minimum progress, in percent, between the reports of the filters
+     * that take a `(Float) -> Unit` progress callback.
+     */
+    private const val PROGRESS_PERCENT = 1
+
+    /**
+     * A filter that [applyAll] applies in place to the pixels in
+     * [from, to) on the calling thread.
+     */
+    fun interface RangeFilter {
+        fun apply(pixels: IntArray, from: Int, to: Int, hasAlpha: Boolean)
+    }
 
-            ImageCrawler.throwExceptionIfCancelled()
+    @JvmField
+    val GRAY_SCALE = RangeFilter { pixels, from, to, hasAlpha ->
+        grayScale(pixels, from, to, hasAlpha, ProgressSink.NONE)
+    }
+
+    @JvmField
+    val SEPIA = RangeFilter { pixels, from, to, hasAlpha ->
+        sepia(pixels, from, to, hasAlpha, ProgressSink.NONE)
+    }
 
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
+    @JvmStatic
+    fun tintFilter(redTint: Float, greenTint: Float, blueTint: Float) =
+            RangeFilter { pixels, from, to, hasAlpha ->
+                tint(pixels, from, to, hasAlpha, redTint, greenTint, blueTint, ProgressSink.NONE)
             }
 
-            // Convert the pixel to grayscale.
-            val grayScale = (red(pixel) * .299
-                    + green(pixel) * .587
-                    + blue(pixel) * .114).toInt()
-            pixels[i] = rgb(grayScale, grayScale, grayScale)
+    /**
+     * @return A filter that applies [filters] in order.
+     */
+    @JvmStatic
+    fun chain(vararg filters: RangeFilter) =
+            RangeFilter { pixels, from, to, hasAlpha ->
+                filters.forEach { it.apply(pixels, from, to, hasAlpha) }
+            }
 
-            progress.invoke(i.toFloat() / pixels.size)
+    /**
+     * Applies each of [filters] to a copy of [source] in one pass over
+     * the image, which is left unchanged. Instead of copying and
+     * sweeping the whole image once per filter, the image is processed
+     * in tiles of [TILE] pixels: each tile is read from memory once and
+     * copied into every output, where it's filtered while it's still in
+     * the cache. A filter that appears more than once in [filters] is
+     * only applied once and its pixels are copied to the other outputs.
+     * Large images are processed in parallel stripes, like the single
+     * filters.
+     *
+     * @return One output per filter, in the order of [filters].
+     */
+    @JvmStatic
+    fun applyAll(source: IntArray,
+                 hasAlpha: Boolean,
+                 filters: List<RangeFilter>,
+                 progress: ProgressSink): List<IntArray> =
+            applyAll(source, hasAlpha, filters, List(filters.size) { IntArray(source.size) }, progress)
+
+    /**
+     * Like [applyAll], but writes the results into the preallocated
+     * [outputs] (one per filter, each at least as large as [source]).
+     *
+     * @return [outputs]
+     */
+    @JvmStatic
+    fun applyAll(source: IntArray,
+                 hasAlpha: Boolean,
+                 filters: List<RangeFilter>,
+                 outputs: List<IntArray>,
+                 progress: ProgressSink): List<IntArray> {
+        require(outputs.size == filters.size) { "One output per filter is required" }
+        if (outputs.isEmpty()) {
+            return outputs
         }
 
-        return pixels
+        // Index of the first occurrence of each filter.
+        val first = IntArray(filters.size) { filters.indexOf(filters[it]) }
+
+        ParallelFilter.apply(source, progress) { _, from, to, stripeProgress ->
+            for (start in from until to step TILE) {
+                ImageCrawler.throwExceptionIfCancelled()
+
+                val end = min(start + TILE, to)
+                for (i in filters.indices) {
+                    if (first[i] < i) {
+                        System.arraycopy(outputs[first[i]], start, outputs[i], start, end - start)
+                    } else {
+                        System.arraycopy(source, start, outputs[i], start, end - start)
+                        filters[i].apply(outputs[i], start, end, hasAlpha)
+                    }
+                }
+
+                stripeProgress.progress(end - from, to - from)
+            }
+        }
+
+        return outputs
     }
 
+    /**
+     * The SIMD kernels, or null if the Vector API is not available.
+     */
+    private val vectorKernels: FilterKernels? = FilterKernels.vectorized()
+
+    /**
+     * True if the Vector API is available (it never is on Android).
+     */
     @JvmStatic
-    fun sepia(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray {
-        var red: Int
-        var green: Int
-        var blue: Int
-        var alpha: Int
-        var pixel: Int
-        val depth = 20
+    val isVectorized: Boolean
+        get() = vectorKernels != null
+
+    /**
+     * Converts [pixels] to grayscale in place. [progress] is called
+     * with the fraction of pixels processed whenever it has grown by
+     * at least [PROGRESS_PERCENT] percent.
+     */
+    @JvmStatic
+    fun grayScale(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray =
+            grayScale(pixels, hasAlpha, ProgressSink.percent(PROGRESS_PERCENT, progress))
+
+    /**
+     * Converts [pixels] to sepia in place. [progress] is called with
+     * the fraction of pixels processed whenever it has grown by at
+     * least [PROGRESS_PERCENT] percent.
+     */
+    @JvmStatic
+    fun sepia(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray =
+            sepia(pixels, hasAlpha, ProgressSink.percent(PROGRESS_PERCENT, progress))
+
+    /**
+     * Tints [pixels] in place. [progress] is called with the fraction
+     * of pixels processed whenever it has grown by at least
+     * [PROGRESS_PERCENT] percent.
+     */
+    @JvmStatic
+    fun tint(pixels: IntArray,
+             hasAlpha: Boolean,
+             redTint: Float,
+             greenTint: Float,
+             blueTint: Float,
+             progress: (Float) -> Unit): IntArray =
+            tint(pixels, hasAlpha, redTint, greenTint, blueTint,
+                 ProgressSink.percent(PROGRESS_PERCENT, progress))
 
-        for (i in pixels.indices) {
-            pixel = pixels[i]
+    @JvmStatic
+    fun grayScale(pixels: IntArray, hasAlpha: Boolean, progress: ProgressSink): IntArray =
+            ParallelFilter.apply(pixels, progress) { stripe, from, to, stripeProgress ->
+                grayScale(stripe, from, to, hasAlpha, stripeProgress)
+            }
 
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
+    @JvmStatic
+    fun sepia(pixels: IntArray, hasAlpha: Boolean, progress: ProgressSink): IntArray =
+            ParallelFilter.apply(pixels, progress) { stripe, from, to, stripeProgress ->
+                sepia(stripe, from, to, hasAlpha, stripeProgress)
             }
 
-            red = red(pixel)
-            green = green(pixel)
-            blue = blue(pixel)
-            alpha = alpha(pixel)
+    @JvmStatic
+    fun tint(pixels: IntArray,
+             hasAlpha: Boolean,
+             redTint: Float,
+             greenTint: Float,
+             blueTint: Float,
+             progress: ProgressSink): IntArray =
+            ParallelFilter.apply(pixels, progress) { stripe, from, to, stripeProgress ->
+                tint(stripe, from, to, hasAlpha, redTint, greenTint, blueTint, stripeProgress)
+            }
+
+    /**
+     * Applies [grayScale] to the pixels in [from, to) on the calling
+     * thread. [progress] is called with the number of pixels of the
+     * range processed so far.
+     */
+    @JvmStatic
+    fun grayScale(pixels: IntArray,
+                  from: Int,
+                  to: Int,
+                  hasAlpha: Boolean,
+                  progress: ProgressSink): IntArray =
+            vectorKernels?.grayScale(pixels, from, to, hasAlpha, progress)
+                ?: grayScaleScalar(pixels, from, to, hasAlpha, progress)
+
+    /**
+     * Applies [sepia] to the pixels in [from, to) on the calling
+     * thread. [progress] is called with the number of pixels of the
+     * range processed so far.
+     */
+    @JvmStatic
+    fun sepia(pixels: IntArray,
+              from: Int,
+              to: Int,
+              hasAlpha: Boolean,
+              progress: ProgressSink): IntArray =
+            vectorKernels?.sepia(pixels, from, to, hasAlpha, progress)
+                ?: sepiaScalar(pixels, from, to, hasAlpha, progress)
+
+    /**
+     * Applies [tint] to the pixels in [from, to) on the calling
+     * thread. [progress] is called with the number of pixels of the
+     * range processed so far.
+     */
+    @JvmStatic
+    fun tint(pixels: IntArray,
+             from: Int,
+             to: Int,
+             hasAlpha: Boolean,
+             redTint: Float,
+             greenTint: Float,
+             blueTint: Float,
+             progress: ProgressSink): IntArray =
+            if (vectorKernels != null && redTint in 0f..1f && greenTint in 0f..1f && blueTint in 0f..1f) {
+                vectorKernels.tint(pixels, from, to, hasAlpha, redTint, greenTint, blueTint, progress)
+            } else {
+                tintScalar(pixels, from, to, hasAlpha, redTint, greenTint, blueTint, progress)
+            }
 
-            blue = (red + green + blue) / 3
-            green = blue
-            red = green
+    /**
+     * Scalar implementation of [grayScale].
+     */
+    @JvmStatic
+    fun grayScaleScalar(pixels: IntArray,
+                        from: Int,
+                        to: Int,
+                        hasAlpha: Boolean,
+                        progress: ProgressSink): IntArray {
+        for (start in from until to step TILE) {
+            ImageCrawler.throwExceptionIfCancelled()
 
-            red += depth * 2
-            green += depth
+            val end = min(start + TILE, to)
 
-            red = min(red, 255)
-            green = min(green, 255)
+            // A common pixel-by-pixel grayscale conversion algorithm
+            // using values obtained from en.wikipedia.org/wiki/Grayscale.
+            for (i in start until end) {
+                val pixel = pixels[i]
 
-            pixels[i] = rgba(red, blue, green, alpha)
+                // Convert the pixel to grayscale.
+                val grayScale = (red(pixel) * .299
+                        + green(pixel) * .587
+                        + blue(pixel) * .114).toInt()
 
-            progress.invoke(i.toFloat() / pixels.size)
+                // Skip transparent pixels
+                pixels[i] = if (hasAlpha && alpha(pixel) == 0) {
+                    pixel
+                } else {
+                    rgb(grayScale, grayScale, grayScale)
+                }
+            }
+
+            progress.progress(end - from, to - from)
         }
 
         return pixels
     }
 
+    /**
+     * Scalar implementation of [sepia].
+     */
     @JvmStatic
-    fun tint(pixels: IntArray,
-             hasAlpha: Boolean,
-             redTint: Float,
-             greenTint: Float,
-             blueTint: Float,
-             progress: (Float) -> Unit): IntArray {
+    fun sepiaScalar(pixels: IntArray,
+                    from: Int,
+                    to: Int,
+                    hasAlpha: Boolean,
+                    progress: ProgressSink): IntArray {
+        val depth = 20
+
+        for (start in from until to step TILE) {
+            ImageCrawler.throwExceptionIfCancelled()
 
-        for (i in pixels.indices) {
-            val pixel = pixels[i]
+            val end = min(start + TILE, to)
 
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
+            for (i in start until end) {
+                val pixel = pixels[i]
+
+                val average = (red(pixel) + green(pixel) + blue(pixel)) / 3
+                val red = min(average + depth * 2, 255)
+                val green = min(average + depth, 255)
+
+                // Skip transparent pixels (the green and blue channels
+                // are swapped as in the original algorithm).
+                pixels[i] = if (hasAlpha && alpha(pixel) == 0) {
+                    pixel
+                } else {
+                    rgba(red, average, green, alpha(pixel))
+                }
             }
 
-            val alpha = alpha(pixel)
-            val red = (red(pixel) + (255 - red(pixel)) * redTint).toInt()
-            val green = (green(pixel) + (255 - green(pixel)) * greenTint).toInt()
-            val blue = (blue(pixel) + (255 - blue(pixel)) * blueTint).toInt()
+            progress.progress(end - from, to - from)
+        }
+
+        return pixels
+    }
+
+    /**
+     * Scalar implementation of [tint].
+     */
+    @JvmStatic
+    fun tintScalar(pixels: IntArray,
+                   from: Int,
+                   to: Int,
+                   hasAlpha: Boolean,
+                   redTint: Float,
+                   greenTint: Float,
+                   blueTint: Float,
+                   progress: ProgressSink): IntArray {
+        for (start in from until to step TILE) {
+            ImageCrawler.throwExceptionIfCancelled()
 
-            pixels[i] = rgba(red, green, blue, alpha)
+            val end = min(start + TILE, to)
+
+            for (i in start until end) {
+                val pixel = pixels[i]
+
+                val red = (red(pixel) + (255 - red(pixel)) * redTint).toInt()
+                val green = (green(pixel) + (255 - green(pixel)) * greenTint).toInt()
+                val blue = (blue(pixel) + (255 - blue(pixel)) * blueTint).toInt()
+
+                // Skip transparent pixels
+                pixels[i] = if (hasAlpha && alpha(pixel) == 0) {
+                    pixel
+                } else {
+                    rgba(red, green, blue, alpha(pixel))
+                }
+            }
 
-            progress.invoke(i.toFloat() / pixels.size)
+            progress.progress(end - from, to - from)
         }
 
         return pixels
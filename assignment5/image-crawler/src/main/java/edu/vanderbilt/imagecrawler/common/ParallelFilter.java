@@ -0,0 +1,216 @@
+package edu.vanderbilt.imagecrawler.common;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
+
+/**
+ * Runs a {@link Filters} kernel over the pixels of a large image in
+ * parallel stripes, so that a single large image (common at the tail
+ * of a crawl) doesn't pin one core while the others sit idle. The
+ * stripes run on a dedicated pool sized to the number of CPUs, which
+ * is separate from the pools used by the crawlers, whose threads
+ * mostly block on I/O.
+ * <p>
+ * Images with fewer than {@link #PARALLEL_THRESHOLD} pixels (and all
+ * images when only one CPU is available) are filtered on the calling
+ * thread, exactly as before.
+ */
+final class ParallelFilter {
+    /**
+     * Minimum number of pixels for which an image is split.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /**
+     * Minimum number of pixels in a stripe.
+     */
+    static final int MIN_STRIPE = 1 << 16;
+
+    /**
+     * Number of stripes per pool thread, which leaves room for work
+     * stealing when some stripes take longer than others.
+     */
+    private static final int STRIPES_PER_THREAD = 4;
+
+    /**
+     * Stripe boundaries are multiples of this number of pixels (the
+     * {@link Filters} tile size).
+     */
+    private static final int ALIGNMENT = Filters.TILE;
+
+    /**
+     * A filter that can be applied to a range of pixels.
+     */
+    interface Kernel {
+        /**
+         * Filters the pixels in [from, to) in place.
+         *
+         * @param progress Called with the number of pixels of the
+         *                 range processed so far.
+         */
+        void apply(int[] pixels,
+                   int from,
+                   int to,
+                   ProgressSink progress);
+    }
+
+    /**
+     * Lazily creates the pool on first use.
+     */
+    private static class PoolHolder {
+        static final AtomicInteger sThreadCount = new AtomicInteger();
+
+        static final ForkJoinPool sPool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                             pool -> {
+                                 ForkJoinWorkerThread thread =
+                                     ForkJoinPool.defaultForkJoinWorkerThreadFactory
+                                         .newThread(pool);
+                                 thread.setName("Filter-" + sThreadCount.getAndIncrement());
+                                 return thread;
+                             },
+                             null,
+                             false);
+    }
+
+    /**
+     * A static utility class.
+     */
+    private ParallelFilter() {
+    }
+
+    /**
+     * @return The pool that runs the stripes.
+     */
+    static ForkJoinPool pool() {
+        return PoolHolder.sPool;
+    }
+
+    /**
+     * Applies {@code kernel} to all {@code pixels}, in parallel stripes
+     * if the image is large enough.
+     *
+     * @param pixels   The pixels to filter in place.
+     * @param progress Called with the number of pixels processed so
+     *                 far (serialized and non-decreasing, but possibly
+     *                 from pool threads).
+     * @param kernel   The filter.
+     * @return {@code pixels}
+     */
+    static int[] apply(int[] pixels,
+                       ProgressSink progress,
+                       Kernel kernel) {
+        return apply(pixels,
+                     progress,
+                     kernel,
+                     Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Like {@link #apply(int[], ProgressSink, Kernel)}, but splits the
+     * image as if {@code parallelism} CPUs were available (used by
+     * tests on machines with fewer CPUs).
+     */
+    static int[] apply(int[] pixels,
+                       ProgressSink progress,
+                       Kernel kernel,
+                       int parallelism) {
+        if (pixels.length < PARALLEL_THRESHOLD || parallelism < 2) {
+            kernel.apply(pixels, 0, pixels.length, progress);
+            return pixels;
+        }
+
+        int stripe = Math.max(MIN_STRIPE,
+                              pixels.length / (parallelism * STRIPES_PER_THREAD));
+        pool().invoke(new StripeTask(pixels,
+                                     0,
+                                     pixels.length,
+                                     stripe,
+                                     kernel,
+                                     new Progress(pixels.length, progress)));
+
+        // Cancellation requests seen by the pool threads don't reach
+        // the caller, so check again.
+        ImageCrawler.throwExceptionIfCancelled();
+        return pixels;
+    }
+
+    /**
+     * Adds up the progress of all stripes.
+     */
+    private static class Progress {
+        private final int mTotal;
+        private final ProgressSink mProgress;
+        private int mDone;
+
+        Progress(int total, ProgressSink progress) {
+            mTotal = total;
+            mProgress = progress;
+        }
+
+        synchronized void add(int pixels) {
+            mDone += pixels;
+            mProgress.progress(mDone, mTotal);
+        }
+    }
+
+    /**
+     * Splits a range of pixels in half until it's no larger than a
+     * stripe and then applies the kernel to the stripe. Tasks are
+     * never serialized, although ForkJoinTask is Serializable.
+     */
+    @SuppressWarnings("serial")
+    private static class StripeTask extends RecursiveAction {
+        private final int[] mPixels;
+        private final int mFrom;
+        private final int mTo;
+        private final int mStripe;
+        private final Kernel mKernel;
+        private final Progress mProgress;
+
+        StripeTask(int[] pixels,
+                   int from,
+                   int to,
+                   int stripe,
+                   Kernel kernel,
+                   Progress progress) {
+            mPixels = pixels;
+            mFrom = from;
+            mTo = to;
+            mStripe = stripe;
+            mKernel = kernel;
+            mProgress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            int middle = mFrom + (mTo - mFrom) / 2 / ALIGNMENT * ALIGNMENT;
+
+            if (mTo - mFrom <= mStripe || middle == mFrom) {
+                filterStripe();
+            } else {
+                invokeAll(new StripeTask(mPixels, mFrom, middle,
+                                         mStripe, mKernel, mProgress),
+                          new StripeTask(mPixels, middle, mTo,
+                                         mStripe, mKernel, mProgress));
+            }
+        }
+
+        private void filterStripe() {
+            int[] reported = new int[1];
+
+            mKernel.apply(mPixels, mFrom, mTo, (done, total) -> {
+                mProgress.add(done - reported[0]);
+                reported[0] = done;
+            });
+
+            if (reported[0] < mTo - mFrom) {
+                mProgress.add(mTo - mFrom - reported[0]);
+            }
+        }
+    }
+}
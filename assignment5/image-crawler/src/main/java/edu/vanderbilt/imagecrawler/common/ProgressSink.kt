@@ -0,0 +1,67 @@
+package edu.vanderbilt.imagecrawler.common
+
+/**
+ * Receives the progress of a [Filters] filter as primitive pixel
+ * counts, so reporting progress neither boxes a value nor divides.
+ * Filters report once per tile of pixels (see [Filters.TILE]); the
+ * sinks created by [percent] and [rows] thin these reports out to a
+ * configurable stride before converting them to a fraction.
+ */
+fun interface ProgressSink {
+    /**
+     * Called with the number of pixels processed so far out of
+     * [total]. Calls are serialized and [done] never decreases.
+     */
+    fun progress(done: Int, total: Int)
+
+    companion object {
+        /**
+         * A sink that ignores progress.
+         */
+        @JvmField
+        val NONE = ProgressSink { _, _ -> }
+
+        /**
+         * @return A sink that calls [progress] with the fraction of
+         * pixels processed whenever it has grown by at least [percent]
+         * percent, and once all pixels are processed. The sink keeps
+         * track of the last report, so it must only be used for one
+         * filter call.
+         */
+        @JvmStatic
+        fun percent(percent: Int, progress: (Float) -> Unit): ProgressSink {
+            require(percent > 0) { "percent must be positive" }
+            return StridedSink({ total -> (total.toLong() * percent / 100).toInt() }, progress)
+        }
+
+        /**
+         * @return A sink that calls [progress] with the fraction of
+         * pixels processed whenever at least [rows] more rows of
+         * [width] pixels are processed, and once all pixels are
+         * processed. The sink keeps track of the last report, so it
+         * must only be used for one filter call.
+         */
+        @JvmStatic
+        fun rows(rows: Int, width: Int, progress: (Float) -> Unit): ProgressSink {
+            require(rows > 0 && width > 0) { "rows and width must be positive" }
+            return StridedSink({ (rows.toLong() * width).coerceAtMost(Int.MAX_VALUE.toLong()).toInt() },
+                               progress)
+        }
+    }
+}
+
+/**
+ * Forwards progress once per stride, which is computed from the total
+ * number of pixels.
+ */
+private class StridedSink(private val stride: (Int) -> Int,
+                          private val progress: (Float) -> Unit) : ProgressSink {
+    private var next = 0
+
+    override fun progress(done: Int, total: Int) {
+        if (done >= next || done == total) {
+            progress(done.toFloat() / total)
+            next = done + stride(total).coerceAtLeast(1)
+        }
+    }
+}
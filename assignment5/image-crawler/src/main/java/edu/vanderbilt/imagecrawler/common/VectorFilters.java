@@ -0,0 +1,296 @@
+package edu.vanderbilt.imagecrawler.common;
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementations of the {@link Filters} algorithms built on the
+ * (incubating) Vector API. This class is compiled by its own build
+ * task (the only one given the incubator module) and is only loaded
+ * by name from {@link FilterKernels#vectorized()} when the {@code
+ * jdk.incubator.vector} module is available (i.e., the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}), so it must not be
+ * referenced from anywhere else.
+ * <p>
+ * Each kernel filters the pixels in [from, to) in place and reports
+ * the number of pixels of that range processed so far. The kernels produce
+ * exactly the same pixels as the scalar loops: the grayscale weights
+ * are applied in double precision and the tint in single precision,
+ * in the same order as the scalar code, and the sepia average uses
+ * an exact multiply-shift for the division by 3.
+ * The tint kernel requires tints in [0, 1]; {@link Filters} uses the
+ * scalar loop for any other tint. Progress is reported (and
+ * cancellation checked) once per block of {@link #BLOCK} pixels, like
+ * the scalar loops.
+ * <p>
+ * The kernels are shaped around the limits of the JDK 17 JIT, which
+ * boxes every vector (making the kernels several times slower than
+ * the scalar loops) when any of these are violated:
+ * <ul>
+ * <li>All kernels use the same int shape; mixing shapes in one JVM
+ * pollutes the profiles of the shared vector code.</li>
+ * <li>Float and double to int conversions aren't intrinsified, so
+ * truncation is done with exact floating point arithmetic.</li>
+ * <li>A kernel must fit the inlining budget, so the tint channels are
+ * processed in separate passes over each block.</li>
+ * </ul>
+ */
+final class VectorFilters implements FilterKernels {
+    /**
+     * The widest double species supported by the CPU.
+     */
+    private static final VectorSpecies<Double> DOUBLE_SPECIES =
+            DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * The int species used by all kernels. It has as many lanes as
+     * {@link #DOUBLE_SPECIES}, so grayscale conversions map lane to
+     * lane.
+     */
+    private static final VectorSpecies<Integer> SPECIES =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(
+                    DOUBLE_SPECIES.vectorBitSize() / 2));
+
+    /**
+     * The float species with the shape of {@link #SPECIES}.
+     */
+    private static final VectorSpecies<Float> FLOAT_SPECIES =
+            SPECIES.withLanes(float.class);
+
+    /**
+     * Number of pixels processed between progress reports.
+     */
+    private static final int BLOCK = Filters.TILE;
+
+    /**
+     * (x * DIV3) >>> 17 == x / 3 for all x in [0, 765].
+     */
+    private static final int DIV3 = 0xAAAB;
+
+    /**
+     * Adding 2^23 to a float (or 2^52 to a double) in [0, 2^23) rounds
+     * it to an integer that ends up in the low mantissa bits.
+     */
+    private static final float FLOAT_ROUND = 0x1p23f;
+    private static final double DOUBLE_ROUND = 0x1p52;
+
+    /**
+     * Created by {@link FilterKernels#vectorized()}.
+     */
+    VectorFilters() {
+    }
+
+    /**
+     * @return The number of pixels processed per vector.
+     */
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int[] grayScale(int[] pixels,
+                           int from,
+                           int to,
+                           boolean hasAlpha,
+                           ProgressSink progress) {
+        for (int start = from; start < to; start += BLOCK) {
+            ImageCrawler.throwExceptionIfCancelled();
+
+            int end = Math.min(start + BLOCK, to);
+            int bound = start + SPECIES.loopBound(end - start);
+            int i = start;
+
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+                grayScale(pixel, hasAlpha).intoArray(pixels, i);
+            }
+
+            if (i < end) {
+                VectorMask<Integer> range = SPECIES.indexInRange(i, end);
+                IntVector pixel = IntVector.fromArray(SPECIES, pixels, i, range);
+                grayScale(pixel, hasAlpha).intoArray(pixels, i, range);
+            }
+
+            progress.progress(end - from, to - from);
+        }
+
+        return pixels;
+    }
+
+    @Override
+    public int[] sepia(int[] pixels,
+                       int from,
+                       int to,
+                       boolean hasAlpha,
+                       ProgressSink progress) {
+        for (int start = from; start < to; start += BLOCK) {
+            ImageCrawler.throwExceptionIfCancelled();
+
+            int end = Math.min(start + BLOCK, to);
+            int bound = start + SPECIES.loopBound(end - start);
+            int i = start;
+
+            for (; i < bound; i += SPECIES.length()) {
+                IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+                sepia(pixel, hasAlpha).intoArray(pixels, i);
+            }
+
+            if (i < end) {
+                VectorMask<Integer> range = SPECIES.indexInRange(i, end);
+                IntVector pixel = IntVector.fromArray(SPECIES, pixels, i, range);
+                sepia(pixel, hasAlpha).intoArray(pixels, i, range);
+            }
+
+            progress.progress(end - from, to - from);
+        }
+
+        return pixels;
+    }
+
+    @Override
+    public int[] tint(int[] pixels,
+                      int from,
+                      int to,
+                      boolean hasAlpha,
+                      float redTint,
+                      float greenTint,
+                      float blueTint,
+                      ProgressSink progress) {
+        for (int start = from; start < to; start += BLOCK) {
+            ImageCrawler.throwExceptionIfCancelled();
+
+            int end = Math.min(start + BLOCK, to);
+
+            tint(pixels, start, end, 16, redTint, hasAlpha);
+            tint(pixels, start, end, 8, greenTint, hasAlpha);
+            tint(pixels, start, end, 0, blueTint, hasAlpha);
+
+            progress.progress(end - from, to - from);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Tints the channel at {@code shift} of the pixels in [start, end).
+     */
+    private static void tint(int[] pixels,
+                             int start,
+                             int end,
+                             int shift,
+                             float tint,
+                             boolean hasAlpha) {
+        int bound = start + SPECIES.loopBound(end - start);
+        int i = start;
+
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+            tint(pixel, shift, tint, hasAlpha).intoArray(pixels, i);
+        }
+
+        if (i < end) {
+            VectorMask<Integer> range = SPECIES.indexInRange(i, end);
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, i, range);
+            tint(pixel, shift, tint, hasAlpha).intoArray(pixels, i, range);
+        }
+    }
+
+    private static IntVector grayScale(IntVector pixel, boolean hasAlpha) {
+        DoubleVector sum = toDouble(channel(pixel, 16)).mul(.299)
+                .add(toDouble(channel(pixel, 8)).mul(.587))
+                .add(toDouble(channel(pixel, 0)).mul(.114));
+
+        // Truncate with exact double arithmetic and convert only the
+        // integer bits (D2I isn't intrinsified).
+        DoubleVector rounded = sum.add(DOUBLE_ROUND).sub(DOUBLE_ROUND);
+        DoubleVector truncated = rounded.lanewise(
+                VectorOperators.SUB, 1.0, rounded.compare(VectorOperators.GT, sum));
+        IntVector gray = (IntVector) truncated.add(DOUBLE_ROUND)
+                .reinterpretAsLongs()
+                .and(0xFFL)
+                .convertShape(VectorOperators.L2I, SPECIES, 0);
+
+        IntVector result = gray
+                .or(gray.lanewise(VectorOperators.LSHL, 8))
+                .or(gray.lanewise(VectorOperators.LSHL, 16))
+                .or(0xFF000000);
+        return keepTransparent(pixel, result, hasAlpha);
+    }
+
+    private static IntVector sepia(IntVector pixel, boolean hasAlpha) {
+        int depth = 20;
+        IntVector average = channel(pixel, 16)
+                .add(channel(pixel, 8))
+                .add(channel(pixel, 0))
+                .mul(DIV3)
+                .lanewise(VectorOperators.LSHR, 17);
+
+        // Same channel order as the scalar sepia filter.
+        IntVector result = pixel.and(0xFF000000)
+                .or(average.add(depth * 2).min(255)
+                        .lanewise(VectorOperators.LSHL, 16))
+                .or(average.lanewise(VectorOperators.LSHL, 8))
+                .or(average.add(depth).min(255));
+        return keepTransparent(pixel, result, hasAlpha);
+    }
+
+    /**
+     * Computes c + (255 - c) * tint, truncated, for the channel c at
+     * {@code shift}. The tint must be in [0, 1], so the result is in
+     * [0, 255].
+     */
+    private static IntVector tint(IntVector pixel,
+                                  int shift,
+                                  float tint,
+                                  boolean hasAlpha) {
+        IntVector channel = channel(pixel, shift);
+        FloatVector value = (FloatVector) channel.convertShape(
+                VectorOperators.I2F, FLOAT_SPECIES, 0);
+        FloatVector scaled = (FloatVector) channel.neg().add(255).convertShape(
+                VectorOperators.I2F, FLOAT_SPECIES, 0);
+        FloatVector sum = value.add(scaled.mul(tint));
+
+        // Truncate as in grayScale() (F2I isn't intrinsified either).
+        FloatVector rounded = sum.add(FLOAT_ROUND).sub(FLOAT_ROUND);
+        FloatVector truncated = rounded.lanewise(
+                VectorOperators.SUB, 1f, rounded.compare(VectorOperators.GT, sum));
+        IntVector tinted = truncated.add(FLOAT_ROUND).reinterpretAsInts().and(0xFF);
+
+        IntVector result = pixel.and(~(0xFF << shift))
+                .or(tinted.lanewise(VectorOperators.LSHL, shift));
+        return keepTransparent(pixel, result, hasAlpha);
+    }
+
+    /**
+     * @return The 8 bit channel at {@code shift} of each pixel.
+     */
+    private static IntVector channel(IntVector pixel, int shift) {
+        return pixel.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+    }
+
+    private static DoubleVector toDouble(IntVector vector) {
+        return (DoubleVector) vector.convertShape(
+                VectorOperators.I2D, DOUBLE_SPECIES, 0);
+    }
+
+    /**
+     * @return {@code result} with the fully transparent lanes of
+     * {@code pixel} restored if the image has an alpha channel.
+     */
+    private static IntVector keepTransparent(IntVector pixel,
+                                             IntVector result,
+                                             boolean hasAlpha) {
+        if (!hasAlpha) {
+            return result;
+        }
+        return result.blend(pixel, pixel.lanewise(VectorOperators.LSHR, 24)
+                .compare(VectorOperators.EQ, 0));
+    }
+}
@@ -5,11 +5,11 @@ import static java.util.stream.Collectors.toList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -24,13 +24,17 @@ import java.util.stream.Stream;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
 import edu.vanderbilt.imagecrawler.platform.Controller;
+import edu.vanderbilt.imagecrawler.platform.CrawlResult;
+import edu.vanderbilt.imagecrawler.platform.NegativeCache;
 import edu.vanderbilt.imagecrawler.platform.PlatformImage;
 import edu.vanderbilt.imagecrawler.transforms.Transform;
 import edu.vanderbilt.imagecrawler.transforms.TransformImageDecorator;
 import edu.vanderbilt.imagecrawler.utils.BlockingTask;
 import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
+import edu.vanderbilt.imagecrawler.utils.IOUtils;
 import edu.vanderbilt.imagecrawler.utils.Image;
 import edu.vanderbilt.imagecrawler.utils.Options;
+import edu.vanderbilt.imagecrawler.utils.PooledBuffer;
 import edu.vanderbilt.imagecrawler.utils.TransformedImage;
 import edu.vanderbilt.imagecrawler.web.RemoteDataSource;
 import edu.vanderbilt.imagecrawler.web.WebPageCrawler;
@@ -41,6 +45,14 @@ import edu.vanderbilt.imagecrawler.web.WebPageCrawler;
  */
 public abstract class ImageCrawler
        implements Runnable {
+    /**
+     * Cached images smaller than this many bytes are read with
+     * positional reads instead of being memory-mapped, since setting
+     * up and tearing down a mapping costs more than copying a small
+     * image.
+     */
+    protected static final int MAP_THRESHOLD = 256 * 1024;
+
     /**
      * Flag used to stop/cancel a crawl.
      */
@@ -86,9 +98,10 @@ public abstract class ImageCrawler
 
     /**
      * A {@link Function} lambda provided by the controller to create
-     * a new platform-dependent image object.
+     * a new platform-dependent image object from a buffer (a mapped
+     * cache item or the pooled buffer holding downloaded bytes).
      */
-    private BiFunction<InputStream, Cache.Item, PlatformImage> mNewImageFunction;
+    private BiFunction<ByteBuffer, Cache.Item, PlatformImage> mNewMappedImageFunction;
 
     /**
      * A {@link Function} lambda that maps a uri to a
@@ -176,12 +189,17 @@ public abstract class ImageCrawler
 
         // A Function lambda the constructs a new platform
         // dependant image.
-        mNewImageFunction = controller::newImage;
+        mNewMappedImageFunction = controller::newImage;
 
         // Setup a new WebPageCrawler passing it the platform
         // dependant url to input stream mapping function (used for
         // access local web pages in app resources or assets).
-        mWebPageCrawler = new WebPageCrawler(controller::mapUriToInputStream);
+        // Pages whose fetch recently failed are skipped and reported
+        // to the controller's consumer.
+        mWebPageCrawler =
+            new WebPageCrawler(controller::mapUriToInputStream,
+                               controller.getCache().getNegativeCache(),
+                               controller.mConsumer);
 
         // Use the cache implementation provided by the application's
         // controller.
@@ -227,12 +245,31 @@ public abstract class ImageCrawler
                                             "before run().");
         }
 
+        // Start prefetching the items touched by the previous crawl
+        // in the background and record the items touched by this one.
+        boolean warmStart = mController.mOptions.mWarmStart;
+        if (warmStart) {
+            mImageCache.warmStart(Integer.MAX_VALUE, mNewMappedImageFunction);
+            mImageCache.startAccessLog();
+        }
+
         // Start timing the test run.
         startTiming();
 
-        // Perform the web crawling starting at the root Uri, given an
-        // initial depth count of 1.
-        long totalImages = performCrawl(mRootUri, 1);
+        long totalImages;
+        try {
+            // Perform the web crawling starting at the root Uri, given an
+            // initial depth count of 1.
+            totalImages = performCrawl(mRootUri, 1);
+        } finally {
+            // Save this crawl's access log for the next warm start
+            // (even if the crawl was cancelled or failed).
+            if (warmStart) {
+                mImageCache.stopAccessLog();
+                mImageCache.stopWarmStart();
+                mImageCache.saveAccessLog();
+            }
+        }
 
         // Stop timing the test run.
         stopTiming();
@@ -351,12 +388,14 @@ public abstract class ImageCrawler
         // the image data.  The input stream is platform-dependant, so
         // we call the controller to provide the platform-dependant
         // mapping of the url to an input stream.
-        try (InputStream inputStream = mMapUriToInputStream.apply(url)) {
+        try (InputStream inputStream = mMapUriToInputStream.apply(url);
+             PooledBuffer buffer = IOUtils.toPooledBuffer(inputStream)) {
             // Call platform-dependant lambda image creating function to
-            // create a new platform image from the input stream.
+            // decode a new platform image from the downloaded bytes,
+            // which are held in a pooled buffer.
             Image image = new Image(url,
-                                    mNewImageFunction.apply(inputStream,
-                                                            item));
+                                    mNewMappedImageFunction.apply(buffer.buffer(),
+                                                                  item));
 
             try (OutputStream outputStream = item
                  // Obtain the OutputStream.
@@ -364,7 +403,7 @@ public abstract class ImageCrawler
                                   image.size())) {
 
                 // Save the Image into the cache.
-                image.writeImage(outputStream);
+                image.writeImage(outputStream, item.getStorageCodec());
             }
 
             // Return the Image.
@@ -400,19 +439,24 @@ public abstract class ImageCrawler
         Cache.Item item = createNewCacheItem(url, tag);
 
         // Call platform-dependant lambda image creating function to
-        // create a new platform image from the input stream.
-        try {
+        // create a new platform image from the input stream bytes,
+        // which are collected in a pooled buffer.
+        try (PooledBuffer buffer = IOUtils.toPooledBuffer(inputStream)) {
             Image image = new Image(url,
-                                    mNewImageFunction.apply(inputStream,
-                                                            item));
+                                    mNewMappedImageFunction.apply(buffer.buffer(),
+                                                                  item));
             // Save the image into the cache.
             try (OutputStream outputStream =
                  item.getOutputStream(Cache.Operation.WRITE,
                                       image.size())) {
-                image.writeImage(outputStream);
+                image.writeImage(outputStream, item.getStorageCodec());
             } catch (Exception e) {
                 throw ExceptionUtils.unchecked(e);
             }
+
+            // Keep the decoded image in memory so that it isn't
+            // decoded again when it's read back from the cache.
+            item.putDecodedImage(image.getPlatformImage());
             return image;
         } catch (Exception e) {
             e.printStackTrace();
@@ -432,8 +476,7 @@ public abstract class ImageCrawler
      */
     public Image createImage(Image image,
                              TransformedImage transformedImage) {
-        try (InputStream inputStream =
-             new ByteArrayInputStream(transformedImage.getBytes())) {
+        try (InputStream inputStream = transformedImage.getInputStream()) {
             String url = image.getSourceUrl().toString();
             String tag = transformedImage.getTransformName();
             return createImage(url, tag, inputStream);
@@ -455,7 +498,9 @@ public abstract class ImageCrawler
     protected TransformImageDecorator
         makeTransformDecoratorWithImage(Transform transform,
                                         Image image) {
-        return new TransformImageDecorator(transform, image);
+        return new TransformImageDecorator(transform,
+                                           image,
+                                           mNewMappedImageFunction);
     }
 
     /**
@@ -523,19 +568,19 @@ public abstract class ImageCrawler
      */
     public Cache.Item createNewCacheItem(String url,
                                          @Nullable String tag) {
-        Cache.Item item = mImageCache.getItem(url, tag);
-        if (item != null) {
-            return item;
-        } else {
-            return mImageCache.addNewItem(url, tag);
-        }
+        // One lookup that counts a single hit or miss (and never
+        // fails if another thread adds the item first).
+        return mImageCache.addOrGetItem(url, tag, null);
     }
 
     /**
      * This method first checks the cache for an image that matches
      * the {@link URL} and if found returns that. Otherwise, it calls
      * the {@code downloader} {@link Consumer} to download the image
-     * and then returns the result.
+     * and then returns the result. Images whose download recently
+     * failed (see {@link NegativeCache}) are not downloaded again
+     * until their backoff expires; an ERROR {@link CrawlResult} is
+     * reported to the controller's consumer instead.
      *
      * @param url The {@link URL} associated with an {@link Image}
      * @param downloader A {@link Consumer} that downloads the {@link Image}
@@ -548,6 +593,15 @@ public abstract class ImageCrawler
                                     Consumer<Cache.Item> downloader) {
         log("Getting image: %s", url.toString());
 
+        // Skip images that recently failed to download or decode.
+        NegativeCache negativeCache = mImageCache.getNegativeCache();
+        NegativeCache.Failure failure = negativeCache.get(url.toString());
+        if (failure != null) {
+            log("Skipping known-bad image: %s (%s)", url, failure.getReason());
+            reportError(url, failure.getReason(), failure.getException());
+            return null;
+        }
+
         // Attempt to create and download a new cache item for this
         // image url. The addItem method will either return an
         // existing item if one already exists, OR it will allocate a
@@ -555,25 +609,66 @@ public abstract class ImageCrawler
         // (downloader) passing in the item as a parameter. Blocking
         // download will download the image and store it in the new
         // cache file.
-        Cache.Item item = mImageCache
-            .addOrGetItem(url.toString(),
-                          null, // No group id required
-                          downloader);
+        Cache.Item item;
+        try {
+            item = mImageCache
+                .addOrGetItem(url.toString(),
+                              null, // No group id required
+                              downloader);
+        } catch (RuntimeException e) {
+            // Remember the failure so that other pages linking to
+            // the same image don't download it again.
+            failure = negativeCache.recordFailure(url.toString(), e);
+            if (failure != null) {
+                reportError(url, failure.getReason(), e);
+            }
+            throw e;
+        }
+
+        // The image is cached, so forget any earlier failure (whose
+        // count would otherwise escalate the next backoff).
+        negativeCache.recordSuccess(url.toString());
 
-        // Now that we have a downloaded cached item, do the following:
-        // 1. Get the cached item's input stream.
+        // Use the decoded image from the in-memory tier if possible.
+        PlatformImage decoded = item.getDecodedImage();
+        if (decoded != null) {
+            return new Image(url, decoded);
+        }
+
+        // Otherwise, do the following:
+        // 1. Read small items into a pooled buffer with positional
+        //    reads, and map larger items into memory.
         // 2. Decorate the the platform dependant image in an Image object.
-        // 3. The try block automatically will close the input stream.
+        // 3. Add the decoded image to the in-memory tier.
         // 4. Return the Image decorator object or null if an exception occurred.
-        try (InputStream inputStream = item.getInputStream(Cache.Operation.READ)) {
-            return new Image(url,
-                             mNewImageFunction.apply(inputStream,
-                                                     item));
+        try {
+            if (item.getSize() < MAP_THRESHOLD) {
+                try (PooledBuffer buffer =
+                     item.getPooledBuffer(Cache.Operation.READ)) {
+                    decoded = mNewMappedImageFunction.apply(buffer.buffer(),
+                                                            item);
+                }
+            } else {
+                decoded = mNewMappedImageFunction.apply(item.getByteBuffer(Cache.Operation.READ),
+                                                        item);
+            }
+            item.putDecodedImage(decoded);
+            return new Image(url, decoded);
         } catch (IOException e) {
             throw ExceptionUtils.unchecked(e);
         }
     }
 
+    /**
+     * Reports an ERROR {@link CrawlResult} for the {@code url} to the
+     * controller's consumer.
+     */
+    private void reportError(URL url, String reason, Exception e) {
+        if (mController.mConsumer != null) {
+            CrawlResult.submitError(mController.mConsumer, url, reason, e);
+        }
+    }
+
     /**
      * Use the {@link Consumer} to asynchronously download an {@link
      * Image} from the {@link URL} parameter and return a {@link
@@ -0,0 +1,166 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the order in which the items of a {@link Cache} are first
+ * touched during a crawl, so that the next run can prefetch the same
+ * items in the same order while its first pages are still being
+ * parsed (see {@link CachePrefetcher}).
+ * <p>
+ * The log holds each encoded item key once. It is saved next to the
+ * cache directory ({@code <cacheDir>.access}) as one key per line,
+ * replacing the previous log atomically. Recording is lock-free and
+ * does nothing unless the log has been started.
+ */
+class AccessLog {
+    /**
+     * Default maximum number of recorded keys.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    /**
+     * The saved log file.
+     */
+    private final File mFile;
+
+    /**
+     * Keys recorded so far, in first touch order, and the set used
+     * to record each key once.
+     */
+    private final Queue<String> mOrder = new ConcurrentLinkedQueue<>();
+    private final Set<String> mSeen = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    /**
+     * Maximum number of recorded keys.
+     */
+    private final int mMaxEntries;
+
+    /**
+     * True while accesses are recorded.
+     */
+    private volatile boolean mRecording;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheDir   The cache directory.
+     * @param maxEntries Maximum number of recorded keys.
+     */
+    AccessLog(File cacheDir, int maxEntries) {
+        mFile = new File(cacheDir.getParentFile(), cacheDir.getName() + ".access");
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * Discards previously recorded keys and starts recording.
+     */
+    void start() {
+        mRecording = false;
+        mOrder.clear();
+        mSeen.clear();
+        mSize.set(0);
+        mRecording = true;
+    }
+
+    /**
+     * Stops recording (the recorded keys are kept until the next
+     * {@link #start()}).
+     */
+    void stop() {
+        mRecording = false;
+    }
+
+    /**
+     * @return {@code true} if accesses are being recorded.
+     */
+    boolean isRecording() {
+        return mRecording;
+    }
+
+    /**
+     * Records the first touch of an item.
+     */
+    void record(Cache.Item item) {
+        if (mRecording
+            && mSize.get() < mMaxEntries
+            && mSeen.add(item.getKey())) {
+            mOrder.add(item.getKey());
+            mSize.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The number of recorded keys.
+     */
+    int size() {
+        return mSize.get();
+    }
+
+    /**
+     * Saves the recorded keys, replacing the previous log.
+     *
+     * @return The number of saved keys.
+     */
+    int save() throws IOException {
+        File temp = new File(mFile.getPath() + "~write");
+        int count = 0;
+        try (BufferedWriter writer =
+             Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (String key : mOrder) {
+                writer.write(key);
+                writer.newLine();
+                count++;
+            }
+        }
+        Files.move(temp.toPath(), mFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Reads the keys of the saved log.
+     *
+     * @param limit The maximum number of keys to read.
+     * @return The keys in first touch order (empty if there is no log).
+     */
+    List<String> load(int limit) throws IOException {
+        List<String> keys = new ArrayList<>();
+        if (!mFile.isFile()) {
+            return keys;
+        }
+        try (BufferedReader reader =
+             Files.newBufferedReader(mFile.toPath(), StandardCharsets.UTF_8)) {
+            for (String line; keys.size() < limit
+                     && (line = reader.readLine()) != null; ) {
+                if (!line.isEmpty()) {
+                    keys.add(line);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Deletes the saved log.
+     */
+    void delete() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+}
@@ -0,0 +1,95 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An {@link javax.imageio.stream.ImageInputStream} that reads directly
+ * from a {@link ByteBuffer}. When the buffer is a memory-mapped cache
+ * item, ImageIO decodes the image straight from the page cache instead
+ * of copying it through a heap byte array (or, when ImageIO caching is
+ * enabled, through a temporary file).
+ */
+class ByteBufferImageInputStream extends ImageInputStreamImpl {
+    /**
+     * The image bytes (position 0 is the first image byte).
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Set once the stream has been closed.
+     */
+    private boolean mClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer Buffer whose remaining bytes contain the image.
+     * The buffer's position is not modified.
+     */
+    ByteBufferImageInputStream(ByteBuffer buffer) {
+        mBuffer = buffer.slice();
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= mBuffer.limit()) {
+            return -1;
+        }
+        return mBuffer.get((int) streamPos++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+
+        long remaining = mBuffer.limit() - streamPos;
+        if (remaining <= 0) {
+            return -1;
+        }
+
+        int count = (int) Math.min(len, remaining);
+        ByteBuffer source = mBuffer.duplicate();
+        source.position((int) streamPos);
+        source.get(b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return mBuffer.limit();
+    }
+
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    /**
+     * Closes the stream. {@link javax.imageio.ImageIO#read} closes the
+     * stream once it has decoded an image but not if no reader
+     * recognizes the data, so callers close it as well and a repeated
+     * close is ignored.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            super.close();
+        }
+    }
+}
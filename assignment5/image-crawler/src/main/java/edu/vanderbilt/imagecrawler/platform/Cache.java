@@ -3,34 +3,50 @@ package edu.vanderbilt.imagecrawler.platform;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
+import edu.vanderbilt.imagecrawler.utils.BufferPool;
 import edu.vanderbilt.imagecrawler.utils.Options;
+import edu.vanderbilt.imagecrawler.utils.PooledBuffer;
 
 /**
- * A safe file based cache implementation that uses a ConcurrentHashMap
- * to provide thread-safe cache operations. Supports observers that
+ * A safe file based cache implementation that uses a thread-safe
+ * {@link CacheMap} (a ConcurrentHashMap by default) to provide
+ * thread-safe cache operations. Supports observers that
  * are be notified when the state of any cached item changes.
  */
 public class Cache {
@@ -48,16 +64,6 @@ public class Cache {
     private static final List<Operation> mAllStates =
         Arrays.asList(Operation.values());
 
-    /**
-     * Boolean flag in thread local storage which is used to
-     * determine when a thread's call to addItem actually adds
-     * a new item rather than accessing a previously created
-     * item. This boolean is set in newItem() and checked in
-     * addItem().
-     */
-    private static final ThreadLocal<Boolean> wasJustCreated =
-        ThreadLocal.withInitial(() -> false);
-
     /**
      * Static guard and synchronization lock object to ensure
      * that sub-classes are properly declared as singletons.
@@ -65,11 +71,102 @@ public class Cache {
     private static boolean mCreated;
 
     /**
-     * Map for handling concurrent access (fast version).
+     * Thread-safe map that holds all cached items (a {@link
+     * ConcurrentCacheMap} unless another implementation is passed
+     * to the constructor).
+     */
+    private final CacheMap<CacheKey, Item> mCacheMap;
+
+    /**
+     * Secondary index that maps each tag to the keys of all cached
+     * items in that tag's group, so that per-tag operations only
+     * visit matching items.
+     */
+    private final ConcurrentHashMap<String, Set<CacheKey>> mTagIndex
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Items that are currently being created (downloaded) keyed by
+     * cache key. Concurrent requests for the same key wait on the
+     * shared future instead of starting a second download.
+     */
+    private final ConcurrentHashMap<CacheKey, InFlight> mInFlight
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Interned cache keys indexed by tag and then by uri.
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CacheKey>> mKeys
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Number of interned keys per tag allowed beyond twice the number
+     * of cached items before the tag's intern table is reset.
+     */
+    private static final int MAX_INTERNED_KEYS = 4096;
+
+    /**
+     * Size-bounded eviction policy (unbounded by default). Evicted
+     * items are removed from the map and disk via remove().
+     */
+    private final EvictionPolicy mEvictionPolicy =
+        new EvictionPolicy(this::evict);
+
+    /**
+     * Background TTL expiry and compaction service (idle until
+     * started with {@link #startMaintenance(long, TimeUnit)}).
+     */
+    private final CacheMaintenance mMaintenance = new CacheMaintenance(this);
+
+    /**
+     * Recently failed fetches, indexed by source uri.
+     */
+    private final NegativeCache mNegativeCache = new NegativeCache();
+
+    /**
+     * First touch order of items during a crawl and the warm-start
+     * service that replays it (see {@link #warmStart(int, BiFunction)}).
+     */
+    private final AccessLog mAccessLog;
+    private final CachePrefetcher mPrefetcher = new CachePrefetcher(this);
+
+    /**
+     * Lock-free statistics counters of each tag (see {@link
+     * #getStats()}).
+     */
+    private final ConcurrentHashMap<String, StatsCounter> mTagStats
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Storage codecs configured for specific tags and the codec used
+     * for all other transform tags.
+     */
+    private final ConcurrentHashMap<String, StorageCodec> mStorageCodecs
+        = new ConcurrentHashMap<>();
+    private volatile StorageCodec mDefaultStorageCodec = StorageCodec.PNG;
+
+    /**
+     * Content index that maps the SHA-256 digest of stored bytes to
+     * the key of an item holding those bytes. Used to store identical
+     * content (e.g., the same image served from several URLs) once.
+     */
+    private final ConcurrentHashMap<String, CacheKey> mBlobIndex
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Maps a source content digest and tag ({@code <digest>/<tag>})
+     * to the key of the item derived from that content (e.g., a
+     * transformed image), so that derived results can be reused for
+     * any source with identical content.
      */
-    private final ConcurrentHashMap<String, Item> mCacheMap
+    private final ConcurrentHashMap<String, CacheKey> mDerivedIndex
         = new ConcurrentHashMap<>();
 
+    /**
+     * In-memory tier holding decoded images keyed by cache key.
+     */
+    private final DecodedImageCache mDecodedImages = new DecodedImageCache();
+
     /**
      * Optional list of state change observers.
      */
@@ -84,6 +181,20 @@ public class Cache {
     private final ReentrantReadWriteLock mObserversLock
         = new ReentrantReadWriteLock();
 
+    /**
+     * Asynchronous observer dispatcher (null when observers are
+     * notified synchronously, which is the default).
+     */
+    private volatile ObserverDispatcher mDispatcher;
+
+    /**
+     * Minimum number of bytes and minimum fraction of the expected
+     * size that must be transferred between two progress notifications
+     * sent by an observer stream (a value of 0 disables that stride).
+     */
+    private volatile int mProgressStrideBytes = 0;
+    private volatile float mProgressStrideFraction = 0.01f;
+
     /**
      * Used to adjust the speed of the crawl using a sleep call.
      */
@@ -94,14 +205,55 @@ public class Cache {
      */
     private final File mCacheDir;
 
+    /**
+     * The storage backend that holds the bytes of each item.
+     */
+    private final CacheStore mStore;
+
+    /**
+     * Maps encoded keys to files below the cache directory (provided
+     * by the storage backend).
+     */
+    private final CacheLayout mLayout;
+
     /**
      * Constructor that binds the cache implementation to a
      * platform specific root directory, and ensures that this
-     * class is a singleton.
+     * class is a singleton. Items are stored one per file using
+     * a {@link FileCacheStore}.
      *
      * @param cacheDir The platform dependent root cache directory.
      */
     public Cache(File cacheDir) {
+        this(cacheDir, new FileCacheStore());
+    }
+
+    /**
+     * Constructor that binds the cache implementation to a
+     * platform specific root directory and storage backend, and
+     * ensures that this class is a singleton.
+     *
+     * @param cacheDir The platform dependent root cache directory.
+     * @param store    The storage backend used to hold item bytes.
+     */
+    public Cache(File cacheDir, CacheStore store) {
+        this(cacheDir, store, new ConcurrentCacheMap<>());
+    }
+
+    /**
+     * Constructor that binds the cache implementation to a
+     * platform specific root directory, storage backend, and
+     * map implementation, and ensures that this class is a
+     * singleton.
+     *
+     * @param cacheDir The platform dependent root cache directory.
+     * @param store    The storage backend used to hold item bytes.
+     * @param map      The map used to hold cached items (e.g., {@link
+     *                 ConcurrentCacheMap}, {@link SynchronizedCacheMap},
+     *                 {@link StripedCacheMap}, or {@link
+     *                 OpenAddressingCacheMap}).
+     */
+    public Cache(File cacheDir, CacheStore store, CacheMap<CacheKey, Item> map) {
         // Ensure that this class remains a singleton.
         synchronized (this) {
             if (mCreated) {
@@ -112,6 +264,11 @@ public class Cache {
         }
 
         mCacheDir = cacheDir;
+        mAccessLog = new AccessLog(cacheDir, AccessLog.DEFAULT_MAX_ENTRIES);
+        mStore = store;
+        mLayout = store.getLayout();
+        mCacheMap = map;
+        mStore.open(this);
 
         // Ensure that the cache directory exits and
         // immediately load all previously cached files
@@ -174,6 +331,8 @@ public class Cache {
      * currently exists in the cache. If, however, that passed cache file
      * has been passed through a transform, then it doesn't make sense
      * passing back the original image because it will be a different color.
+     * Only the file name is used, so the file may be located in any
+     * {@link CacheLayout} bucket sub-directory.
      *
      * @param cacheFilePath A cache file path that originated from this class.
      * @return The web URL that was originally used to download the passed
@@ -222,7 +381,7 @@ public class Cache {
      */
     public String getRelativeCachePath(String uri, String tag) {
         // Get the file associated with the passed uri and tag pair.
-        File file = getCacheFile(getEncodedKey(uri, tag));
+        File file = getCacheFile(getCacheKey(uri, tag).getEncoded());
 
         // Return the relative path of this file object.
         return file.getPath().replace(getCacheDir().getPath() + "/", "");
@@ -244,19 +403,21 @@ public class Cache {
     /**
      * Maps an item's encoded cache key to its associated File object.
      * The current cache design uses the encoded key as the item's file
-     * name.
+     * name, which is stored either directly in the cache directory or
+     * in a hashed bucket sub-directory (see {@link CacheLayout}).
      *
      * @param key Encoded cache key.
      * @return The item's associated File object on disk.
      */
     public File mapKeyToFile(String key) {
-        return new File(getCacheDir(), key);
+        return mLayout.getFile(getCacheDir(), key);
     }
 
     /**
      * Maps a cache file to it's associated encoded cache key.
      * The current cache design uses the encoded key as the item's file
-     * name.
+     * name, so the key doesn't depend on which bucket sub-directory
+     * (if any) holds the file.
      *
      * @param file A cache file.
      * @return The item's associated encoded cache key.
@@ -344,8 +505,15 @@ public class Cache {
      * @return The matching {@link Item} or null if no match is found.
      */
     public Item getItem(@NotNull String uri, @Nullable String tag) {
-        String cacheKey = getEncodedKey(uri, tag);
-        return mCacheMap.get(cacheKey);
+        Item item = mCacheMap.get(getCacheKey(uri, tag));
+        if (item != null) {
+            item.mStats.increment(CacheStats.HITS);
+            mEvictionPolicy.recordAccess(item);
+            mAccessLog.record(item);
+        } else {
+            statsCounter(tag != null ? tag : NOTAG).increment(CacheStats.MISSES);
+        }
+        return item;
     }
 
     /**
@@ -359,11 +527,13 @@ public class Cache {
      */
     public Item addNewItem(@NotNull String uri,
                            @Nullable String tag) {
-        if (!internalAddOrGet(uri, tag, null).mWasAdded) {
+        // A single lookup so that the add counts as one miss.
+        AddOrGetResult result = internalAddOrGet(uri, tag, null);
+        if (!result.mWasAdded) {
             throw new RuntimeException("Item already exists");
         }
 
-        return internalAddOrGet(uri, tag, null).mItem;
+        return result.mItem;
     }
 
     /**
@@ -401,13 +571,14 @@ public class Cache {
 
     /**
      * Private implementation for adding a new item to the cache that
-     * is called by addOrGetItem() and addItem(). The item is created
-     * calling the cache map's computeIfAbsent which, in turn, calls
-     * the passed lambda to create a new item.  In terms of
-     * concurrency, the computeIfAbsent call behave as a single atomic
-     * operation. If two threads call this method at roughly the same
-     * time, only one will actually create an item and the other will
-     * receive that item as the return value.
+     * is called by addOrGetItem() and addItem(). The first thread to
+     * request a missing key installs an {@link InFlight} future in
+     * the in-flight table and then creates the item (calling the
+     * passed lambda) without holding any map lock, so that slow
+     * downloads never block unrelated keys. If two threads call this
+     * method at roughly the same time, only one will actually create
+     * an item and the other will wait on the shared future and
+     * receive that item (or the creation failure) as its result.
      * 
      * To support the different return values required by the calling
      * addOrGetItem method (requires and item return value) and the
@@ -438,140 +609,746 @@ public class Cache {
             throw new IllegalArgumentException("Item tag must not contain spaces");
         }
 
-        // Build the unique encoded key from the uri and tag pair.
-        String key = getEncodedKey(uri, tag);
+        // Build (or look up) the unique key for the uri and tag pair.
+        CacheKey key = getCacheKey(uri, tag);
+
+        // Fast path: the item has already been created.
+        Item item = mCacheMap.get(key);
+        if (item != null) {
+            mEvictionPolicy.recordAccess(item);
+            return touched(item, false);
+        }
+
+        // Claim the key. If another thread is already creating this
+        // item, wait for it to finish and share its result.
+        InFlight inFlight = new InFlight();
+        InFlight existing = mInFlight.putIfAbsent(key, inFlight);
+        if (existing != null) {
+            item = existing.await(key);
+            mEvictionPolicy.recordAccess(item);
+            return touched(item, false);
+        }
+
+        try {
+            // The previous owner of this key may have published its
+            // item between the map lookup above and the claim.
+            item = mCacheMap.get(key);
+            if (item != null) {
+                inFlight.complete(item);
+                mEvictionPolicy.recordAccess(item);
+                return touched(item, false);
+            }
+
+            // This thread is the only creator of this item, so the
+            // download runs here outside of any map lock. The item is
+            // published to the map before it is removed from the
+            // in-flight table so that it is never created twice.
+            StatsCounter stats = statsCounter(key.getTag());
+            stats.increment(CacheStats.MISSES);
+            long start = System.nanoTime();
+            try {
+                item = newItem(key, consumer);
+            } catch (RuntimeException | Error e) {
+                stats.add(CacheStats.CREATE_NANOS, System.nanoTime() - start);
+                stats.increment(CacheStats.FAILURES);
+                throw e;
+            }
+            stats.add(CacheStats.CREATE_NANOS, System.nanoTime() - start);
+            stats.increment(CacheStats.ADDS);
+
+            putItem(item);
+            inFlight.complete(item);
+        } catch (RuntimeException | Error e) {
+            inFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            mInFlight.remove(key, inFlight);
+        }
+
+        // This thread created the item, so it is responsible for
+        // notifying observers about the item creation operation.
+        notifyObservers(item, Operation.CREATE, -1f);
+
+        // Account for the new item, which may evict older items
+        // if the cache is now over budget.
+        mEvictionPolicy.onAdd(item);
+
+        return touched(item, true);
+    }
+
+    /**
+     * Records the access to an item returned by internalAddOrGet()
+     * (counting a hit if the item already existed).
+     */
+    private AddOrGetResult touched(Item item, boolean wasAdded) {
+        if (!wasAdded) {
+            item.mStats.increment(CacheStats.HITS);
+        }
+        mAccessLog.record(item);
+        return new AddOrGetResult(item, wasAdded);
+    }
+
+    /**
+     * Removes the item associated with the passed key, and deletes
+     * the item's file object. This method does nothing if the cache
+     * does not contain a matching item.
+     *
+     * @param key The cache key of this item
+     * @return The removed item, or null if no matching item was found
+     */
+    public Item remove(@NotNull String key) {
+        return remove(CacheKey.parse(key));
+    }
+
+    /**
+     * Removes the item associated with the passed key (see {@link
+     * #remove(String)}).
+     */
+    private Item remove(@NotNull CacheKey key) {
+        Item item = mCacheMap.remove(key);
+        if (item != null) {
+            removed(item);
+        }
+
+        return item;
+    }
+
+    /**
+     * Cleans up after an item was removed from the cache map: removes
+     * it from the indexes and deletes its file.
+     */
+    private void removed(Item item) {
+        CacheKey key = item.mCacheKey;
+        unindexTag(key);
+        mEvictionPolicy.onRemove(item);
+        if (item.mDigest != null) {
+            mBlobIndex.remove(item.mDigest, key);
+        }
+        mDecodedImages.remove(item.mKey);
+        mStore.delete(item);
+        notifyObservers(item, Operation.DELETE, -1f);
+    }
+
+    /**
+     * Removes all cache items (and their associated File objects)
+     * that were create with the specified group [tag]. Only the
+     * matching items are visited.
+     *
+     * @param tag A grouping tag {@link String} or null for the
+     * default group
+     */
+    public void removeTagged(@Nullable String tag) {
+        Set<CacheKey> keys = mTagIndex.get(tag != null ? tag : NOTAG);
+        if (keys != null) {
+            // Copy the keys since remove() updates the index.
+            new ArrayList<>(keys).forEach(this::remove);
+        }
+    }
+
+    /**
+     * Returns a stream of all cached items that were created with the
+     * specified group [tag]. The stream is backed by the tag index,
+     * so only the matching items are visited. Like the iterators of
+     * concurrent collections, it is weakly consistent: items added or
+     * removed while the stream is consumed may or may not be included.
+     *
+     * @param tag A grouping tag {@link String} or null for the
+     * default group
+     * @return A stream of the matching items.
+     */
+    public Stream<Item> itemsForTag(@Nullable String tag) {
+        Set<CacheKey> keys = mTagIndex.get(tag != null ? tag : NOTAG);
+        if (keys == null) {
+            return Stream.empty();
+        }
+
+        return keys.stream()
+            .map(mCacheMap::get)
+            .filter(Objects::nonNull);
+    }
+
+    /**
+     * Adds the item to the tag index and then publishes it in the
+     * cache map.
+     */
+    private void putItem(Item item) {
+        CacheKey key = item.mCacheKey;
+        mTagIndex.computeIfAbsent(key.getTag(),
+                                  tag -> ConcurrentHashMap.newKeySet())
+            .add(key);
+        mCacheMap.put(key, item);
+    }
+
+    /**
+     * Removes a key from the tag index after its item was removed from
+     * the cache map. If the key was concurrently added again, it is
+     * put back so that the index never misses a cached item.
+     */
+    private void unindexTag(CacheKey key) {
+        Set<CacheKey> keys = mTagIndex.get(key.getTag());
+        if (keys != null) {
+            keys.remove(key);
+            if (mCacheMap.get(key) != null) {
+                keys.add(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached items and their associated files.
+     */
+    public void clear() {
+        // Can't remove cache entries within the forEach() block
+        // unless the underlying CacheMap implementation supports it
+        // (e.g., ConcurrentCacheMap). As a workaround, delete all the cache
+        // files first and then clear the map outside of forEach().
+        // Ideally, a ReentrantReadWrite lock should be used here.
+        mCacheMap.forEach((key, value) -> {
+                Item item = mCacheMap.get(key);
+                if (item != null) {
+                    if (mStore.exists(item)) {
+                        if (!mStore.delete(item)) {
+                            fatal("Unable to delete file: " + item.mFile);
+                        } else {
+                            System.out.println("Deleted file: " + item.mFile);
+                        }
+                        notifyObservers(item, Operation.DELETE, -1f);
+                    }
+                }
+            });
+        mCacheMap.clear();
+        mTagIndex.clear();
+        mKeys.clear();
+        mEvictionPolicy.clear();
+        mBlobIndex.clear();
+        mDerivedIndex.clear();
+        mDecodedImages.clear();
+        mNegativeCache.clear();
+        mPrefetcher.cancel();
+        mAccessLog.delete();
+
+        // Release any remaining storage.
+        mStore.clear();
+    }
+
+    /**
+     * @return The layout used to map keys to files below the cache
+     * directory.
+     */
+    public CacheLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * @return The root cache directory set by the platform subclass.
+     */
+    public File getCacheDir() {
+        return mCacheDir;
+    }
+
+    /**
+     * Returns the number of cached items.
+     */
+    public int getCacheSize() {
+        return mCacheMap.size();
+    }
+
+    /**
+     * Sets the maximum number of bytes and entries that the cache may
+     * hold. When either budget is exceeded, the least valuable items
+     * (see {@link EvictionPolicy}) are removed along with their files.
+     *
+     * @param maxBytes   Maximum total size of all cached files or
+     *                   {@link Long#MAX_VALUE} for no limit
+     * @param maxEntries Maximum number of cached items or
+     *                   {@link Integer#MAX_VALUE} for no limit
+     */
+    public void setCapacity(long maxBytes, int maxEntries) {
+        mEvictionPolicy.setCapacity(maxBytes, maxEntries);
+    }
+
+    /**
+     * @return The maximum total size of all cached files.
+     */
+    public long getMaxCacheBytes() {
+        return mEvictionPolicy.getMaxBytes();
+    }
+
+    /**
+     * @return The maximum number of cached items.
+     */
+    public int getMaxCacheEntries() {
+        return mEvictionPolicy.getMaxEntries();
+    }
+
+    /**
+     * @return The total size of all cached files.
+     */
+    public long getCacheBytes() {
+        return mEvictionPolicy.getTotalBytes();
+    }
+
+    /**
+     * Returns the cache of recently failed fetches, which crawlers
+     * consult to skip known-bad uris (see {@link NegativeCache}).
+     */
+    public NegativeCache getNegativeCache() {
+        return mNegativeCache;
+    }
+
+    /**
+     * @return A snapshot of the statistics of all tags.
+     */
+    public CacheStats getStats() {
+        CacheStats stats = CacheStats.EMPTY;
+        for (StatsCounter counter : mTagStats.values()) {
+            stats = stats.plus(counter.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the specified group
+     * [tag].
+     *
+     * @param tag A grouping tag {@link String} or null for the
+     *            default group
+     * @return The tag's statistics (empty if nothing was recorded).
+     */
+    public CacheStats getStats(@Nullable String tag) {
+        StatsCounter counter = mTagStats.get(tag != null ? tag : NOTAG);
+        return counter != null ? counter.snapshot() : CacheStats.EMPTY;
+    }
+
+    /**
+     * @return A snapshot of the statistics of each tag, keyed by tag
+     * ({@link #NOTAG} for the default group).
+     */
+    public Map<String, CacheStats> getStatsByTag() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        mTagStats.forEach((tag, counter) -> stats.put(tag, counter.snapshot()));
+        return stats;
+    }
+
+    /**
+     * Resets all statistics to 0. Statistics are otherwise kept for
+     * the lifetime of the cache (including across {@link #clear()}).
+     */
+    public void resetStats() {
+        mTagStats.values().forEach(StatsCounter::reset);
+    }
+
+    /**
+     * @return The statistics counters of a tag.
+     */
+    private StatsCounter statsCounter(String tag) {
+        StatsCounter counter = mTagStats.get(tag);
+        return counter != null
+            ? counter
+            : mTagStats.computeIfAbsent(tag, t -> new StatsCounter());
+    }
+
+    /**
+     * Starts recording the order in which items are first touched by
+     * {@link #getItem(String, String)} and the addItem methods,
+     * discarding any previously recorded accesses. Call {@link
+     * #saveAccessLog()} once the crawl is done so that the next run
+     * can replay the log with {@link #warmStart(int, BiFunction)}.
+     */
+    public void startAccessLog() {
+        mAccessLog.start();
+    }
+
+    /**
+     * Stops recording accesses (see {@link #startAccessLog()}).
+     */
+    public void stopAccessLog() {
+        mAccessLog.stop();
+    }
+
+    /**
+     * @return {@code true} if accesses are being recorded.
+     */
+    public boolean isAccessLogRecording() {
+        return mAccessLog.isRecording();
+    }
+
+    /**
+     * Saves the accesses recorded since {@link #startAccessLog()} next
+     * to the cache directory, replacing the previous access log.
+     *
+     * @return The number of saved keys, or -1 if the log couldn't be
+     * saved.
+     */
+    public int saveAccessLog() {
+        try {
+            return mAccessLog.save();
+        } catch (IOException e) {
+            warn("Unable to save cache access log: " + e);
+            return -1;
+        }
+    }
+
+    /**
+     * Replays the saved access log of a previous crawl: up to {@code
+     * maxItems} of the logged items that are still cached are read, in
+     * the order they were first touched, by low priority background
+     * threads (see {@link CachePrefetcher}). The method returns
+     * immediately so that crawling can start right away.
+     * <p>
+     * If a {@code decoder} is given and the in-memory tier is enabled
+     * (see {@link #setDecodedImageCapacity(long)}), the items are
+     * decoded into the in-memory tier; otherwise their bytes are only
+     * loaded into the OS page cache.
+     *
+     * @param maxItems The maximum number of items to prefetch
+     * @param decoder  Decodes a stored item, or null
+     * @return The number of logged keys scheduled for prefetching.
+     */
+    public int warmStart(int maxItems,
+                         @Nullable BiFunction<ByteBuffer, Item, PlatformImage> decoder) {
+        try {
+            List<String> keys = mAccessLog.load(maxItems);
+            mPrefetcher.start(keys, decoder);
+            info("Warm start: prefetching " + keys.size() + " cache items.");
+            return keys.size();
+        } catch (IOException e) {
+            warn("Unable to read cache access log: " + e);
+            return 0;
+        }
+    }
+
+    /**
+     * Cancels a warm start started by {@link #warmStart(int, BiFunction)}.
+     */
+    public void stopWarmStart() {
+        mPrefetcher.cancel();
+    }
+
+    /**
+     * @return {@code true} if a warm start is still prefetching items.
+     */
+    public boolean isWarmStarting() {
+        return mPrefetcher.isRunning();
+    }
+
+    /**
+     * Waits for a running warm start to finish.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of {@code timeout}
+     * @return {@code false} if the timeout elapsed first.
+     */
+    public boolean awaitWarmStart(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return mPrefetcher.await(timeout, unit);
+    }
 
-        // Add the item to the hash map if it doesn't already exist.
-        // The ConcurrentHashMap implementation will only call the
-        // compute method to create a new item if there is no item in
-        // the cache matching the given key.
-        Item item =
-            mCacheMap.computeIfAbsent(
-                                      key, string -> newItem(string, consumer));
+    /**
+     * @return The number of items prefetched by the last warm start.
+     */
+    public int getPrefetchedCount() {
+        return mPrefetcher.getPrefetchedCount();
+    }
 
-        if (item == null) {
-            fatal("computeIfAbsent returned null");
+    /**
+     * Returns the item with the encoded {@code key} without recording
+     * an access (used by the prefetcher).
+     */
+    @Nullable
+    Item peekItem(String key) {
+        return mCacheMap.get(CacheKey.parse(key));
+    }
+
+    /**
+     * Maps the stored bytes of an item without notifying observers
+     * (used by the prefetcher).
+     */
+    ByteBuffer map(Item item) throws IOException {
+        return mStore.map(item);
+    }
+
+    /**
+     * @return {@code true} if the decoded image of the item is in the
+     * in-memory tier (without recording an access).
+     */
+    boolean isDecoded(Item item) {
+        return mDecodedImages.get(item.mKey) != null;
+    }
+
+    /**
+     * Sets the format used to store the decoded images of the
+     * specified group [tag]. Items are decoded according to the
+     * format they were stored in, so changing a codec only affects
+     * items written afterwards.
+     *
+     * @param tag   A grouping tag {@link String} or null for the
+     *              default group
+     * @param codec The storage codec or null to use the default codec
+     */
+    public void setStorageCodec(@Nullable String tag, @Nullable StorageCodec codec) {
+        tag = tag != null ? tag : NOTAG;
+        if (codec == null) {
+            mStorageCodecs.remove(tag);
+        } else {
+            mStorageCodecs.put(tag, codec);
+        }
+    }
+
+    /**
+     * Sets the storage codec of all transform tags that have no codec
+     * of their own (see {@link #setStorageCodec(String, StorageCodec)}).
+     * The default is {@link StorageCodec#PNG}. Original (untagged)
+     * images are always stored in the export format unless a codec is
+     * set for the default group explicitly.
+     */
+    public void setDefaultStorageCodec(@NotNull StorageCodec codec) {
+        mDefaultStorageCodec = codec;
+    }
+
+    /**
+     * Returns the format used to store the decoded images of the
+     * specified group [tag].
+     *
+     * @param tag A grouping tag {@link String} or null for the
+     *            default group
+     * @return The storage codec.
+     */
+    public StorageCodec getStorageCodec(@Nullable String tag) {
+        tag = tag != null ? tag : NOTAG;
+        StorageCodec codec = mStorageCodecs.get(tag);
+        if (codec != null) {
+            return codec;
         }
+        return tag.equals(NOTAG) ? StorageCodec.PNG : mDefaultStorageCodec;
+    }
 
-        // Construct result value before clearing the wasJustCreated
-        // thread local storage boolean.
-        AddOrGetResult result = new AddOrGetResult(item, wasJustCreated.get());
+    /**
+     * Sets the time-to-live of all items with the specified group
+     * [tag]. Once started, the maintenance service removes items that
+     * are older than their tag's TTL (see {@link
+     * #startMaintenance(long, TimeUnit)}).
+     *
+     * @param tag  A grouping tag {@link String} or null for the
+     *             default group
+     * @param ttl  The maximum item age or a value {@code <= 0} to
+     *             remove the tag's TTL
+     * @param unit The unit of {@code ttl}
+     */
+    public void setTimeToLive(@Nullable String tag, long ttl, TimeUnit unit) {
+        mMaintenance.setTimeToLive(tag != null ? tag : NOTAG, toNanos(ttl, unit));
+    }
+
+    /**
+     * Sets the time-to-live of all items whose tag has no TTL of its
+     * own (see {@link #setTimeToLive(String, long, TimeUnit)}).
+     *
+     * @param ttl  The maximum item age or a value {@code <= 0} for no
+     *             default TTL
+     * @param unit The unit of {@code ttl}
+     */
+    public void setDefaultTimeToLive(long ttl, TimeUnit unit) {
+        mMaintenance.setDefaultTimeToLive(toNanos(ttl, unit));
+    }
 
-        // Check the thread local storage boolean to see if this is the
-        // thread actually created this item (set in newItem()). If so,
-        // then this thread is responsible for notifying observers about
-        // the item creation operation.
-        if (wasJustCreated.get()) {
-            notifyObservers(item, Operation.CREATE, -1f);
+    /**
+     * Returns the time-to-live that applies to items with the
+     * specified group [tag].
+     *
+     * @param tag  A grouping tag {@link String} or null for the
+     *             default group
+     * @param unit The unit of the result
+     * @return The TTL or {@link Long#MAX_VALUE} if the items never expire.
+     */
+    public long getTimeToLive(@Nullable String tag, TimeUnit unit) {
+        long nanos = mMaintenance.getTimeToLive(tag != null ? tag : NOTAG);
+        return nanos == CacheMaintenance.NONE
+            ? Long.MAX_VALUE
+            : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
 
-            // Unset the boolean to prevent this thread for sending
-            // more than one create notification to observers.
-            wasJustCreated.set(false);
+    /**
+     * Sets the number of bytes that the maintenance service compacts
+     * the cache down to. Unlike {@link #setCapacity(long, int)}, which
+     * evicts synchronously whenever the cache exceeds its budget, the
+     * compaction target is enforced in the background by removing the
+     * oldest items.
+     *
+     * @param bytes The target size or {@link Long#MAX_VALUE} to
+     *              disable compaction
+     */
+    public void setCompactionTarget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Compaction target must not be negative");
         }
+        mMaintenance.setTargetBytes(bytes);
+    }
 
-        // Return the aggregated result.
-        return result;
+    /**
+     * @return The compaction target in bytes.
+     */
+    public long getCompactionTarget() {
+        return mMaintenance.getTargetBytes();
+    }
+
+    /**
+     * Limits the number of items that the maintenance service deletes
+     * per second, so that a large backlog of expired items is removed
+     * gradually.
+     *
+     * @param deletionsPerSecond The maximum deletion rate or {@link
+     *                           Integer#MAX_VALUE} for no limit
+     */
+    public void setMaxDeletionRate(int deletionsPerSecond) {
+        mMaintenance.setMaxDeletionRate(deletionsPerSecond);
+    }
+
+    /**
+     * @return The maximum number of items deleted per second by the
+     * maintenance service.
+     */
+    public int getMaxDeletionRate() {
+        return mMaintenance.getMaxDeletionRate();
+    }
+
+    /**
+     * Starts (or restarts) a background daemon thread that
+     * periodically removes expired items and compacts the cache (see
+     * {@link CacheMaintenance}). Removed items are reported to
+     * observers as DELETE operations, and crawling threads are never
+     * paused.
+     *
+     * @param period The time between two maintenance passes
+     * @param unit   The unit of {@code period}
+     */
+    public void startMaintenance(long period, TimeUnit unit) {
+        mMaintenance.start(unit.toNanos(period));
+    }
+
+    /**
+     * Stops the maintenance thread started by {@link
+     * #startMaintenance(long, TimeUnit)}.
+     */
+    public void stopMaintenance() {
+        mMaintenance.stop();
+    }
+
+    /**
+     * @return {@code true} if the maintenance thread is running.
+     */
+    public boolean isMaintenanceRunning() {
+        return mMaintenance.isRunning();
+    }
+
+    /**
+     * Immediately performs a single maintenance pass on the calling
+     * thread, subject to the deletion rate limit.
+     *
+     * @return The number of removed items.
+     */
+    public int runMaintenance() {
+        return mMaintenance.runPass();
+    }
+
+    /**
+     * Converts a TTL to nanoseconds, mapping non-positive values to
+     * {@link CacheMaintenance#NONE}.
+     */
+    private static long toNanos(long ttl, TimeUnit unit) {
+        return ttl <= 0 ? CacheMaintenance.NONE : unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns a weakly consistent stream of all cached items. The
+     * stream is backed by the tag index, so the cache map is never
+     * locked while it is consumed.
+     */
+    Stream<Item> items() {
+        return mTagIndex.keySet().stream().flatMap(this::itemsForTag);
     }
 
     /**
-     * Removes the item associated with the passed key, and deletes
-     * the item's file object. This method does nothing if the cache
-     * does not contain a matching item.
+     * Removes the item if it is still cached (i.e., it has not been
+     * removed or replaced by a newer item with the same key).
      *
-     * @param key The cache key of this item
-     * @return The removed item, or null if no matching item was found
+     * @return {@code true} if the item was removed.
      */
-    public Item remove(@NotNull String key) {
-        Item item = mCacheMap.remove(key);
-        if (item != null) {
-            //noinspection ResultOfMethodCallIgnored
-            item.mFile.delete();
-            notifyObservers(item, Operation.DELETE, -1f);
+    boolean expire(Item item) {
+        if (mCacheMap.remove(item.mCacheKey, item)) {
+            removed(item);
+            item.mStats.increment(CacheStats.EXPIRATIONS);
+            return true;
         }
-
-        return item;
+        return false;
     }
 
     /**
-     * Removes all cache items (and their associated File objects)
-     * that were create with the specified group [tag].
-     *
-     * @param tag A grouping tag {@link String} or null for the
-     * default group
+     * Called by the eviction policy to remove an item.
      */
-    public void removeTagged(String tag) {
-        mCacheMap.forEach((key, item) -> {
-                if (tag.equals(item.getTag())) {
-                    remove(key);
-                }
-            });
+    private void evict(Item item) {
+        if (remove(item.mCacheKey) != null) {
+            item.mStats.increment(CacheStats.EVICTIONS);
+        }
     }
 
     /**
-     * Removes all cached items and their associated files.
+     * Sets the maximum number of decoded pixel bytes kept in memory
+     * by {@link Item#putDecodedImage(PlatformImage)}. A capacity of 0
+     * disables the in-memory tier.
+     *
+     * @param bytes Maximum number of pixel bytes.
      */
-    public void clear() {
-        // Can't remove cache entries within the forEach() block
-        // unless the underlying CacheMap implementation is a
-        // ConcurrentHashMap. As a workaround, delete all the cache
-        // files first and then clear the map outside of forEach().
-        // Ideally, a ReentrantReadWrite lock should be used here.
-        mCacheMap.forEach((key, value) -> {
-                Item item = mCacheMap.get(key);
-                if (item != null) {
-                    //noinspection ResultOfMethodCallIgnored
-                    if ((item.mFile.exists())) {
-                        if (!item.mFile.delete()) {
-                            fatal("Unable to delete file: " + item.mFile);
-                        } else {
-                            System.out.println("Deleted file: " + item.mFile);
-                        }
-                        notifyObservers(item, Operation.DELETE, -1f);
-                    }
-                }
-            });
-        mCacheMap.clear();
-
-        // Sanity check.
-        File[] files = mCacheDir.listFiles();
-        if (files != null && files.length > 0) {
-            warn("Cache cleared, but " + files.length + " files still " +
-                 "exist in cache directory $cacheDir");
-        }
+    public void setDecodedImageCapacity(long bytes) {
+        mDecodedImages.setCapacity(bytes);
     }
 
     /**
-     * @return The root cache directory set by the platform subclass.
+     * @return The maximum number of decoded pixel bytes kept in memory.
      */
-    public File getCacheDir() {
-        return mCacheDir;
+    public long getDecodedImageCapacity() {
+        return mDecodedImages.getCapacity();
     }
 
     /**
-     * Returns the number of cached items.
+     * @return The number of decoded pixel bytes currently in memory.
      */
-    public int getCacheSize() {
-        return mCacheMap.size();
+    public long getDecodedImageBytes() {
+        return mDecodedImages.getBytes();
     }
 
     /**
      * Called once when the application starts to create cache entries
-     * in the cacheMap matching all files in the default cache directory.
-     * A sweep is performed first to remove any rogue or empty files.
+     * in the cacheMap matching all items held by the cache store. The
+     * store first removes any rogue or empty entries.
      */
     public int loadFromDisk() {
         mCacheMap.clear();
+        mTagIndex.clear();
+        mEvictionPolicy.clear();
+        mBlobIndex.clear();
+        mDerivedIndex.clear();
+        mDecodedImages.clear();
+
+        long now = System.nanoTime();
+        long wallClock = System.currentTimeMillis();
+
+        int loaded = mStore.load(key -> {
+                Item item = new Item(key, getCacheFile(key), now);
+
+                // Backdate the item by the age of its stored bytes so
+                // that TTLs and eviction order survive restarts.
+                long modified = mStore.lastModified(item);
+                if (modified > 0L && modified < wallClock) {
+                    item.mTimeStamp =
+                        now - TimeUnit.MILLISECONDS.toNanos(wallClock - modified);
+                }
 
-        int swept = sweepCache();
-        if (swept > 0) {
-            info("Swept " + swept + " files from cache.");
-        }
-
-        int loaded = traverseCache(mCacheDir, file -> {
-                Item item = newItemFromFile(file);
-                mCacheMap.put(item.mKey, item);
+                putItem(item);
                 notifyObservers(item, Operation.LOAD, 1f);
-                return 1;
+
+                // Weigh the item before it's added to the policy.
+                mEvictionPolicy.onWrite(item, mStore.size(item));
+                mEvictionPolicy.onAdd(item);
             });
 
         info("Loaded " + loaded + " cache items from disk.");
@@ -591,10 +1368,30 @@ public class Cache {
     private void notifyObservers(Item item,
                                  Operation operation,
                                  Float progress) {
+        item.mStats.recordOperation(operation);
+
         if (mCrawlSpeed < 100) {
             addSimulatedDelay(operation);
         }
 
+        // Hand the event off to the dispatcher thread if async
+        // dispatch has been enabled.
+        ObserverDispatcher dispatcher = mDispatcher;
+        if (dispatcher != null) {
+            dispatcher.post(item, operation, progress);
+        } else {
+            deliverToObservers(item, operation, progress);
+        }
+    }
+
+    /**
+     * Invokes all observers that are interested in {@code operation}.
+     * Called on the notifying thread when dispatch is synchronous and
+     * on the dispatcher thread when dispatch is asynchronous.
+     */
+    private void deliverToObservers(Item item,
+                                    Operation operation,
+                                    Float progress) {
         // Acquire read access to the observers list.
         mObserversLock.readLock().lock();
 
@@ -614,6 +1411,90 @@ public class Cache {
         }
     }
 
+    /**
+     * Sets how often observer streams report READ and WRITE progress.
+     * A notification is sent once at least {@code bytes} bytes or at
+     * least {@code fraction} of the expected size have been transferred
+     * since the previous notification. Setting both strides to 0
+     * reports progress on every read or write call.
+     *
+     * @param bytes    Minimum byte stride or 0 to disable.
+     * @param fraction Minimum progress stride (0..1) or 0 to disable.
+     */
+    public void setProgressStride(int bytes, float fraction) {
+        if (bytes < 0 || fraction < 0f || fraction > 1f) {
+            throw new IllegalArgumentException("Invalid progress stride");
+        }
+        mProgressStrideBytes = bytes;
+        mProgressStrideFraction = fraction;
+    }
+
+    /**
+     * @return The minimum number of bytes between progress notifications.
+     */
+    public int getProgressStrideBytes() {
+        return mProgressStrideBytes;
+    }
+
+    /**
+     * @return The minimum progress fraction between progress notifications.
+     */
+    public float getProgressStrideFraction() {
+        return mProgressStrideFraction;
+    }
+
+    /**
+     * Determines if an observer stream should send a progress
+     * notification.
+     *
+     * @param bytes    Total bytes transferred.
+     * @param notified Bytes transferred when progress was last reported.
+     * @param expected Expected total number of bytes (0 if unknown).
+     * @return {@code true} if progress should be reported.
+     */
+    private boolean isProgressDue(long bytes, long notified, float expected) {
+        long delta = bytes - notified;
+        int strideBytes = mProgressStrideBytes;
+        float strideFraction = mProgressStrideFraction;
+
+        return (strideBytes == 0 && strideFraction == 0f)
+            || (strideBytes > 0 && delta >= strideBytes)
+            || (strideFraction > 0f
+                && (expected <= 0f || delta >= strideFraction * expected))
+            || (expected > 0f && bytes >= expected && notified < expected);
+    }
+
+    /**
+     * Enables or disables asynchronous observer dispatch. When
+     * enabled, observer events are delivered by a single background
+     * thread so that crawling threads never block on slow observers,
+     * and consecutive progress events for the same item are
+     * coalesced, or dropped if the dispatcher falls behind (see {@link
+     * ObserverDispatcher}). LOAD, CREATE, DELETE, and CLOSE events are
+     * always delivered. Disabling async
+     * dispatch waits for all pending events to be delivered.
+     *
+     * @param enabled {@code true} to dispatch events asynchronously.
+     */
+    public synchronized void setAsyncObserverDispatch(boolean enabled) {
+        if (enabled && mDispatcher == null) {
+            mDispatcher = new ObserverDispatcher(this::deliverToObservers,
+                                                 this::warn,
+                                                 ObserverDispatcher.DEFAULT_CAPACITY);
+        } else if (!enabled && mDispatcher != null) {
+            ObserverDispatcher dispatcher = mDispatcher;
+            mDispatcher = null;
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * @return {@code true} if observer events are dispatched asynchronously.
+     */
+    public boolean isAsyncObserverDispatch() {
+        return mDispatcher != null;
+    }
+
     /**
      * Adds an artificial delay to all computationally
      * intense operations.
@@ -665,45 +1546,30 @@ public class Cache {
      *
      * @param key A unique cache key value for this new item.
      */
-    private Item newItem(String key, @Nullable Consumer<Item> consumer) {
-        // Construct a new item passing in the encoded key, associated
-        // file object, and the current creation time.
-        Item item = new Item(key, getCacheFile(key), System.nanoTime());
-
-        // Since it's impossible to guarantee the integrity of the
-        // underlying externally accessible file system, ensure that
-        // if an orphaned file matching the the uri/tag pair already
-        // exists in the cache directory, delete it.
-        if (item.mFile.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            item.mFile.delete();
-            warn("Orphaned file matching a new item found and deleted: "
-                 + item.mFile);
-        }
+    private Item newItem(CacheKey key, @Nullable Consumer<Item> consumer) {
+        // Construct a new item passing in the key, associated file
+        // object, and the current creation time.
+        Item item = new Item(key, getCacheFile(key.getEncoded()), System.nanoTime());
 
-        // Create a new empty file for this item.
+        // Create a new empty store entry for this item (replacing
+        // any orphaned entry with the same key).
         try {
-            if (!item.mFile.createNewFile()) {
-                throw new IOException(
-                                      "Unable to create new cache item file: " + item.mFile);
-            }
+            mStore.create(item);
 
             // Now call the consumer if one was specified.
             if (consumer != null) {
                 consumer.accept(item);
             }
         } catch (Exception e) {
-            // Wrap IOException and throw.
+            // The item is never published, so release its partially
+            // written store entry before wrapping and rethrowing.
+            mStore.delete(item);
             throw new RuntimeException(e);
         }
 
         info("Thread [" + Thread.currentThread().getId() +
              "]: " + item + " ADDED.");
 
-        // Set the thread local storage boolean to true so that the calling
-        // routine can determine if that the item was created.
-        wasJustCreated.set(true);
-
         // Return the item.
         return item;
     }
@@ -737,93 +1603,92 @@ public class Cache {
     }
 
     /**
-     * Centralizes the mapping of a url and tag to a cache lookup key.
-     * To avoid potential key conflicts, this method is the only method
-     * that constructs the cache key from the url and tag.
-     */
-    private String getEncodedKey(@NotNull String uri, @Nullable String tag) {
-        // Urls may be either
-        //      "http://<path>",
-        //      "https://<path>",
-        //      "file://java_resources/<path>,
-        //      "file:///android_assets/<path> - Android requires 3 /// chars.
-        //      "file://project_root/<path>
-        // To facilitate testing which compares the downloaded cache
-        // with a ground-truth directory, strip off the locator prefix
-        // so that cache files will have the same names no matter where
-        // they originated.
-        String key;
-
-        if (uri.startsWith(Platform.PROJECT_URI_PREFIX)) {
-            key = uri.replace(Platform.PROJECT_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.ASSETS_URI_PREFIX)) {
-            key = uri.replace(Platform.ASSETS_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.RESOURCES_URI_PREFIX)) {
-            key = uri.replace(Platform.RESOURCES_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.HTTP_URI_PREFIX)) {
-            key = uri.replace(Platform.HTTP_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.HTTPS_URI_PREFIX)) {
-            key = uri.replace(Platform.HTTPS_URI_PREFIX, "");
-        } else if (uri.startsWith("https://")) {
-            key = uri.replace("https://", "");
-        } else {
-            key = uri;
-        }
-
-        if (key.startsWith("/")) {
-            key = key.substring(1);
+     * Returns the (interned) cache key for a uri and tag pair. Keys
+     * are interned per tag and uri so that repeated lookups of the same
+     * uri don't have to strip prefixes and URL encode it again.
+     */
+    private CacheKey getCacheKey(@NotNull String uri, @Nullable String tag) {
+        ConcurrentHashMap<String, CacheKey> keys =
+            mKeys.get(tag != null ? tag : NOTAG);
+        if (keys == null) {
+            keys = mKeys.computeIfAbsent(tag != null ? tag : NOTAG,
+                                         t -> new ConcurrentHashMap<>());
         }
 
-        // The cache key is <tag>-<encoded key>
-        try {
-            return (tag != null ? tag : NOTAG) +
-                "-" +
-                URLEncoder.encode(key, "UTF-8");
-        } catch (Exception e) {
-            // Wrap and resend the exception.
-            throw new RuntimeException(e);
+        CacheKey key = keys.get(uri);
+        if (key == null) {
+            // Keep the intern table roughly proportional to the
+            // number of cached items.
+            if (keys.size() > MAX_INTERNED_KEYS + 2 * mCacheMap.size()) {
+                keys.clear();
+            }
+            key = CacheKey.of(uri, tag);
+            keys.put(uri, key);
         }
+        return key;
     }
 
     /**
-     * Deletes invalid or 0 length files from the cache.
+     * Called once an item's bytes have been written. Records the
+     * item's content digest, which the output stream computed while
+     * the bytes were written, and, if another item already holds
+     * identical bytes, asks the store to share them.
+     *
+     * @param item   The item that was just written.
+     * @param digest The digest of the written bytes, or null if the
+     *               item is empty.
      */
-    private int sweepCache() {
-        return traverseCache(mCacheDir, file -> {
-                // Delete any empty files that may have been orphaned
-                // if a previous application invocation terminated
-                // abnormally.
-                if (file.length() == 0L) {
-                    info("Removing orphaned empty file from the cache: " + file);
-                    if (!file.delete() || file.exists()) {
-                        fatal("Unable to delete cache file: " + file);
-                    }
-
-                    return 1;
-                }
+    private void deduplicate(Item item, @Nullable String digest) {
+        mDecodedImages.remove(item.mKey);
+        item.mDigest = digest;
+        if (digest == null) {
+            return;
+        }
 
-                // Call mapFileToKey which will throw an exception if this
-                // file is not a valid cache file.
-                try {
-                    mapFileToKey(file);
-                } catch (Exception e) {
-                    warn("Removing unknown file from cache: " + file);
+        CacheKey key = mBlobIndex.putIfAbsent(digest, item.mCacheKey);
+        if (key == null || key.equals(item.mCacheKey)) {
+            return;
+        }
 
-                    // When deleting files, it's always safest recheck that
-                    // the file, is in fact, safe to delete.
-                    if (!file.getPath().startsWith(getCacheDir().getPath())) {
-                        fatal("Only cache files can be swept.");
-                    }
+        Item source = mCacheMap.get(key);
+        if (source == null || !digest.equals(source.mDigest)) {
+            // Stale index entry; this item now holds the blob.
+            mBlobIndex.put(digest, item.mCacheKey);
+        } else if (mStore.link(item, source)) {
+            debug("Deduplicated " + item.mKey + " -> " + source.mKey);
+        }
+    }
 
-                    if (!file.delete() || file.exists()) {
-                        fatal("Unable to delete cache file: " + file);
-                    }
+    /**
+     * Computes the hex encoded SHA-256 digest of the buffer contents.
+     */
+    private static String digest(ByteBuffer buffer) {
+        MessageDigest md = newMessageDigest();
+        md.update(buffer.duplicate());
+        return toHex(md.digest());
+    }
 
-                    return 1;
-                }
+    /**
+     * @return A new SHA-256 message digest.
+     */
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                return 0;
-            });
+    /**
+     * @return The hex encoding of a digest.
+     */
+    private static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+              .append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
     }
 
     /**
@@ -831,7 +1696,7 @@ public class Cache {
      *
      * @param msg Exception message.
      */
-    private void fatal(String msg) {
+    void fatal(String msg) {
         throw new RuntimeException(msg);
     }
 
@@ -840,7 +1705,7 @@ public class Cache {
      *
      * @param msg The message
      */
-    private void warn(String msg) {
+    void warn(String msg) {
         System.out.println(TAG + "[WARNING]: " + msg);
     }
 
@@ -849,7 +1714,7 @@ public class Cache {
      *
      * @param msg The message.
      */
-    private void info(String msg) {
+    void info(String msg) {
         System.out.println(TAG + "[DEBUG]: " + msg);
     }
 
@@ -858,7 +1723,7 @@ public class Cache {
      *
      * @param msg The message
      */
-    private void debug(String msg) {
+    void debug(String msg) {
         if (Options.mDebug) {
             System.out.println(TAG + "[DEBUG]: " + msg);
         }
@@ -900,6 +1765,44 @@ public class Cache {
         }
     }
 
+    /**
+     * Shared result of an item creation that is in progress. The
+     * creating thread is recorded so that a recursive request for
+     * the same key fails fast instead of waiting on itself.
+     */
+    private static class InFlight extends CompletableFuture<Item> {
+        private final Thread mOwner = Thread.currentThread();
+
+        /**
+         * Waits for the owning thread to finish creating the item.
+         *
+         * @param key The key of the item being created.
+         * @return The created item.
+         */
+        Item await(CacheKey key) {
+            if (mOwner == Thread.currentThread()) {
+                throw new IllegalStateException(
+                    "Recursive creation of cache item " + key);
+            }
+
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                // Rethrow the creator's failure in this thread.
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
     /**
      * Immutable entry used in observers list. The contained
      * Observer is stored as a weak reference.
@@ -929,15 +1832,39 @@ public class Cache {
      * the application.
      */
     public class Item {
+        final CacheKey mCacheKey;
         final String mKey;
         final File mFile;
         final int mSize = 0;
         long mTimeStamp = 0L;
 
+        /**
+         * Eviction policy bookkeeping: the size last charged to the
+         * cache's byte budget and whether the item is resident.
+         */
+        final AtomicLong mWeight = new AtomicLong();
+        final AtomicBoolean mResident = new AtomicBoolean();
+
+        /**
+         * Lazily computed content digest (null until computed).
+         */
+        volatile String mDigest;
+
+        /**
+         * Statistics counters of the item's tag.
+         */
+        final StatsCounter mStats;
+
         public Item(String key, File file, long timeStamp) {
-            this.mKey = key;
+            this(CacheKey.parse(key), file, timeStamp);
+        }
+
+        Item(CacheKey key, File file, long timeStamp) {
+            mCacheKey = key;
+            mKey = key.getEncoded();
             mFile = file;
             mTimeStamp = timeStamp;
+            mStats = statsCounter(key.getTag());
         }
 
         /**
@@ -958,7 +1885,7 @@ public class Cache {
          */
         public String getSourceUri() {
             try {
-                String decoded = URLDecoder.decode(mKey.split("-", 2)[1], "UTF-8");
+                String decoded = mCacheKey.getPath();
 
                 // The Options class maintains a static String URL resource locator
                 // value based on whether the crawl is local or remote, and whether
@@ -982,11 +1909,14 @@ public class Cache {
          * @return The item group tag used when the time was created.
          */
         public String getTag() {
-            try {
-                return URLDecoder.decode(mKey.split("-", 2)[0], "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }
+            return mCacheKey.getTag();
+        }
+
+        /**
+         * @return The codec used to store new contents of this item.
+         */
+        public StorageCodec getStorageCodec() {
+            return Cache.this.getStorageCodec(getTag());
         }
 
         /**
@@ -997,7 +1927,9 @@ public class Cache {
         }
 
         /**
-         * @return The item creation time.
+         * @return The item creation time in {@link System#nanoTime()}
+         * units. Items loaded from disk are backdated by the age of
+         * their stored bytes.
          */
         public long getTimestamp() {
             return mTimeStamp;
@@ -1007,7 +1939,7 @@ public class Cache {
          * @return The current size of the item file or 0 if no file exists.
          */
         public int getSize() {
-            return mFile.exists() ? (int) mFile.length() : 0;
+            return (int) mStore.size(this);
         }
 
         /**
@@ -1019,12 +1951,179 @@ public class Cache {
         public InputStream getInputStream(Operation operation) {
             try {
                 return new ObserverInputStream(
-                                               new FileInputStream(mFile), operation, this, mSize);
+                                               new BufferedInputStream(mStore.newInputStream(this)),
+                                               operation, this, getSize());
             } catch (Exception e) {
                 return null;
             }
         }
 
+        /**
+         * Returns the hex encoded SHA-256 digest of the item bytes.
+         * The digest is computed when the item is written, or on
+         * first use for items loaded from disk.
+         *
+         * @return The content digest or null if the item is empty or
+         * can't be read.
+         */
+        public String getDigest() {
+            String digest = mDigest;
+            if (digest == null && getSize() > 0) {
+                try {
+                    digest = mDigest = digest(mStore.map(this));
+                } catch (IOException e) {
+                    warn("Unable to compute digest of " + mKey + ": " + e);
+                }
+            }
+            return digest;
+        }
+
+        /**
+         * @return The decoded image for this item if it is held in the
+         * in-memory tier, or null if it must be decoded from storage.
+         */
+        @Nullable
+        public PlatformImage getDecodedImage() {
+            PlatformImage image = mDecodedImages.get(mKey);
+            if (image != null) {
+                mEvictionPolicy.recordAccess(this);
+            }
+            return image;
+        }
+
+        /**
+         * Adds the decoded {@code image} for this item to the in-memory
+         * tier. The entry is dropped when the item is rewritten or
+         * removed from the cache.
+         *
+         * @param image The decoded image.
+         */
+        public void putDecodedImage(@NotNull PlatformImage image) {
+            if (mCacheMap.get(mCacheKey) == this) {
+                mDecodedImages.put(mKey, image);
+            }
+        }
+
+        /**
+         * Returns an existing item with the passed {@code tag} that was
+         * derived from content identical to this item's content (see
+         * {@link #addDerived(Item)}).
+         *
+         * @param tag The tag of the derived item (e.g., a transform name).
+         * @return A matching non-empty item or null if there is none.
+         */
+        @Nullable
+        public Item findDerived(@NotNull String tag) {
+            String digest = getDigest();
+            if (digest == null) {
+                return null;
+            }
+
+            CacheKey key = mDerivedIndex.get(digest + "/" + tag);
+            Item derived = key != null ? mCacheMap.get(key) : null;
+            return derived != null && derived != this && derived.getSize() > 0
+                ? derived
+                : null;
+        }
+
+        /**
+         * Records that the {@code derived} item was produced from this
+         * item's content so that it can later be found by {@link
+         * #findDerived(String)} from any item with identical content.
+         *
+         * @param derived A tagged item that has been fully written.
+         */
+        public void addDerived(@NotNull Item derived) {
+            String digest = getDigest();
+            if (digest != null && derived.getTag() != null) {
+                mDerivedIndex.put(digest + "/" + derived.getTag(), derived.mCacheKey);
+            }
+        }
+
+        /**
+         * Makes this item hold the same bytes as {@code source} without
+         * recomputing them. The bytes are shared by the store when
+         * possible and copied otherwise. Observers see the same WRITE
+         * and CLOSE notifications as for a normal write.
+         *
+         * @param source An item whose bytes should be reused.
+         * @throws IOException If the bytes can't be copied.
+         */
+        public void copyFrom(@NotNull Item source) throws IOException {
+            int size = source.getSize();
+            if (mStore.link(this, source)) {
+                mDecodedImages.remove(mKey);
+                mDigest = source.getDigest();
+                mEvictionPolicy.onWrite(this, size);
+                Cache.notify(this, Operation.WRITE, 1f, size);
+                Cache.notify(this, Operation.CLOSE, 1f, size);
+            } else {
+                ByteBuffer buffer = mStore.map(source);
+                try (OutputStream out = getOutputStream(Operation.WRITE, size)) {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    out.write(bytes);
+                }
+            }
+        }
+
+        /**
+         * Returns a read-only buffer containing the item bytes. For
+         * file backed stores this is a memory-mapped buffer, which
+         * allows an image to be decoded straight from the page cache
+         * without first being copied into a heap byte array. Since
+         * the whole item is available at once, observers receive a
+         * single completed {@code operation} notification followed
+         * by a CLOSE.
+         *
+         * @param operation The expected operation to be performed with this buffer.
+         * @return A read-only buffer positioned at the first item byte.
+         * @throws IOException If the item can't be read or the crawl was cancelled.
+         */
+        public ByteBuffer getByteBuffer(Operation operation) throws IOException {
+            ImageCrawler.throwExceptionIfCancelled();
+            long start = System.nanoTime();
+            ByteBuffer buffer = mStore.map(this);
+            mStats.increment(CacheStats.READS);
+            mStats.add(CacheStats.BYTES_READ, buffer.remaining());
+            mStats.add(CacheStats.READ_NANOS, System.nanoTime() - start);
+            Cache.notify(this, operation, 1f, buffer.remaining());
+            Cache.notify(this, Operation.CLOSE, 1f, buffer.remaining());
+            return buffer;
+        }
+
+        /**
+         * Reads the item bytes into a pooled buffer with positional
+         * reads. This avoids the cost of creating and tearing down a
+         * mapping, which outweighs the copy for small items. Like
+         * {@link #getByteBuffer(Operation)}, observers receive a single
+         * completed {@code operation} notification followed by a CLOSE.
+         *
+         * @param operation The expected operation to be performed with this buffer.
+         * @return A lease on a buffer holding the item bytes between its
+         * position and limit, which the caller must close.
+         * @throws IOException If the item can't be read or the crawl was cancelled.
+         */
+        public PooledBuffer getPooledBuffer(Operation operation) throws IOException {
+            ImageCrawler.throwExceptionIfCancelled();
+            long start = System.nanoTime();
+            PooledBuffer pooled = BufferPool.instance().acquire(getSize());
+            try {
+                ByteBuffer buffer = pooled.buffer();
+                int count = mStore.read(this, buffer);
+                buffer.flip();
+                mStats.increment(CacheStats.READS);
+                mStats.add(CacheStats.BYTES_READ, count);
+                mStats.add(CacheStats.READ_NANOS, System.nanoTime() - start);
+                Cache.notify(this, operation, 1f, count);
+                Cache.notify(this, Operation.CLOSE, 1f, count);
+                return pooled;
+            } catch (IOException | RuntimeException e) {
+                pooled.close();
+                throw e;
+            }
+        }
+
         /**
          * Returns an observable output stream for this item.
          *
@@ -1034,7 +2133,8 @@ public class Cache {
         public OutputStream getOutputStream(Operation operation, int size)
             throws FileNotFoundException {
             return new ObserverOutputStream(
-                                            new FileOutputStream(mFile), operation, this, size);
+                                            new BufferedOutputStream(mStore.newOutputStream(this)),
+                                            operation, this, size);
         }
 
         @SuppressWarnings("unused") // bytes might be useful at some point
@@ -1082,7 +2182,9 @@ public class Cache {
 
     /**
      * A filtered input stream implementation that notifies observers
-     * when the item's file is written to.
+     * when the item's file is read from. Reads are passed through in
+     * bulk and progress is reported at the stride configured by
+     * {@link #setProgressStride(int, float)}.
      */
     public class ObserverInputStream extends FilterInputStream {
         final InputStream mInputStream;
@@ -1095,6 +2197,16 @@ public class Cache {
          */
         private int bytesRead;
 
+        /**
+         * The value of bytesRead when progress was last reported.
+         */
+        private int mNotifiedBytes;
+
+        /**
+         * The time the stream was opened (0 once it's closed).
+         */
+        private long mOpenTime = System.nanoTime();
+
         /**
          * Creates a <code>FilterInputStream</code>
          * by assigning the  argument <code>in</code>
@@ -1126,15 +2238,19 @@ public class Cache {
         @Override
         public void close() throws IOException {
             super.close();
+            if (mOpenTime != 0) {
+                mItem.mStats.increment(CacheStats.READS);
+                mItem.mStats.add(CacheStats.READ_NANOS, System.nanoTime() - mOpenTime);
+                mOpenTime = 0;
+            }
             Cache.notify(mItem, Operation.CLOSE, 1f, mSize);
         }
 
         @Override
         public int read() throws IOException {
-            int bytes = super.read();
+            int bytes = in.read();
             if (bytes != -1) {
-                bytesRead++;
-                Cache.notify(mItem, mOperation, (float) bytesRead / mSize, mSize);
+                progress(1);
             } else {
                 log("EOF total = " + mSize + " read = " + bytesRead);
             }
@@ -1145,17 +2261,31 @@ public class Cache {
         public int read(@NotNull byte[] b, int off, int len) throws IOException {
             ImageCrawler.throwExceptionIfCancelled();
 
-            int read = super.read(b, off, len);
-            if (read != -1) {
-                bytesRead += read;
-                Cache.notify(mItem, mOperation, (float) bytesRead / mSize, mSize);
-            } else {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                progress(read);
+            } else if (read == -1) {
                 log("EOF total = " + mSize + " read = " + bytesRead);
             }
 
             return read;
         }
 
+        /**
+         * Records {@code count} read bytes and reports progress if the
+         * configured stride has been reached.
+         */
+        private void progress(int count) throws IOException {
+            bytesRead += count;
+            mItem.mStats.add(CacheStats.BYTES_READ, count);
+            if (isProgressDue(bytesRead, mNotifiedBytes, mSize)) {
+                mNotifiedBytes = bytesRead;
+                Cache.notify(mItem, mOperation, (float) bytesRead / mSize, mSize);
+            } else {
+                checkInterrupted();
+            }
+        }
+
         private void log(String msg) {
             if (false) {
                 String func = "ObserverInputStream";
@@ -1166,8 +2296,14 @@ public class Cache {
     }
 
     /**
-     * A filtered input stream implementation that notifies observers
-     * when the item's file is being read from.
+     * A filtered output stream implementation that notifies observers
+     * when the item's file is being written to. Unlike {@link
+     * FilterOutputStream}, array writes are passed to the wrapped
+     * stream in bulk rather than one byte at a time, and progress is
+     * reported at the stride configured by {@link
+     * #setProgressStride(int, float)}. The bytes also pass through a
+     * {@link DigestOutputStream}, so the item's content digest is known
+     * when the stream is closed without reading the bytes back.
      */
     public class ObserverOutputStream extends FilterOutputStream {
         final OutputStream mOutputStream;
@@ -1176,6 +2312,21 @@ public class Cache {
         final int mSize;
         int mBytesWritten = 0;
 
+        /**
+         * Digest of the bytes written so far.
+         */
+        private final MessageDigest mDigest;
+
+        /**
+         * The value of mBytesWritten when progress was last reported.
+         */
+        private int mNotifiedBytes;
+
+        /**
+         * The time the stream was opened (0 once it's closed).
+         */
+        private long mOpenTime = System.nanoTime();
+
         /**
          * Creates a <code>FilterOutputStream</code>
          * by assigning the  argument <code>out</code>
@@ -1192,8 +2343,9 @@ public class Cache {
                                     Operation operation,
                                     Item item,
                                     int size) {
-            super(out);
+            super(new DigestOutputStream(out, newMessageDigest()));
             mOutputStream = out;
+            mDigest = ((DigestOutputStream) this.out).getMessageDigest();
             mOperation = operation;
             mItem = item;
             mSize = size;
@@ -1201,24 +2353,49 @@ public class Cache {
 
         @Override
         public void write(int b) throws IOException {
-            super.write(b);
-            mBytesWritten++;
+            out.write(b);
+            progress(1);
         }
 
         @Override
         public void close() throws IOException {
             super.close();
+            if (mOpenTime != 0) {
+                mItem.mStats.increment(CacheStats.WRITES);
+                mItem.mStats.add(CacheStats.WRITE_NANOS, System.nanoTime() - mOpenTime);
+                mOpenTime = 0;
+                deduplicate(mItem,
+                            mBytesWritten > 0 ? toHex(mDigest.digest()) : null);
+            }
+            mEvictionPolicy.onWrite(mItem, mBytesWritten);
             Cache.notify(mItem, Operation.CLOSE, 1f, mSize);
         }
 
         @Override
-        public void write(byte[] b, int off, int len) throws IOException {
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
             ImageCrawler.throwExceptionIfCancelled();
-            super.write(b, off, len);
+            out.write(b, off, len);
+            progress(len);
+        }
+
+        /**
+         * Records {@code count} written bytes and reports progress if
+         * the configured stride has been reached.
+         */
+        private void progress(int count) throws IOException {
+            mBytesWritten += count;
+            mItem.mStats.add(CacheStats.BYTES_WRITTEN, count);
+
             // Image saving will always be about 1/3 the original
             // size, so adjust the total size here so that the
             // entire operation will complete at roughly 100%.
-            Cache.notify(mItem, mOperation, mBytesWritten / (mSize / 3f), mSize);
+            float expected = mSize / 3f;
+            if (isProgressDue(mBytesWritten, mNotifiedBytes, expected)) {
+                mNotifiedBytes = mBytesWritten;
+                Cache.notify(mItem, mOperation, mBytesWritten / expected, mSize);
+            } else {
+                checkInterrupted();
+            }
         }
 
         private void log(String msg) {
@@ -1228,6 +2405,19 @@ public class Cache {
         }
     }
 
+    /**
+     * Throws a ClosedByInterruptException if the current thread has
+     * been interrupted (used between progress notifications).
+     *
+     * @throws IOException
+     */
+    private static void checkInterrupted() throws IOException {
+        if (Thread.interrupted()) {
+            // Clear interrupted flag and throw an IO based exception.
+            throw new ClosedByInterruptException();
+        }
+    }
+
     /**
      * Common helper used by ObserverInputStream and ObserverOutputStream to ensure
      * that cancellation is handled consistently by both classes.
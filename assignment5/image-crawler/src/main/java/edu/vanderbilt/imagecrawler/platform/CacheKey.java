@@ -0,0 +1,164 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * Immutable cache key used by the {@link Cache} class to identify an
+ * item. A key is built once from a uri and tag pair (or parsed once
+ * from an encoded key/file name) and holds the decoded uri path, the
+ * tag, the encoded key (which is also the item's file name), and a
+ * precomputed hash code, so none of these values have to be encoded,
+ * split, or decoded again on the hot getItem/addOrGetItem paths.
+ */
+public final class CacheKey {
+    /**
+     * The item group tag ({@link Cache#NOTAG} for the default group).
+     */
+    private final String mTag;
+
+    /**
+     * The decoded uri path with any locator prefix removed.
+     */
+    private final String mPath;
+
+    /**
+     * The encoded key: {@code <tag>-<url encoded path>}.
+     */
+    private final String mEncoded;
+
+    /**
+     * Cached hash code.
+     */
+    private final int mHash;
+
+    private CacheKey(String tag, String path, String encoded) {
+        mTag = tag;
+        mPath = path;
+        mEncoded = encoded;
+        mHash = encoded.hashCode();
+    }
+
+    /**
+     * Centralizes the mapping of a url and tag to a cache lookup key.
+     * To avoid potential key conflicts, this method is the only method
+     * that constructs a cache key from a url and tag.
+     *
+     * @param uri The source uri.
+     * @param tag A grouping tag or null for the default group.
+     * @return A new cache key.
+     */
+    public static CacheKey of(@NotNull String uri, @Nullable String tag) {
+        // Urls may be either
+        //      "http://<path>",
+        //      "https://<path>",
+        //      "file://java_resources/<path>,
+        //      "file:///android_assets/<path> - Android requires 3 /// chars.
+        //      "file://project_root/<path>
+        // To facilitate testing which compares the downloaded cache
+        // with a ground-truth directory, strip off the locator prefix
+        // so that cache files will have the same names no matter where
+        // they originated.
+        String path;
+
+        if (uri.startsWith(Platform.PROJECT_URI_PREFIX)) {
+            path = uri.replace(Platform.PROJECT_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.ASSETS_URI_PREFIX)) {
+            path = uri.replace(Platform.ASSETS_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.RESOURCES_URI_PREFIX)) {
+            path = uri.replace(Platform.RESOURCES_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.HTTP_URI_PREFIX)) {
+            path = uri.replace(Platform.HTTP_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.HTTPS_URI_PREFIX)) {
+            path = uri.replace(Platform.HTTPS_URI_PREFIX, "");
+        } else if (uri.startsWith("https://")) {
+            path = uri.replace("https://", "");
+        } else {
+            path = uri;
+        }
+
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        String groupTag = tag != null ? tag : Cache.NOTAG;
+
+        // The cache key is <tag>-<encoded key>
+        try {
+            return new CacheKey(groupTag,
+                                path,
+                                groupTag + "-" + URLEncoder.encode(path, "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // Wrap and resend the exception.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses an encoded key (or cache file name).
+     *
+     * @param encoded An encoded key of the form {@code <tag>-<encoded path>}.
+     * @return A new cache key.
+     * @throws IllegalArgumentException if {@code encoded} is not a valid key.
+     */
+    public static CacheKey parse(@NotNull String encoded) {
+        String[] parts = encoded.split("-", 2);
+        if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cache key: " + encoded);
+        }
+
+        try {
+            return new CacheKey(URLDecoder.decode(parts[0], "UTF-8"),
+                                URLDecoder.decode(parts[1], "UTF-8"),
+                                encoded);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The item group tag ({@link Cache#NOTAG} for the default group).
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return The decoded uri path without any locator prefix.
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * @return The encoded key, which is also the item's file name.
+     */
+    public String getEncoded() {
+        return mEncoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o
+            || (o instanceof CacheKey
+                && mHash == ((CacheKey) o).mHash
+                && mEncoded.equals(((CacheKey) o).mEncoded));
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    /**
+     * @return The encoded key.
+     */
+    @Override
+    public String toString() {
+        return mEncoded;
+    }
+}
@@ -0,0 +1,150 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.File;
+
+/**
+ * Describes how cache files are laid out below the cache directory.
+ * The {@link #FLAT} layout stores every file directly in the cache
+ * directory. A {@link #hashed(int, int)} layout spreads the files
+ * over {@code levels} nested bucket directories, each level having
+ * {@code buckets} sub-directories chosen from a hash of the item's
+ * encoded key (e.g., {@code hashed(2, 256)} maps a key to a path like
+ * {@code <cacheDir>/3f/a2/<key>}), which keeps every directory small
+ * when the cache holds a very large number of items.
+ * <p>
+ * The file name is always the encoded key, so any code that derives
+ * a key or source uri from a file name works with every layout.
+ */
+public final class CacheLayout {
+    /**
+     * All files stored directly in the cache directory (the default).
+     */
+    public static final CacheLayout FLAT = new CacheLayout(0, 1);
+
+    /**
+     * Number of nested bucket directories.
+     */
+    private final int mLevels;
+
+    /**
+     * Number of buckets per level (a power of 2).
+     */
+    private final int mBuckets;
+
+    /**
+     * Number of hash bits used per level.
+     */
+    private final int mBits;
+
+    /**
+     * Number of hex digits in a bucket directory name.
+     */
+    private final int mDigits;
+
+    private CacheLayout(int levels, int buckets) {
+        mLevels = levels;
+        mBuckets = buckets;
+        mBits = Integer.numberOfTrailingZeros(buckets);
+        mDigits = Math.max(1, (mBits + 3) / 4);
+    }
+
+    /**
+     * Returns a layout with {@code levels} nested levels of
+     * {@code buckets} bucket directories.
+     *
+     * @param levels  Number of nested bucket directory levels (0 for
+     *                a flat layout).
+     * @param buckets Number of buckets per level (a power of 2).
+     */
+    public static CacheLayout hashed(int levels, int buckets) {
+        if (levels < 0 || buckets < 1 || Integer.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException(
+                "levels must be >= 0 and buckets must be a power of 2");
+        }
+        if (levels * Integer.numberOfTrailingZeros(buckets) > 32) {
+            throw new IllegalArgumentException(
+                "levels * log2(buckets) must not exceed 32");
+        }
+
+        return levels == 0 || buckets == 1
+            ? FLAT
+            : new CacheLayout(levels, buckets);
+    }
+
+    /**
+     * @return The number of nested bucket directory levels.
+     */
+    public int getLevels() {
+        return mLevels;
+    }
+
+    /**
+     * @return The number of buckets per level.
+     */
+    public int getBuckets() {
+        return mBuckets;
+    }
+
+    /**
+     * @return {@code true} if files are stored directly in the cache
+     * directory.
+     */
+    public boolean isFlat() {
+        return mLevels == 0;
+    }
+
+    /**
+     * Maps an encoded cache key to its file below the passed cache
+     * directory.
+     *
+     * @param cacheDir The root cache directory.
+     * @param key      Encoded cache key (used as the file name).
+     * @return The file associated with the key.
+     */
+    public File getFile(File cacheDir, String key) {
+        if (mLevels == 0) {
+            return new File(cacheDir, key);
+        }
+
+        // String.hashCode() is specified, so bucket assignments are
+        // stable across runs and platforms.
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+
+        StringBuilder path = new StringBuilder(mLevels * (mDigits + 1) + key.length());
+        for (int level = 0; level < mLevels; level++) {
+            String bucket = Integer.toHexString(hash & (mBuckets - 1));
+            for (int i = bucket.length(); i < mDigits; i++) {
+                path.append('0');
+            }
+            path.append(bucket).append(File.separatorChar);
+            hash >>>= mBits;
+        }
+
+        return new File(cacheDir, path.append(key).toString());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheLayout)) {
+            return false;
+        }
+        CacheLayout that = (CacheLayout) o;
+        return mLevels == that.mLevels && mBuckets == that.mBuckets;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mLevels + mBuckets;
+    }
+
+    @Override
+    public String toString() {
+        return isFlat() ? "flat" : "hashed(" + mLevels + "x" + mBuckets + ")";
+    }
+}
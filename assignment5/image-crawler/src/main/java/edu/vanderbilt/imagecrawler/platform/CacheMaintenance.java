@@ -0,0 +1,353 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Background maintenance service used by the {@link Cache} class to
+ * keep disk usage flat while crawling continuously. Each maintenance
+ * pass first removes items that have outlived the time-to-live (TTL)
+ * of their tag, oldest first, and then, if the cache still holds more
+ * bytes than the compaction target, removes the oldest remaining
+ * items until it is back below the target. Item ages are based on
+ * {@link Cache.Item#getTimestamp()}.
+ * <p>
+ * Deletions are rate limited by a token bucket so that a large
+ * backlog of expired items is removed gradually instead of stalling
+ * the disk. Items are removed one at a time through the cache, which
+ * notifies observers with the usual DELETE events, and the cache map
+ * is never locked for the duration of a pass, so crawling threads are
+ * never paused.
+ */
+class CacheMaintenance {
+    /**
+     * Value used to disable a TTL or the compaction target.
+     */
+    static final long NONE = Long.MAX_VALUE;
+
+    /**
+     * The cache being maintained.
+     */
+    private final Cache mCache;
+
+    /**
+     * Source of the current time in {@link System#nanoTime()} units.
+     */
+    private final LongSupplier mClock;
+
+    /**
+     * TTL in nanoseconds of each tag that has its own TTL.
+     */
+    private final Map<String, Long> mTimeToLive = new ConcurrentHashMap<>();
+
+    /**
+     * TTL in nanoseconds of all other tags.
+     */
+    private volatile long mDefaultTimeToLive = NONE;
+
+    /**
+     * Number of cached bytes that a pass compacts the cache down to.
+     */
+    private volatile long mTargetBytes = NONE;
+
+    /**
+     * Maximum number of items deleted per second.
+     */
+    private volatile int mMaxDeletionRate = Integer.MAX_VALUE;
+
+    /**
+     * Deletion tokens available to the next pass and the time at
+     * which they were last refilled.
+     */
+    private double mTokens;
+    private long mRefillTime;
+
+    /**
+     * The maintenance thread (null when stopped) and the lock that
+     * guards it. Passes are serialized by this object's monitor, so
+     * stopping the thread must not hold that monitor.
+     */
+    private Thread mThread;
+    private final Object mThreadLock = new Object();
+
+    /**
+     * Constructor.
+     *
+     * @param cache The cache to maintain.
+     */
+    CacheMaintenance(Cache cache) {
+        this(cache, System::nanoTime);
+    }
+
+    /**
+     * Constructor used by tests to control the passage of time.
+     *
+     * @param cache The cache to maintain.
+     * @param clock Returns the current time in nanoseconds
+     */
+    CacheMaintenance(Cache cache, LongSupplier clock) {
+        mCache = cache;
+        mClock = clock;
+        mRefillTime = clock.getAsLong();
+    }
+
+    /**
+     * Sets the TTL of a tag, or removes it if {@code nanos} is {@link
+     * #NONE}.
+     */
+    void setTimeToLive(String tag, long nanos) {
+        if (nanos == NONE) {
+            mTimeToLive.remove(tag);
+        } else {
+            mTimeToLive.put(tag, nanos);
+        }
+    }
+
+    /**
+     * @return The TTL of the tag in nanoseconds or {@link #NONE}.
+     */
+    long getTimeToLive(String tag) {
+        return mTimeToLive.getOrDefault(tag, mDefaultTimeToLive);
+    }
+
+    /**
+     * Sets the TTL of all tags without their own TTL.
+     */
+    void setDefaultTimeToLive(long nanos) {
+        mDefaultTimeToLive = nanos;
+    }
+
+    /**
+     * Sets the number of bytes that each pass compacts the cache down
+     * to, or {@link #NONE} to disable compaction.
+     */
+    void setTargetBytes(long bytes) {
+        mTargetBytes = bytes;
+    }
+
+    /**
+     * @return The compaction target in bytes or {@link #NONE}.
+     */
+    long getTargetBytes() {
+        return mTargetBytes;
+    }
+
+    /**
+     * Sets the maximum number of items deleted per second.
+     */
+    void setMaxDeletionRate(int deletionsPerSecond) {
+        if (deletionsPerSecond <= 0) {
+            throw new IllegalArgumentException("Deletion rate must be positive");
+        }
+        mMaxDeletionRate = deletionsPerSecond;
+    }
+
+    /**
+     * @return The maximum number of items deleted per second.
+     */
+    int getMaxDeletionRate() {
+        return mMaxDeletionRate;
+    }
+
+    /**
+     * Starts (or restarts) the maintenance thread, which runs a pass
+     * every {@code periodNanos} nanoseconds.
+     */
+    void start(long periodNanos) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("Maintenance period must be positive");
+        }
+
+        synchronized (mThreadLock) {
+            stop();
+            mThread = new Thread(() -> run(periodNanos), "Cache-Maintenance");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stops the maintenance thread and waits for a running pass to
+     * finish.
+     */
+    void stop() {
+        synchronized (mThreadLock) {
+            Thread thread = mThread;
+            mThread = null;
+            if (thread != null) {
+                thread.interrupt();
+                if (Thread.currentThread() != thread) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the maintenance thread is running.
+     */
+    boolean isRunning() {
+        synchronized (mThreadLock) {
+            return mThread != null;
+        }
+    }
+
+    /**
+     * Body of the maintenance thread.
+     */
+    private void run(long periodNanos) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(periodNanos);
+                runPass();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Keep maintaining the cache after a failed pass.
+                mCache.warn("Cache maintenance pass failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Performs a single maintenance pass.
+     *
+     * @return The number of items removed.
+     */
+    synchronized int runPass() {
+        int budget = refillTokens();
+        int removed = 0;
+
+        if (budget > 0) {
+            removed += expire(budget);
+        }
+        if (budget - removed > 0) {
+            removed += compact(budget - removed);
+        }
+
+        mTokens -= removed;
+        if (removed > 0) {
+            mCache.info("Cache maintenance removed " + removed + " items.");
+        }
+        return removed;
+    }
+
+    /**
+     * Adds the deletion tokens earned since the last pass (at most
+     * one second's worth).
+     *
+     * @return The number of deletions allowed in this pass.
+     */
+    private int refillTokens() {
+        long now = mClock.getAsLong();
+        int rate = mMaxDeletionRate;
+        if (rate == Integer.MAX_VALUE) {
+            mTokens = rate;
+        } else {
+            double earned = rate * ((now - mRefillTime) / 1e9);
+            mTokens = Math.min(rate, mTokens + earned);
+        }
+        mRefillTime = now;
+        return (int) mTokens;
+    }
+
+    /**
+     * Removes up to {@code budget} expired items, starting with the
+     * ones that expired first.
+     *
+     * @return The number of items removed.
+     */
+    private int expire(int budget) {
+        long now = mClock.getAsLong();
+
+        // Snapshot the TTLs so that the expiry order can't change
+        // while the expired items are sorted.
+        Map<String, Long> ttls = new HashMap<>(mTimeToLive);
+        long defaultTtl = mDefaultTimeToLive;
+        ToLongFunction<Cache.Item> ttl =
+            item -> ttls.getOrDefault(item.getTag(), defaultTtl);
+
+        // Only visit tags that have a TTL.
+        Stream<Cache.Item> items = defaultTtl != NONE
+            ? mCache.items()
+            : ttls.keySet().stream().flatMap(mCache::itemsForTag);
+
+        List<Cache.Item> expired = oldest(
+            items.filter(item -> ttl.applyAsLong(item) != NONE
+                         && now - item.getTimestamp() >= ttl.applyAsLong(item)),
+            item -> item.getTimestamp() + ttl.applyAsLong(item),
+            budget);
+
+        int removed = 0;
+        for (Cache.Item item : expired) {
+            if (mCache.expire(item)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes up to {@code budget} of the oldest items until the cache
+     * holds no more than the target number of bytes.
+     *
+     * @return The number of items removed.
+     */
+    private int compact(int budget) {
+        long target = mTargetBytes;
+        if (target == NONE || mCache.getCacheBytes() <= target) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (Cache.Item item
+                 : oldest(mCache.items(), Cache.Item::getTimestamp, budget)) {
+            if (mCache.getCacheBytes() <= target) {
+                break;
+            }
+            if (mCache.expire(item)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the {@code limit} items with the smallest {@code order}
+     * values, in ascending order. Uses a bounded heap so that a pass
+     * never holds more than {@code limit} items.
+     */
+    private static List<Cache.Item> oldest(Stream<Cache.Item> items,
+                                           ToLongFunction<Cache.Item> order,
+                                           int limit) {
+        Comparator<Cache.Item> ascending = Comparator.comparingLong(order);
+        PriorityQueue<Cache.Item> heap =
+            new PriorityQueue<>(ascending.reversed());
+
+        items.forEach(item -> {
+                if (heap.size() < limit) {
+                    heap.add(item);
+                } else if (ascending.compare(item, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(item);
+                }
+            });
+
+        List<Cache.Item> result = new ArrayList<>(heap);
+        result.sort(ascending);
+        return result;
+    }
+}
@@ -61,6 +61,18 @@ public interface CacheMap<K, V> {
      */
     V remove(K key);
 
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it is currently mapped to the specified value. Unlike {@link
+     * java.util.Map#remove(Object, Object)}, values are compared by
+     * identity, so an equal value that replaced {@code value} is kept.
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be associated with the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    boolean remove(K key, V value);
+
     /**
      * @return Number of entries in the map.
      */
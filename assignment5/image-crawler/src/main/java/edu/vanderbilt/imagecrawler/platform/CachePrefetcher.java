@@ -0,0 +1,174 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Warm-start service used by the {@link Cache} class to replay the
+ * {@link AccessLog} of a previous crawl. The logged items are read
+ * in first touch order by a small pool of low priority daemon
+ * threads, so that the items the crawl is about to ask for are
+ * already in the OS page cache, or decoded in the in-memory tier,
+ * by the time the first pages have been parsed.
+ * <p>
+ * Prefetching is invisible to the rest of the cache: it sends no
+ * observer notifications and records no accesses with the eviction
+ * policy. It is best effort, so items that were removed in the
+ * meantime or can't be read are simply skipped.
+ */
+class CachePrefetcher {
+    /**
+     * Default number of prefetch threads (prefetching is I/O bound).
+     */
+    static final int THREADS = 2;
+
+    /**
+     * The cache being prefetched.
+     */
+    private final Cache mCache;
+
+    /**
+     * Number of prefetch threads.
+     */
+    private final int mThreads;
+
+    /**
+     * The executor of the current warm start (null if none was
+     * started or it was cancelled).
+     */
+    private ThreadPoolExecutor mExecutor;
+
+    /**
+     * Number of items prefetched by the current warm start.
+     */
+    private final AtomicInteger mPrefetched = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param cache The cache to prefetch.
+     */
+    CachePrefetcher(Cache cache) {
+        this(cache, THREADS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cache   The cache to prefetch.
+     * @param threads Number of prefetch threads (a single thread
+     *                prefetches the items strictly in order).
+     */
+    CachePrefetcher(Cache cache, int threads) {
+        mCache = cache;
+        mThreads = threads;
+    }
+
+    /**
+     * Cancels any running warm start and starts prefetching {@code
+     * keys} in order.
+     *
+     * @param keys    Encoded item keys in first touch order.
+     * @param decoder Decodes items into the in-memory tier, or null
+     *                to only read them into the page cache.
+     */
+    synchronized void start(List<String> keys,
+                            BiFunction<ByteBuffer, Cache.Item, PlatformImage> decoder) {
+        cancel();
+        mPrefetched.set(0);
+
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor =
+            new ThreadPoolExecutor(mThreads, mThreads,
+                                   0L, TimeUnit.MILLISECONDS,
+                                   new LinkedBlockingQueue<>(),
+                                   runnable -> {
+                                       Thread thread = new Thread(
+                                           runnable,
+                                           "Cache-Prefetch-" + threads.incrementAndGet());
+                                       thread.setDaemon(true);
+                                       thread.setPriority(Thread.MIN_PRIORITY);
+                                       return thread;
+                                   });
+        for (String key : keys) {
+            executor.execute(() -> prefetch(key, decoder));
+        }
+
+        // The threads exit once the logged keys have been prefetched.
+        executor.shutdown();
+        mExecutor = executor;
+    }
+
+    /**
+     * Cancels the running warm start. Items that are being read
+     * finish normally.
+     */
+    synchronized void cancel() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * @return {@code true} if a warm start is still prefetching items.
+     */
+    synchronized boolean isRunning() {
+        return mExecutor != null && !mExecutor.isTerminated();
+    }
+
+    /**
+     * Waits for the running warm start (if any) to finish.
+     *
+     * @return {@code false} if the timeout elapsed first.
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = mExecutor;
+        }
+        return executor == null || executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return The number of items prefetched by the current warm start.
+     */
+    int getPrefetchedCount() {
+        return mPrefetched.get();
+    }
+
+    /**
+     * Prefetches a single item.
+     */
+    private void prefetch(String key,
+                          BiFunction<ByteBuffer, Cache.Item, PlatformImage> decoder) {
+        Cache.Item item = mCache.peekItem(key);
+        if (item == null || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+
+        try {
+            if (decoder != null && mCache.getDecodedImageCapacity() > 0) {
+                if (!mCache.isDecoded(item)) {
+                    item.putDecodedImage(decoder.apply(mCache.map(item), item));
+                }
+            } else {
+                ByteBuffer buffer = mCache.map(item);
+                if (buffer instanceof MappedByteBuffer) {
+                    ((MappedByteBuffer) buffer).load();
+                }
+            }
+            mPrefetched.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            mCache.debug("Unable to prefetch " + key + ": " + e);
+        }
+    }
+}
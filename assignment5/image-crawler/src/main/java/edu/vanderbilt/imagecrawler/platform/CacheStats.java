@@ -0,0 +1,255 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the statistics recorded by a {@link Cache},
+ * either for a single tag or for the whole cache (see {@link
+ * Cache#getStats()} and {@link Cache#getStats(String)}).
+ * <p>
+ * Lookups through the addItem methods and {@link Cache#getItem(String,
+ * String)} count as hits or misses; a lookup that waits for another
+ * thread to create the same item counts as a hit. Only misses that
+ * create an item are timed, and the create time includes the
+ * download and the initial write. Reads and writes are counted once
+ * per stream (or mapped buffer) and timed from the time the stream
+ * was opened until it was closed.
+ */
+public final class CacheStats {
+    /**
+     * Indices of the counters recorded by {@link StatsCounter}.
+     */
+    static final int HITS = 0;
+    static final int MISSES = 1;
+    static final int ADDS = 2;
+    static final int FAILURES = 3;
+    static final int EVICTIONS = 4;
+    static final int EXPIRATIONS = 5;
+    static final int READS = 6;
+    static final int BYTES_READ = 7;
+    static final int READ_NANOS = 8;
+    static final int WRITES = 9;
+    static final int BYTES_WRITTEN = 10;
+    static final int WRITE_NANOS = 11;
+    static final int CREATE_NANOS = 12;
+    static final int COUNTERS = 13;
+
+    /**
+     * An empty snapshot.
+     */
+    static final CacheStats EMPTY =
+        new CacheStats(new long[COUNTERS],
+                       new long[Cache.Operation.values().length]);
+
+    /**
+     * Counter values indexed by the constants above.
+     */
+    private final long[] mCounters;
+
+    /**
+     * Number of notifications sent for each operation (indexed by
+     * ordinal).
+     */
+    private final long[] mOperations;
+
+    /**
+     * Constructor only called by {@link StatsCounter}.
+     */
+    CacheStats(long[] counters, long[] operations) {
+        mCounters = counters;
+        mOperations = operations;
+    }
+
+    /**
+     * @return The sum of this snapshot and {@code other}.
+     */
+    public CacheStats plus(CacheStats other) {
+        long[] counters = mCounters.clone();
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.mCounters[i];
+        }
+        long[] operations = mOperations.clone();
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] += other.mOperations[i];
+        }
+        return new CacheStats(counters, operations);
+    }
+
+    /**
+     * @return The number of lookups that found an existing item.
+     */
+    public long getHitCount() {
+        return mCounters[HITS];
+    }
+
+    /**
+     * @return The number of lookups that didn't find an item.
+     */
+    public long getMissCount() {
+        return mCounters[MISSES];
+    }
+
+    /**
+     * @return The ratio of hits to lookups (1 if there were no lookups).
+     */
+    public double getHitRate() {
+        long lookups = getHitCount() + getMissCount();
+        return lookups == 0 ? 1.0 : (double) getHitCount() / lookups;
+    }
+
+    /**
+     * @return The number of items that were created and added.
+     */
+    public long getAddCount() {
+        return mCounters[ADDS];
+    }
+
+    /**
+     * @return The number of item creations that failed (e.g., failed
+     * downloads).
+     */
+    public long getFailureCount() {
+        return mCounters[FAILURES];
+    }
+
+    /**
+     * @return The number of items evicted to keep the cache within
+     * its capacity.
+     */
+    public long getEvictionCount() {
+        return mCounters[EVICTIONS];
+    }
+
+    /**
+     * @return The number of items removed by the maintenance service
+     * (expired or compacted).
+     */
+    public long getExpirationCount() {
+        return mCounters[EXPIRATIONS];
+    }
+
+    /**
+     * @return The number of item input streams and buffers opened.
+     */
+    public long getReadCount() {
+        return mCounters[READS];
+    }
+
+    /**
+     * @return The number of item bytes read.
+     */
+    public long getBytesRead() {
+        return mCounters[BYTES_READ];
+    }
+
+    /**
+     * @return The total time spent reading items, in nanoseconds.
+     */
+    public long getTotalReadTime() {
+        return mCounters[READ_NANOS];
+    }
+
+    /**
+     * @return The number of item output streams opened.
+     */
+    public long getWriteCount() {
+        return mCounters[WRITES];
+    }
+
+    /**
+     * @return The number of item bytes written.
+     */
+    public long getBytesWritten() {
+        return mCounters[BYTES_WRITTEN];
+    }
+
+    /**
+     * @return The total time spent writing items, in nanoseconds.
+     */
+    public long getTotalWriteTime() {
+        return mCounters[WRITE_NANOS];
+    }
+
+    /**
+     * @return The total time spent creating items (including failed
+     * creations), in nanoseconds.
+     */
+    public long getTotalCreateTime() {
+        return mCounters[CREATE_NANOS];
+    }
+
+    /**
+     * Returns the average time spent creating an item.
+     *
+     * @param unit The unit of the result.
+     * @return The average create time (0 if no item was created).
+     */
+    public long averageCreateTime(TimeUnit unit) {
+        long creates = getAddCount() + getFailureCount();
+        return creates == 0
+            ? 0
+            : unit.convert(getTotalCreateTime() / creates, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of observer notifications sent for an
+     * operation. Progress operations (DOWNLOAD, READ, WRITE, and
+     * TRANSFORM) are notified once per progress stride.
+     *
+     * @param operation The operation.
+     * @return The number of notifications.
+     */
+    public long getOperationCount(Cache.Operation operation) {
+        return mOperations[operation.ordinal()];
+    }
+
+    /**
+     * @return The number of notifications sent for each operation.
+     */
+    public Map<Cache.Operation, Long> getOperationCounts() {
+        Map<Cache.Operation, Long> counts = new EnumMap<>(Cache.Operation.class);
+        for (Cache.Operation operation : Cache.Operation.values()) {
+            counts.put(operation, mOperations[operation.ordinal()]);
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheStats)) {
+            return false;
+        }
+        CacheStats other = (CacheStats) o;
+        return Arrays.equals(mCounters, other.mCounters)
+            && Arrays.equals(mOperations, other.mOperations);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mCounters) + Arrays.hashCode(mOperations);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + getHitCount()
+            + ", misses=" + getMissCount()
+            + ", adds=" + getAddCount()
+            + ", failures=" + getFailureCount()
+            + ", evictions=" + getEvictionCount()
+            + ", expirations=" + getExpirationCount()
+            + ", reads=" + getReadCount()
+            + ", bytesRead=" + getBytesRead()
+            + ", writes=" + getWriteCount()
+            + ", bytesWritten=" + getBytesWritten()
+            + ", avgCreateMs=" + averageCreateTime(TimeUnit.MILLISECONDS)
+            + ", operations=" + getOperationCounts()
+            + "}";
+    }
+}
@@ -0,0 +1,88 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@link CacheStatsMXBean} implementation registered for a {@link
+ * Cache}. Only the Java platform registers it, since JMX isn't
+ * available on Android.
+ */
+class CacheStatsBean implements CacheStatsMXBean {
+    /**
+     * JMX domain of the crawler's MBeans.
+     */
+    private static final String DOMAIN = "edu.vanderbilt.imagecrawler";
+
+    /**
+     * The cache whose statistics are exposed.
+     */
+    private final Cache mCache;
+
+    /**
+     * Constructor.
+     */
+    private CacheStatsBean(Cache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * Registers a statistics MBean for {@code cache} with the
+     * platform MBean server, replacing any MBean previously
+     * registered for the same cache directory. Failures are reported
+     * as warnings since statistics are optional.
+     *
+     * @param cache The cache to expose.
+     * @return The MBean name, or null if registration failed.
+     */
+    static ObjectName register(Cache cache) {
+        try {
+            ObjectName name = new ObjectName(
+                DOMAIN + ":type=Cache,name="
+                + ObjectName.quote(cache.getCacheDir().getName()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new CacheStatsBean(cache), name);
+            return name;
+        } catch (JMException | RuntimeException e) {
+            cache.warn("Unable to register cache statistics MBean: " + e);
+            return null;
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return mCache.getStats();
+    }
+
+    @Override
+    public Map<String, CacheStats> getStatsByTag() {
+        return mCache.getStatsByTag();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCache.getCacheSize();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        return mCache.getCacheBytes();
+    }
+
+    @Override
+    public long getDecodedImageBytes() {
+        return mCache.getDecodedImageBytes();
+    }
+
+    @Override
+    public void resetStats() {
+        mCache.resetStats();
+    }
+}
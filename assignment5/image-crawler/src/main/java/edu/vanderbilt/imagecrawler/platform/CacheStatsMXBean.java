@@ -0,0 +1,46 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.Map;
+
+/**
+ * JMX management interface exposing the statistics of a {@link Cache}
+ * (registered by {@link JavaCache} under {@code
+ * edu.vanderbilt.imagecrawler:type=Cache,name=<cache directory>}).
+ * The snapshots are mapped to open types ({@code CompositeData}), so
+ * they can be browsed in any JMX console without the crawler classes.
+ * {@link CacheStats} deliberately has no JMX dependency (it's shared
+ * with Android), so it can't be rebuilt from open data and typed
+ * {@code JMX.newMXBeanProxy} proxies aren't supported; read the
+ * attributes through the MBean server connection instead.
+ */
+public interface CacheStatsMXBean {
+    /**
+     * @return A snapshot of the statistics of all tags.
+     */
+    CacheStats getStats();
+
+    /**
+     * @return A snapshot of the statistics of each tag.
+     */
+    Map<String, CacheStats> getStatsByTag();
+
+    /**
+     * @return The number of cached items.
+     */
+    int getItemCount();
+
+    /**
+     * @return The number of bytes occupied by cached items.
+     */
+    long getCacheBytes();
+
+    /**
+     * @return The number of decoded pixel bytes held in memory.
+     */
+    long getDecodedImageBytes();
+
+    /**
+     * Resets all statistics to 0.
+     */
+    void resetStats();
+}
@@ -0,0 +1,177 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Defines the storage backend used by the {@link Cache} class to
+ * persist the bytes of each {@link Cache.Item}. The cache itself only
+ * manages keys, items, and observers; all disk operations are
+ * forwarded to a CacheStore implementation.
+ * <p>
+ * Two implementations are provided: {@link FileCacheStore} (the
+ * default), which stores each item in its own file, and {@link
+ * SegmentCacheStore}, which appends item bytes to large segment files.
+ */
+public interface CacheStore {
+    /**
+     * Called once by the {@link Cache} constructor before any other
+     * method is called.
+     *
+     * @param cache The cache that owns this store.
+     */
+    void open(Cache cache);
+
+    /**
+     * Returns the layout used to map encoded cache keys to files below
+     * the cache directory (see {@link Cache#mapKeyToFile(String)}).
+     * The default implementation returns {@link CacheLayout#FLAT}.
+     */
+    default CacheLayout getLayout() {
+        return CacheLayout.FLAT;
+    }
+
+    /**
+     * Loads all previously stored items, removing any invalid or
+     * empty entries, and passes the key of each valid item to the
+     * {@code loader}.
+     *
+     * @param loader Receives the encoded cache key of each stored item.
+     * @return The number of loaded items.
+     */
+    int load(Consumer<String> loader);
+
+    /**
+     * Creates a new empty entry for the {@code item}, replacing any
+     * orphaned entry that may exist with the same key.
+     *
+     * @param item A newly created cache item.
+     * @throws IOException If the entry could not be created.
+     */
+    void create(Cache.Item item) throws IOException;
+
+    /**
+     * @return {@code true} if the store contains an entry for the {@code item}.
+     */
+    boolean exists(Cache.Item item);
+
+    /**
+     * @return The number of bytes stored for the {@code item}, or 0 if
+     * no entry exists.
+     */
+    long size(Cache.Item item);
+
+    /**
+     * Returns the time at which the {@code item} bytes were last
+     * written, used to restore the age of items loaded from disk. The
+     * default implementation returns the last modified time of the
+     * item file.
+     *
+     * @return The time in milliseconds since the epoch, or 0 if unknown.
+     */
+    default long lastModified(Cache.Item item) {
+        return item.getFile().lastModified();
+    }
+
+    /**
+     * Returns a new input stream that reads the {@code item} bytes.
+     *
+     * @param item The cache item to read.
+     * @return An input stream positioned at the first item byte.
+     * @throws IOException If the entry can't be read.
+     */
+    InputStream newInputStream(Cache.Item item) throws IOException;
+
+    /**
+     * Returns a read-only buffer containing the {@code item} bytes.
+     * Implementations backed by files should return a memory-mapped
+     * buffer so that the bytes are read directly from the page cache.
+     * The default implementation copies the bytes from {@link
+     * #newInputStream(Cache.Item)} into a heap buffer.
+     *
+     * @param item The cache item to read.
+     * @return A read-only buffer positioned at the first item byte.
+     * @throws IOException If the entry can't be read.
+     */
+    default ByteBuffer map(Cache.Item item) throws IOException {
+        try (InputStream in = newInputStream(item)) {
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream((int) Math.max(32, size(item)));
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                out.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Reads the {@code item} bytes into {@code dst}, starting at its
+     * position, with positional reads. Unlike {@link #map(Cache.Item)},
+     * this doesn't create a mapping, which is cheaper for small items.
+     * The default implementation copies the bytes from {@link
+     * #newInputStream(Cache.Item)}.
+     *
+     * @param item The cache item to read.
+     * @param dst  A buffer with at least {@link #size(Cache.Item)}
+     *             bytes remaining.
+     * @return The number of bytes read.
+     * @throws IOException If the entry can't be read.
+     */
+    default int read(Cache.Item item, ByteBuffer dst) throws IOException {
+        try (InputStream in = newInputStream(item)) {
+            byte[] buffer = new byte[8192];
+            int count = 0;
+            for (int n; (n = in.read(buffer, 0,
+                                     Math.min(buffer.length, dst.remaining()))) > 0; ) {
+                dst.put(buffer, 0, n);
+                count += n;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns a new output stream that replaces the {@code item} bytes.
+     * The new bytes are only guaranteed to be visible to readers once
+     * the stream has been closed.
+     *
+     * @param item The cache item to write.
+     * @return An output stream.
+     * @throws FileNotFoundException If the entry can't be written.
+     */
+    OutputStream newOutputStream(Cache.Item item) throws FileNotFoundException;
+
+    /**
+     * Replaces the bytes of {@code item} with a reference to the bytes
+     * already stored for {@code source} so that identical content is
+     * only stored once. Implementations that can't share storage return
+     * {@code false} and the item keeps its own copy of the bytes. Once
+     * linked, writing new bytes to either item must not affect the other.
+     *
+     * @param item   The item whose bytes are replaced.
+     * @param source An item with identical bytes.
+     * @return {@code true} if the bytes are now shared.
+     */
+    default boolean link(Cache.Item item, Cache.Item source) {
+        return false;
+    }
+
+    /**
+     * Deletes the entry for the {@code item}.
+     *
+     * @return {@code true} if an entry existed and was deleted.
+     */
+    boolean delete(Cache.Item item);
+
+    /**
+     * Called after all items have been deleted by {@link Cache#clear()}
+     * to release any remaining storage.
+     */
+    void clear();
+}
@@ -0,0 +1,124 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A CacheMap implementation that simply wraps a ConcurrentHashMap.
+ * This is the default map used by the Cache class.
+ */
+public class ConcurrentCacheMap<K, V>
+        implements CacheMap<K, V> {
+    /**
+     * The standard Java ConcurrentHashMap.
+     */
+    private final ConcurrentHashMap<K, V> mMap = new ConcurrentHashMap<>();
+
+    /**
+     * Clears all entries in the map.
+     */
+    @Override
+    public void clear() {
+        mMap.clear();
+    }
+
+    /**
+     * Associates the specified value with the specified mKey in this
+     * map.  If the map previously contained a mapping for the mKey,
+     * the old value is replaced.
+     *
+     * @param key   mKey with which the specified value is to be associated
+     * @param value value to be associated with the specified mKey
+     * @return the previous value associated with <tt>mKey</tt>, or
+     * <tt>null</tt> if there was no mapping for <tt>mKey</tt>.
+     */
+    @Override
+    public V put(K key, V value) {
+        return mMap.put(key, value);
+    }
+
+    /**
+     * Attempts to add a new entry to the map identified by the passed
+     * {@code mKey} (see {@link ConcurrentHashMap#computeIfAbsent}).
+     *
+     * @param key    The mKey for the new entry.
+     * @param mapper A lambda that maps the provided mKey to an
+     *               entry value to be added to the map.
+     * @return The added value if it was added, or an existing value if a
+     * entry with the specified mKey already existed.
+     */
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mapper) {
+        return mMap.computeIfAbsent(key, mapper);
+    }
+
+    /**
+     * Returns a data value from the map that matches
+     * the specified {@code mKey} or null if no matching
+     * mKey was found.
+     *
+     * @param key The mKey to lookup.
+     */
+    @Override
+    public V get(K key) {
+        return mMap.get(key);
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey}
+     * and returns the removed entries data object.
+     *
+     * @param key The entry's mKey.
+     * @return The removed entry data value, or null if the cache
+     * does not contain an entry with a matching mKey.
+     */
+    @Override
+    public V remove(K key) {
+        return mMap.remove(key);
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it is currently mapped to the specified value. Unlike {@link
+     * java.util.Map#remove(Object, Object)}, values are compared by
+     * identity, so an equal value that replaced {@code value} is kept.
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be associated with the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    @Override
+    public boolean remove(K key, V value) {
+        boolean[] removed = new boolean[1];
+        mMap.computeIfPresent(key, (k, current) -> {
+                if (current != value) {
+                    return current;
+                }
+                removed[0] = true;
+                return null;
+            });
+        return removed[0];
+    }
+
+    /**
+     * @return Number of entries in the map.
+     */
+    @Override
+    public int size() {
+        return mMap.size();
+    }
+
+    /**
+     * Enumerates all entries in the map and calls the {@code action}
+     * BiConsumer passing in each entry's mKey and value as parameters.
+     *
+     * @param action A BiConsumer that receives a the each entry's
+     *               mKey and value.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        mMap.forEach(action);
+    }
+}
@@ -4,11 +4,13 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.BufferPool;
 import edu.vanderbilt.imagecrawler.utils.Options;
 
 /**
@@ -50,6 +52,9 @@ public class Controller {
         mOptions = builder.mOptions;
         mTransforms = builder.mTransforms;
         mConsumer = builder.mConsumer;
+
+        // Report pooled buffer leaks through the platform log.
+        BufferPool.instance().setLogger(msg -> mPlatform.log(msg, null));
     }
 
     public static @NotNull Builder newBuilder() {
@@ -88,6 +93,16 @@ public class Controller {
         return mPlatform.newImage(inputStream, item);
     }
 
+    /**
+     * Constructs a new platform dependant image object from a buffer.
+     *
+     * @param buffer A buffer containing image data.
+     * @return A new platform dependant image object.
+     */
+    public PlatformImage newImage(ByteBuffer buffer, Cache.Item item) {
+        return mPlatform.newImage(buffer, item);
+    }
+
     /**
      * Returns a lambda function that creates an input stream for the
      * passed uri. This method supports both normal URLs and any URL
@@ -246,6 +261,19 @@ public class Controller {
             return this;
         }
 
+        /**
+         * Sets the {@code warmStart} boolean and returns a reference to this Builder
+         * so that the methods can be chained together.
+         *
+         * @param val flag determining if the cache should be warmed up from the
+         *            previous crawl's access log.
+         * @return a reference to this Builder
+         */
+        public Builder warmStart(boolean val) {
+            mOptionsBuilder.warmStart(val);
+            return this;
+        }
+
         /**
          * Sets the {@code downloadPath} and returns a reference to this Builder so that the
          * methods can be chained together.
@@ -69,9 +69,24 @@ public class CrawlResult {
                                    URL url,
                                    String message,
                                    Exception e) {
+        submitError(consumer, url.toString(), message, e);
+    }
+
+    /**
+     * Helper method that submits a error update the the {@code consumer}.
+     *
+     * @param consumer The consumer that will receive the CrawlResult.
+     * @param url      The url string identifying the crawl item.
+     * @param message  An optional message.
+     * @param e        An optional exception.
+     */
+    public static void submitError(Consumer<CrawlResult> consumer,
+                                   String url,
+                                   String message,
+                                   Exception e) {
         consumer.accept(
                 newBuilder()
-                        .url(url.toString())
+                        .url(url)
                         .state(State.ERROR)
                         .exception(e)
                         .errorMessage(message)
@@ -0,0 +1,122 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-memory tier that sits in front of the disk {@link
+ * Cache} and holds decoded {@link PlatformImage} objects keyed by
+ * their cache key. Entries are weighed by {@link
+ * PlatformImage#pixelBytes()} and the least recently used entries are
+ * evicted once the total weight exceeds the capacity, so an image is
+ * decoded once per crawl rather than once per consumer.
+ * <p>
+ * Platform images are never modified after they have been decoded
+ * (transforms always produce new images), so a cached image can be
+ * safely shared by any number of threads.
+ */
+class DecodedImageCache {
+    /**
+     * Default capacity (32 MB of pixel data).
+     */
+    static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+
+    /**
+     * Access ordered map used to find the least recently used entry.
+     */
+    private final LinkedHashMap<String, PlatformImage> mMap =
+        new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Total weight of all entries.
+     */
+    private long mBytes;
+
+    /**
+     * Maximum total weight (0 disables the tier).
+     */
+    private long mCapacity = DEFAULT_CAPACITY;
+
+    /**
+     * Returns the decoded image for {@code key}, or null if the image
+     * is not in memory.
+     */
+    synchronized PlatformImage get(String key) {
+        return mMap.get(key);
+    }
+
+    /**
+     * Adds a decoded image, evicting least recently used images as
+     * needed. Images larger than the whole capacity are not cached.
+     */
+    synchronized void put(String key, PlatformImage image) {
+        long weight = image.pixelBytes();
+        if (weight > mCapacity) {
+            remove(key);
+            return;
+        }
+
+        PlatformImage previous = mMap.put(key, image);
+        if (previous != null) {
+            mBytes -= previous.pixelBytes();
+        }
+        mBytes += weight;
+        trim();
+    }
+
+    /**
+     * Removes the decoded image for {@code key} (if any).
+     */
+    synchronized void remove(String key) {
+        PlatformImage previous = mMap.remove(key);
+        if (previous != null) {
+            mBytes -= previous.pixelBytes();
+        }
+    }
+
+    /**
+     * Removes all decoded images.
+     */
+    synchronized void clear() {
+        mMap.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Sets the maximum number of pixel bytes held in memory.
+     */
+    synchronized void setCapacity(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        mCapacity = bytes;
+        trim();
+    }
+
+    /**
+     * @return The maximum number of pixel bytes held in memory.
+     */
+    synchronized long getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return The number of pixel bytes currently held in memory.
+     */
+    synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Evicts least recently used entries until within capacity.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, PlatformImage>> iterator =
+            mMap.entrySet().iterator();
+        while (mBytes > mCapacity && iterator.hasNext()) {
+            mBytes -= iterator.next().getValue().pixelBytes();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A size-bounded admission/eviction policy used by the {@link Cache}
+ * class to keep the number of cached items and the number of bytes
+ * they occupy on disk within a configurable budget.
+ * <p>
+ * The policy is a simplified W-TinyLFU: new items enter a small
+ * insertion ordered admission window (about 1% of the entry budget,
+ * but at least one item) and move to the insertion ordered main
+ * queue once newer items push them out of the window. A {@link
+ * FrequencySketch} records how often each key is accessed. When the
+ * cache exceeds its budget, the two oldest items of the main queue
+ * are compared and the one with the lower estimated frequency is
+ * evicted, while the other is given a second chance at the tail of
+ * the queue. Ties are broken using {@link Cache.Item#getTimestamp()}
+ * so that the older item is evicted.
+ * <p>
+ * The window protects new items, which have a sketch frequency of
+ * about 1 and would otherwise lose to any older item that has been
+ * hit, until their creator has had a chance to use them. In
+ * particular, the item being admitted by {@link #onAdd} is never
+ * chosen as a victim by that call, even when it's the only item that
+ * could be evicted (the cache then stays over budget until the next
+ * item is added).
+ * <p>
+ * Recording accesses is lock-free and O(1). Evictions are performed
+ * by whichever thread pushes the cache over budget, but only if no
+ * other thread is already evicting ({@link ReentrantLock#tryLock()}),
+ * so callers never block waiting for an eviction to finish.
+ */
+class EvictionPolicy {
+    /**
+     * The sketch width used when the entry budget is unbounded.
+     */
+    private static final int DEFAULT_SKETCH_ENTRIES = 1 << 14;
+
+    /**
+     * The admission window holds this percentage of the entries.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Called to remove an evicted item from the cache (and disk).
+     */
+    private final Consumer<Cache.Item> mEvictor;
+
+    /**
+     * Insertion ordered admission window of recently added items.
+     */
+    private final ConcurrentLinkedDeque<Cache.Item> mWindow =
+        new ConcurrentLinkedDeque<>();
+
+    /**
+     * Insertion ordered queue of resident items that have left the
+     * admission window.
+     */
+    private final ConcurrentLinkedDeque<Cache.Item> mQueue =
+        new ConcurrentLinkedDeque<>();
+
+    /**
+     * Approximate number of items in the admission window (removed
+     * items are counted until they are dropped from the window).
+     */
+    private final AtomicInteger mWindowEntries = new AtomicInteger();
+
+    /**
+     * Ensures that only one thread evicts at a time.
+     */
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+
+    /**
+     * Total number of bytes occupied by resident items.
+     */
+    private final AtomicLong mTotalBytes = new AtomicLong();
+
+    /**
+     * Number of resident items.
+     */
+    private final AtomicInteger mEntries = new AtomicInteger();
+
+    /**
+     * Approximate number of removed items still in the queue.
+     */
+    private final AtomicInteger mStale = new AtomicInteger();
+
+    /**
+     * Access frequency estimator.
+     */
+    private volatile FrequencySketch mSketch =
+        new FrequencySketch(DEFAULT_SKETCH_ENTRIES);
+
+    /**
+     * Maximum number of bytes (unbounded by default).
+     */
+    private volatile long mMaxBytes = Long.MAX_VALUE;
+
+    /**
+     * Maximum number of entries (unbounded by default).
+     */
+    private volatile int mMaxEntries = Integer.MAX_VALUE;
+
+    /**
+     * Constructor.
+     *
+     * @param evictor Called to remove an item chosen for eviction.
+     */
+    EvictionPolicy(Consumer<Cache.Item> evictor) {
+        mEvictor = evictor;
+    }
+
+    /**
+     * Sets the byte and entry budgets and immediately evicts items if
+     * the cache is now over budget.
+     *
+     * @param maxBytes   Maximum number of bytes or {@link Long#MAX_VALUE}
+     * @param maxEntries Maximum number of entries or {@link Integer#MAX_VALUE}
+     */
+    void setCapacity(long maxBytes, int maxEntries) {
+        if (maxBytes <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+
+        mMaxBytes = maxBytes;
+        if (maxEntries != mMaxEntries) {
+            mMaxEntries = maxEntries;
+            mSketch = new FrequencySketch(
+                maxEntries == Integer.MAX_VALUE
+                    ? DEFAULT_SKETCH_ENTRIES
+                    : maxEntries);
+        }
+
+        evictIfNeeded(null);
+    }
+
+    /**
+     * @return The maximum number of bytes.
+     */
+    long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * @return The maximum number of entries.
+     */
+    int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    /**
+     * @return The number of bytes occupied by resident items.
+     */
+    long getTotalBytes() {
+        return mTotalBytes.get();
+    }
+
+    /**
+     * Records a cache hit.
+     *
+     * @param item The accessed item
+     */
+    void recordAccess(Cache.Item item) {
+        mSketch.increment(item.mKey);
+    }
+
+    /**
+     * Called once a new (or loaded) item has been added to the cache
+     * map. The item is weighed by the number of bytes recorded by the
+     * last {@link #onWrite} call (the cache records the size of
+     * loaded items before they are added), so the store isn't
+     * queried on this path.
+     *
+     * @param item The added item
+     */
+    void onAdd(Cache.Item item) {
+        if (!item.mResident.compareAndSet(false, true)) {
+            return;
+        }
+
+        mTotalBytes.addAndGet(item.mWeight.get());
+        mEntries.incrementAndGet();
+        mWindowEntries.incrementAndGet();
+        mWindow.addLast(item);
+        mSketch.increment(item.mKey);
+
+        evictIfNeeded(item);
+    }
+
+    /**
+     * Called when an item's contents have been (re)written.
+     *
+     * @param item   The item
+     * @param weight The new size of the item in bytes
+     */
+    void onWrite(Cache.Item item, long weight) {
+        long previous = item.mWeight.getAndSet(weight);
+        if (item.mResident.get()) {
+            mTotalBytes.addAndGet(weight - previous);
+            evictIfNeeded(null);
+        }
+    }
+
+    /**
+     * Called when an item has been removed from the cache map. The
+     * item is lazily dropped from the queue during the next eviction,
+     * or by a purge once removed items outnumber resident ones.
+     *
+     * @param item The removed item
+     */
+    void onRemove(Cache.Item item) {
+        if (item.mResident.compareAndSet(true, false)) {
+            mTotalBytes.addAndGet(-item.mWeight.get());
+            int entries = mEntries.decrementAndGet();
+
+            if (mStale.incrementAndGet() > Math.max(64, entries)
+                && mEvictionLock.tryLock()) {
+                try {
+                    mStale.set(0);
+                    mQueue.removeIf(i -> !i.mResident.get());
+                    mWindow.removeIf(i -> !i.mResident.get());
+                    mWindowEntries.set(mWindow.size());
+                } finally {
+                    mEvictionLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all resident items and access history.
+     */
+    void clear() {
+        mEvictionLock.lock();
+        try {
+            mQueue.forEach(item -> item.mResident.set(false));
+            mWindow.forEach(item -> item.mResident.set(false));
+            mQueue.clear();
+            mWindow.clear();
+            mWindowEntries.set(0);
+            mTotalBytes.set(0L);
+            mEntries.set(0);
+            mStale.set(0);
+            mSketch.clear();
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} if either budget has been exceeded
+     */
+    private boolean isOverBudget() {
+        return mEntries.get() > mMaxEntries || mTotalBytes.get() > mMaxBytes;
+    }
+
+    /**
+     * @return The maximum number of items in the admission window.
+     */
+    private int windowCapacity() {
+        long entries = Math.min(mMaxEntries, mEntries.get());
+        return (int) Math.max(1L, entries * WINDOW_PERCENT / 100);
+    }
+
+    /**
+     * Evicts items until the cache is back within budget. Does
+     * nothing if another thread is already evicting.
+     *
+     * @param admitted The item being added by the caller, which is
+     *                 never evicted, or null.
+     */
+    private void evictIfNeeded(Cache.Item admitted) {
+        if (!isOverBudget() || !mEvictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            while (isOverBudget()) {
+                Cache.Item victim = nextVictim(admitted);
+                if (victim == null) {
+                    break;
+                }
+
+                mEvictor.accept(victim);
+
+                // The evictor removes the item through Cache.remove(),
+                // but guard against an evictor that doesn't.
+                onRemove(victim);
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Chooses the next item to evict (called with the eviction lock
+     * held). Items beyond the window capacity first move from the
+     * window to the main queue, whose two oldest items are then
+     * compared. The window is only evicted from, oldest first, when
+     * the main queue is empty.
+     *
+     * @param admitted An item that must not be chosen, or null.
+     * @return The item to evict, or null if there is none.
+     */
+    private Cache.Item nextVictim(Cache.Item admitted) {
+        int capacity = windowCapacity();
+        while (mWindowEntries.get() > capacity) {
+            Cache.Item item = mWindow.pollFirst();
+            if (item == null) {
+                break;
+            }
+            if (item == admitted) {
+                mWindow.addFirst(item);
+                break;
+            }
+            mWindowEntries.decrementAndGet();
+            if (item.mResident.get()) {
+                mQueue.addLast(item);
+            }
+        }
+
+        Cache.Item victim = pollResident(mQueue);
+        if (victim != null) {
+            Cache.Item candidate = pollResident(mQueue);
+            if (candidate != null) {
+                // TinyLFU: keep whichever of the two oldest
+                // items is more popular and evict the other.
+                if (isMoreValuable(victim, candidate)) {
+                    mQueue.addLast(victim);
+                    victim = candidate;
+                } else {
+                    mQueue.addLast(candidate);
+                }
+            }
+            return victim;
+        }
+
+        for (Cache.Item item : mWindow) {
+            if (item != admitted && item.mResident.get()) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code true} if item {@code a} should be kept in
+     * preference to item {@code b}.
+     */
+    private boolean isMoreValuable(Cache.Item a, Cache.Item b) {
+        FrequencySketch sketch = mSketch;
+        int fa = sketch.frequency(a.mKey);
+        int fb = sketch.frequency(b.mKey);
+        return fa != fb
+            ? fa > fb
+            : a.getTimestamp() > b.getTimestamp();
+    }
+
+    /**
+     * @return The oldest item in {@code queue} that is still
+     * resident, or null if there are none.
+     */
+    private static Cache.Item pollResident(ConcurrentLinkedDeque<Cache.Item> queue) {
+        Cache.Item item;
+        while ((item = queue.pollFirst()) != null) {
+            if (item.mResident.get()) {
+                return item;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,1140 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The default {@link CacheStore} implementation that stores each
+ * cached item in its own file. The file associated with an item is
+ * determined by {@link Cache#mapKeyToFile(String)} using this store's
+ * {@link CacheLayout}: either directly in the cache directory (the
+ * default) or in hashed bucket sub-directories. When the layout of an
+ * existing cache differs from the configured layout (e.g., a flat
+ * cache is opened with a hashed layout), the first load moves every
+ * file to its new location.
+ * <p>
+ * To avoid rescanning the cache directory on startup, the store
+ * keeps a binary manifest next to the cache directory. The manifest
+ * consists of a checksummed snapshot of all cache keys
+ * ({@code <cacheDir>.manifest}) and an append-only journal of
+ * CREATE and DELETE records ({@code <cacheDir>.journal}). A CREATE
+ * record is only written once an item's output stream has been
+ * closed, so the manifest never refers to partially written files.
+ * The directory is only scanned (and swept) when the manifest is
+ * missing, fails its checksum, or the cache directory itself has
+ * been deleted. After every load the journal is folded into a new
+ * snapshot.
+ * <p>
+ * By default, item files are written in place and nothing is forced
+ * to disk, so an operating system crash can leave a truncated item
+ * behind. In durable mode (see {@link #FileCacheStore(CacheLayout,
+ * long)}) each item is written to a temporary file in its bucket
+ * directory instead. Closing the output stream hands the file to a
+ * background group commit thread, which periodically forces every
+ * queued file to disk with a single batch, atomically renames each
+ * file over its item file, forces the affected directories, and only
+ * then journals and forces the CREATE records. The item file is
+ * therefore always either its previous version or a complete new one,
+ * and the manifest never refers to data that isn't on disk. Writers
+ * never wait for a commit; until an item has been committed, this
+ * store serves its bytes from the temporary file. Temporary files left
+ * behind by a crash are deleted by the next load, and unjournaled item
+ * files are never loaded; they are replaced when the item is downloaded
+ * again or swept by the next directory scan. {@link #close()} commits
+ * the outstanding writes and stops the group commit thread.
+ */
+public class FileCacheStore
+       implements CacheStore {
+    /**
+     * Manifest snapshot file header.
+     */
+    private static final int MANIFEST_MAGIC = 0x43414348; // "CACH"
+    private static final int MANIFEST_VERSION = 2;
+
+    /**
+     * Group commit interval that disables durable writes.
+     */
+    public static final long NOT_DURABLE = -1;
+
+    /**
+     * Journal record types.
+     */
+    private static final byte CREATE = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * Maps keys to files below the cache directory.
+     */
+    private final CacheLayout mLayout;
+
+    /**
+     * Milliseconds that the group commit thread waits to collect a
+     * batch of writes, or {@link #NOT_DURABLE}.
+     */
+    private final long mCommitInterval;
+
+    /**
+     * Guards the uncommitted writes and the renames that publish them.
+     */
+    private final Object mCommitLock = new Object();
+
+    /**
+     * The latest uncommitted write of each item, indexed by key.
+     */
+    private final HashMap<String, Pending> mPending = new HashMap<>();
+
+    /**
+     * Writes waiting for the next group commit, in closing order.
+     */
+    private final List<Pending> mQueue = new ArrayList<>();
+
+    /**
+     * Sequence numbers of the last queued and last committed writes.
+     */
+    private long mQueuedSeq;
+    private long mCommittedSeq;
+
+    /**
+     * Set by {@link #sync()} to commit the current batch immediately.
+     */
+    private boolean mSyncRequested;
+
+    /**
+     * The group commit thread (started by the first durable write and
+     * stopped by {@link #close()} or {@link #clear()}).
+     */
+    private Thread mCommitThread;
+
+    /**
+     * Commits the last batch on a normal exit while the group commit
+     * thread is running.
+     */
+    private Thread mShutdownHook;
+
+    /**
+     * Names of the temporary files that are still being written or
+     * committed, which a sweep must not delete.
+     */
+    private final Set<String> mLiveTemps = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Serializes journal writes.
+     */
+    private final Object mJournalLock = new Object();
+
+    /**
+     * The cache that owns this store.
+     */
+    private Cache mCache;
+
+    /**
+     * Manifest snapshot and journal files.
+     */
+    private File mManifestFile;
+    private File mJournalFile;
+
+    /**
+     * The open journal (null until the first load).
+     */
+    private DataOutputStream mJournal;
+
+    /**
+     * The journal's underlying file stream (used to force it to disk).
+     */
+    private FileOutputStream mJournalOut;
+
+    /**
+     * Constructs a store that keeps all files directly in the cache
+     * directory.
+     */
+    public FileCacheStore() {
+        this(CacheLayout.FLAT);
+    }
+
+    /**
+     * Constructs a store that uses the passed layout (e.g., {@code
+     * CacheLayout.hashed(2, 256)} for very large caches).
+     *
+     * @param layout Maps keys to files below the cache directory.
+     */
+    public FileCacheStore(CacheLayout layout) {
+        this(layout, NOT_DURABLE);
+    }
+
+    /**
+     * Constructs a store that uses the passed layout and, unless the
+     * interval is {@link #NOT_DURABLE}, writes items durably using a
+     * background group commit.
+     *
+     * @param layout               Maps keys to files below the cache
+     *                             directory.
+     * @param commitIntervalMillis How long the group commit thread
+     *                             collects writes before forcing them
+     *                             to disk (0 to commit as soon as
+     *                             possible), or {@link #NOT_DURABLE}.
+     */
+    public FileCacheStore(CacheLayout layout, long commitIntervalMillis) {
+        mLayout = layout;
+        mCommitInterval = commitIntervalMillis;
+    }
+
+    /**
+     * @return {@code true} if items are written durably.
+     */
+    public boolean isDurable() {
+        return mCommitInterval >= 0;
+    }
+
+    @Override
+    public CacheLayout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Binds this store to its cache. If the cache directory no longer
+     * exists, any leftover manifest is stale and is discarded.
+     */
+    @Override
+    public void open(Cache cache) {
+        mCache = cache;
+
+        File dir = cache.getCacheDir().getAbsoluteFile();
+        mManifestFile = new File(dir.getParentFile(), dir.getName() + ".manifest");
+        mJournalFile = new File(dir.getParentFile(), dir.getName() + ".journal");
+
+        if (!dir.exists()) {
+            deleteManifest();
+        }
+    }
+
+    /**
+     * Reads the cache keys from the manifest or, if the manifest is
+     * missing, invalid, or was written for a different layout, sweeps
+     * and scans the cache directory (moving any misplaced files). The
+     * key of each cache file is then passed to the {@code loader}.
+     * Temporary files left behind by a crash are deleted in either
+     * case.
+     */
+    @Override
+    public int load(Consumer<String> loader) {
+        // Commit all outstanding writes before rebuilding the manifest.
+        sync();
+
+        synchronized (mJournalLock) {
+            closeJournal();
+
+            int swept = sweepTempFiles(mCache.getCacheDir(), mLayout.getLevels());
+            if (swept > 0) {
+                mCache.info("Swept " + swept + " temporary files from cache.");
+            }
+
+            Set<String> keys = readManifest();
+            if (keys == null) {
+                mCache.info("Cache manifest missing or invalid; scanning "
+                            + mCache.getCacheDir());
+                keys = scan();
+            }
+
+            writeSnapshot(keys);
+            keys.forEach(loader);
+            return keys.size();
+        }
+    }
+
+    /**
+     * Creates a new empty file for the item after deleting any
+     * orphaned file matching the item's key.
+     */
+    @Override
+    public void create(Cache.Item item) throws IOException {
+        File file = item.getFile();
+
+        // Since it's impossible to guarantee the integrity of the
+        // underlying externally accessible file system, ensure that
+        // if an orphaned file matching the the uri/tag pair already
+        // exists in the cache directory, delete it.
+        if (file.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            mCache.warn("Orphaned file matching a new item found and deleted: "
+                        + file);
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        if (!file.createNewFile()) {
+            throw new IOException(
+                                  "Unable to create new cache item file: " + file);
+        }
+    }
+
+    @Override
+    public boolean exists(Cache.Item item) {
+        if (!isDurable()) {
+            return item.getFile().exists();
+        }
+        synchronized (mCommitLock) {
+            return currentFile(item).exists();
+        }
+    }
+
+    @Override
+    public long size(Cache.Item item) {
+        if (!isDurable()) {
+            return item.getFile().length();
+        }
+        synchronized (mCommitLock) {
+            return currentFile(item).length();
+        }
+    }
+
+    /**
+     * Opens the item file or, if the item has an uncommitted write,
+     * its temporary file. The file is opened with the commit lock held
+     * so that it can't be renamed in between.
+     */
+    @Override
+    public InputStream newInputStream(Cache.Item item) throws IOException {
+        if (!isDurable()) {
+            return new FileInputStream(item.getFile());
+        }
+        synchronized (mCommitLock) {
+            return new FileInputStream(currentFile(item));
+        }
+    }
+
+    /**
+     * Maps the item file into memory. The mapping remains valid after
+     * the channel is closed and even if the file is later deleted.
+     */
+    @Override
+    public ByteBuffer map(Cache.Item item) throws IOException {
+        try (FileChannel channel = openChannel(item)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads the item file into {@code dst} with positional channel
+     * reads.
+     */
+    @Override
+    public int read(Cache.Item item, ByteBuffer dst) throws IOException {
+        try (FileChannel channel = openChannel(item)) {
+            int count = 0;
+            for (int n; dst.hasRemaining()
+                     && (n = channel.read(dst, count)) != -1; ) {
+                count += n;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Opens the item's current file for reading.
+     */
+    private FileChannel openChannel(Cache.Item item) throws IOException {
+        if (!isDurable()) {
+            return FileChannel.open(item.getFile().toPath(),
+                                    StandardOpenOption.READ);
+        }
+        synchronized (mCommitLock) {
+            return FileChannel.open(currentFile(item).toPath(),
+                                    StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Returns a file output stream that records a CREATE journal
+     * entry for the item once it has been closed. The existing file
+     * is deleted first so that a file hard linked by {@link
+     * #link(Cache.Item, Cache.Item)} is never overwritten in place.
+     * In durable mode, the stream writes a temporary file that is
+     * queued for the next group commit once the stream is closed.
+     */
+    @Override
+    public OutputStream newOutputStream(Cache.Item item)
+        throws FileNotFoundException {
+        if (isDurable()) {
+            File temp = tempFile(item.getFile(), "~write");
+            return new FilterOutputStream(new FileOutputStream(temp)) {
+                private boolean mClosed;
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (!mClosed) {
+                        mClosed = true;
+                        enqueue(item, temp);
+                    }
+                }
+            };
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        item.getFile().delete();
+        return new FilterOutputStream(new FileOutputStream(item.getFile())) {
+            private boolean mClosed;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!mClosed) {
+                    mClosed = true;
+                    journal(CREATE, item.getKey());
+                }
+            }
+        };
+    }
+
+    /**
+     * Replaces the item file with a hard link to the source file. The
+     * link is created under a temporary name (which the sweep treats
+     * as an unknown file) and then atomically renamed over the item
+     * file. Returns {@code false} if the file system doesn't support
+     * hard links or the source file no longer exists.
+     */
+    @Override
+    public boolean link(Cache.Item item, Cache.Item source) {
+        Path target = item.getFile().toPath();
+        Path temp = tempFile(item.getFile(), "~link").toPath();
+        try {
+            if (isDurable()) {
+                // The link is published by the group commit like any
+                // other write.
+                synchronized (mCommitLock) {
+                    Files.createLink(temp, currentFile(source).toPath());
+                }
+                enqueue(item, temp.toFile());
+                return true;
+            }
+
+            Files.createLink(temp, source.getFile().toPath());
+            Files.move(temp,
+                       target,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            mLiveTemps.remove(temp.toFile().getName());
+            journal(CREATE, item.getKey());
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            deleteTemp(temp.toFile());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean delete(Cache.Item item) {
+        if (!isDurable()) {
+            if (item.getFile().delete()) {
+                journal(DELETE, item.getKey());
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        // Cancel any uncommitted write. The DELETE record is journaled
+        // with the commit lock held so that it can't be ordered before
+        // the CREATE record of a concurrently committed write.
+        synchronized (mCommitLock) {
+            Pending pending = mPending.remove(item.getKey());
+            if (pending != null) {
+                deleteTemp(pending.mTemp);
+            }
+
+            if (item.getFile().delete() || pending != null) {
+                journal(DELETE, item.getKey());
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Blocks until every write that was closed before this call has
+     * been committed to disk. Does nothing unless the store is durable.
+     */
+    public void sync() {
+        if (!isDurable()) {
+            return;
+        }
+
+        synchronized (mCommitLock) {
+            long target = mQueuedSeq;
+            if (mCommittedSeq >= target) {
+                // Nothing to wait for, so don't cut the next batch short.
+                return;
+            }
+            mSyncRequested = true;
+            mCommitLock.notifyAll();
+            while (mCommittedSeq < target) {
+                try {
+                    mCommitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sanity check that all cache files have been deleted and then
+     * reset the manifest to an empty snapshot.
+     */
+    @Override
+    public void clear() {
+        // Discard any uncommitted writes.
+        synchronized (mCommitLock) {
+            mPending.values().forEach(pending -> deleteTemp(pending.mTemp));
+            mPending.clear();
+        }
+        stopGroupCommit();
+
+        int files = Cache.traverseCache(mCache.getCacheDir(), file -> 1);
+        if (files > 0) {
+            mCache.warn("Cache cleared, but " + files + " files still " +
+                        "exist in cache directory " + mCache.getCacheDir());
+        }
+        pruneBuckets(mCache.getCacheDir());
+
+        synchronized (mJournalLock) {
+            closeJournal();
+            writeSnapshot(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Sweeps the cache directory and returns the keys of all the
+     * remaining cache files. Files that are not located where the
+     * current layout expects them are moved to their new location.
+     */
+    private Set<String> scan() {
+        int swept = sweep();
+        if (swept > 0) {
+            mCache.info("Swept " + swept + " files from cache.");
+        }
+
+        List<File> files = new ArrayList<>();
+        Cache.traverseCache(mCache.getCacheDir(), file -> {
+                files.add(file);
+                return 1;
+            });
+
+        Set<String> keys = new LinkedHashSet<>();
+        int moved = 0;
+        for (File file : files) {
+            String key = mCache.mapFileToKey(file);
+            if (relocate(file, mCache.mapKeyToFile(key))) {
+                moved++;
+            }
+            keys.add(key);
+        }
+
+        if (moved > 0) {
+            pruneBuckets(mCache.getCacheDir());
+            mCache.info("Moved " + moved + " cache files to the "
+                        + mLayout + " layout.");
+        }
+        return keys;
+    }
+
+    /**
+     * Moves a cache file to the location required by the current
+     * layout. If a file already exists at that location, it is kept
+     * and the misplaced file is deleted.
+     *
+     * @return {@code true} if the file was misplaced.
+     */
+    private boolean relocate(File file, File target) {
+        if (file.equals(target)) {
+            return false;
+        }
+
+        try {
+            if (target.exists()) {
+                Files.delete(file.toPath());
+            } else {
+                //noinspection ResultOfMethodCallIgnored
+                target.getParentFile().mkdirs();
+                Files.move(file.toPath(),
+                           target.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes all empty bucket sub-directories below {@code dir}.
+     *
+     * @return {@code true} if {@code dir} itself is now empty.
+     */
+    private static boolean pruneBuckets(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return false;
+        }
+
+        boolean empty = true;
+        for (File file : files) {
+            if (!file.isDirectory() || !pruneBuckets(file) || !file.delete()) {
+                empty = false;
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * Reads the manifest snapshot and replays the journal.
+     *
+     * @return The set of cache keys, or null if the snapshot is
+     * missing or either file fails its checksum.
+     */
+    private Set<String> readManifest() {
+        if (!mManifestFile.exists()) {
+            return null;
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+
+        try (CheckedInputStream checked =
+                 new CheckedInputStream(new BufferedInputStream(
+                     new FileInputStream(mManifestFile)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MANIFEST_MAGIC
+                || in.readInt() != MANIFEST_VERSION) {
+                return null;
+            }
+
+            // Files must be moved if the layout has changed.
+            if (in.readInt() != mLayout.getLevels()
+                || in.readInt() != mLayout.getBuckets()) {
+                mCache.info("Cache layout changed to " + mLayout);
+                return null;
+            }
+
+            for (int count = in.readInt(); count > 0; count--) {
+                keys.add(in.readUTF());
+            }
+
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (!mJournalFile.exists()) {
+            return keys;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(mJournalFile)))) {
+            for (;;) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    // Normal end of journal.
+                    return keys;
+                }
+
+                String key = in.readUTF();
+                if (in.readLong() != checksum(op, key)) {
+                    return tornJournal(keys);
+                }
+
+                if (op == CREATE) {
+                    keys.add(key);
+                } else if (op == DELETE) {
+                    keys.remove(key);
+                } else {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            return tornJournal(keys);
+        }
+    }
+
+    /**
+     * Handles a torn journal record. Without durable writes, a torn
+     * record means that the manifest can no longer be trusted. In
+     * durable mode, the journal is forced after every group commit,
+     * so only records that were never committed can be torn and the
+     * keys replayed so far are still valid.
+     *
+     * @return The keys to load, or null to rescan the cache directory.
+     */
+    private Set<String> tornJournal(Set<String> keys) {
+        return isDurable() ? keys : null;
+    }
+
+    /**
+     * Atomically replaces the manifest snapshot with one containing
+     * {@code keys}, truncates the journal, and reopens it for
+     * appending.
+     */
+    private void writeSnapshot(Set<String> keys) {
+        File temp = new File(mManifestFile.getPath() + ".tmp");
+
+        try {
+            FileOutputStream file = new FileOutputStream(temp);
+            CheckedOutputStream checked =
+                new CheckedOutputStream(new BufferedOutputStream(file),
+                                        new CRC32());
+            try (DataOutputStream out = new DataOutputStream(checked)) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(MANIFEST_VERSION);
+                out.writeInt(mLayout.getLevels());
+                out.writeInt(mLayout.getBuckets());
+                out.writeInt(keys.size());
+                for (String key : keys) {
+                    out.writeUTF(key);
+                }
+                out.writeLong(checked.getChecksum().getValue());
+                if (isDurable()) {
+                    out.flush();
+                    file.getFD().sync();
+                }
+            }
+
+            // Replace the snapshot before truncating the journal;
+            // replaying the old journal over the new snapshot is
+            // harmless since it produces the same set of keys.
+            if (!temp.renameTo(mManifestFile)) {
+                //noinspection ResultOfMethodCallIgnored
+                mManifestFile.delete();
+                if (!temp.renameTo(mManifestFile)) {
+                    throw new IOException("Unable to write cache manifest: "
+                                          + mManifestFile);
+                }
+            }
+
+            if (isDurable()) {
+                forceDirectory(mManifestFile.getParentFile());
+            }
+
+            mJournalOut = new FileOutputStream(mJournalFile, false);
+            mJournal = new DataOutputStream(new BufferedOutputStream(mJournalOut));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a checksummed record to the journal.
+     */
+    private void journal(byte op, String key) {
+        synchronized (mJournalLock) {
+            if (mJournal == null) {
+                return;
+            }
+
+            try {
+                mJournal.writeByte(op);
+                mJournal.writeUTF(key);
+                mJournal.writeLong(checksum(op, key));
+                mJournal.flush();
+            } catch (IOException e) {
+                // The manifest is now incomplete; force a rescan on
+                // the next load.
+                mCache.warn("Unable to write cache journal: " + e);
+                closeJournal();
+                deleteManifest();
+            }
+        }
+    }
+
+    /**
+     * @return The checksum of a journal record.
+     */
+    private static long checksum(byte op, String key) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Closes the journal if it is open.
+     */
+    private void closeJournal() {
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (IOException e) {
+                mCache.warn("Unable to close cache journal: " + e);
+            }
+            mJournal = null;
+            mJournalOut = null;
+        }
+    }
+
+    /**
+     * Returns the file that currently holds the item's bytes: the
+     * temporary file of an uncommitted write or the item file. Must be
+     * called with the commit lock held.
+     */
+    private File currentFile(Cache.Item item) {
+        Pending pending = mPending.get(item.getKey());
+        return pending != null ? pending.mTemp : item.getFile();
+    }
+
+    /**
+     * Returns a unique temporary file in the same directory as the
+     * passed item file. The name starts with '~' and contains no '-'
+     * so that a scan never mistakes it for a cache file. The file is
+     * live (protected from sweeps) until it is renamed or deleted.
+     */
+    private File tempFile(File file, String prefix) {
+        File temp = new File(file.getParentFile(),
+                             prefix + "~" + Thread.currentThread().getId()
+                             + "~" + System.nanoTime());
+        mLiveTemps.add(temp.getName());
+        return temp;
+    }
+
+    /**
+     * Deletes a temporary file that is no longer needed.
+     */
+    private void deleteTemp(File temp) {
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+        mLiveTemps.remove(temp.getName());
+    }
+
+    /**
+     * Deletes the temporary files below {@code dir} (searching {@code
+     * levels} of bucket directories) that are not live, i.e., that were
+     * left behind by a crash.
+     *
+     * @return The number of deleted files.
+     */
+    private int sweepTempFiles(File dir, int levels) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        int swept = 0;
+        for (File file : files) {
+            if (file.getName().startsWith("~")) {
+                if (!mLiveTemps.contains(file.getName()) && file.delete()) {
+                    swept++;
+                }
+            } else if (levels > 0 && file.isDirectory()) {
+                swept += sweepTempFiles(file, levels - 1);
+            }
+        }
+        return swept;
+    }
+
+    /**
+     * Queues a closed temporary file for the next group commit. Any
+     * older uncommitted write of the same item is discarded.
+     */
+    private void enqueue(Cache.Item item, File temp) {
+        synchronized (mCommitLock) {
+            Pending pending = new Pending(item.getKey(), temp, item.getFile());
+            mQueuedSeq++;
+            Pending replaced = mPending.put(pending.mKey, pending);
+            if (replaced != null) {
+                deleteTemp(replaced.mTemp);
+            }
+            mQueue.add(pending);
+
+            if (mCommitThread == null) {
+                mCommitThread = new Thread(this::runGroupCommit,
+                                           "Cache-Group-Commit");
+                mCommitThread.setDaemon(true);
+                mCommitThread.start();
+
+                mShutdownHook = new Thread(this::sync);
+                Runtime.getRuntime().addShutdownHook(mShutdownHook);
+            }
+            mCommitLock.notifyAll();
+        }
+    }
+
+    /**
+     * Commits all outstanding writes, stops the group commit thread,
+     * and closes the journal. The store must not be used afterwards.
+     * Does nothing beyond closing the journal unless the store is
+     * durable.
+     */
+    public void close() {
+        stopGroupCommit();
+
+        synchronized (mJournalLock) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Stops the group commit thread (if running) once it has committed
+     * every queued write, and removes its shutdown hook. The next
+     * durable write starts a new thread.
+     */
+    private void stopGroupCommit() {
+        Thread thread;
+        synchronized (mCommitLock) {
+            thread = mCommitThread;
+            if (thread == null) {
+                return;
+            }
+
+            mCommitThread = null;
+            try {
+                Runtime.getRuntime().removeShutdownHook(mShutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down.
+            }
+            mShutdownHook = null;
+            mCommitLock.notifyAll();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the group commit thread. Waits for the first write of a
+     * batch, lets the batch grow for the commit interval (or until
+     * {@link #sync()} is called), and then commits it. Once the thread
+     * has been stopped, it commits the remaining writes without waiting
+     * and exits.
+     */
+    private void runGroupCommit() {
+        Thread self = Thread.currentThread();
+        for (;;) {
+            List<Pending> batch;
+            long seq;
+
+            synchronized (mCommitLock) {
+                try {
+                    while (mQueue.isEmpty()) {
+                        if (mCommitThread != self) {
+                            return;
+                        }
+                        mCommitLock.wait();
+                    }
+
+                    long deadline = System.currentTimeMillis() + mCommitInterval;
+                    long remaining = mCommitInterval;
+                    while (!mSyncRequested
+                           && mCommitThread == self
+                           && remaining > 0) {
+                        mCommitLock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                mSyncRequested = false;
+                batch = new ArrayList<>(mQueue);
+                mQueue.clear();
+                seq = mQueuedSeq;
+            }
+
+            commit(batch);
+
+            synchronized (mCommitLock) {
+                mCommittedSeq = Math.max(mCommittedSeq, seq);
+                if (mCommittedSeq >= mQueuedSeq) {
+                    // Every sync is satisfied (including one requested
+                    // while this batch was being committed).
+                    mSyncRequested = false;
+                }
+                mCommitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Commits a batch of writes: forces every temporary file to disk,
+     * renames each one that is still current over its item file,
+     * forces the affected directories, and finally journals and forces
+     * the CREATE records.
+     */
+    private void commit(List<Pending> batch) {
+        for (Pending pending : batch) {
+            try (FileChannel channel = FileChannel.open(pending.mTemp.toPath(),
+                                                        StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Cancelled or replaced while waiting for the commit.
+            }
+        }
+
+        Set<File> dirs = new LinkedHashSet<>();
+        synchronized (mCommitLock) {
+            for (Pending pending : batch) {
+                if (mPending.get(pending.mKey) != pending) {
+                    continue;
+                }
+                mPending.remove(pending.mKey);
+
+                try {
+                    Files.move(pending.mTemp.toPath(),
+                               pending.mTarget.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                    mLiveTemps.remove(pending.mTemp.getName());
+                    dirs.add(pending.mTarget.getParentFile());
+                    journal(CREATE, pending.mKey);
+                } catch (IOException e) {
+                    mCache.warn("Unable to commit cache file "
+                                + pending.mTarget + ": " + e);
+                    deleteTemp(pending.mTemp);
+                }
+            }
+        }
+
+        dirs.forEach(FileCacheStore::forceDirectory);
+
+        synchronized (mJournalLock) {
+            if (mJournalOut != null) {
+                try {
+                    mJournalOut.getFD().sync();
+                } catch (IOException e) {
+                    mCache.warn("Unable to sync cache journal: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces a directory entry update (e.g., a rename) to disk. Not all
+     * platforms allow a directory to be opened, in which case this
+     * method does nothing.
+     */
+    static void forceDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                                                    StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform.
+        }
+    }
+
+    /**
+     * An uncommitted durable write.
+     */
+    private static class Pending {
+        final String mKey;
+        final File mTemp;
+        final File mTarget;
+
+        Pending(String key, File temp, File target) {
+            mKey = key;
+            mTemp = temp;
+            mTarget = target;
+        }
+    }
+
+    /**
+     * Deletes the manifest so that the next load scans the directory.
+     */
+    private void deleteManifest() {
+        //noinspection ResultOfMethodCallIgnored
+        mManifestFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mJournalFile.delete();
+    }
+
+    /**
+     * Deletes invalid or 0 length files from the cache.
+     */
+    private int sweep() {
+        File cacheDir = mCache.getCacheDir();
+        return Cache.traverseCache(cacheDir, file -> {
+                // Skip the temporary files of writes in progress.
+                if (mLiveTemps.contains(file.getName())) {
+                    return 0;
+                }
+
+                // Delete any empty files that may have been orphaned
+                // if a previous application invocation terminated
+                // abnormally.
+                if (file.length() == 0L) {
+                    mCache.info("Removing orphaned empty file from the cache: " + file);
+                    if (!file.delete() || file.exists()) {
+                        mCache.fatal("Unable to delete cache file: " + file);
+                    }
+
+                    return 1;
+                }
+
+                // Call mapFileToKey which will throw an exception if this
+                // file is not a valid cache file.
+                try {
+                    mCache.mapFileToKey(file);
+                } catch (Exception e) {
+                    mCache.warn("Removing unknown file from cache: " + file);
+
+                    // When deleting files, it's always safest recheck that
+                    // the file, is in fact, safe to delete.
+                    if (!file.getPath().startsWith(cacheDir.getPath())) {
+                        mCache.fatal("Only cache files can be swept.");
+                    }
+
+                    if (!file.delete() || file.exists()) {
+                        mCache.fatal("Unable to delete cache file: " + file);
+                    }
+
+                    return 1;
+                }
+
+                return 0;
+            });
+    }
+}
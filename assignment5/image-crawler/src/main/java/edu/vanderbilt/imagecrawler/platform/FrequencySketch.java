@@ -0,0 +1,176 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic multiset used by the {@link EvictionPolicy} to
+ * estimate how often each cache key has been accessed (the "TinyLFU"
+ * part of W-TinyLFU). Each key maps to four 4-bit counters that are
+ * packed 16 to a long, and the estimated frequency is the minimum of
+ * those counters (a Count-Min sketch).
+ * <p>
+ * All operations are lock-free: counters are updated using CAS
+ * operations on an {@link AtomicLongArray}, so the sketch can be
+ * safely used on the hot getItem/addOrGetItem path. To keep the
+ * sketch biased towards recent history, all counters are halved
+ * once the number of recorded increments reaches a sample size
+ * that is proportional to the table width.
+ */
+final class FrequencySketch {
+    /**
+     * Mask used to clear the high bit of each 4-bit counter when all
+     * counters are halved.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Seeds used to select the four counters of a key.
+     */
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /**
+     * Maximum counter value (4 bits).
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * Table of packed 4-bit counters.
+     */
+    private final AtomicLongArray mTable;
+
+    /**
+     * Mask used to map a hash to a table index.
+     */
+    private final int mTableMask;
+
+    /**
+     * Number of increments after which all counters are halved.
+     */
+    private final int mSampleSize;
+
+    /**
+     * Number of increments recorded since the last reset.
+     */
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    /**
+     * Constructs a sketch sized for roughly {@code expectedEntries}
+     * distinct keys.
+     *
+     * @param expectedEntries The expected number of cache entries
+     */
+    FrequencySketch(int expectedEntries) {
+        int capacity = Integer.highestOneBit(
+            Math.max(16, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        mTable = new AtomicLongArray(capacity);
+        mTableMask = capacity - 1;
+        mSampleSize = 10 * capacity;
+    }
+
+    /**
+     * Returns the estimated number of times {@code key} has been
+     * recorded (saturating at 15).
+     *
+     * @param key The cache key
+     * @return The estimated access frequency
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((mTable.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of {@code key}. If any counter was
+     * incremented and the sample size has been reached, all counters
+     * are halved so that old accesses gradually lose their weight.
+     *
+     * @param key The cache key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && mSize.incrementAndGet() == mSampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Clears all counters.
+     */
+    void clear() {
+        for (int i = 0; i < mTable.length(); i++) {
+            mTable.set(i, 0L);
+        }
+        mSize.set(0);
+    }
+
+    /**
+     * Atomically increments the 4-bit counter {@code offset} in the
+     * table slot {@code index} unless it is already saturated.
+     *
+     * @return {@code true} if the counter was incremented
+     */
+    private boolean incrementAt(int index, int offset) {
+        int shift = offset << 2;
+        long mask = 0xfL << shift;
+        for (;;) {
+            long value = mTable.get(index);
+            if ((value & mask) == mask) {
+                return false;
+            }
+            if (mTable.compareAndSet(index, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves every counter. Concurrent increments may race with this
+     * aging step, which only makes the estimate slightly less precise.
+     */
+    private void reset() {
+        for (int i = 0; i < mTable.length(); i++) {
+            long value;
+            do {
+                value = mTable.get(i);
+            } while (!mTable.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+        }
+        mSize.set(mSampleSize / 2);
+    }
+
+    /**
+     * Maps the {@code hash} to the table index of counter {@code i}.
+     */
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & mTableMask;
+    }
+
+    /**
+     * Applies a supplemental hash function to defend against poor
+     * quality hash codes.
+     */
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
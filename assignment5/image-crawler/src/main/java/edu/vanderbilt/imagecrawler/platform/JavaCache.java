@@ -19,12 +19,16 @@ public class JavaCache
 
     /**
      * Constructor that binds the cache implementation to a
-     * platform specific root directory.
+     * platform specific root directory and registers the cache
+     * statistics MBean.
      *
      * @param cacheDir The platform dependent root cache directory.
      */
     private JavaCache(File cacheDir) {
         super(cacheDir);
+
+        // Expose the cache statistics through JMX.
+        CacheStatsBean.register(this);
     }
 
     /**
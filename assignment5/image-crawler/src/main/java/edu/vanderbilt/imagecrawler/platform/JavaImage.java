@@ -3,14 +3,30 @@ package edu.vanderbilt.imagecrawler.platform;
 import static edu.vanderbilt.imagecrawler.platform.Cache.Operation.TRANSFORM;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
 import edu.vanderbilt.imagecrawler.common.Filters;
+import edu.vanderbilt.imagecrawler.common.ProgressSink;
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.BufferPool;
+import edu.vanderbilt.imagecrawler.utils.IOUtils;
+import edu.vanderbilt.imagecrawler.utils.ImageUtils;
+import edu.vanderbilt.imagecrawler.utils.LzCompressor;
+import edu.vanderbilt.imagecrawler.utils.PooledBuffer;
+import edu.vanderbilt.imagecrawler.utils.PooledImageOutputStream;
 import kotlin.Unit;
 
 /**
@@ -19,6 +35,18 @@ import kotlin.Unit;
  * implementation is specific to the Java platform.
  */
 public class JavaImage implements PlatformImage {
+    /**
+     * The filter applied by {@link #applyTransform} for a grayscale
+     * transform, which falls through to the sepia filter.
+     */
+    private static final Filters.RangeFilter GRAY_SCALE_SEPIA =
+        Filters.chain(Filters.GRAY_SCALE, Filters.SEPIA);
+
+    /**
+     * Number of pixels copied per chunk when streaming raw pixels.
+     */
+    private static final int CHUNK_PIXELS = 16 * 1024;
+
     /**
      * Cache item used to report progress.
      */
@@ -41,6 +69,13 @@ public class JavaImage implements PlatformImage {
         setImage(inputStream, item);
     }
 
+    /**
+     * Package only constructor only accessed by Platform.
+     */
+    JavaImage(ByteBuffer buffer, Cache.Item item) {
+        setImage(buffer, item);
+    }
+
     /**
      * Private constructor only accessed internally by this class.
      */
@@ -56,7 +91,27 @@ public class JavaImage implements PlatformImage {
     public void setImage(InputStream inputStream, Cache.Item item) {
         try {
             mSize = inputStream.available();
-            mImage = ImageIO.read(inputStream);
+            InputStream in = inputStream.markSupported()
+                ? inputStream
+                : new BufferedInputStream(inputStream);
+
+            // Raw items are recognized by their header.
+            byte[] header = new byte[StorageCodec.HEADER_LENGTH];
+            in.mark(header.length);
+            int length = in.readNBytes(header, 0, header.length);
+            in.reset();
+            if (StorageCodec.detect(ByteBuffer.wrap(header, 0, length))
+                != StorageCodec.PNG) {
+                try (PooledBuffer buffer = IOUtils.toPooledBuffer(in)) {
+                    setImage(buffer.buffer(), item);
+                }
+                return;
+            }
+
+            mImage = ImageIO.read(in);
+            if (mImage == null) {
+                throw new IOException("Unsupported or corrupt image data");
+            }
             mCacheItem = item;
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -64,7 +119,40 @@ public class JavaImage implements PlatformImage {
     }
 
     /**
-     * Write the @a image to the @a mOutputStream.
+     * Decodes a buffer into an @a Image. The buffer is read in place
+     * through an ImageInputStream, so a memory-mapped cache item is
+     * decoded without copying it to the heap or to ImageIO's
+     * temporary file cache. Items stored with a raw {@link
+     * StorageCodec} are copied straight into the image raster.
+     */
+    @Override
+    public void setImage(ByteBuffer buffer, Cache.Item item) {
+        try {
+            mSize = buffer.remaining();
+            StorageCodec codec = StorageCodec.detect(buffer);
+            if (codec == StorageCodec.PNG) {
+                // ImageIO doesn't close a stream that it's passed.
+                try (ByteBufferImageInputStream in =
+                     new ByteBufferImageInputStream(buffer)) {
+                    mImage = ImageIO.read(in);
+                }
+            } else {
+                mImage = readPixels(buffer, codec);
+            }
+            if (mImage == null) {
+                throw new IOException("Unsupported or corrupt image data");
+            }
+            mCacheItem = item;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write the @a image to the @a mOutputStream in the export (PNG)
+     * format. The image is first encoded into a pooled buffer, which
+     * avoids ImageIO's temporary cache file, and then copied to the
+     * stream.
      *
      * @param outputStream
      */
@@ -73,29 +161,151 @@ public class JavaImage implements PlatformImage {
         if (mImage == null) {
             System.out.println("null image");
         } else {
-            ImageIO.write(mImage,
-                    "png",
-                    outputStream);
+            try (PooledImageOutputStream png =
+                 ImageUtils.encode(mImage, "png")) {
+                png.writeTo(outputStream);
+            }
+        }
+    }
+
+    /**
+     * Write the @a image to the @a outputStream in a cache storage
+     * format. The raw formats copy the ARGB pixels after a {@link
+     * StorageCodec} header, optionally LZ compressed, which is much
+     * cheaper than PNG's deflate stage. Uncompressed pixels are
+     * streamed in small chunks; the LZ block needs all of them in one
+     * buffer (see {@link #acquireScratch(int)}).
+     */
+    @Override
+    public void writeImage(OutputStream outputStream, StorageCodec codec)
+        throws IOException {
+        if (mImage == null || codec == StorageCodec.PNG) {
+            writeImage(outputStream);
+            return;
+        }
+
+        int width = mImage.getWidth();
+        int height = mImage.getHeight();
+        int[] pixels = RasterPixels.getPixels(mImage, null);
+        long rawLength = 4L * pixels.length;
+        if (rawLength > Integer.MAX_VALUE - 8 - StorageCodec.HEADER_LENGTH) {
+            throw new IOException("Image too large for raw storage");
+        }
+        boolean alpha = mImage.getColorModel().hasAlpha();
+
+        if (codec == StorageCodec.RAW) {
+            byte[] chunk = new byte[Math.max(StorageCodec.HEADER_LENGTH,
+                                             4 * Math.min(CHUNK_PIXELS, pixels.length))];
+            ByteBuffer header = ByteBuffer.wrap(chunk);
+            StorageCodec.writeHeader(header, codec, width, height, alpha);
+            outputStream.write(chunk, 0, header.position());
+
+            IntBuffer chunkPixels = ByteBuffer.wrap(chunk).asIntBuffer();
+            for (int from = 0; from < pixels.length; from += CHUNK_PIXELS) {
+                int count = Math.min(CHUNK_PIXELS, pixels.length - from);
+                chunkPixels.clear();
+                chunkPixels.put(pixels, from, count);
+                outputStream.write(chunk, 0, 4 * count);
+            }
+            return;
+        }
+
+        int rawCapacity = (int) rawLength;
+        int packedCapacity = StorageCodec.HEADER_LENGTH
+            + LzCompressor.maxCompressedLength((int) rawLength);
+        try (PooledBuffer raw = acquireScratch(rawCapacity);
+             PooledBuffer packed = acquireScratch(packedCapacity)) {
+            ByteBuffer buffer = raw != null
+                ? raw.buffer()
+                : ByteBuffer.allocate(rawCapacity);
+            buffer.asIntBuffer().put(pixels);
+            buffer.limit((int) rawLength);
+
+            ByteBuffer out = packed != null
+                ? packed.buffer()
+                : ByteBuffer.allocate(packedCapacity);
+            StorageCodec.writeHeader(out, codec, width, height, alpha);
+            LzCompressor.compress(buffer, out);
+            out.flip();
+            IOUtils.write(out, outputStream);
         }
     }
 
     /**
-     * Routes transform request to transform method.
+     * Leases a pooled buffer of at least {@code capacity} bytes for
+     * the raw storage formats, or returns null if the capacity is
+     * beyond the pool's largest size class. The pool would allocate a
+     * new direct buffer for every such request, which is only
+     * reclaimed by a later garbage collection, so callers use a heap
+     * buffer instead.
+     */
+    private static PooledBuffer acquireScratch(int capacity) {
+        return capacity <= BufferPool.MAX_POOLED_CAPACITY
+            ? BufferPool.instance().acquire(capacity)
+            : null;
+    }
+
+    /**
+     * Decodes an item stored with a raw {@link StorageCodec} into an
+     * image whose pixels are copied directly into its int raster.
+     */
+    private static BufferedImage readPixels(ByteBuffer buffer, StorageCodec codec)
+        throws IOException {
+        int width = StorageCodec.getWidth(buffer);
+        int height = StorageCodec.getHeight(buffer);
+        long rawLength = 4L * width * height;
+        if (width <= 0 || height <= 0 || rawLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Corrupt raw image header");
+        }
+
+        BufferedImage image = new BufferedImage(
+            width, height,
+            StorageCodec.hasAlpha(buffer)
+                ? BufferedImage.TYPE_INT_ARGB
+                : BufferedImage.TYPE_INT_RGB);
+        int[] pixels =
+            ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        ByteBuffer payload = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        payload.position(buffer.position() + StorageCodec.HEADER_LENGTH);
+
+        try {
+            if (codec == StorageCodec.RAW) {
+                payload.asIntBuffer().get(pixels);
+            } else {
+                try (PooledBuffer raw = acquireScratch((int) rawLength)) {
+                    ByteBuffer out = raw != null
+                        ? raw.buffer()
+                        : ByteBuffer.allocate((int) rawLength);
+                    out.limit((int) rawLength);
+                    if (LzCompressor.decompress(payload, out) != rawLength) {
+                        throw new IOException("Truncated LZ image");
+                    }
+                    out.flip();
+                    out.asIntBuffer().get(pixels);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated raw image", e);
+        }
+        return image;
+    }
+
+    /**
+     * Routes transform request to transform method. The pixels are
+     * read directly from the raster of the common image types (see
+     * {@link RasterPixels}) and, for {@code TYPE_INT_ARGB} images,
+     * filtered in place in the raster of the result.
      */
     @Override
     public PlatformImage applyTransform(Transform.Type type, Cache.Item item) {
         // Forward to the platform-specific implementation of this transform.
         BufferedImage originalImage = mImage;
         BufferedImage filteredImage =
-                new BufferedImage
-                        (originalImage.getColorModel(),
-                                originalImage.copyData(null),
-                                originalImage.getColorModel().isAlphaPremultiplied(),
-                                null);
+                RasterPixels.createCompatibleImage(originalImage);
 
-        int[] pixels = filteredImage.getRGB(
-                0, 0, filteredImage.getWidth(), filteredImage.getHeight(),
-                null, 0, filteredImage.getWidth());
+        int[] pixels = RasterPixels.getPixels(
+                originalImage, RasterPixels.argbData(filteredImage));
 
         int[] lastProgress = new int[1];
 
@@ -116,15 +326,65 @@ public class JavaImage implements PlatformImage {
                 return this;
         }
 
-        filteredImage.setRGB(
-                0, 0, filteredImage.getWidth(), filteredImage.getHeight(),
-                pixels, 0, filteredImage.getWidth());
+        RasterPixels.setPixels(filteredImage, pixels);
 
         mCacheItem.progress(Cache.Operation.CLOSE, 1f, 0);
 
         return new JavaImage(filteredImage);
     }
 
+    /**
+     * Applies all transforms in a single pass over the pixels (see
+     * {@link Filters#applyAll}). The source pixels are read once
+     * instead of once per type and written straight into new rasters
+     * (for {@code TYPE_INT_ARGB} images, the filters write into the
+     * rasters themselves), so the source raster isn't copied. Each
+     * result has the same pixels as the corresponding {@link
+     * #applyTransform} result.
+     */
+    @Override
+    public List<PlatformImage> applyTransforms(List<Transform.Type> types,
+                                               Cache.Item item) {
+        BufferedImage originalImage = mImage;
+        int pixelCount = originalImage.getWidth() * originalImage.getHeight();
+
+        List<Filters.RangeFilter> filters = new ArrayList<>(types.size());
+        List<BufferedImage> filteredImages = new ArrayList<>(types.size());
+        List<int[]> outputs = new ArrayList<>(types.size());
+        for (Transform.Type type : types) {
+            filters.add(type == Transform.Type.GRAY_SCALE_TRANSFORM
+                        ? GRAY_SCALE_SEPIA
+                        : Filters.SEPIA);
+            BufferedImage filteredImage =
+                    RasterPixels.createCompatibleImage(originalImage);
+            int[] output = RasterPixels.argbData(filteredImage);
+            filteredImages.add(filteredImage);
+            outputs.add(output != null ? output : new int[pixelCount]);
+        }
+
+        int[] pixels = RasterPixels.getPixels(originalImage, null);
+
+        int[] lastProgress = new int[1];
+        Filters.applyAll(pixels,
+                         originalImage.getColorModel().hasAlpha(),
+                         filters,
+                         outputs,
+                         ProgressSink.percent(1, progress -> {
+                             lastProgress[0] = updateProgress(mCacheItem, progress, lastProgress[0]);
+                             return Unit.INSTANCE;
+                         }));
+
+        List<PlatformImage> images = new ArrayList<>(types.size());
+        for (int i = 0; i < filteredImages.size(); i++) {
+            RasterPixels.setPixels(filteredImages.get(i), outputs.get(i));
+            images.add(new JavaImage(filteredImages.get(i)));
+        }
+
+        mCacheItem.progress(Cache.Operation.CLOSE, 1f, 0);
+
+        return images;
+    }
+
     /**
      * @return Size of image.
      */
@@ -133,6 +393,20 @@ public class JavaImage implements PlatformImage {
         return mSize;
     }
 
+    /**
+     * @return Number of bytes in the decoded raster.
+     */
+    @Override
+    public long pixelBytes() {
+        if (mImage == null) {
+            return 0;
+        }
+        DataBuffer buffer = mImage.getRaster().getDataBuffer();
+        return (long) buffer.getSize()
+            * buffer.getNumBanks()
+            * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
     /**
      * Returns the associated cache item.
      */
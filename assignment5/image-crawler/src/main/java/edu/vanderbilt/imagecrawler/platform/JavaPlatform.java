@@ -3,6 +3,7 @@ package edu.vanderbilt.imagecrawler.platform;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 
 import edu.vanderbilt.imagecrawler.utils.UriUtils;
 
@@ -27,6 +28,17 @@ public class JavaPlatform implements Platform {
         return new JavaImage(inputStream, item);
     }
 
+    /**
+     * Creates a new Java platform bitmap directly from a buffer.
+     *
+     * @param buffer Image bytes.
+     * @return A Java implementation of the PlatformImage interface.
+     */
+    @Override
+    public PlatformImage newImage(ByteBuffer buffer, Cache.Item item) {
+        return new JavaImage(buffer, item);
+    }
+
     /**
      * Returns the platform dependant [cache].
      */
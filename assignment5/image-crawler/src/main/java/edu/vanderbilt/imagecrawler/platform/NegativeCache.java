@@ -0,0 +1,279 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
+
+/**
+ * Remembers URIs whose fetch recently failed (e.g., a missing page, a
+ * broken link, or an image that can't be decoded) so that crawlers
+ * can skip them instead of paying the full connect, timeout, and
+ * decode cost every time another page links to them. Each entry holds
+ * the failure reason and a backoff expiry; once the backoff has
+ * expired, the next fetch is attempted again. Every consecutive
+ * failure doubles the backoff (up to a maximum) and a successful
+ * fetch removes the entry.
+ * <p>
+ * The negative cache is owned by the {@link Cache} (see {@link
+ * Cache#getNegativeCache()}) and is keyed by the source URI, not by
+ * the cache key, since failed fetches are never stored in the cache.
+ */
+public class NegativeCache {
+    /**
+     * Default initial and maximum backoff.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = TimeUnit.SECONDS.toNanos(30);
+    public static final long DEFAULT_MAX_BACKOFF = TimeUnit.MINUTES.toNanos(30);
+
+    /**
+     * Default maximum number of remembered failures.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * Source of the current time in nanoseconds.
+     */
+    private final LongSupplier mClock;
+
+    /**
+     * Failures indexed by URI.
+     */
+    private final ConcurrentHashMap<String, Failure> mFailures =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Backoff after the first failure and upper backoff bound in
+     * nanoseconds.
+     */
+    private volatile long mInitialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private volatile long mMaxBackoff = DEFAULT_MAX_BACKOFF;
+
+    /**
+     * Maximum number of remembered failures.
+     */
+    private volatile int mMaxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Constructor.
+     */
+    public NegativeCache() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructor used by tests to control the passage of time.
+     *
+     * @param clock Returns the current time in nanoseconds
+     */
+    NegativeCache(LongSupplier clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Sets the backoff after the first failure of a URI and the
+     * maximum backoff after repeated failures.
+     *
+     * @param initial The initial backoff
+     * @param max     The maximum backoff
+     * @param unit    The unit of both backoffs
+     */
+    public void setBackoff(long initial, long max, TimeUnit unit) {
+        if (initial <= 0 || max < initial) {
+            throw new IllegalArgumentException(
+                "Backoff must be positive and initial <= max");
+        }
+        mInitialBackoff = unit.toNanos(initial);
+        mMaxBackoff = unit.toNanos(max);
+    }
+
+    /**
+     * Sets the maximum number of remembered failures. Once full,
+     * expired failures are purged and new failures are not recorded
+     * until there is room again.
+     *
+     * @param maxEntries Maximum number of entries
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        mMaxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the recorded failure of a URI if its backoff has not yet
+     * expired.
+     *
+     * @param uri The source URI
+     * @return The failure or null if the URI should be fetched
+     */
+    @Nullable
+    public Failure get(@NotNull String uri) {
+        Failure failure = mFailures.get(uri);
+        return failure != null && !failure.isExpired(mClock.getAsLong())
+            ? failure
+            : null;
+    }
+
+    /**
+     * @return {@code true} if fetching the URI recently failed.
+     */
+    public boolean isKnownBad(@NotNull String uri) {
+        return get(uri) != null;
+    }
+
+    /**
+     * Records a failed fetch. Failures caused by a cancelled crawl
+     * are ignored, and so are failures reported while the URI's
+     * backoff is still running (e.g., by several threads that were
+     * waiting for the same download), so that a single failure never
+     * extends the backoff more than once.
+     *
+     * @param uri The source URI
+     * @param e   The exception that caused the failure
+     * @return The recorded failure or null if it was ignored
+     */
+    @Nullable
+    public Failure recordFailure(@NotNull String uri, @NotNull Exception e) {
+        if (ExceptionUtils.isCauseByCancellation(e)
+            || Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+
+        if (mFailures.size() >= mMaxEntries && !mFailures.containsKey(uri)) {
+            purgeExpired();
+            if (mFailures.size() >= mMaxEntries) {
+                return null;
+            }
+        }
+
+        long now = mClock.getAsLong();
+        return mFailures.compute(uri, (key, previous) -> {
+                if (previous != null && !previous.isExpired(now)) {
+                    return previous;
+                }
+
+                int count = previous != null ? previous.mCount + 1 : 1;
+                long backoff = mInitialBackoff;
+                for (int i = 1; i < count && backoff < mMaxBackoff; i++) {
+                    backoff <<= 1;
+                }
+                return new Failure(reason(e),
+                                   e,
+                                   count,
+                                   now + Math.min(backoff, mMaxBackoff),
+                                   mClock);
+            });
+    }
+
+    /**
+     * Forgets any failure of a URI after it was fetched successfully.
+     *
+     * @param uri The source URI
+     */
+    public void recordSuccess(@NotNull String uri) {
+        mFailures.remove(uri);
+    }
+
+    /**
+     * @return The number of remembered failures (including expired
+     * ones that haven't been purged yet).
+     */
+    public int size() {
+        return mFailures.size();
+    }
+
+    /**
+     * Forgets all failures.
+     */
+    public void clear() {
+        mFailures.clear();
+    }
+
+    /**
+     * Removes all failures whose backoff has expired.
+     */
+    private void purgeExpired() {
+        long now = mClock.getAsLong();
+        mFailures.values().removeIf(failure -> failure.isExpired(now));
+    }
+
+    /**
+     * @return A short description of the root cause of {@code e}.
+     */
+    private static String reason(Exception e) {
+        Throwable cause = ExceptionUtils.getRootCause(e);
+        if (cause == null) {
+            cause = e;
+        }
+        return cause.getMessage() != null
+            ? cause.getClass().getSimpleName() + ": " + cause.getMessage()
+            : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * A recorded fetch failure.
+     */
+    public static class Failure {
+        private final String mReason;
+        private final Exception mException;
+        private final int mCount;
+        private final long mExpiry;
+        private final LongSupplier mClock;
+
+        Failure(String reason,
+                Exception exception,
+                int count,
+                long expiry,
+                LongSupplier clock) {
+            mReason = reason;
+            mException = exception;
+            mCount = count;
+            mExpiry = expiry;
+            mClock = clock;
+        }
+
+        /**
+         * @return A short description of the failure.
+         */
+        public String getReason() {
+            return mReason;
+        }
+
+        /**
+         * @return The exception that caused the failure.
+         */
+        public Exception getException() {
+            return mException;
+        }
+
+        /**
+         * @return The number of consecutive failures.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return The time remaining until the URI may be fetched again.
+         */
+        public long getRemainingBackoff(TimeUnit unit) {
+            return unit.convert(Math.max(0L, mExpiry - mClock.getAsLong()),
+                                TimeUnit.NANOSECONDS);
+        }
+
+        boolean isExpired(long now) {
+            return now - mExpiry >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{reason='" + mReason + "', count=" + mCount + '}';
+        }
+    }
+}
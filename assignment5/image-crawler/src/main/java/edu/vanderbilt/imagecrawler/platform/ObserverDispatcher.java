@@ -0,0 +1,377 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous observer event bus used by the {@link Cache} class when
+ * async dispatch is enabled. Crawler threads post events to a
+ * lock-free, bounded, multi-producer single-consumer ring buffer and a
+ * single daemon dispatcher thread delivers them to the cache
+ * observers, so a slow observer never blocks a crawling thread. The
+ * ring's slots are preallocated, so posting an event allocates nothing.
+ * <p>
+ * Progress events (DOWNLOAD, READ, WRITE, and TRANSFORM) are coalesced
+ * by the dispatcher: it drains the ring in batches, and of the progress
+ * events for the same item and operation in a batch, only the latest
+ * is delivered, so observers always see the latest progress. Progress
+ * events are never coalesced across a lifecycle event (LOAD, CREATE,
+ * DELETE, and CLOSE) of the same item, and lifecycle events are never
+ * coalesced or dropped.
+ * <p>
+ * If the ring buffer is full, progress events are dropped, and
+ * lifecycle events are appended to an overflow queue. All later events
+ * also go to (or, for progress events, are dropped in favor of) the
+ * overflow queue until it has been drained so that event order is
+ * preserved. The overflow queue holds at most as many events as the
+ * ring; beyond that, a posting thread waits for the dispatcher to make
+ * room.
+ */
+class ObserverDispatcher {
+    /**
+     * Delivers an event to the observers.
+     */
+    interface Sink {
+        void deliver(Cache.Item item, Cache.Operation operation, Float progress);
+    }
+
+    /**
+     * Default ring buffer capacity (must be a power of 2).
+     */
+    static final int DEFAULT_CAPACITY = 1 << 12;
+
+    /**
+     * Maximum number of events the dispatcher drains from the ring
+     * before delivering them.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Maximum time the dispatcher sleeps before rechecking for events.
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Time a posting thread waits between checks for overflow space.
+     */
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Receives dispatched events.
+     */
+    private final Sink mSink;
+
+    /**
+     * Reports observers that fail to handle an event.
+     */
+    private final Consumer<String> mLogger;
+
+    /**
+     * Ring buffer slots and their sequence numbers. A slot is ready to
+     * be written when its sequence equals the producer position and
+     * ready to be read when it equals the consumer position + 1. The
+     * slot fields are plain array elements that are published by the
+     * (volatile) sequence update.
+     */
+    private final Cache.Item[] mItems;
+    private final Cache.Operation[] mOperations;
+    private final Float[] mProgress;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+
+    /**
+     * Next producer position.
+     */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Next consumer position (only accessed by the dispatcher thread).
+     */
+    private long mHead;
+
+    /**
+     * Lifecycle events that did not fit in the ring buffer, and their
+     * number (which is incremented before an event is added).
+     */
+    private final Queue<Event> mOverflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mOverflowSize = new AtomicInteger();
+    private final int mMaxOverflow;
+
+    /**
+     * Number of progress events dropped because the ring was full.
+     */
+    private final LongAdder mDropped = new LongAdder();
+
+    /**
+     * The batch being delivered and the progress operations (as a
+     * mask of {@link #progressBit} values) already seen for each item
+     * while coalescing it (only accessed by the dispatcher thread).
+     */
+    private final Cache.Item[] mBatchItems = new Cache.Item[BATCH_SIZE];
+    private final Cache.Operation[] mBatchOperations = new Cache.Operation[BATCH_SIZE];
+    private final Float[] mBatchProgress = new Float[BATCH_SIZE];
+    private final Map<Cache.Item, Integer> mSeen = new IdentityHashMap<>();
+
+    /**
+     * The dispatcher thread.
+     */
+    private final Thread mThread;
+
+    /**
+     * Cleared to stop the dispatcher once all events are delivered.
+     */
+    private volatile boolean mRunning = true;
+
+    /**
+     * Set while the dispatcher thread is (about to be) parked.
+     */
+    private volatile boolean mWaiting;
+
+    /**
+     * Constructs and starts a dispatcher.
+     *
+     * @param sink     Delivers events to the observers.
+     * @param logger   Receives a warning for each event an observer
+     *                 fails to handle.
+     * @param capacity Ring buffer capacity (rounded up to a power of 2).
+     */
+    ObserverDispatcher(Sink sink, Consumer<String> logger, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mSink = sink;
+        mLogger = logger;
+        mItems = new Cache.Item[size];
+        mOperations = new Cache.Operation[size];
+        mProgress = new Float[size];
+        mSequences = new AtomicLongArray(size);
+        mMask = size - 1;
+        mMaxOverflow = size;
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+
+        mThread = new Thread(this::run, "Cache-Observer-Dispatcher");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Posts an event. Only waits if the ring and the overflow queue
+     * are both full and the event is a lifecycle event.
+     */
+    void post(Cache.Item item, Cache.Operation operation, Float progress) {
+        if (mOverflowSize.get() != 0 || !offer(item, operation, progress)) {
+            if (progressBit(operation) != 0) {
+                mDropped.increment();
+                return;
+            }
+
+            while (mOverflowSize.get() >= mMaxOverflow
+                   && mRunning
+                   && Thread.currentThread() != mThread) {
+                LockSupport.unpark(mThread);
+                LockSupport.parkNanos(this, BACKOFF_NANOS);
+            }
+            mOverflowSize.incrementAndGet();
+            mOverflow.add(new Event(item, operation, progress));
+        }
+
+        if (mWaiting) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * @return The number of progress events dropped because the ring
+     * buffer was full.
+     */
+    long getDroppedCount() {
+        return mDropped.sum();
+    }
+
+    /**
+     * Stops the dispatcher thread after all posted events have been
+     * delivered and waits for it to terminate.
+     */
+    void shutdown() {
+        mRunning = false;
+        LockSupport.unpark(mThread);
+        if (Thread.currentThread() != mThread) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Lock-free multi-producer ring buffer insertion.
+     *
+     * @return false if the ring buffer is full
+     */
+    private boolean offer(Cache.Item item, Cache.Operation operation, Float progress) {
+        for (;;) {
+            long tail = mTail.get();
+            int index = (int) (tail & mMask);
+            long sequence = mSequences.get(index);
+            if (sequence == tail) {
+                if (mTail.compareAndSet(tail, tail + 1)) {
+                    mItems[index] = item;
+                    mOperations[index] = operation;
+                    mProgress[index] = progress;
+                    mSequences.set(index, tail + 1);
+                    return true;
+                }
+            } else if (sequence < tail) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Single consumer removal of up to {@link #BATCH_SIZE} events from
+     * the ring buffer into the batch arrays. The slots are released
+     * right away so producers don't wait for the batch's delivery.
+     *
+     * @return The number of events in the batch.
+     */
+    private int drain() {
+        int count = 0;
+        while (count < BATCH_SIZE) {
+            int index = (int) (mHead & mMask);
+            if (mSequences.get(index) != mHead + 1) {
+                break;
+            }
+
+            mBatchItems[count] = mItems[index];
+            mBatchOperations[count] = mOperations[index];
+            mBatchProgress[count] = mProgress[index];
+            count++;
+
+            mItems[index] = null;
+            mProgress[index] = null;
+            mSequences.set(index, mHead + mMask + 1);
+            mHead++;
+        }
+        return count;
+    }
+
+    /**
+     * Coalesces and delivers a batch. The batch is scanned from the
+     * newest event back, and a progress event is skipped if a newer
+     * one for the same item and operation follows it without a
+     * lifecycle event for the item in between.
+     */
+    private void deliverBatch(int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            Cache.Item item = mBatchItems[i];
+            int bit = progressBit(mBatchOperations[i]);
+            if (bit == 0) {
+                mSeen.remove(item);
+                continue;
+            }
+
+            Integer seen = mSeen.get(item);
+            int mask = seen != null ? seen : 0;
+            if ((mask & bit) != 0) {
+                mBatchItems[i] = null;
+            } else {
+                mSeen.put(item, mask | bit);
+            }
+        }
+        mSeen.clear();
+
+        for (int i = 0; i < count; i++) {
+            if (mBatchItems[i] != null) {
+                deliver(mBatchItems[i], mBatchOperations[i], mBatchProgress[i]);
+            }
+            mBatchItems[i] = null;
+            mBatchProgress[i] = null;
+        }
+    }
+
+    /**
+     * Dispatcher thread loop. The ring is always drained before the
+     * overflow queue since overflow events were posted after it filled.
+     */
+    private void run() {
+        for (;;) {
+            int count = drain();
+            if (count > 0) {
+                deliverBatch(count);
+                continue;
+            }
+
+            Event event = mOverflow.poll();
+            if (event != null) {
+                mOverflowSize.decrementAndGet();
+                deliver(event.mItem, event.mOperation, event.mProgress);
+                continue;
+            }
+
+            if (!mRunning) {
+                return;
+            }
+            mWaiting = true;
+            if (mTail.get() == mHead && mOverflowSize.get() == 0) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            mWaiting = false;
+        }
+    }
+
+    /**
+     * Delivers an event to the sink. An observer failure is logged and
+     * does not stop the dispatcher thread.
+     */
+    private void deliver(Cache.Item item, Cache.Operation operation, Float progress) {
+        try {
+            mSink.deliver(item, operation, progress);
+        } catch (RuntimeException e) {
+            mLogger.accept("observer failed on " + operation + " event: " + e);
+        }
+    }
+
+    /**
+     * @return A distinct bit for each progress operation that may be
+     * coalesced or dropped, or 0 for lifecycle operations.
+     */
+    private static int progressBit(Cache.Operation operation) {
+        switch (operation) {
+        case DOWNLOAD:
+            return 1;
+        case READ:
+            return 2;
+        case WRITE:
+            return 4;
+        case TRANSFORM:
+            return 8;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * A lifecycle event that did not fit in the ring buffer.
+     */
+    private static final class Event {
+        final Cache.Item mItem;
+        final Cache.Operation mOperation;
+        final Float mProgress;
+
+        Event(Cache.Item item, Cache.Operation operation, Float progress) {
+            mItem = item;
+            mOperation = operation;
+            mProgress = progress;
+        }
+    }
+}
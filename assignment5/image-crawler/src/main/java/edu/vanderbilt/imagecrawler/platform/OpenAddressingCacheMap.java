@@ -0,0 +1,512 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A lock-free CacheMap implementation that uses open addressing with
+ * linear probing. Keys and values are stored side by side in a single
+ * atomic array so that a lookup usually touches one cache line, and
+ * keys are compared by reference and cached hash code (e.g., {@link
+ * CacheKey} or String) before falling back to equals().
+ * <p>
+ * A key slot only ever changes from empty to a key, and values are
+ * updated with compare-and-set, so no operation ever blocks. Removed
+ * entries leave a tombstone behind. When the claimed slots exceed
+ * 3/4 of the table, the table is migrated to a new table sized for
+ * the live entries: every slot of the old table is first frozen,
+ * then the live entries are copied, and the new table is published.
+ * Any thread that runs into a frozen slot helps finish the migration
+ * before retrying, so a stalled thread never prevents others from
+ * making progress.
+ * <p>
+ * Null keys and values are not supported.
+ */
+public class OpenAddressingCacheMap<K, V>
+        implements CacheMap<K, V> {
+    /**
+     * Minimum (and initial) table capacity.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Value of an entry that has been removed.
+     */
+    private static final Object TOMBSTONE = new Object();
+
+    /**
+     * Key of an empty slot that has been frozen by a migration.
+     */
+    private static final Object SEALED = new Object();
+
+    /**
+     * Result returned by table operations that must be retried in
+     * the table that replaces a migrating table.
+     */
+    private static final Object MIGRATING = new Object();
+
+    /**
+     * The current table.
+     */
+    private final AtomicReference<Table> mTable;
+
+    /**
+     * Number of live entries.
+     */
+    private final LongAdder mSize = new LongAdder();
+
+    /**
+     * Constructs an empty map with the default capacity.
+     */
+    public OpenAddressingCacheMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty map that can hold at least the specified
+     * number of entries without migrating.
+     *
+     * @param capacity Expected number of entries.
+     */
+    public OpenAddressingCacheMap(int capacity) {
+        mTable = new AtomicReference<>(new Table(capacityFor(capacity)));
+    }
+
+    /**
+     * Clears all entries in the map.
+     */
+    @Override
+    public void clear() {
+        forEach((key, value) -> remove(key));
+    }
+
+    /**
+     * Associates the specified value with the specified mKey in this
+     * map.  If the map previously contained a mapping for the mKey,
+     * the old value is replaced.
+     *
+     * @param key   mKey with which the specified value is to be associated
+     * @param value value to be associated with the specified mKey
+     * @return the previous value associated with <tt>mKey</tt>, or
+     * <tt>null</tt> if there was no mapping for <tt>mKey</tt>.
+     */
+    @Override
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        return update(key, value, false, null);
+    }
+
+    /**
+     * Attempts to add a new entry to the map identified by the passed
+     * {@code mKey}. Because no lock is held, the {@code mapper} may be
+     * called by more than one thread for the same absent mKey, in which
+     * case only one of the results is added and returned to all
+     * callers.
+     *
+     * @param key    The mKey for the new entry.
+     * @param mapper A lambda that maps the provided mKey to an
+     *               entry value to be added to the map.
+     * @return The added value if it was added, or an existing value if a
+     * entry with the specified mKey already existed.
+     */
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mapper) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        value = mapper.apply(key);
+        if (value == null) {
+            return null;
+        }
+
+        V existing = update(key, value, true, null);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Returns a data value from the map that matches
+     * the specified {@code mKey} or null if no matching
+     * mKey was found.
+     *
+     * @param key The mKey to lookup.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = key.hashCode();
+        Table table = mTable.get();
+        while (true) {
+            Object value = table.get(key, hash);
+            if (value != MIGRATING) {
+                return (V) value;
+            }
+            table = migrate(table);
+        }
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey}
+     * and returns the removed entries data object.
+     *
+     * @param key The entry's mKey.
+     * @return The removed entry data value, or null if the cache
+     * does not contain an entry with a matching mKey.
+     */
+    @Override
+    public V remove(K key) {
+        return update(key, TOMBSTONE, false, null);
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it is currently mapped to the specified value. Unlike {@link
+     * java.util.Map#remove(Object, Object)}, values are compared by
+     * identity, so an equal value that replaced {@code value} is kept.
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be associated with the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    @Override
+    public boolean remove(K key, V value) {
+        return value != null && update(key, TOMBSTONE, false, value) == value;
+    }
+
+    /**
+     * @return Number of entries in the map.
+     */
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, mSize.sum()));
+    }
+
+    /**
+     * Enumerates all entries in the map and calls the {@code action}
+     * BiConsumer passing in each entry's mKey and value as parameters.
+     * The enumeration is weakly consistent and the action is free to
+     * modify this map.
+     *
+     * @param action A BiConsumer that receives a the each entry's
+     *               mKey and value.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Table table = mTable.get();
+        for (int i = 0; i < table.mCapacity; i++) {
+            Object key = table.keyAt(i);
+            if (key == null || key == SEALED) {
+                continue;
+            }
+
+            Object value = table.valueAt(i);
+            if (value instanceof Frozen) {
+                value = ((Frozen) value).mValue;
+            }
+
+            if (value != null && value != TOMBSTONE) {
+                action.accept((K) key, (V) value);
+            }
+        }
+    }
+
+    /**
+     * Shared implementation of put, putIfAbsent and remove (a value
+     * of {@link #TOMBSTONE}). Unless {@code expected} is null, the
+     * entry is only updated if its live value is {@code expected}.
+     *
+     * @return The previous live value or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    private V update(K key, Object value, boolean onlyIfAbsent, Object expected) {
+        int hash = key.hashCode();
+        Table table = mTable.get();
+        while (true) {
+            Object previous = table.update(key, hash, value, onlyIfAbsent, expected);
+            if (previous == MIGRATING) {
+                table = migrate(table);
+                continue;
+            }
+
+            boolean updated = expected == null || expected == previous;
+            if (previous == null && value != TOMBSTONE) {
+                mSize.increment();
+            } else if (previous != null && value == TOMBSTONE && updated) {
+                mSize.decrement();
+            }
+            return (V) previous;
+        }
+    }
+
+    /**
+     * Helps migrate the passed table to its successor and returns the
+     * successor. Every step is idempotent, so any number of threads
+     * may run this method concurrently.
+     */
+    private Table migrate(Table table) {
+        // Freeze every slot so that the old table can no longer change.
+        if (!table.mFrozen) {
+            for (int i = 0; i < table.mCapacity; i++) {
+                table.freeze(i);
+            }
+            table.mFrozen = true;
+        }
+
+        // Size the successor from the now immutable live entries.
+        Table next = table.mNext.get();
+        if (next == null) {
+            table.mNext.compareAndSet(
+                null, new Table(capacityFor(table.countLive())));
+            next = table.mNext.get();
+        }
+
+        // Copy the live entries before any thread writes to the
+        // successor.
+        if (!table.mCopied) {
+            for (int i = 0; i < table.mCapacity; i++) {
+                table.copy(i, next);
+            }
+            table.mCopied = true;
+        }
+
+        mTable.compareAndSet(table, next);
+        return next;
+    }
+
+    /**
+     * @return A power of 2 table capacity that holds {@code entries}
+     * at half load.
+     */
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * (long) entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of a hash code so that linear probing works
+     * well for keys with clustered hash codes (e.g., similar strings).
+     */
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    /**
+     * A value that has been frozen by a migration (null if the slot
+     * held no live value).
+     */
+    private static final class Frozen {
+        final Object mValue;
+
+        Frozen(Object value) {
+            mValue = value;
+        }
+    }
+
+    /**
+     * A single open addressing table. Slot {@code i} stores its key at
+     * index {@code 2i} and its value at index {@code 2i + 1}.
+     */
+    private static final class Table {
+        final int mCapacity;
+        final int mMask;
+        final int mThreshold;
+        final AtomicReferenceArray<Object> mSlots;
+        final AtomicInteger mClaimed = new AtomicInteger();
+        final AtomicReference<Table> mNext = new AtomicReference<>();
+        volatile boolean mFrozen;
+        volatile boolean mCopied;
+
+        Table(int capacity) {
+            mCapacity = capacity;
+            mMask = capacity - 1;
+            mThreshold = capacity - (capacity >>> 2);
+            mSlots = new AtomicReferenceArray<>(2 * capacity);
+        }
+
+        Object keyAt(int i) {
+            return mSlots.get(2 * i);
+        }
+
+        Object valueAt(int i) {
+            return mSlots.get(2 * i + 1);
+        }
+
+        static boolean matches(Object slotKey, Object key, int hash) {
+            return slotKey == key
+                || (slotKey != SEALED
+                    && slotKey.hashCode() == hash
+                    && slotKey.equals(key));
+        }
+
+        /**
+         * @return The live value, null, or {@link #MIGRATING}.
+         */
+        Object get(Object key, int hash) {
+            int i = spread(hash) & mMask;
+            for (int probes = 0; probes < mCapacity; probes++) {
+                Object slotKey = keyAt(i);
+                if (slotKey == null) {
+                    return null;
+                } else if (slotKey == SEALED) {
+                    return MIGRATING;
+                } else if (matches(slotKey, key, hash)) {
+                    Object value = valueAt(i);
+                    if (value instanceof Frozen) {
+                        return MIGRATING;
+                    }
+                    return value == TOMBSTONE ? null : value;
+                }
+                i = (i + 1) & mMask;
+            }
+            return null;
+        }
+
+        /**
+         * @return The previous live value, null, or {@link #MIGRATING}
+         * if the operation must be retried in the successor table.
+         */
+        Object update(Object key,
+                      int hash,
+                      Object value,
+                      boolean onlyIfAbsent,
+                      Object expected) {
+            int i = spread(hash) & mMask;
+            for (int probes = 0; probes < mCapacity; probes++) {
+                Object slotKey = keyAt(i);
+                if (slotKey == null) {
+                    if (value == TOMBSTONE) {
+                        // Nothing to remove.
+                        return null;
+                    }
+                    if (mClaimed.get() >= mThreshold) {
+                        // Too full, so migrate to a larger table.
+                        return MIGRATING;
+                    }
+                    if (mSlots.compareAndSet(2 * i, null, key)) {
+                        mClaimed.incrementAndGet();
+                        slotKey = key;
+                    } else {
+                        slotKey = keyAt(i);
+                    }
+                }
+
+                if (slotKey == SEALED) {
+                    return MIGRATING;
+                }
+
+                if (matches(slotKey, key, hash)) {
+                    while (true) {
+                        Object current = valueAt(i);
+                        if (current instanceof Frozen) {
+                            return MIGRATING;
+                        }
+
+                        boolean absent = current == null || current == TOMBSTONE;
+                        if ((onlyIfAbsent && !absent)
+                            || (absent && value == TOMBSTONE)
+                            || (expected != null && current != expected)) {
+                            return absent ? null : current;
+                        }
+
+                        if (mSlots.compareAndSet(2 * i + 1, current, value)) {
+                            return absent ? null : current;
+                        }
+                    }
+                }
+                i = (i + 1) & mMask;
+            }
+
+            // Every slot is claimed by another key.
+            return MIGRATING;
+        }
+
+        /**
+         * Freezes slot {@code i} so that it can no longer change.
+         */
+        void freeze(int i) {
+            if (keyAt(i) == null) {
+                mSlots.compareAndSet(2 * i, null, SEALED);
+            }
+            if (keyAt(i) == SEALED) {
+                return;
+            }
+
+            while (true) {
+                Object value = valueAt(i);
+                if (value instanceof Frozen
+                    || mSlots.compareAndSet(
+                           2 * i + 1,
+                           value,
+                           new Frozen(value == TOMBSTONE ? null : value))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return The number of live entries in this frozen table.
+         */
+        int countLive() {
+            int live = 0;
+            for (int i = 0; i < mCapacity; i++) {
+                Object value = valueAt(i);
+                if (value instanceof Frozen && ((Frozen) value).mValue != null) {
+                    live++;
+                }
+            }
+            return live;
+        }
+
+        /**
+         * Copies the frozen entry in slot {@code i} into the passed
+         * successor table, unless another thread already copied it.
+         */
+        void copy(int i, Table next) {
+            Object key = keyAt(i);
+            if (key == SEALED) {
+                return;
+            }
+
+            Object value = ((Frozen) valueAt(i)).mValue;
+            if (value == null) {
+                return;
+            }
+
+            int hash = key.hashCode();
+            int j = spread(hash) & next.mMask;
+            while (true) {
+                Object slotKey = next.keyAt(j);
+                if (slotKey == null) {
+                    if (next.mSlots.compareAndSet(2 * j, null, key)) {
+                        next.mClaimed.incrementAndGet();
+                        slotKey = key;
+                    } else {
+                        slotKey = next.keyAt(j);
+                    }
+                }
+
+                if (matches(slotKey, key, hash)) {
+                    // Only fill a value that has never been set.
+                    next.mSlots.compareAndSet(2 * j + 1, null, value);
+                    return;
+                }
+                j = (j + 1) & next.mMask;
+            }
+        }
+    }
+}
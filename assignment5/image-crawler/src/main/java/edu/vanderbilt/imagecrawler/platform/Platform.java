@@ -1,6 +1,9 @@
 package edu.vanderbilt.imagecrawler.platform;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import edu.vanderbilt.imagecrawler.utils.IOUtils;
 
 /**
  * Interface encapsulating all platform dependent operations.
@@ -44,6 +47,18 @@ public interface Platform {
 	 */
     PlatformImage newImage(InputStream inputStream, Cache.Item item);
 
+    /**
+	 * Creates a new platform dependent image from a buffer containing
+	 * the encoded image (typically a memory-mapped cache item). The
+	 * default implementation decodes the buffer through an input stream.
+	 *
+	 * @param buffer The encoded image bytes.
+	 * @return A platform image instance.
+	 */
+    default PlatformImage newImage(ByteBuffer buffer, Cache.Item item) {
+        return newImage(IOUtils.toInputStream(buffer), item);
+    }
+
     /**
 	 * @return The platform dependent cache implementation.
 	 */
@@ -3,8 +3,12 @@ package edu.vanderbilt.imagecrawler.platform;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.IOUtils;
 
 /**
  * An interface that Encapsulates all platform dependent image operations.
@@ -18,20 +22,79 @@ public interface PlatformImage {
 	void setImage(InputStream inputStream, Cache.Item item);
 
 	/**
-     * Writes the image bytes to the output stream.
+	 * Sets the image data from a (possibly memory-mapped) buffer. The
+	 * default implementation reads the buffer through an input stream;
+	 * platforms that can decode directly from a buffer should override
+	 * this method to avoid intermediate copies.
+	 *
+	 * @param buffer Buffer containing the encoded image data.
+	 * @param item   The cache item associated with the image.
+	 */
+	default void setImage(ByteBuffer buffer, Cache.Item item) {
+		setImage(IOUtils.toInputStream(buffer), item);
+	}
+
+	/**
+     * Writes the image bytes to the output stream in the export
+     * format (PNG).
 	 */
 	void writeImage(OutputStream outputStream) throws IOException;
 
+	/**
+	 * Writes the image bytes to the output stream in the specified
+	 * cache storage format. The default implementation always writes
+	 * the export format, which remains readable since stored items
+	 * are decoded according to their contents (see {@link
+	 * StorageCodec#detect(java.nio.ByteBuffer)}); platforms that can
+	 * store raw pixels should override this method.
+	 *
+	 * @param outputStream The destination stream.
+	 * @param codec        The storage format.
+	 */
+	default void writeImage(OutputStream outputStream, StorageCodec codec)
+		throws IOException {
+		writeImage(outputStream);
+	}
+
 	/**
 	 * Applies the specified transformation {@code type} to the image.
 	 */
 	PlatformImage applyTransform(Transform.Type type, Cache.Item item);
 
+	/**
+	 * Applies each of the transformation {@code types} to the image.
+	 * The default implementation applies them one at a time;
+	 * platforms that can produce all results in a single pass over
+	 * the pixels should override this method.
+	 *
+	 * @param types The transformations to apply.
+	 * @param item  The cache item used to report progress.
+	 * @return One transformed image per type, in the order of {@code
+	 * types}.
+	 */
+	default List<PlatformImage> applyTransforms(List<Transform.Type> types,
+	                                            Cache.Item item) {
+		List<PlatformImage> images = new ArrayList<>(types.size());
+		for (Transform.Type type : types) {
+			images.add(applyTransform(type, item));
+		}
+		return images;
+	}
+
 	/**
 	 * @return Number of image bytes.
 	 */
 	int size();
 
+	/**
+	 * @return Approximate number of bytes occupied by the decoded
+	 * pixels (used to weigh in-memory cached images). Defaults to
+	 * {@link #size()}.
+	 */
+	default long pixelBytes() {
+		return size();
+	}
+
 	/**
 	 * Returns the cached item associated with this image.
 	 */
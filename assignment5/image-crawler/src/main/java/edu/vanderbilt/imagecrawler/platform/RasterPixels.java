@@ -0,0 +1,221 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Reads and writes the pixels of a {@link BufferedImage} as packed
+ * (non-premultiplied) ARGB ints, like {@link BufferedImage#getRGB} and
+ * {@link BufferedImage#setRGB}, but directly through the data buffer
+ * of the raster for the common image types ({@code TYPE_INT_ARGB},
+ * {@code TYPE_INT_RGB}, {@code TYPE_3BYTE_BGR}, and {@code
+ * TYPE_4BYTE_ABGR}) instead of converting each pixel through the
+ * {@link ColorModel}. Any other type, or a raster that doesn't cover
+ * its whole data buffer, falls back to {@code getRGB}/{@code setRGB}.
+ * Both paths produce exactly the same pixels.
+ */
+final class RasterPixels {
+    /**
+     * The raster layouts that are accessed directly.
+     */
+    private enum Layout {
+        INT_ARGB, INT_RGB, BYTE_BGR, BYTE_ABGR, OTHER
+    }
+
+    /**
+     * A static utility class.
+     */
+    private RasterPixels() {
+    }
+
+    /**
+     * @return An image with the same type, color model, and size as
+     * {@code image} and an empty raster to write the pixels into.
+     */
+    static BufferedImage createCompatibleImage(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        return new BufferedImage(colorModel,
+                                 image.getRaster().createCompatibleWritableRaster(),
+                                 colorModel.isAlphaPremultiplied(),
+                                 null);
+    }
+
+    /**
+     * @return The data array of a {@code TYPE_INT_ARGB} {@code image},
+     * whose elements are its ARGB pixels, or null for any other type.
+     * Filtering this array modifies the image in place.
+     */
+    static int[] argbData(BufferedImage image) {
+        return layout(image) == Layout.INT_ARGB
+            ? ((DataBufferInt) image.getRaster().getDataBuffer()).getData()
+            : null;
+    }
+
+    /**
+     * Copies the ARGB pixels of {@code image} into {@code pixels}.
+     *
+     * @param pixels An array of width * height pixels, or null to
+     *               allocate one.
+     * @return {@code pixels}
+     */
+    static int[] getPixels(BufferedImage image, int[] pixels) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int count = width * height;
+        if (pixels == null) {
+            pixels = new int[count];
+        }
+
+        switch (layout(image)) {
+            case INT_ARGB:
+                System.arraycopy(intData(image), 0, pixels, 0, count);
+                break;
+            case INT_RGB: {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    pixels[i] = 0xFF000000 | data[i];
+                }
+                break;
+            }
+            case BYTE_BGR: {
+                byte[] data = byteData(image);
+                for (int i = 0, j = 0; i < count; i++, j += 3) {
+                    pixels[i] = 0xFF000000
+                        | (data[j + 2] & 0xFF) << 16
+                        | (data[j + 1] & 0xFF) << 8
+                        | (data[j] & 0xFF);
+                }
+                break;
+            }
+            case BYTE_ABGR: {
+                byte[] data = byteData(image);
+                for (int i = 0, j = 0; i < count; i++, j += 4) {
+                    pixels[i] = (data[j] & 0xFF) << 24
+                        | (data[j + 3] & 0xFF) << 16
+                        | (data[j + 2] & 0xFF) << 8
+                        | (data[j + 1] & 0xFF);
+                }
+                break;
+            }
+            default:
+                image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+        return pixels;
+    }
+
+    /**
+     * Copies the ARGB {@code pixels} into {@code image}. Nothing is
+     * copied if {@code pixels} is the {@link #argbData} of the image.
+     */
+    static void setPixels(BufferedImage image, int[] pixels) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int count = width * height;
+
+        switch (layout(image)) {
+            case INT_ARGB: {
+                int[] data = intData(image);
+                if (data != pixels) {
+                    System.arraycopy(pixels, 0, data, 0, count);
+                }
+                break;
+            }
+            case INT_RGB: {
+                int[] data = intData(image);
+                for (int i = 0; i < count; i++) {
+                    data[i] = pixels[i] & 0x00FFFFFF;
+                }
+                break;
+            }
+            case BYTE_BGR: {
+                byte[] data = byteData(image);
+                for (int i = 0, j = 0; i < count; i++, j += 3) {
+                    int pixel = pixels[i];
+                    data[j] = (byte) pixel;
+                    data[j + 1] = (byte) (pixel >> 8);
+                    data[j + 2] = (byte) (pixel >> 16);
+                }
+                break;
+            }
+            case BYTE_ABGR: {
+                byte[] data = byteData(image);
+                for (int i = 0, j = 0; i < count; i++, j += 4) {
+                    int pixel = pixels[i];
+                    data[j] = (byte) (pixel >> 24);
+                    data[j + 1] = (byte) pixel;
+                    data[j + 2] = (byte) (pixel >> 8);
+                    data[j + 3] = (byte) (pixel >> 16);
+                }
+                break;
+            }
+            default:
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+        }
+    }
+
+    /**
+     * @return The layout of {@code image}, which is only one of the
+     * direct layouts if the pixels fill its single data bank row by
+     * row without gaps.
+     */
+    private static Layout layout(BufferedImage image) {
+        Layout layout;
+        int pixelStride;
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                layout = Layout.INT_ARGB;
+                pixelStride = 1;
+                break;
+            case BufferedImage.TYPE_INT_RGB:
+                layout = Layout.INT_RGB;
+                pixelStride = 1;
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                layout = Layout.BYTE_BGR;
+                pixelStride = 3;
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                layout = Layout.BYTE_ABGR;
+                pixelStride = 4;
+                break;
+            default:
+                return Layout.OTHER;
+        }
+
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        int scanlineStride;
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            scanlineStride =
+                ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+        } else if (sampleModel instanceof ComponentSampleModel
+                   && ((ComponentSampleModel) sampleModel).getPixelStride()
+                      == pixelStride) {
+            scanlineStride =
+                ((ComponentSampleModel) sampleModel).getScanlineStride();
+        } else {
+            return Layout.OTHER;
+        }
+
+        boolean contiguous = scanlineStride == image.getWidth() * pixelStride
+            && raster.getSampleModelTranslateX() == 0
+            && raster.getSampleModelTranslateY() == 0
+            && raster.getDataBuffer().getNumBanks() == 1
+            && raster.getDataBuffer().getOffset() == 0;
+        return contiguous ? layout : Layout.OTHER;
+    }
+
+    private static int[] intData(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static byte[] byteData(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -0,0 +1,1247 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link CacheStore} implementation that appends the bytes of all
+ * cached items to a small number of large segment files instead of
+ * creating one file per item. An in-memory index maps each cache key
+ * to the (segment, offset, length) extent holding its bytes and the
+ * time at which they were written, and every index change is recorded
+ * in an append-only index log so that the index can be rebuilt when
+ * the cache is loaded.
+ * <p>
+ * Reads use positional {@link FileChannel} reads, so any number of
+ * threads can read from the same segment concurrently. Each reader
+ * holds a reference to its segment, and a deleted segment's channel is
+ * only closed once its last reader is done. Each output stream claims
+ * a writable segment of its own for as long as it is open and streams
+ * the item bytes to the end of it, so concurrent writers never share a
+ * segment and items are never held in memory. Once all the items in a
+ * segment have been deleted, the segment file is deleted, and once
+ * less than {@link #MIN_LIVE_PERCENT} percent of a full segment is
+ * live, a background thread copies its live extents to a writable
+ * segment so that the sparse segment can be deleted. The copy runs
+ * without holding the store's lock, so compaction never blocks
+ * readers or writers.
+ * <p>
+ * Every index log record is checksummed. A torn or corrupt record at
+ * the end of the log (e.g., after a crash) ends the replay, and the
+ * entries replayed so far are loaded. By default nothing is forced to
+ * disk, so an operating system crash can lose the most recent index
+ * records (and the items they recorded). In durable mode (see {@link
+ * #SegmentCacheStore(long, boolean)}) an item's bytes are forced to
+ * disk before its PUT record is written, every index record is forced
+ * before the operation that wrote it returns, and the index snapshot
+ * written by a load is forced before it replaces the log.
+ * <p>
+ * Items stored by this backend do not have their own files, so
+ * {@link Cache.Item#getFile()} returns a path that does not exist.
+ */
+public class SegmentCacheStore
+       implements CacheStore {
+    /**
+     * Default maximum segment file size (64 MB).
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * A full segment is compacted once less than this percentage of
+     * its bytes are live.
+     */
+    public static final int MIN_LIVE_PERCENT = 25;
+
+    /**
+     * Segment file name prefix and suffix.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * Name of the append-only index log file.
+     */
+    private static final String INDEX_FILE_NAME = "segment-index.log";
+
+    /**
+     * Index log record types.
+     */
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * Maximum size of each segment file.
+     */
+    private final long mSegmentSize;
+
+    /**
+     * True if item bytes and index records are forced to disk.
+     */
+    private final boolean mDurable;
+
+    /**
+     * Maps each cache key to the extent holding its bytes.
+     */
+    private final Map<String, Extent> mIndex = new ConcurrentHashMap<>();
+
+    /**
+     * All open segments keyed by segment id.
+     */
+    private final Map<Integer, Segment> mSegments = new ConcurrentHashMap<>();
+
+    /**
+     * Serializes index changes, segment claims, and index log writes.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Writable segments that are not claimed by an output stream.
+     */
+    private final Deque<Segment> mWritable = new ArrayDeque<>();
+
+    /**
+     * Compacts sparse segments in the background, one at a time. The
+     * thread exits when there is nothing left to compact.
+     */
+    private final ThreadPoolExecutor mCompactor =
+        new ThreadPoolExecutor(0, 1,
+                               1, TimeUnit.SECONDS,
+                               new LinkedBlockingQueue<>(),
+                               runnable -> {
+                                   Thread thread = new Thread(runnable,
+                                                              "Cache-Segment-Compactor");
+                                   thread.setDaemon(true);
+                                   return thread;
+                               });
+
+    /**
+     * Number of scheduled compactions that haven't finished.
+     */
+    private int mCompactions;
+
+    /**
+     * The id of the next new segment. Ids are never reused, so a stale
+     * extent can never refer to the wrong segment.
+     */
+    private int mNextId;
+
+    /**
+     * The open index log and the file stream it writes to.
+     */
+    private DataOutputStream mIndexLog;
+    private FileOutputStream mIndexLogOut;
+
+    /**
+     * The cache that owns this store.
+     */
+    private Cache mCache;
+
+    /**
+     * Constructs a store that uses the default segment size.
+     */
+    public SegmentCacheStore() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a store that rolls over to a new segment file once
+     * the active segment reaches {@code segmentSize} bytes.
+     *
+     * @param segmentSize Maximum segment file size in bytes.
+     */
+    public SegmentCacheStore(long segmentSize) {
+        this(segmentSize, false);
+    }
+
+    /**
+     * Constructs a store that rolls over to a new segment file once
+     * the active segment reaches {@code segmentSize} bytes and, if
+     * {@code durable} is true, forces item bytes and index records to
+     * disk before they are relied upon.
+     *
+     * @param segmentSize Maximum segment file size in bytes.
+     * @param durable     Force writes to disk.
+     */
+    public SegmentCacheStore(long segmentSize, boolean durable) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        mSegmentSize = segmentSize;
+        mDurable = durable;
+    }
+
+    /**
+     * Binds this store to its cache.
+     */
+    @Override
+    public void open(Cache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * Opens all segment files and rebuilds the index by replaying the
+     * index log. Entries that refer to missing or truncated segments
+     * are dropped, segments with no live entries are deleted, and the
+     * index log is rewritten so that it only contains live entries.
+     */
+    @Override
+    public int load(Consumer<String> loader) {
+        synchronized (mLock) {
+            closeAll();
+
+            try {
+                File[] files = mCache.getCacheDir().listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        int id = parseSegmentId(file.getName());
+                        if (id < 0) {
+                            continue;
+                        }
+                        mNextId = Math.max(mNextId, id + 1);
+                        try {
+                            mSegments.put(id, new Segment(id, file));
+                        } catch (IOException e) {
+                            // Its entries are dropped like those of a
+                            // missing segment.
+                            mCache.warn("Unable to open segment " + file + ": " + e);
+                        }
+                    }
+                }
+
+                replayIndexLog();
+
+                // Account for live bytes and drop empty segments.
+                mIndex.values().forEach(extent ->
+                    mSegments.get(extent.mSegment).mLiveBytes
+                        .addAndGet(extent.mLength));
+                for (Segment segment : mSegments.values()) {
+                    if (segment.mLiveBytes.get() == 0) {
+                        deleteSegment(segment);
+                    }
+                }
+
+                writeIndexSnapshot();
+
+                // Compact sparse segments and keep appending to the
+                // last segment if it still has room.
+                for (Segment segment : mSegments.values()) {
+                    if (isSparse(segment)) {
+                        scheduleCompaction(segment);
+                    }
+                }
+                mSegments.values().stream()
+                    .filter(segment -> !segment.mWritable
+                                       && segment.mSize < mSegmentSize)
+                    .max((a, b) -> Integer.compare(a.mId, b.mId))
+                    .ifPresent(segment -> {
+                        segment.mWritable = true;
+                        mWritable.add(segment);
+                    });
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            mIndex.keySet().forEach(loader);
+            return mIndex.size();
+        }
+    }
+
+    /**
+     * Creates a new empty entry. Empty entries are not recorded in
+     * the index log since they are discarded on the next load anyway.
+     */
+    @Override
+    public void create(Cache.Item item) {
+        synchronized (mLock) {
+            if (delete(item)) {
+                mCache.warn("Orphaned entry matching a new item found and deleted: "
+                            + item.getKey());
+            }
+            mIndex.put(item.getKey(), Extent.EMPTY);
+        }
+    }
+
+    @Override
+    public boolean exists(Cache.Item item) {
+        return mIndex.containsKey(item.getKey());
+    }
+
+    @Override
+    public long size(Cache.Item item) {
+        Extent extent = mIndex.get(item.getKey());
+        return extent != null ? extent.mLength : 0;
+    }
+
+    /**
+     * Returns the write time recorded in the item's index entry, since
+     * the item has no file of its own.
+     */
+    @Override
+    public long lastModified(Cache.Item item) {
+        Extent extent = mIndex.get(item.getKey());
+        return extent != null ? extent.mModified : 0;
+    }
+
+    /**
+     * Returns a stream that reads the item's extent. The stream holds a
+     * reference to its segment until it is closed, so the segment's
+     * channel stays open even if the segment is deleted meanwhile.
+     */
+    @Override
+    public InputStream newInputStream(Cache.Item item) throws IOException {
+        for (;;) {
+            Extent extent = getExtent(item);
+            if (extent.mLength == 0) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            Segment segment = acquire(item, extent);
+            if (segment != null) {
+                return new SegmentInputStream(segment,
+                                              extent.mOffset,
+                                              extent.mLength);
+            }
+        }
+    }
+
+    /**
+     * Maps the item's extent of its segment file into memory. A mapping
+     * stays valid after its channel is closed, so the segment is only
+     * referenced while the mapping is created.
+     */
+    @Override
+    public ByteBuffer map(Cache.Item item) throws IOException {
+        for (;;) {
+            Extent extent = getExtent(item);
+            if (extent.mLength == 0) {
+                return ByteBuffer.allocate(0).asReadOnlyBuffer();
+            }
+
+            Segment segment = acquire(item, extent);
+            if (segment != null) {
+                try {
+                    return segment.mChannel.map(FileChannel.MapMode.READ_ONLY,
+                                                extent.mOffset,
+                                                extent.mLength);
+                } finally {
+                    segment.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the item's extent into {@code dst} with positional channel
+     * reads.
+     */
+    @Override
+    public int read(Cache.Item item, ByteBuffer dst) throws IOException {
+        for (;;) {
+            Extent extent = getExtent(item);
+            if (extent.mLength == 0) {
+                return 0;
+            }
+
+            Segment segment = acquire(item, extent);
+            if (segment != null) {
+                try {
+                    ByteBuffer target = dst.slice();
+                    target.limit(Math.min(target.limit(), extent.mLength));
+                    while (target.hasRemaining()) {
+                        int n = segment.mChannel.read(target,
+                                                      extent.mOffset
+                                                      + target.position());
+                        if (n == -1) {
+                            throw new EOFException("Truncated segment entry: "
+                                                   + item.getKey());
+                        }
+                    }
+                    dst.position(dst.position() + target.position());
+                    return target.position();
+                } finally {
+                    segment.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public OutputStream newOutputStream(Cache.Item item) {
+        return new SegmentOutputStream(item.getKey());
+    }
+
+    /**
+     * @return The extent holding the item's bytes.
+     * @throws IOException If the item has no entry.
+     */
+    private Extent getExtent(Cache.Item item) throws IOException {
+        Extent extent = mIndex.get(item.getKey());
+        if (extent == null) {
+            throw new IOException("No segment entry for item: " + item.getKey());
+        }
+        return extent;
+    }
+
+    /**
+     * Acquires a reader reference to the segment holding {@code
+     * extent}, which the caller must release. Compaction may move the
+     * item to another segment and delete this one after the extent was
+     * looked up, in which case null is returned so that the caller can
+     * retry with the item's new extent.
+     *
+     * @return The referenced segment, or null if the extent moved.
+     * @throws IOException If the segment is missing.
+     */
+    private Segment acquire(Cache.Item item, Extent extent) throws IOException {
+        Segment segment = mSegments.get(extent.mSegment);
+        if (segment != null && segment.acquire()) {
+            return segment;
+        } else if (mIndex.get(item.getKey()) != extent) {
+            return null;
+        } else {
+            throw new IOException("Missing segment " + extent.mSegment
+                                  + " for item: " + item.getKey());
+        }
+    }
+
+    /**
+     * Points the item's index entry at the source item's extent. Live
+     * bytes are counted per reference, so a segment is only deleted
+     * once no item refers to any of its extents.
+     */
+    @Override
+    public boolean link(Cache.Item item, Cache.Item source) {
+        synchronized (mLock) {
+            Extent extent = mIndex.get(source.getKey());
+            Extent previous = mIndex.get(item.getKey());
+            if (extent == null || extent == Extent.EMPTY || previous == null) {
+                return false;
+            }
+
+            Extent linked = new Extent(extent.mSegment,
+                                       extent.mOffset,
+                                       extent.mLength,
+                                       System.currentTimeMillis());
+            try {
+                writePut(item.getKey(), linked);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            mIndex.put(item.getKey(), linked);
+            mSegments.get(extent.mSegment).mLiveBytes.addAndGet(extent.mLength);
+            release(previous);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean delete(Cache.Item item) {
+        synchronized (mLock) {
+            Extent extent = mIndex.remove(item.getKey());
+            if (extent == null) {
+                return false;
+            }
+
+            if (extent != Extent.EMPTY) {
+                try {
+                    mIndexLog.writeByte(DELETE);
+                    mIndexLog.writeUTF(item.getKey());
+                    mIndexLog.writeLong(checksum(DELETE, item.getKey(), null));
+                    syncIndexLog();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                release(extent);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Deletes all segment files and starts a new empty index log.
+     */
+    @Override
+    public void clear() {
+        synchronized (mLock) {
+            closeAll();
+            mSegments.clear();
+            mIndex.clear();
+
+            File[] files = mCache.getCacheDir().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (parseSegmentId(file.getName()) >= 0
+                        || file.getName().equals(INDEX_FILE_NAME)) {
+                        if (!file.delete()) {
+                            mCache.fatal("Unable to delete file: " + file);
+                        }
+                    }
+                }
+            }
+
+            try {
+                openIndexLog(false);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Claims a writable segment for the exclusive use of an output
+     * stream, starting a new segment if none is available. The stream
+     * appends to the end of the segment without holding the lock and
+     * returns it with {@link #commit}.
+     */
+    private Segment claimSegment() throws IOException {
+        synchronized (mLock) {
+            Segment segment = mWritable.pollFirst();
+            if (segment == null) {
+                int id = mNextId++;
+                segment = new Segment(id, new File(mCache.getCacheDir(),
+                                                   String.format("%s%05d%s",
+                                                                 SEGMENT_PREFIX,
+                                                                 id,
+                                                                 SEGMENT_SUFFIX)));
+                segment.mWritable = true;
+                mSegments.put(id, segment);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Records the {@code length} bytes that an output stream wrote at
+     * {@code offset} of its claimed {@code segment} as the new extent
+     * for {@code key} and returns the segment to the writable segments,
+     * or retires it if it is full.
+     *
+     * @param key     The item's key, or null to only return the segment.
+     * @param segment The claimed segment, or null if nothing was written.
+     */
+    private void commit(String key, Segment segment, long offset, int length)
+        throws IOException {
+        synchronized (mLock) {
+            if (segment != null) {
+                if (mSegments.get(segment.mId) != segment) {
+                    // The store was cleared while the item was written.
+                    return;
+                }
+                segment.mSize = offset + length;
+            }
+
+            try {
+                // Ignore writes to items that were deleted while being written.
+                Extent previous = key != null ? mIndex.get(key) : null;
+                if (previous != null) {
+                    Extent extent = Extent.EMPTY;
+                    if (segment != null) {
+                        extent = new Extent(segment.mId,
+                                            offset,
+                                            length,
+                                            System.currentTimeMillis());
+                        writePut(key, extent);
+                        segment.mLiveBytes.addAndGet(length);
+                    }
+
+                    mIndex.put(key, extent);
+                    release(previous);
+                }
+            } finally {
+                if (segment != null) {
+                    returnSegment(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a claimed segment to the writable segments, or retires
+     * it if it is full. A retired segment with no live bytes is deleted.
+     */
+    private void returnSegment(Segment segment) {
+        if (segment.mSize < mSegmentSize) {
+            mWritable.addFirst(segment);
+        } else {
+            segment.mWritable = false;
+            if (segment.mLiveBytes.get() == 0) {
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Records a PUT in the index log.
+     */
+    private void writePut(String key, Extent extent) throws IOException {
+        writePut(mIndexLog, key, extent);
+        syncIndexLog();
+    }
+
+    /**
+     * Flushes the index log and, in durable mode, forces it to disk.
+     */
+    private void syncIndexLog() throws IOException {
+        mIndexLog.flush();
+        if (mDurable) {
+            mIndexLogOut.getFD().sync();
+        }
+    }
+
+    /**
+     * Writes a PUT record to an index log.
+     */
+    private static void writePut(DataOutputStream out, String key, Extent extent)
+        throws IOException {
+        out.writeByte(PUT);
+        out.writeUTF(key);
+        out.writeInt(extent.mSegment);
+        out.writeLong(extent.mOffset);
+        out.writeInt(extent.mLength);
+        out.writeLong(extent.mModified);
+        out.writeLong(checksum(PUT, key, extent));
+    }
+
+    /**
+     * @return The checksum of an index log record ({@code extent} is
+     * null for a DELETE record).
+     */
+    private static long checksum(byte op, String key, Extent extent) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        if (extent != null) {
+            ByteBuffer fields = ByteBuffer.allocate(24);
+            fields.putInt(extent.mSegment)
+                .putLong(extent.mOffset)
+                .putInt(extent.mLength)
+                .putLong(extent.mModified)
+                .flip();
+            crc.update(fields);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Releases the bytes of an extent that is no longer referenced.
+     * A retired segment is deleted once it has no live bytes and is
+     * compacted once it is sparse.
+     */
+    private void release(Extent extent) {
+        Segment segment = mSegments.get(extent.mSegment);
+        if (extent == Extent.EMPTY || segment == null) {
+            return;
+        }
+
+        long live = segment.mLiveBytes.addAndGet(-extent.mLength);
+        if (live == 0 && !segment.mWritable) {
+            deleteSegment(segment);
+        } else if (isSparse(segment)) {
+            scheduleCompaction(segment);
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code segment} is retired and less than
+     * {@link #MIN_LIVE_PERCENT} percent of its bytes are live.
+     */
+    private boolean isSparse(Segment segment) {
+        return !segment.mWritable
+            && segment.mLiveBytes.get() * 100 < segment.mSize * MIN_LIVE_PERCENT;
+    }
+
+    /**
+     * Schedules the compaction of a sparse segment unless it is
+     * already scheduled. The caller must hold {@link #mLock}.
+     */
+    private void scheduleCompaction(Segment segment) {
+        if (!segment.mCompacting) {
+            segment.mCompacting = true;
+            mCompactions++;
+            mCompactor.execute(() -> compact(segment));
+        }
+    }
+
+    /**
+     * Waits until all scheduled compactions have finished.
+     */
+    void awaitCompaction() throws InterruptedException {
+        synchronized (mLock) {
+            while (mCompactions > 0) {
+                mLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Copies the live extents of a retired segment to writable segments
+     * and points their index entries at the copies. Runs on the
+     * compactor thread: the entries are looked up under the lock, the
+     * bytes are copied without it (holding a reader reference to the
+     * segment, and claiming the target segments like an output stream
+     * does), and the lock is only taken again to move the entries.
+     */
+    private void compact(Segment segment) {
+        List<Map.Entry<String, Extent>> entries = new ArrayList<>();
+        synchronized (mLock) {
+            if (mSegments.get(segment.mId) == segment) {
+                mIndex.forEach((key, extent) -> {
+                        if (extent.mSegment == segment.mId) {
+                            entries.add(new AbstractMap.SimpleImmutableEntry<>(key, extent));
+                        }
+                    });
+            }
+        }
+
+        // Copies keyed by source offset and the end of the bytes
+        // copied to each claimed target segment.
+        Map<Long, Extent> copies = new HashMap<>();
+        Map<Segment, Long> targets = new LinkedHashMap<>();
+        if (!entries.isEmpty() && segment.acquire()) {
+            try {
+                Segment target = null;
+                long position = 0;
+                for (Map.Entry<String, Extent> entry : entries) {
+                    Extent extent = entry.getValue();
+                    if (copies.containsKey(extent.mOffset)) {
+                        continue;
+                    }
+
+                    if (target == null || position >= mSegmentSize) {
+                        target = claimSegment();
+                        position = target.mSize;
+                        targets.put(target, position);
+                    }
+
+                    target.mChannel.position(position);
+                    for (long count = 0; count < extent.mLength; ) {
+                        count += segment.mChannel.transferTo(extent.mOffset + count,
+                                                             extent.mLength - count,
+                                                             target.mChannel);
+                    }
+                    copies.put(extent.mOffset,
+                               new Extent(target.mId, position, extent.mLength, 0));
+                    position += extent.mLength;
+                    targets.put(target, position);
+                }
+
+                if (mDurable) {
+                    for (Segment claimed : targets.keySet()) {
+                        claimed.mChannel.force(false);
+                    }
+                }
+            } catch (IOException e) {
+                mCache.warn("Unable to compact segment " + segment.mFile
+                            + ": " + e);
+                copies.clear();
+            } finally {
+                try {
+                    segment.release();
+                } catch (IOException e) {
+                    mCache.warn("Unable to close segment: " + segment.mFile);
+                }
+            }
+        }
+
+        synchronized (mLock) {
+            try {
+                moveEntries(segment, entries, copies);
+            } catch (IOException e) {
+                mCache.warn("Unable to compact segment " + segment.mFile
+                            + ": " + e);
+            } finally {
+                targets.forEach((target, end) -> {
+                        if (mSegments.get(target.mId) == target) {
+                            target.mSize = end;
+                            returnSegment(target);
+                        }
+                    });
+
+                segment.mCompacting = false;
+                if (mSegments.get(segment.mId) == segment
+                    && segment.mLiveBytes.get() == 0) {
+                    deleteSegment(segment);
+                }
+
+                mCompactions--;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Points the compacted entries at their copies. Entries that were
+     * changed or deleted while their bytes were copied are skipped,
+     * which leaves their copies as dead bytes. Entries that share an
+     * extent (see {@link #link}) keep sharing its copy, and every entry
+     * keeps its write time. The caller must hold {@link #mLock}.
+     */
+    private void moveEntries(Segment segment,
+                             List<Map.Entry<String, Extent>> entries,
+                             Map<Long, Extent> copies) throws IOException {
+        if (mSegments.get(segment.mId) != segment) {
+            // The store was cleared or reloaded meanwhile.
+            return;
+        }
+
+        for (Map.Entry<String, Extent> entry : entries) {
+            Extent extent = entry.getValue();
+            Extent copy = copies.get(extent.mOffset);
+            if (copy == null || mIndex.get(entry.getKey()) != extent) {
+                continue;
+            }
+
+            Extent moved = new Extent(copy.mSegment,
+                                      copy.mOffset,
+                                      copy.mLength,
+                                      extent.mModified);
+            writePut(entry.getKey(), moved);
+            mIndex.put(entry.getKey(), moved);
+            mSegments.get(copy.mSegment).mLiveBytes.addAndGet(copy.mLength);
+            segment.mLiveBytes.addAndGet(-copy.mLength);
+        }
+    }
+
+    /**
+     * Removes a segment from the store and deletes its file. The
+     * segment's channel is closed once its last reader is done.
+     */
+    private void deleteSegment(Segment segment) {
+        mSegments.remove(segment.mId);
+        mWritable.remove(segment);
+        segment.mWritable = false;
+        if (!segment.mFile.delete()) {
+            mCache.warn("Unable to delete segment: " + segment.mFile);
+        }
+        try {
+            segment.release();
+        } catch (IOException e) {
+            mCache.warn("Unable to close segment: " + segment.mFile);
+        }
+    }
+
+    /**
+     * Replays the index log into the index. A truncated or corrupt
+     * record (e.g., from an abnormal termination) ends the replay, and
+     * the entries replayed so far are kept; the next snapshot drops
+     * the rest of the log.
+     */
+    private void replayIndexLog() {
+        mIndex.clear();
+
+        File file = new File(mCache.getCacheDir(), INDEX_FILE_NAME);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            for (;;) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    // Normal end of log.
+                    return;
+                }
+
+                String key = in.readUTF();
+                if (op == PUT) {
+                    Extent extent = new Extent(in.readInt(),
+                                               in.readLong(),
+                                               in.readInt(),
+                                               in.readLong());
+                    if (in.readLong() != checksum(op, key, extent)) {
+                        tornIndexLog(file);
+                        return;
+                    }
+
+                    Segment segment = mSegments.get(extent.mSegment);
+                    if (segment != null
+                        && extent.mOffset + extent.mLength <= segment.mSize) {
+                        mIndex.put(key, extent);
+                    } else {
+                        mCache.warn("Dropping truncated segment entry: " + key);
+                        mIndex.remove(key);
+                    }
+                } else if (op == DELETE) {
+                    if (in.readLong() != checksum(op, key, null)) {
+                        tornIndexLog(file);
+                        return;
+                    }
+                    mIndex.remove(key);
+                } else {
+                    tornIndexLog(file);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // A torn record or an unreadable log.
+            tornIndexLog(file);
+        }
+    }
+
+    /**
+     * Reports that the rest of the index log was dropped.
+     */
+    private void tornIndexLog(File file) {
+        mCache.warn("Ignoring the torn or corrupt end of segment index log "
+                    + file + "; loading the entries before it.");
+    }
+
+    /**
+     * Atomically replaces the index log with one that only contains
+     * the live index entries and leaves it open for appending.
+     */
+    private void writeIndexSnapshot() throws IOException {
+        File file = new File(mCache.getCacheDir(), INDEX_FILE_NAME);
+        File temp = new File(mCache.getCacheDir(), INDEX_FILE_NAME + ".tmp");
+
+        FileOutputStream snapshot = new FileOutputStream(temp);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(snapshot))) {
+            for (Map.Entry<String, Extent> entry : mIndex.entrySet()) {
+                writePut(out, entry.getKey(), entry.getValue());
+            }
+            if (mDurable) {
+                out.flush();
+                snapshot.getFD().sync();
+            }
+        }
+
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to replace segment index: " + file);
+        }
+        if (mDurable) {
+            FileCacheStore.forceDirectory(mCache.getCacheDir());
+        }
+
+        openIndexLog(true);
+    }
+
+    /**
+     * Opens the index log for appending (or truncates it).
+     */
+    private void openIndexLog(boolean append) throws IOException {
+        mIndexLogOut = new FileOutputStream(
+            new File(mCache.getCacheDir(), INDEX_FILE_NAME),
+            append);
+        mIndexLog = new DataOutputStream(new BufferedOutputStream(mIndexLogOut));
+    }
+
+    /**
+     * Closes the index log and all segment channels.
+     */
+    private void closeAll() {
+        try {
+            if (mIndexLog != null) {
+                mIndexLog.close();
+                mIndexLog = null;
+                mIndexLogOut = null;
+            }
+            for (Segment segment : mSegments.values()) {
+                segment.mWritable = false;
+                segment.release();
+            }
+        } catch (IOException e) {
+            mCache.warn("Unable to close segment store: " + e);
+        }
+        mSegments.clear();
+        mWritable.clear();
+    }
+
+    /**
+     * @return The segment id encoded in {@code name} or -1 if
+     * {@code name} is not a segment file name.
+     */
+    private static int parseSegmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                                   name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Immutable location of an item's bytes.
+     */
+    private static final class Extent {
+        /**
+         * Shared extent for newly created items that have not been
+         * written yet.
+         */
+        static final Extent EMPTY = new Extent(-1, 0, 0, 0);
+
+        final int mSegment;
+        final long mOffset;
+        final int mLength;
+
+        /**
+         * Time at which the bytes were written (in milliseconds since
+         * the epoch).
+         */
+        final long mModified;
+
+        Extent(int segment, long offset, int length, long modified) {
+            mSegment = segment;
+            mOffset = offset;
+            mLength = length;
+            mModified = modified;
+        }
+    }
+
+    /**
+     * An open segment file.
+     */
+    private static final class Segment {
+        final int mId;
+        final File mFile;
+        final FileChannel mChannel;
+        final AtomicLong mLiveBytes = new AtomicLong();
+
+        /**
+         * The store's reference plus one per reader. The channel is
+         * closed when the count drops to 0.
+         */
+        final AtomicInteger mReferences = new AtomicInteger(1);
+
+        /**
+         * The end of the written bytes, which only the output stream
+         * that has claimed a writable segment may advance.
+         */
+        long mSize;
+
+        /**
+         * True while the segment is claimed by an output stream or
+         * available to be claimed.
+         */
+        boolean mWritable;
+
+        /**
+         * True while the segment is scheduled to be compacted.
+         */
+        boolean mCompacting;
+
+        Segment(int id, File file) throws IOException {
+            mId = id;
+            mFile = file;
+            mChannel = FileChannel.open(file.toPath(),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+            mSize = mChannel.size();
+        }
+
+        /**
+         * Adds a reader reference unless the channel is already closed.
+         *
+         * @return {@code true} if the reference was added.
+         */
+        boolean acquire() {
+            for (int count; (count = mReferences.get()) > 0; ) {
+                if (mReferences.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Drops a reference and closes the channel if it was the last.
+         */
+        void release() throws IOException {
+            if (mReferences.decrementAndGet() == 0) {
+                mChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Streams an item's bytes to the end of a segment claimed for its
+     * exclusive use and records the item's new extent when closed.
+     */
+    private class SegmentOutputStream extends OutputStream {
+        private final String mKey;
+        private final ByteBuffer mBuffer = ByteBuffer.allocate(8192);
+        private Segment mSegment;
+        private long mOffset;
+        private long mPosition;
+        private boolean mFailed;
+        private boolean mClosed;
+
+        SegmentOutputStream(String key) {
+            mKey = key;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!mBuffer.hasRemaining()) {
+                flushBuffer();
+            }
+            mBuffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len >= mBuffer.capacity()) {
+                flushBuffer();
+                writeFully(ByteBuffer.wrap(b, off, len));
+            } else {
+                if (len > mBuffer.remaining()) {
+                    flushBuffer();
+                }
+                mBuffer.put(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mClosed) {
+                mClosed = true;
+                try {
+                    flushBuffer();
+                    if (mDurable && mSegment != null) {
+                        // The bytes must be on disk before the PUT
+                        // record that refers to them.
+                        mSegment.mChannel.force(false);
+                    }
+                } catch (IOException e) {
+                    mFailed = true;
+                    throw e;
+                } finally {
+                    // A failed write returns the segment without
+                    // recording the item.
+                    commit(mFailed ? null : mKey,
+                           mSegment,
+                           mOffset,
+                           mFailed ? 0 : (int) (mPosition - mOffset));
+                }
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            mBuffer.flip();
+            try {
+                writeFully(mBuffer);
+            } finally {
+                mBuffer.clear();
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+            if (mSegment == null) {
+                mSegment = claimSegment();
+                mOffset = mPosition = mSegment.mSize;
+            }
+            if (mPosition - mOffset + buffer.remaining() > Integer.MAX_VALUE) {
+                mFailed = true;
+                throw new IOException("Item too large for a segment: " + mKey);
+            }
+            try {
+                while (buffer.hasRemaining()) {
+                    mPosition += mSegment.mChannel.write(buffer, mPosition);
+                }
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads an extent of a segment using positional channel reads and
+     * releases its reference to the segment when closed.
+     */
+    private static class SegmentInputStream extends InputStream {
+        private final Segment mSegment;
+        private final long mEnd;
+        private long mPosition;
+        private boolean mClosed;
+
+        SegmentInputStream(Segment segment, long offset, int length) {
+            mSegment = segment;
+            mPosition = offset;
+            mEnd = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mPosition >= mEnd) {
+                return -1;
+            }
+
+            int count = (int) Math.min(len, mEnd - mPosition);
+            int read = mSegment.mChannel.read(ByteBuffer.wrap(b, off, count),
+                                              mPosition);
+            if (read > 0) {
+                mPosition += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, mEnd - mPosition));
+            mPosition += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) (mEnd - mPosition);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mClosed) {
+                mClosed = true;
+                mSegment.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lock-free statistics counters of a single {@link Cache} tag.
+ * Each item holds a reference to the counter of its tag, so recording
+ * an event is a single {@link LongAdder} update without any lookup.
+ * {@link #snapshot()} sums the adders into an immutable {@link
+ * CacheStats}.
+ */
+class StatsCounter {
+    /**
+     * Counters indexed by the {@link CacheStats} constants.
+     */
+    private final LongAdder[] mCounters = newAdders(CacheStats.COUNTERS);
+
+    /**
+     * Notification counters indexed by operation ordinal.
+     */
+    private final LongAdder[] mOperations =
+        newAdders(Cache.Operation.values().length);
+
+    /**
+     * Increments a counter.
+     *
+     * @param counter A {@link CacheStats} counter index.
+     */
+    void increment(int counter) {
+        mCounters[counter].increment();
+    }
+
+    /**
+     * Adds {@code value} to a counter.
+     *
+     * @param counter A {@link CacheStats} counter index.
+     */
+    void add(int counter, long value) {
+        mCounters[counter].add(value);
+    }
+
+    /**
+     * Records a notification of {@code operation}.
+     */
+    void recordOperation(Cache.Operation operation) {
+        mOperations[operation.ordinal()].increment();
+    }
+
+    /**
+     * @return A snapshot of the counters.
+     */
+    CacheStats snapshot() {
+        return new CacheStats(sums(mCounters), sums(mOperations));
+    }
+
+    /**
+     * Resets all counters to 0 (updates made concurrently with the
+     * reset may or may not be kept).
+     */
+    void reset() {
+        for (LongAdder adder : mCounters) {
+            adder.reset();
+        }
+        for (LongAdder adder : mOperations) {
+            adder.reset();
+        }
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+}
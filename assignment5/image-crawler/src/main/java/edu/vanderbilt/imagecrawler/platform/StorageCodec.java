@@ -0,0 +1,135 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The formats used to store decoded images in the {@link Cache} (see
+ * {@link Cache#setStorageCodec(String, StorageCodec)}).
+ * <p>
+ * PNG is the export format, so it is the default and the only one
+ * that other programs can open. The raw formats skip the expensive
+ * deflate stage and are much faster to write and to read back, at
+ * the cost of more disk space. Raw items start with a small header
+ * that {@link #detect(ByteBuffer)} recognizes, so an item is always
+ * decoded correctly regardless of the codec that is currently
+ * configured for its tag:
+ * <pre>
+ *   offset  size  field
+ *        0     4  magic (0x89 'R' 'A' 'W')
+ *        4     1  codec (1 = RAW, 2 = LZ)
+ *        5     1  flags (bit 0 set if the image has an alpha channel)
+ *        6     2  reserved (0)
+ *        8     4  width
+ *       12     4  height
+ *       16     -  pixels (big-endian ARGB ints, LZ4 block compressed for LZ)
+ * </pre>
+ */
+public enum StorageCodec {
+    /**
+     * The image is stored PNG encoded (or, for downloaded images that
+     * are decoded by a platform without raw support, in whichever
+     * format the platform writes).
+     */
+    PNG,
+
+    /**
+     * The image is stored as uncompressed 32 bit ARGB pixels.
+     */
+    RAW,
+
+    /**
+     * The image is stored as 32 bit ARGB pixels compressed with the
+     * LZ4 block format, which trades some of the speed of {@link
+     * #RAW} for smaller files on images with flat regions.
+     */
+    LZ;
+
+    /**
+     * The number of header bytes that precede the pixels of a raw item.
+     */
+    public static final int HEADER_LENGTH = 16;
+
+    /**
+     * Raw header magic number (the leading non-ASCII byte keeps raw
+     * items from being mistaken for text, as in the PNG signature).
+     */
+    private static final int MAGIC = 0x89524157;
+
+    /**
+     * Header flag set if the image has an alpha channel.
+     */
+    private static final int FLAG_ALPHA = 1;
+
+    /**
+     * Returns the codec used to store the item contained in the
+     * remaining bytes of {@code buffer}, which is not modified.
+     *
+     * @param buffer The stored item bytes.
+     * @return {@link #RAW} or {@link #LZ} if the buffer starts with a
+     * raw header, otherwise {@link #PNG} (i.e., a format that is
+     * decoded by the platform's image decoder).
+     */
+    public static StorageCodec detect(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() >= HEADER_LENGTH
+            && buffer.getInt(start) == MAGIC) {
+            switch (buffer.get(start + 4)) {
+                case 1:
+                    return RAW;
+                case 2:
+                    return LZ;
+            }
+        }
+        return PNG;
+    }
+
+    /**
+     * Writes a raw header at the position of {@code buffer} and
+     * advances its position past the header.
+     *
+     * @param buffer The destination buffer.
+     * @param codec  {@link #RAW} or {@link #LZ}.
+     * @param width  The image width.
+     * @param height The image height.
+     * @param alpha  {@code true} if the image has an alpha channel.
+     */
+    public static void writeHeader(ByteBuffer buffer,
+                                   StorageCodec codec,
+                                   int width,
+                                   int height,
+                                   boolean alpha) {
+        if (codec == PNG) {
+            throw new IllegalArgumentException("PNG items have no raw header");
+        }
+        buffer.putInt(MAGIC)
+            .put((byte) codec.ordinal())
+            .put((byte) (alpha ? FLAG_ALPHA : 0))
+            .putShort((short) 0)
+            .putInt(width)
+            .putInt(height);
+    }
+
+    /**
+     * @return The width stored in the raw header at the position of
+     * {@code buffer}.
+     */
+    public static int getWidth(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position() + 8);
+    }
+
+    /**
+     * @return The height stored in the raw header at the position of
+     * {@code buffer}.
+     */
+    public static int getHeight(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position() + 12);
+    }
+
+    /**
+     * @return {@code true} if the raw header at the position of {@code
+     * buffer} describes an image with an alpha channel.
+     */
+    public static boolean hasAlpha(ByteBuffer buffer) {
+        return (buffer.get(buffer.position() + 5) & FLAG_ALPHA) != 0;
+    }
+}
@@ -0,0 +1,246 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A CacheMap implementation that partitions its entries across a
+ * fixed number of stripes, each of which is a HashMap guarded by its
+ * own readers-writer lock. Operations on keys that map to different
+ * stripes never contend with each other, and lookups within the same
+ * stripe can proceed concurrently.
+ */
+public class StripedCacheMap<K, V>
+        implements CacheMap<K, V> {
+    /**
+     * The stripes (the number of stripes is always a power of 2).
+     */
+    private final Stripe<K, V>[] mStripes;
+
+    /**
+     * Constructs a map with 4 stripes per available processor.
+     */
+    public StripedCacheMap() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a map with at least the specified number of stripes.
+     *
+     * @param stripes Minimum number of stripes (rounded up to the
+     *                next power of 2).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StripedCacheMap(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+
+        mStripes = new Stripe[count];
+        for (int i = 0; i < mStripes.length; i++) {
+            mStripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Clears all entries in the map.
+     */
+    @Override
+    public void clear() {
+        for (Stripe<K, V> stripe : mStripes) {
+            stripe.mLock.writeLock().lock();
+            try {
+                stripe.mMap.clear();
+            } finally {
+                stripe.mLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Associates the specified value with the specified mKey in this
+     * map.  If the map previously contained a mapping for the mKey,
+     * the old value is replaced.
+     *
+     * @param key   mKey with which the specified value is to be associated
+     * @param value value to be associated with the specified mKey
+     * @return the previous value associated with <tt>mKey</tt>, or
+     * <tt>null</tt> if there was no mapping for <tt>mKey</tt>.
+     */
+    @Override
+    public V put(K key, V value) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            return stripe.mMap.put(key, value);
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Attempts to add a new entry to the map identified by the passed
+     * {@code mKey}. The {@code mapper} is called with the stripe's
+     * write lock held, so it is called at most once per absent mKey.
+     *
+     * @param key    The mKey for the new entry.
+     * @param mapper A lambda that maps the provided mKey to an
+     *               entry value to be added to the map.
+     * @return The added value if it was added, or an existing value if a
+     * entry with the specified mKey already existed.
+     */
+    @Override
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mapper) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            return stripe.mMap.computeIfAbsent(key, mapper);
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a data value from the map that matches
+     * the specified {@code mKey} or null if no matching
+     * mKey was found.
+     *
+     * @param key The mKey to lookup.
+     */
+    @Override
+    public V get(K key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.mLock.readLock().lock();
+        try {
+            return stripe.mMap.get(key);
+        } finally {
+            stripe.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey}
+     * and returns the removed entries data object.
+     *
+     * @param key The entry's mKey.
+     * @return The removed entry data value, or null if the cache
+     * does not contain an entry with a matching mKey.
+     */
+    @Override
+    public V remove(K key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            return stripe.mMap.remove(key);
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it is currently mapped to the specified value. Unlike {@link
+     * java.util.Map#remove(Object, Object)}, values are compared by
+     * identity, so an equal value that replaced {@code value} is kept.
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be associated with the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    @Override
+    public boolean remove(K key, V value) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            if (value == null || stripe.mMap.get(key) != value) {
+                return false;
+            }
+            stripe.mMap.remove(key);
+            return true;
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of entries in the map.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            stripe.mLock.readLock().lock();
+            try {
+                size += stripe.mMap.size();
+            } finally {
+                stripe.mLock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Enumerates all entries in the map and calls the {@code action}
+     * BiConsumer passing in each entry's mKey and value as parameters.
+     * Each stripe is copied under its read lock and the action is
+     * called without any lock held, so the action may safely modify
+     * this map.
+     *
+     * @param action A BiConsumer that receives a the each entry's
+     *               mKey and value.
+     */
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Stripe<K, V> stripe : mStripes) {
+            ArrayList<K> keys;
+            ArrayList<V> values;
+            stripe.mLock.readLock().lock();
+            try {
+                keys = new ArrayList<>(stripe.mMap.size());
+                values = new ArrayList<>(stripe.mMap.size());
+                for (Map.Entry<K, V> entry : stripe.mMap.entrySet()) {
+                    keys.add(entry.getKey());
+                    values.add(entry.getValue());
+                }
+            } finally {
+                stripe.mLock.readLock().unlock();
+            }
+
+            for (int i = 0; i < keys.size(); i++) {
+                action.accept(keys.get(i), values.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return The stripe that holds the passed key.
+     */
+    private Stripe<K, V> stripeFor(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return mStripes[(h * 0x9E3779B9 >>> 16) & (mStripes.length - 1)];
+    }
+
+    /**
+     * A single partition of the map.
+     */
+    private static class Stripe<K, V> {
+        final HashMap<K, V> mMap = new HashMap<>();
+        final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    }
+}
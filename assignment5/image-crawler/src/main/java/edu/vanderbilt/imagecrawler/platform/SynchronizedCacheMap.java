@@ -14,12 +14,12 @@ import java.util.function.Function;
  * will synchronize on the class object, or the current synchronize
  * statements could synchronize on 'this' instead of 'mMap'.
  */
-class SynchronizedCacheMap
-        implements CacheMap<String, Cache.Item> {
+public class SynchronizedCacheMap<K, V>
+        implements CacheMap<K, V> {
     /**
      * The standard Java HashMap.
      */
-    private final HashMap<String, Cache.Item> mMap = new HashMap<>();
+    private final HashMap<K, V> mMap = new HashMap<>();
 
     /**
      * Clears all entries in the map.
@@ -43,7 +43,8 @@ class SynchronizedCacheMap
      * (A <tt>null</tt> return can also indicate that the map
      * previously associated <tt>null</tt> with <tt>mKey</tt>.)
      */
-    public Cache.Item put(String key, Cache.Item value) {
+    @Override
+    public V put(K key, V value) {
         synchronized (mMap) {
             return mMap.put(key, value);
         }
@@ -64,14 +65,14 @@ class SynchronizedCacheMap
      * entry with the specified mKey already existed.
      */
     @Override
-    public Cache.Item computeIfAbsent(String key,
-            Function<? super String, ? extends Cache.Item> mapper) {
+    public V computeIfAbsent(K key,
+            Function<? super K, ? extends V> mapper) {
         synchronized (mMap) {
             // Perform "check-then-act" operations with the lock held.
             if (mMap.containsKey(key)) {
                 return mMap.get(key);
             } else {
-                Cache.Item item = mapper.apply(key);
+                V item = mapper.apply(key);
                 mMap.put(key, item);
                 return item;
             }
@@ -86,7 +87,7 @@ class SynchronizedCacheMap
      * @param key The mKey to lookup.
      */
     @Override
-    public Cache.Item get(String key) {
+    public V get(K key) {
         synchronized (mMap) {
             return mMap.get(key);
         }
@@ -101,12 +102,33 @@ class SynchronizedCacheMap
      * does not contain an entry with a matching mKey.
      */
     @Override
-    public Cache.Item remove(String key) {
+    public V remove(K key) {
         synchronized (mMap) {
             return mMap.remove(key);
         }
     }
 
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it is currently mapped to the specified value. Unlike {@link
+     * java.util.Map#remove(Object, Object)}, values are compared by
+     * identity, so an equal value that replaced {@code value} is kept.
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be associated with the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    @Override
+    public boolean remove(K key, V value) {
+        synchronized (mMap) {
+            if (value == null || mMap.get(key) != value) {
+                return false;
+            }
+            mMap.remove(key);
+            return true;
+        }
+    }
+
     /**
      * @return Number of entries in the map.
      */
@@ -125,7 +147,7 @@ class SynchronizedCacheMap
      *               mKey and value.
      */
     @Override
-    public void forEach(BiConsumer<? super String, ? super Cache.Item> action) {
+    public void forEach(BiConsumer<? super K, ? super V> action) {
         synchronized (mMap) {
             mMap.forEach(action);
         }
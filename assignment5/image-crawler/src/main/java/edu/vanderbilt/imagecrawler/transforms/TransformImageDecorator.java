@@ -4,8 +4,11 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.BiFunction;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.platform.PlatformImage;
 import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
 import edu.vanderbilt.imagecrawler.utils.Image;
 
@@ -23,6 +26,12 @@ public class TransformImageDecorator {
      */
     private Image mImage;
 
+    /**
+     * Optional decoder used to reuse a previously transformed image
+     * instead of recomputing it (null disables reuse).
+     */
+    private BiFunction<ByteBuffer, Cache.Item, PlatformImage> mDecoder;
+
     /**
      * Constructor initializes the fields.
      */
@@ -32,10 +41,42 @@ public class TransformImageDecorator {
     }
 
     /**
-     * Run the transform decorator on the image.
+     * Constructor initializes the fields and enables reuse of
+     * existing transform results for images with identical content.
+     *
+     * @param decoder Decodes a cached transformed image.
+     */
+    public TransformImageDecorator(Transform transform,
+                                   Image image,
+                                   BiFunction<ByteBuffer, Cache.Item, PlatformImage> decoder) {
+        this(transform, image);
+        mDecoder = decoder;
+    }
+
+    /**
+     * Run the transform decorator on the image. If an image with
+     * identical content has already been transformed by the same
+     * transform (e.g., the same image served from another URL), the
+     * cached result is reused instead of being recomputed.
      */
     public @Nullable
     Image run(Cache.Item item) {
+        Cache.Item source = mImage.getPlatformImage().getCacheItem();
+
+        if (mDecoder != null && source != null) {
+            Cache.Item existing = source.findDerived(mTransform.getName());
+            if (existing != null) {
+                try {
+                    item.copyFrom(existing);
+                    Image image = new Image(mDecoder.apply(
+                            item.getByteBuffer(Cache.Operation.READ), item));
+                    image.setTransformName(mTransform);
+                    return image;
+                } catch (IOException e) {
+                    ExceptionUtils.throwAsUnchecked(e);
+                }
+            }
+        }
 
         // Transform the image.
         Image image = mTransform.transform(mImage, item);
@@ -44,11 +85,15 @@ public class TransformImageDecorator {
         try (OutputStream outputStream =
                      item.getOutputStream(
                              Cache.Operation.WRITE, image.size())) {
-            image.writeImage(outputStream);
+            image.writeImage(outputStream, item.getStorageCodec());
         } catch (IOException e) {
             ExceptionUtils.throwAsUnchecked(e);
         }
 
+        if (source != null) {
+            source.addDerived(item);
+        }
+
         return image;
     }
 }
@@ -0,0 +1,280 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A shared pool of direct {@link ByteBuffer}s used to move image bytes
+ * along the download, decode, encode, and store path without creating
+ * a new heap array for every image. Buffers are grouped in power of 2
+ * size classes from 4 KB to 16 MB; larger requests are served with an
+ * unpooled buffer. Idle buffers are kept up to a configurable number of
+ * bytes, beyond which released buffers are simply dropped.
+ * <p>
+ * Buffers are leased as {@link PooledBuffer}s, which must be closed
+ * once the bytes are no longer needed. A lease that becomes
+ * unreachable without being closed is reported as a leak (see {@link
+ * #setLogger(Consumer)}) and its buffer is dropped rather than
+ * recycled, since the buffer itself may still be in use. Enable {@link
+ * #setLeakTracking(boolean)} to include the stack trace of the leaking
+ * acquisition in the report.
+ */
+public final class BufferPool {
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "BufferPool";
+
+    /**
+     * Cleaner that detects leases that were never closed.
+     */
+    static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * Smallest and largest pooled size classes (as powers of 2).
+     */
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 24;
+
+    /**
+     * Largest capacity served by a pooled buffer. Larger requests
+     * allocate a new direct buffer every time.
+     */
+    public static final int MAX_POOLED_CAPACITY = 1 << MAX_SHIFT;
+
+    /**
+     * Default maximum number of idle bytes kept by the pool.
+     */
+    public static final long DEFAULT_MAX_IDLE_BYTES = 64L << 20;
+
+    /**
+     * The shared pool instance.
+     */
+    private static final BufferPool sInstance =
+        new BufferPool(DEFAULT_MAX_IDLE_BYTES);
+
+    /**
+     * Idle buffers of each size class.
+     */
+    private final Queue<ByteBuffer>[] mFree;
+
+    /**
+     * Maximum and current number of idle bytes.
+     */
+    private final long mMaxIdleBytes;
+    private final AtomicLong mIdleBytes = new AtomicLong();
+
+    /**
+     * Statistics.
+     */
+    private final LongAdder mAllocatedBytes = new LongAdder();
+    private final LongAdder mAcquires = new LongAdder();
+    private final LongAdder mHits = new LongAdder();
+    private final LongAdder mLeaks = new LongAdder();
+    private final AtomicLong mLeasedBytes = new AtomicLong();
+
+    /**
+     * Records the acquisition site of each lease when enabled.
+     */
+    private volatile boolean mLeakTracking;
+
+    /**
+     * Receives leak reports.
+     */
+    private volatile Consumer<String> mLogger =
+        msg -> System.out.println(TAG + "[WARNING]: " + msg);
+
+    /**
+     * @return The shared pool.
+     */
+    public static BufferPool instance() {
+        return sInstance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxIdleBytes Maximum number of bytes held by idle buffers.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(long maxIdleBytes) {
+        mMaxIdleBytes = maxIdleBytes;
+        mFree = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < mFree.length; i++) {
+            mFree[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Leases a cleared direct buffer with at least {@code capacity}
+     * bytes. The buffer's limit is set to its capacity.
+     *
+     * @param capacity The minimum capacity.
+     * @return A lease that must be closed to return the buffer.
+     */
+    public PooledBuffer acquire(int capacity) {
+        return new PooledBuffer(this, take(capacity));
+    }
+
+    /**
+     * Enables or disables recording of the acquisition site of each
+     * lease, which is included in leak reports.
+     */
+    public void setLeakTracking(boolean enabled) {
+        mLeakTracking = enabled;
+    }
+
+    /**
+     * @return {@code true} if acquisition sites are recorded.
+     */
+    public boolean isLeakTracking() {
+        return mLeakTracking;
+    }
+
+    /**
+     * Sets the logger that receives leak reports. By default, reports
+     * are printed like the cache's warnings; the {@code Controller}
+     * routes them to the platform log.
+     *
+     * @param logger Receives each report.
+     */
+    public void setLogger(Consumer<String> logger) {
+        mLogger = logger;
+    }
+
+    /**
+     * @return The total number of direct bytes allocated by this pool.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes.sum();
+    }
+
+    /**
+     * @return The number of bytes currently held by idle buffers.
+     */
+    public long getIdleBytes() {
+        return mIdleBytes.get();
+    }
+
+    /**
+     * @return The number of bytes currently leased.
+     */
+    public long getLeasedBytes() {
+        return mLeasedBytes.get();
+    }
+
+    /**
+     * @return The number of buffers acquired (including buffers taken
+     * while growing a lease).
+     */
+    public long getAcquireCount() {
+        return mAcquires.sum();
+    }
+
+    /**
+     * @return The number of acquisitions served by an idle buffer.
+     */
+    public long getHitCount() {
+        return mHits.sum();
+    }
+
+    /**
+     * @return The number of leases that were never closed.
+     */
+    public long getLeakCount() {
+        return mLeaks.sum();
+    }
+
+    /**
+     * Takes a buffer from the pool or allocates a new one.
+     */
+    ByteBuffer take(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+
+        mAcquires.increment();
+        int shift = capacity <= 1 << MIN_SHIFT
+            ? MIN_SHIFT
+            : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        ByteBuffer buffer;
+        if (shift > MAX_SHIFT) {
+            buffer = allocate(capacity);
+        } else {
+            buffer = mFree[shift - MIN_SHIFT].poll();
+            if (buffer != null) {
+                mIdleBytes.addAndGet(-buffer.capacity());
+                mHits.increment();
+            } else {
+                buffer = allocate(1 << shift);
+            }
+        }
+
+        mLeasedBytes.addAndGet(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that don't belong to a
+     * size class or don't fit within the idle budget are dropped.
+     */
+    void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        mLeasedBytes.addAndGet(-capacity);
+
+        int shift = Integer.numberOfTrailingZeros(capacity);
+        if (Integer.bitCount(capacity) != 1 || shift < MIN_SHIFT || shift > MAX_SHIFT) {
+            return;
+        }
+        if (mIdleBytes.addAndGet(capacity) > mMaxIdleBytes) {
+            mIdleBytes.addAndGet(-capacity);
+            return;
+        }
+
+        buffer.clear();
+        mFree[shift - MIN_SHIFT].offer(buffer);
+    }
+
+    /**
+     * Called by the cleaner when a lease was never closed. The buffer
+     * is dropped instead of being recycled since whoever leaked the
+     * lease may still be using it.
+     */
+    void leaked(ByteBuffer buffer, Throwable site) {
+        mLeaks.increment();
+        mLeasedBytes.addAndGet(-buffer.capacity());
+
+        StringBuilder msg = new StringBuilder("A pooled buffer of ")
+            .append(buffer.capacity())
+            .append(" bytes was never released");
+        if (site == null) {
+            msg.append(" (enable leak tracking for details).");
+        } else {
+            msg.append("; acquired at:");
+            for (StackTraceElement element : site.getStackTrace()) {
+                msg.append("\n\tat ").append(element);
+            }
+        }
+        mLogger.accept(msg.toString());
+    }
+
+    /**
+     * @return A new acquisition site, or null if leak tracking is disabled.
+     */
+    Throwable site() {
+        return mLeakTracking ? new Throwable("Buffer acquired here") : null;
+    }
+
+    /**
+     * Allocates a new direct buffer.
+     */
+    private ByteBuffer allocate(int capacity) {
+        mAllocatedBytes.add(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+}
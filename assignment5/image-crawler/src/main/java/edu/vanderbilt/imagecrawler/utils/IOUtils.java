@@ -1,11 +1,11 @@
 package edu.vanderbilt.imagecrawler.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A Java utility class that provides IO helper methods.
@@ -21,6 +21,12 @@ public final class IOUtils {
      */
     private static final int COPY_BUFFER_LENGTH = 4096;
 
+    /**
+     * Length of the heap chunks used to move bytes between streams
+     * and direct buffers.
+     */
+    static final int CHUNK_LENGTH = 8192;
+
     /**
      * Helper method that copies data from the source stream to the
      * destination stream.
@@ -53,18 +59,121 @@ public final class IOUtils {
      * @return The copied bytes.
      */
     public static byte[] toBytes(InputStream in) {
-        // Creates a new ByteArrayOutputStream to write the downloaded
-        // contents to a byte array, which is a generic form of the
-        // image.
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            copy(in, out);
+        // Collect the downloaded contents in a pooled buffer so that
+        // the only heap array allocated is the exact-sized result.
+        try (PooledOutputStream out = new PooledOutputStream(capacityHint(in))) {
+            out.readFrom(in);
             return out.toByteArray();
         } catch (IOException e) {
             throw ExceptionUtils.unchecked(e);
         }
     }
 
+    /**
+     * Reads the source stream until its end into a buffer leased from
+     * the shared {@link BufferPool}. The returned buffer is ready to be
+     * read (its position is 0 and its limit is the number of bytes
+     * read) and must be closed once the bytes are no longer needed.
+     *
+     * @param in Input source stream.
+     * @return A lease on a buffer containing the copied bytes.
+     */
+    public static PooledBuffer toPooledBuffer(InputStream in) {
+        PooledBuffer pooled = BufferPool.instance().acquire(capacityHint(in));
+        try {
+            ByteBuffer buffer = pooled.buffer();
+            byte[] chunk = new byte[CHUNK_LENGTH];
+            for (int n; (n = in.read(chunk)) != -1; ) {
+                if (buffer.remaining() < n) {
+                    buffer = pooled.ensureCapacity(buffer.position() + n);
+                }
+                buffer.put(chunk, 0, n);
+            }
+            buffer.flip();
+            return pooled;
+        } catch (IOException | RuntimeException e) {
+            pooled.close();
+            throw ExceptionUtils.unchecked(e);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to the destination
+     * stream. The buffer's position is not modified.
+     *
+     * @param buffer The source buffer.
+     * @param out    Output destination stream.
+     */
+    public static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        ByteBuffer source = buffer.duplicate();
+        if (source.hasArray()) {
+            out.write(source.array(),
+                      source.arrayOffset() + source.position(),
+                      source.remaining());
+            return;
+        }
+
+        byte[] chunk = new byte[Math.min(CHUNK_LENGTH, source.remaining())];
+        while (source.hasRemaining()) {
+            int count = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, count);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    /**
+     * @return The initial buffer capacity used to read {@code in}.
+     */
+    private static int capacityHint(InputStream in) {
+        try {
+            return Math.max(CHUNK_LENGTH, in.available());
+        } catch (IOException e) {
+            return CHUNK_LENGTH;
+        }
+    }
+
+    /**
+     * Returns an input stream that reads the remaining bytes of the
+     * passed buffer without copying them. The buffer's position is
+     * not modified.
+     *
+     * @param buffer The source buffer.
+     * @return An input stream over the buffer contents.
+     */
+    public static InputStream toInputStream(ByteBuffer buffer) {
+        final ByteBuffer source = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                } else if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(len, source.remaining());
+                source.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) {
+                int count = (int) Math.max(0, Math.min(n, source.remaining()));
+                source.position(source.position() + count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return source.remaining();
+            }
+        };
+    }
+
     /**
      * Copies data from the passed file into a new byte array.
      *
@@ -4,10 +4,12 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
 import edu.vanderbilt.imagecrawler.platform.PlatformImage;
+import edu.vanderbilt.imagecrawler.platform.StorageCodec;
 import edu.vanderbilt.imagecrawler.transforms.Transform;
 
 /**
@@ -146,15 +148,21 @@ public class Image {
     }
 
     /**
-     * Applies all transforms for this image.
+     * Applies all transforms for this image. The platform image
+     * produces all results together, which is cheaper than calling
+     * {@link #applyTransform} for each type.
      *
      * @param types The types of transformations to perform.
-     * @return A list of transformed images.
+     * @return A list of transformed images, one per type.
      */
     public List<Image> applyTransforms(List<Transform.Type> types, Cache.Item item) {
-//		PlatformImage platformImage = mImage.applyTransforms(types, item);
-//		return new Image(platformImage);
-        return null;
+        List<PlatformImage> platformImages =
+                mImage.applyTransforms(types, item);
+        List<Image> images = new ArrayList<>(platformImages.size());
+        for (PlatformImage platformImage : platformImages) {
+            images.add(new Image(platformImage));
+        }
+        return images;
     }
 
     /**
@@ -167,6 +175,19 @@ public class Image {
         mImage.writeImage(outputStream);
     }
 
+    /**
+     * Writes the image bytes to the output stream in a cache storage
+     * format.
+     *
+     * @param outputStream Output stream to write to.
+     * @param codec The storage format.
+     * @throws IOException
+     */
+    public void writeImage(OutputStream outputStream, StorageCodec codec)
+        throws IOException {
+        mImage.writeImage(outputStream, codec);
+    }
+
     /**
      * @return The contained platform image (Android or Java).
      */
@@ -2,7 +2,6 @@ package edu.vanderbilt.imagecrawler.utils;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,15 +26,34 @@ public final class ImageUtils {
      * @return image byte array
      */
     public static byte[] toByteArray(BufferedImage bi, String format) {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(bi, format, baos);
-            return baos.toByteArray();
+        try (PooledImageOutputStream out = encode(bi, format)) {
+            return out.toByteArray();
         } catch (IOException e) {
             throw ExceptionUtils.unchecked(e);
         }
     }
 
+    /**
+     * Encodes a {@link BufferedImage} in memory using a buffer leased
+     * from the shared {@link BufferPool}. The caller must close the
+     * returned stream to return the buffer to the pool.
+     *
+     * @param bi     Buffered image input
+     * @param format Format (typically "jpg" or "png").
+     * @return A stream containing the encoded image
+     */
+    public static PooledImageOutputStream encode(BufferedImage bi, String format)
+        throws IOException {
+        PooledImageOutputStream out = new PooledImageOutputStream();
+        try {
+            ImageIO.write(bi, format, out);
+            return out;
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
     /**
      * Converts image byte[] to a {@link BufferedImage}.
      *
@@ -57,8 +75,7 @@ public final class ImageUtils {
      */
     public static File toFile(TransformedImage transformedImage) {
         try {
-            byte[] bytes = transformedImage.getBytes();
-            InputStream inputStream = new ByteArrayInputStream(bytes);
+            InputStream inputStream = transformedImage.getInputStream();
             BufferedImage bi = ImageIO.read(inputStream);
             String fileName = transformedImage.getTransformName() + "-" + transformedImage.getSourceName();
             File file = new File(fileName);
@@ -0,0 +1,284 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A small, dependency free compressor that produces and consumes the
+ * LZ4 block format. It only uses a hash table of recent 4 byte
+ * sequences and no entropy coding, so compression and decompression
+ * are many times faster than deflate, which is all that matters for
+ * the cache's raw image storage format.
+ * <p>
+ * The methods work on the remaining bytes of (heap or direct) {@link
+ * ByteBuffer}s using absolute indexing, so they are thread-safe as
+ * long as the buffers are not shared.
+ */
+public final class LzCompressor {
+    /**
+     * A Java utility class should define a private constructor.
+     */
+    private LzCompressor() {}
+
+    /**
+     * Format constants (see the LZ4 block format description).
+     */
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int RUN_MASK = 15;
+
+    /**
+     * Number of hash table entries (as a power of 2).
+     */
+    private static final int HASH_LOG = 12;
+
+    /**
+     * Controls how quickly the compressor skips over incompressible
+     * input (the step grows by 1 every 2^SKIP_TRIGGER misses).
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    /**
+     * Returns the largest number of bytes that compressing {@code
+     * length} bytes can produce.
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the remaining bytes of {@code src} into {@code dst},
+     * which must have at least {@link #maxCompressedLength(int)}
+     * bytes remaining. Both positions are advanced.
+     *
+     * @param src The bytes to compress.
+     * @param dst The destination buffer.
+     * @return The number of compressed bytes.
+     */
+    public static int compress(ByteBuffer src, ByteBuffer dst) {
+        final int base = src.position();
+        final int end = src.limit();
+        final int start = dst.position();
+        ByteBuffer literals = src.duplicate();
+
+        int anchor = base;
+        int out = start;
+
+        if (end - base > MF_LIMIT) {
+            // Holds the position (relative to base) of the last
+            // occurrence of each hashed 4 byte sequence. Stale or
+            // colliding entries are rejected by comparing the bytes.
+            int[] table = new int[1 << HASH_LOG];
+            int matchLimit = end - MF_LIMIT;
+            int copyLimit = end - LAST_LITERALS;
+            int i = base + 1;
+            int misses = 1 << SKIP_TRIGGER;
+
+            while (i < matchLimit) {
+                int sequence = src.getInt(i);
+                int h = hash(sequence);
+                int ref = base + table[h];
+                table[h] = i - base;
+
+                if (ref >= i
+                    || i - ref > MAX_OFFSET
+                    || src.getInt(ref) != sequence) {
+                    i += misses++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                misses = 1 << SKIP_TRIGGER;
+
+                // Extend the match backwards over pending literals.
+                while (i > anchor && ref > base
+                       && src.get(i - 1) == src.get(ref - 1)) {
+                    i--;
+                    ref--;
+                }
+
+                // Extend the match forwards, 8 bytes at a time while
+                // possible.
+                int matchEnd = i + MIN_MATCH;
+                int r = ref + MIN_MATCH;
+                long diff = 0;
+                while (matchEnd <= copyLimit - 8
+                       && (diff = src.getLong(matchEnd) ^ src.getLong(r)) == 0) {
+                    matchEnd += 8;
+                    r += 8;
+                }
+                if (diff != 0) {
+                    matchEnd += differingByte(src, diff);
+                } else {
+                    while (matchEnd < copyLimit && src.get(matchEnd) == src.get(r)) {
+                        matchEnd++;
+                        r++;
+                    }
+                }
+
+                out = writeSequence(literals, anchor, i - anchor,
+                                    dst, out, i - ref, matchEnd - i - MIN_MATCH);
+                anchor = i = matchEnd;
+            }
+        }
+
+        // The block always ends with a literal only sequence.
+        out = writeSequence(literals, anchor, end - anchor, dst, out, 0, -1);
+
+        src.position(end);
+        dst.position(out);
+        return out - start;
+    }
+
+    /**
+     * Decompresses the remaining bytes of {@code src}, which must be
+     * a complete LZ4 block, into {@code dst}. Both positions are
+     * advanced.
+     *
+     * @param src The compressed block.
+     * @param dst The destination buffer.
+     * @return The number of decompressed bytes.
+     * @throws IOException If the block is corrupt or doesn't fit in
+     *                     the remaining bytes of {@code dst}.
+     */
+    public static int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        final int end = src.limit();
+        final int start = dst.position();
+        ByteBuffer literals = src.duplicate();
+        ByteBuffer matches = dst.duplicate();
+
+        int in = src.position();
+        int out = start;
+
+        try {
+            while (in < end) {
+                int token = src.get(in++) & 0xff;
+
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src.get(in++) & 0xff;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                literals.limit(in + literalLength).position(in);
+                dst.position(out);
+                dst.put(literals);
+                in += literalLength;
+                out += literalLength;
+
+                if (in == end) {
+                    break;
+                }
+
+                int offset = (src.get(in++) & 0xff) | (src.get(in++) & 0xff) << 8;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src.get(in++) & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+
+                int ref = out - offset;
+                if (offset == 0 || ref < start) {
+                    throw new IOException("Corrupt LZ block: invalid match offset");
+                }
+                // An overlapping match repeats the last offset bytes,
+                // so it's copied in chunks that double in size, each
+                // starting at ref and ending before the copy target.
+                dst.position(out);
+                for (int copied = 0; copied < matchLength; ) {
+                    int chunk = Math.min(offset + copied, matchLength - copied);
+                    matches.limit(ref + chunk).position(ref);
+                    dst.put(matches);
+                    copied += chunk;
+                }
+                out += matchLength;
+            }
+        } catch (IndexOutOfBoundsException
+                 | BufferOverflowException
+                 | IllegalArgumentException e) {
+            // Thrown by the absolute accessors, bulk puts, and limit
+            // and position setters when a length runs past the end of
+            // either buffer.
+            throw new IOException("Corrupt LZ block", e);
+        }
+
+        src.position(end);
+        dst.position(out);
+        return out - start;
+    }
+
+    /**
+     * Writes one sequence (a literal run followed by a match) at index
+     * {@code out} of {@code dst}.
+     *
+     * @param matchLength The match length minus {@link #MIN_MATCH},
+     *                    or -1 for the final literal only sequence.
+     * @return The index following the sequence.
+     */
+    private static int writeSequence(ByteBuffer literals,
+                                     int anchor,
+                                     int literalLength,
+                                     ByteBuffer dst,
+                                     int out,
+                                     int offset,
+                                     int matchLength) {
+        int token = out++;
+        int tokenValue = Math.min(literalLength, RUN_MASK) << 4;
+        if (literalLength >= RUN_MASK) {
+            out = writeLength(dst, out, literalLength - RUN_MASK);
+        }
+
+        literals.limit(anchor + literalLength).position(anchor);
+        dst.position(out);
+        dst.put(literals);
+        out += literalLength;
+
+        if (matchLength >= 0) {
+            dst.put(out++, (byte) offset);
+            dst.put(out++, (byte) (offset >>> 8));
+            tokenValue |= Math.min(matchLength, RUN_MASK);
+            if (matchLength >= RUN_MASK) {
+                out = writeLength(dst, out, matchLength - RUN_MASK);
+            }
+        }
+
+        dst.put(token, (byte) tokenValue);
+        return out;
+    }
+
+    /**
+     * Writes the extension bytes of a literal or match length.
+     */
+    private static int writeLength(ByteBuffer dst, int out, int length) {
+        for (; length >= 255; length -= 255) {
+            dst.put(out++, (byte) 255);
+        }
+        dst.put(out++, (byte) length);
+        return out;
+    }
+
+    /**
+     * Returns the index of the first differing byte of two big or
+     * little endian longs whose XOR is {@code diff}.
+     */
+    private static int differingByte(ByteBuffer buffer, long diff) {
+        return (buffer.order() == ByteOrder.BIG_ENDIAN
+                ? Long.numberOfLeadingZeros(diff)
+                : Long.numberOfTrailingZeros(diff)) >>> 3;
+    }
+
+    /**
+     * Hashes a 4 byte sequence into a table index.
+     */
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -34,6 +34,15 @@ public class Options {
      */
     public boolean mLocalTransforms;
 
+    /**
+     * Controls whether the cache is warmed up from the access log of
+     * the previous crawl, and the access log of this crawl is saved
+     * for the next one.
+     * <p>
+     * Default: false.
+     */
+    public final boolean mWarmStart;
+
     /**
      * The max depth for the crawler.
      * <p>
@@ -52,6 +61,7 @@ public class Options {
         mDownloadDirName = builder.mDownloadDirName;
         mDebug = builder.mDiagnosticsEnabled;
         mLocalTransforms = builder.mLocalTransforms;
+        mWarmStart = builder.mWarmStart;
     }
 
     /**
@@ -82,6 +92,7 @@ public class Options {
         private String mDownloadDirName = DEFAULT_DOWNLOAD_DIR_NAME;
         private boolean mDiagnosticsEnabled = false;
         private boolean mLocalTransforms = true;
+        private boolean mWarmStart = false;
 
         private Builder() {
         }
@@ -125,6 +136,18 @@ public class Options {
             return this;
         }
 
+        /**
+         * Sets the {@code warmStart} boolean and returns a reference to this Builder
+         * so that the methods can be chained together.
+         *
+         * @param val the {@code warmStart} to set
+         * @return a reference to this Builder
+         */
+        public Builder warmStart(boolean val) {
+            mWarmStart = val;
+            return this;
+        }
+
         /**
          * Sets the {@code downloadPath} and returns a reference to this Builder so that the
          * methods can be chained together.
@@ -0,0 +1,110 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * A lease on a direct {@link ByteBuffer} from a {@link BufferPool}.
+ * Closing the lease returns the buffer to the pool, after which the
+ * buffer must no longer be used. A lease isn't thread-safe.
+ */
+public final class PooledBuffer
+       implements AutoCloseable {
+    /**
+     * State shared with the cleaner (which must not refer to the lease).
+     */
+    private final Lease mLease;
+
+    /**
+     * Returns the buffer to the pool when the lease is closed, or
+     * reports the leak when it becomes unreachable.
+     */
+    private final Cleaner.Cleanable mCleanable;
+
+    /**
+     * Constructor only called by {@link BufferPool}.
+     */
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        mLease = new Lease(pool, buffer, pool.site());
+        mCleanable = BufferPool.CLEANER.register(this, mLease);
+    }
+
+    /**
+     * @return The leased buffer.
+     * @throws IllegalStateException If the lease has been closed.
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer buffer = mLease.mBuffer;
+        if (mLease.mClosed) {
+            throw new IllegalStateException("Pooled buffer has been released");
+        }
+        return buffer;
+    }
+
+    /**
+     * Ensures that the leased buffer can hold at least {@code
+     * minCapacity} bytes. If it can't, the bytes before its position
+     * are copied to a larger pooled buffer, which keeps the position,
+     * and the old buffer is returned to the pool. The limit of the new
+     * buffer is its capacity.
+     *
+     * @param minCapacity The required capacity.
+     * @return The (possibly new) leased buffer.
+     */
+    public ByteBuffer ensureCapacity(int minCapacity) {
+        ByteBuffer buffer = buffer();
+        if (minCapacity <= buffer.capacity()) {
+            return buffer;
+        }
+
+        // Grow by at least a factor of 2 to amortize the copies.
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8,
+                                      Math.max(minCapacity, 2L * buffer.capacity()));
+        ByteBuffer larger = mLease.mPool.take(capacity);
+        buffer.flip();
+        larger.put(buffer);
+
+        mLease.mPool.recycle(buffer);
+        mLease.mBuffer = larger;
+        return larger;
+    }
+
+    /**
+     * Returns the buffer to the pool. Closing a lease more than once
+     * has no effect.
+     */
+    @Override
+    public void close() {
+        mLease.mClosed = true;
+        mCleanable.clean();
+    }
+
+    /**
+     * Cleaner action that returns the buffer of a closed lease to the
+     * pool. A lease that became unreachable without being closed only
+     * reports the leak; its buffer is dropped since it may still be
+     * referenced (e.g., by a view of it that outlived the lease).
+     */
+    private static class Lease implements Runnable {
+        final BufferPool mPool;
+        final Throwable mSite;
+        volatile ByteBuffer mBuffer;
+        volatile boolean mClosed;
+
+        Lease(BufferPool pool, ByteBuffer buffer, Throwable site) {
+            mPool = pool;
+            mBuffer = buffer;
+            mSite = site;
+        }
+
+        @Override
+        public void run() {
+            if (mClosed) {
+                mPool.recycle(mBuffer);
+            } else {
+                mClosed = true;
+                mPool.leaked(mBuffer, mSite);
+            }
+        }
+    }
+}
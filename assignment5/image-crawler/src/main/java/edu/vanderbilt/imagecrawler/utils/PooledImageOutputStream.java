@@ -0,0 +1,167 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * A seekable {@link javax.imageio.stream.ImageOutputStream} backed by
+ * a growable buffer leased from a {@link BufferPool}. Passing it to
+ * {@link javax.imageio.ImageIO#write} encodes an image in memory
+ * without ImageIO's temporary cache file or its heap cache, after
+ * which the encoded bytes can be copied to their destination with
+ * {@link #writeTo(OutputStream)}. Closing the stream returns the
+ * buffer to the pool.
+ */
+public class PooledImageOutputStream extends ImageOutputStreamImpl {
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /**
+     * The leased buffer (its position is only used for bulk copies).
+     */
+    private final PooledBuffer mBuffer;
+
+    /**
+     * Number of bytes in the stream.
+     */
+    private int mLength;
+
+    /**
+     * Constructor that leases a buffer from the shared pool.
+     */
+    public PooledImageOutputStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that leases a buffer from the shared pool.
+     *
+     * @param capacity The expected number of bytes.
+     */
+    public PooledImageOutputStream(int capacity) {
+        mBuffer = BufferPool.instance().acquire(capacity);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        flushBits();
+        ByteBuffer buffer = reserve(1);
+        buffer.put((int) streamPos, (byte) b);
+        advance(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        flushBits();
+        ByteBuffer buffer = reserve(len);
+        buffer.position((int) streamPos);
+        buffer.put(b, off, len);
+        advance(len);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= mLength) {
+            return -1;
+        }
+        return mBuffer.buffer().get((int) streamPos++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        } else if (streamPos >= mLength) {
+            return -1;
+        }
+
+        int count = (int) Math.min(len, mLength - streamPos);
+        ByteBuffer buffer = mBuffer.buffer();
+        buffer.position((int) streamPos);
+        buffer.get(b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return mLength;
+    }
+
+    /**
+     * Returns a read-only view of the stream contents. The view is
+     * only valid until more bytes are written or the stream is closed.
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer view = mBuffer.buffer().duplicate();
+        view.position(0).limit(mLength);
+        return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return A new heap array containing the stream contents.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[mLength];
+        toByteBuffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the stream contents to {@code out}.
+     *
+     * @param out The destination stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        IOUtils.write(toByteBuffer(), out);
+    }
+
+    /**
+     * Closes the stream and returns the buffer to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            mBuffer.close();
+        }
+    }
+
+    /**
+     * Ensures that {@code count} bytes can be written at the current
+     * stream position.
+     */
+    private ByteBuffer reserve(int count) throws IOException {
+        checkClosed();
+        long end = streamPos + count;
+        if (end > Integer.MAX_VALUE - 8) {
+            throw new IOException("Image too large for a pooled buffer");
+        }
+
+        ByteBuffer buffer = mBuffer.buffer();
+        if (end > buffer.capacity()) {
+            // Growing keeps the bytes before the buffer's position.
+            buffer.position(mLength);
+            buffer = mBuffer.ensureCapacity((int) end);
+        }
+        return buffer;
+    }
+
+    /**
+     * Advances the stream position after a write.
+     */
+    private void advance(int count) {
+        streamPos += count;
+        mLength = (int) Math.max(mLength, streamPos);
+    }
+}
@@ -0,0 +1,154 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream that collects its bytes in a growable buffer leased
+ * from a {@link BufferPool}, replacing {@link java.io.ByteArrayOutputStream}
+ * on paths that handle whole images. The collected bytes can be read
+ * back without copying through {@link #toByteBuffer()} or {@link
+ * #toInputStream()} until the stream is closed, which returns the
+ * buffer to the pool.
+ */
+public class PooledOutputStream extends OutputStream {
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 32 * 1024;
+
+    /**
+     * The leased buffer (its position is the stream size).
+     */
+    private final PooledBuffer mBuffer;
+
+    /**
+     * Constructor that leases a buffer from the shared pool.
+     */
+    public PooledOutputStream() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that leases a buffer from the shared pool.
+     *
+     * @param capacity The expected number of bytes.
+     */
+    public PooledOutputStream(int capacity) {
+        this(BufferPool.instance(), capacity);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pool     The pool to lease the buffer from.
+     * @param capacity The expected number of bytes.
+     */
+    public PooledOutputStream(BufferPool pool, int capacity) {
+        mBuffer = pool.acquire(capacity);
+    }
+
+    @Override
+    public void write(int b) {
+        ByteBuffer buffer = mBuffer.buffer();
+        if (!buffer.hasRemaining()) {
+            buffer = mBuffer.ensureCapacity(buffer.capacity() + 1);
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ByteBuffer buffer = mBuffer.buffer();
+        if (buffer.remaining() < len) {
+            buffer = mBuffer.ensureCapacity(buffer.position() + len);
+        }
+        buffer.put(b, off, len);
+    }
+
+    /**
+     * Writes the remaining bytes of {@code src}.
+     *
+     * @param src The source buffer (its position is advanced).
+     */
+    public void write(ByteBuffer src) {
+        ByteBuffer buffer = mBuffer.buffer();
+        if (buffer.remaining() < src.remaining()) {
+            buffer = mBuffer.ensureCapacity(buffer.position() + src.remaining());
+        }
+        buffer.put(src);
+    }
+
+    /**
+     * Reads {@code in} until its end.
+     *
+     * @param in The source stream.
+     * @return The number of bytes read.
+     */
+    public long readFrom(InputStream in) throws IOException {
+        long count = 0;
+        ByteBuffer buffer = mBuffer.buffer();
+        byte[] chunk = new byte[IOUtils.CHUNK_LENGTH];
+        for (int n; (n = in.read(chunk)) != -1; count += n) {
+            if (buffer.remaining() < n) {
+                buffer = mBuffer.ensureCapacity(buffer.position() + n);
+            }
+            buffer.put(chunk, 0, n);
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of bytes written.
+     */
+    public int size() {
+        return mBuffer.buffer().position();
+    }
+
+    /**
+     * Returns a read-only view of the bytes written so far. The view
+     * is only valid until more bytes are written or the stream is
+     * closed.
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer view = mBuffer.buffer().duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns an input stream over the bytes written so far (see
+     * {@link #toByteBuffer()}).
+     */
+    public InputStream toInputStream() {
+        return IOUtils.toInputStream(toByteBuffer());
+    }
+
+    /**
+     * @return A new heap array containing the bytes written so far.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[size()];
+        toByteBuffer().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes written so far to {@code out}.
+     *
+     * @param out The destination stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        IOUtils.write(toByteBuffer(), out);
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     */
+    @Override
+    public void close() {
+        mBuffer.close();
+    }
+}
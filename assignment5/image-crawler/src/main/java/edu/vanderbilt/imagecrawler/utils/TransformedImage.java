@@ -1,6 +1,11 @@
 package edu.vanderbilt.imagecrawler.utils;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 /**
@@ -56,9 +61,41 @@ public class TransformedImage {
                             BufferedImage bufferedImage) {
         this.sourceName = sourceName;
         this.transformName = transformName;
-        this.encodedBytes = Base64
-            .getEncoder()
-            .encodeToString(ImageUtils.toByteArray(bufferedImage, "png"));
+        // Base64 encode the image straight from the pooled buffer
+        // holding the encoded PNG.
+        try (PooledImageOutputStream png =
+             ImageUtils.encode(bufferedImage, "png")) {
+            this.encodedBytes = encode(png.toByteBuffer());
+        } catch (IOException e) {
+            throw ExceptionUtils.unchecked(e);
+        }
+    }
+
+    /**
+     * Base64 encodes the remaining bytes of a (direct) buffer into a
+     * String, allocating only the exact-sized encoded array.
+     */
+    private static String encode(ByteBuffer buffer) throws IOException {
+        byte[] encoded = new byte[4 * ((buffer.remaining() + 2) / 3)];
+        OutputStream sink = new OutputStream() {
+                private int mPosition;
+
+                @Override
+                public void write(int b) {
+                    encoded[mPosition++] = (byte) b;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    System.arraycopy(b, off, encoded, mPosition, len);
+                    mPosition += len;
+                }
+            };
+
+        try (OutputStream out = Base64.getEncoder().wrap(sink)) {
+            IOUtils.write(buffer, out);
+        }
+        return new String(encoded, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -116,6 +153,40 @@ public class TransformedImage {
         return Base64.getDecoder().decode(encodedBytes);
     }
 
+    /**
+     * Returns an input stream that decodes the image bytes while they
+     * are read, without materializing them in a byte array.
+     *
+     * @return Decoded image bytes stream
+     */
+    public InputStream getInputStream() {
+        String encoded = encodedBytes;
+        return Base64.getDecoder().wrap(new InputStream() {
+                private int mIndex;
+
+                @Override
+                public int read() {
+                    return mIndex < encoded.length()
+                        ? encoded.charAt(mIndex++) & 0xff
+                        : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    } else if (mIndex >= encoded.length()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, encoded.length() - mIndex);
+                    for (int i = 0; i < count; i++) {
+                        b[off + i] = (byte) encoded.charAt(mIndex++);
+                    }
+                    return count;
+                }
+            });
+    }
+
     /**
      * Encodes and saved passed image bytes.
      *
@@ -15,6 +15,7 @@ import java.util.Objects;
 import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
 import edu.vanderbilt.imagecrawler.utils.IOUtils;
 import edu.vanderbilt.imagecrawler.utils.Image;
+import edu.vanderbilt.imagecrawler.utils.PooledBuffer;
 import edu.vanderbilt.imagecrawler.utils.TransformException;
 import edu.vanderbilt.imagecrawler.utils.TransformedImage;
 import io.reactivex.rxjava3.core.Single;
@@ -23,6 +24,7 @@ import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.logging.HttpLoggingInterceptor;
+import okio.BufferedSink;
 import reactor.core.publisher.Mono;
 import retrofit2.Call;
 import retrofit2.Response;
@@ -87,7 +89,10 @@ public class RemoteDataSource {
     }
 
     /**
-     * Builds a {@link MultipartBody.Part} containing the passed image bytes.
+     * Builds a {@link MultipartBody.Part} containing the passed image
+     * bytes. The bytes are held in a pooled buffer, so the part should
+     * be passed to {@link #release(MultipartBody.Part)} once the request
+     * has completed.
      *
      * @param imageCrawler The image crawler instance.
      * @param image        The base image to be transformed.
@@ -98,12 +103,12 @@ public class RemoteDataSource {
         Image image) {
 
         // Get an input stream for the source image.
-        byte[] bytes;
+        PooledBuffer bytes;
         try (InputStream inputStream = imageCrawler
             .mapUriToInputStream(image.getSourceUrl().toString())) {
 
             // Get the image bytes from the input stream.
-            bytes = IOUtils.toBytes(inputStream);
+            bytes = IOUtils.toPooledBuffer(inputStream);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -112,14 +117,27 @@ public class RemoteDataSource {
         String fileName = image.getFileName();
 
         // Build a multipart request body containing the image bytes.
-        RequestBody requestBody = RequestBody
-            .create(bytes, MediaType.parse("multipart/form-data"));
+        RequestBody requestBody =
+            new PooledRequestBody(bytes,
+                                  MediaType.parse("multipart/form-data"));
 
         // Create the request part for the image bytes request body.
         return MultipartBody.Part
             .createFormData("image", fileName, requestBody);
     }
 
+    /**
+     * Returns the pooled buffer held by a part built by {@link
+     * #buildMultipartBodyPart(ImageCrawler, Image)} to the pool.
+     *
+     * @param part A multipart body part.
+     */
+    public static void release(MultipartBody.Part part) {
+        if (part.body() instanceof PooledRequestBody) {
+            ((PooledRequestBody) part.body()).close();
+        }
+    }
+
     /**
      * @return An OkHttpClient that supports token authentication.
      */
@@ -180,12 +198,13 @@ public class RemoteDataSource {
         Boolean parallel
     ) {
         Response<List<TransformedImage>> response;
+        MultipartBody.Part part = buildMultipartBodyPart(imageCrawler, image);
 
         try {
             response =
                 api.applyTransforms(
                     transformNames,
-                    buildMultipartBodyPart(imageCrawler, image),
+                    part,
                     parallel
                 ).execute();
 
@@ -203,6 +222,45 @@ public class RemoteDataSource {
             // An unexpected problem has occurred taking
             // to server (ConnectionException, etc.).
             throw new RuntimeException(e);
+        } finally {
+            release(part);
+        }
+    }
+
+    /**
+     * A request body that writes image bytes held in a pooled buffer.
+     */
+    private static class PooledRequestBody extends RequestBody {
+        private final PooledBuffer mBytes;
+        private final MediaType mContentType;
+
+        PooledRequestBody(PooledBuffer bytes, MediaType contentType) {
+            mBytes = bytes;
+            mContentType = contentType;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mContentType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mBytes.buffer().remaining();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Write a duplicate so that the body can be written again
+            // (e.g., when a request is retried).
+            sink.write(mBytes.buffer().duplicate());
+        }
+
+        /**
+         * Returns the buffer to the pool.
+         */
+        void close() {
+            mBytes.close();
         }
     }
 
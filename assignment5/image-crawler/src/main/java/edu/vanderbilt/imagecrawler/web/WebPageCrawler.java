@@ -4,6 +4,7 @@ import static java.util.stream.Collectors.toList;
 import static edu.vanderbilt.imagecrawler.crawlers.Crawler.Type.PAGE;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
@@ -12,12 +13,15 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 import edu.vanderbilt.imagecrawler.crawlers.Crawler;
 import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
 import edu.vanderbilt.imagecrawler.platform.Controller;
+import edu.vanderbilt.imagecrawler.platform.CrawlResult;
+import edu.vanderbilt.imagecrawler.platform.NegativeCache;
 import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
 
 /**
@@ -32,6 +36,17 @@ public class WebPageCrawler
      */
     private final Function<String, InputStream> mMapUrlToStream;
 
+    /**
+     * Optional cache of recently failed fetches (may be null).
+     */
+    private final NegativeCache mNegativeCache;
+
+    /**
+     * Optional consumer that receives an ERROR result for each page
+     * that can't be fetched (may be null).
+     */
+    private final Consumer<CrawlResult> mConsumer;
+
     /**
      * Constructor required for handling platform dependent local crawling.
      *
@@ -39,16 +54,71 @@ public class WebPageCrawler
      *                       string to an InputStream.
      */
     public WebPageCrawler(Function<String, InputStream> mapUrlToStream) {
+        this(mapUrlToStream, null, null);
+    }
+
+    /**
+     * Constructor that also skips pages whose fetch recently failed.
+     *
+     * @param mapUrlToStream A platform dependent function that mas a uri
+     *                       string to an InputStream.
+     * @param negativeCache  Records failed fetches (may be null).
+     * @param consumer       Receives an ERROR result for each failed or
+     *                       skipped page (may be null).
+     */
+    public WebPageCrawler(Function<String, InputStream> mapUrlToStream,
+                          @Nullable NegativeCache negativeCache,
+                          @Nullable Consumer<CrawlResult> consumer) {
         mMapUrlToStream = mapUrlToStream;
+        mNegativeCache = negativeCache;
+        mConsumer = consumer;
     }
 
     /**
      * @return A container that wraps the HTML document associated
-     * with the {@code pageUri}.
+     * with the {@code pageUri}, or null if fetching the page recently
+     * failed (see {@link NegativeCache}).
      */
     public Page getPage(String uri) {
         ImageCrawler.throwExceptionIfCancelled();
 
+        if (mNegativeCache == null) {
+            return fetchPage(uri);
+        }
+
+        // Don't fetch known-bad pages again until their backoff expires.
+        NegativeCache.Failure failure = mNegativeCache.get(uri);
+        if (failure != null) {
+            reportError(uri, failure.getReason(), failure.getException());
+            return null;
+        }
+
+        try {
+            Page page = fetchPage(uri);
+            mNegativeCache.recordSuccess(uri);
+            return page;
+        } catch (RuntimeException e) {
+            failure = mNegativeCache.recordFailure(uri, e);
+            if (failure != null) {
+                reportError(uri, failure.getReason(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends an ERROR result for a page to the consumer (if any).
+     */
+    private void reportError(String uri, String reason, Exception e) {
+        if (mConsumer != null) {
+            CrawlResult.submitError(mConsumer, uri, reason, e);
+        }
+    }
+
+    /**
+     * Fetches and parses the page associated with {@code uri}.
+     */
+    private Page fetchPage(String uri) {
         if (mMapUrlToStream != null) {
             // Web page is read from a local source requiring
             // requiring the web page to be read from an input
@@ -1,12 +1,12 @@
 package admin;
 
-import static admin.AdminHelpers.copyDir;
 import static admin.AdminHelpers.info;
 import static admin.Directories.getAndroidGroundTruthDir;
 import static admin.Directories.getAndroidLocalWebPagesDir;
 import static admin.Directories.getJavaGroundTruthDir;
 import static admin.Directories.getJavaLocalWebPagesDir;
 import static edu.vanderbilt.imagecrawler.common.AdminUtils.buildLocalWebPages;
+import static edu.vanderbilt.imagecrawler.common.AdminUtils.exportCacheDir;
 
 import java.io.File;
 
@@ -59,8 +59,8 @@ public class AssignmentBuilder {
 
         // Clone the downloaded files into the ground-truth directories.
         info("Cloning downloaded dir to ground-truth dir ...");
-        copyDir(controller.getCacheDir(), getJavaGroundTruthDir());
-        copyDir(controller.getCacheDir(), getAndroidGroundTruthDir());
+        exportCacheDir(controller.getCacheDir(), getJavaGroundTruthDir());
+        exportCacheDir(controller.getCacheDir(), getAndroidGroundTruthDir());
 
         // Build local web-pages directories that can be used for a local crawl.
         info("Cloning downloaded dir to web-pages dir ...");
@@ -0,0 +1,104 @@
+package edu.vanderbilt.imagecrawler.common
+
+import edu.vanderbilt.imagecrawler.platform.Cache.NOTAG
+import edu.vanderbilt.imagecrawler.platform.JavaPlatform
+import edu.vanderbilt.imagecrawler.platform.StorageCodec
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import javax.imageio.ImageIO
+
+class AdminUtilsTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private val image = BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB).apply {
+        repeat(8) { x -> repeat(8) { y -> setRGB(x, y, (0xFF shl 24) or (x * 30 shl 16) or (y * 30)) } }
+    }
+
+    /**
+     * Writes [image] to [file] the way the cache stores it with [codec].
+     */
+    private fun store(file: File, codec: StorageCodec) {
+        val png = ByteArrayOutputStream().also { ImageIO.write(image, "png", it) }.toByteArray()
+        file.outputStream().use {
+            JavaPlatform().newImage(ByteBuffer.wrap(png), null).writeImage(it, codec)
+        }
+    }
+
+    private fun assertPng(file: File) {
+        assertThat(file.readBytes().copyOf(4)).isEqualTo(byteArrayOf(0x89.toByte(), 'P'.code.toByte(), 'N'.code.toByte(), 'G'.code.toByte()))
+        val exported = ImageIO.read(file)
+        repeat(8) { x -> repeat(8) { y -> assertThat(exported.getRGB(x, y)).isEqualTo(image.getRGB(x, y)) } }
+    }
+
+    @Test
+    fun `raw originals are exported to local web pages as png`() {
+        val cache = folder.newFolder("cache")
+        val pages = folder.newFolder("pages")
+        store(File(cache, "$NOTAG-host%2Fimgs%2Fa.png"), StorageCodec.LZ)
+        store(File(cache, "$NOTAG-host%2Fb.png"), StorageCodec.PNG)
+        store(File(cache, "gray-host%2Fc.png"), StorageCodec.RAW)
+
+        AdminUtils.buildLocalWebPages(cache, pages)
+
+        assertPng(File(pages, "host/imgs/a.png"))
+        assertPng(File(pages, "host/b.png"))
+        assertThat(File(pages, "host/c.png")).doesNotExist()
+        assertThat(File(pages, "host/index.html")).exists()
+    }
+
+    @Test
+    fun `every cached image is exported as png`() {
+        val cache = folder.newFolder("cache")
+        val dest = folder.newFolder("dest")
+        File(cache, "ab").mkdir()
+        store(File(cache, "ab/gray-host%2Fa.png"), StorageCodec.RAW)
+        store(File(cache, "$NOTAG-host%2Fb.png"), StorageCodec.LZ)
+
+        AdminUtils.exportCacheDir(cache, dest)
+
+        assertPng(File(dest, "ab/gray-host%2Fa.png"))
+        assertPng(File(dest, "$NOTAG-host%2Fb.png"))
+    }
+
+    @Test
+    fun `encoded images are copied byte for byte`() {
+        val cache = folder.newFolder("cache")
+        val dest = folder.newFolder("dest")
+        val jpeg = File(cache, "$NOTAG-host%2Fa.jpg")
+        val rgb = BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB).apply { graphics.drawImage(image, 0, 0, null) }
+        ImageIO.write(rgb, "jpg", jpeg)
+        store(File(cache, "$NOTAG-host%2Fb.png"), StorageCodec.PNG)
+
+        assertThat(AdminUtils.exportCacheDir(cache, dest)).isEqualTo(2)
+
+        assertThat(File(dest, jpeg.name).readBytes()).isEqualTo(jpeg.readBytes())
+        assertThat(File(dest, "$NOTAG-host%2Fb.png").readBytes())
+            .isEqualTo(File(cache, "$NOTAG-host%2Fb.png").readBytes())
+    }
+
+    @Test
+    fun `files that aren't images are skipped`() {
+        val cache = folder.newFolder("cache")
+        val dest = folder.newFolder("dest")
+        File(cache, "image-cache.journal").writeText("not an image")
+        File(cache, "empty").createNewFile()
+        File(cache, "$NOTAG-host%2Fcorrupt.png").writeBytes(
+            ByteBuffer.allocate(StorageCodec.HEADER_LENGTH + 4).also {
+                StorageCodec.writeHeader(it, StorageCodec.LZ, 100, 100, false)
+            }.array())
+        store(File(cache, "$NOTAG-host%2Fa.png"), StorageCodec.LZ)
+
+        assertThat(AdminUtils.exportCacheDir(cache, dest)).isEqualTo(1)
+
+        assertPng(File(dest, "$NOTAG-host%2Fa.png"))
+        assertThat(dest.list()).containsExactly("$NOTAG-host%2Fa.png")
+    }
+}
@@ -0,0 +1,149 @@
+package edu.vanderbilt.imagecrawler.common;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import kotlin.Unit;
+
+/**
+ * Compares the scalar {@link Filters} loops with the SIMD kernels in
+ * {@link FilterKernels#vectorized()} on images of 1, 12, and 48 megapixels (or the
+ * sizes passed on the command line) and reports the time per pixel.
+ * Before timing, each kernel is checked to produce exactly the same
+ * pixels as its scalar loop. Progress is reported to a sink that
+ * forwards it once per percent, like the crawler's images do.
+ * <p>
+ * This is not a unit test. Run it from the IDE or with
+ * <pre>
+ *   java --add-modules jdk.incubator.vector -Xmx1g ... \
+ *       edu.vanderbilt.imagecrawler.common.FiltersBenchmark [megapixels...]
+ * </pre>
+ */
+public class FiltersBenchmark {
+    /**
+     * Number of timed runs of each filter (the best run is reported).
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * Number of untimed runs on a 1 megapixel image that let the JIT
+     * compile (and intrinsify) the kernels before anything is timed.
+     */
+    private static final int WARMUP_RUNS = 50;
+
+    /**
+     * The last progress reported, which keeps the JIT from discarding
+     * the progress reports.
+     */
+    private static volatile float sLastProgress;
+
+    private interface Filter {
+        void apply(int[] pixels);
+    }
+
+    public static void main(String[] args) {
+        FilterKernels kernels = FilterKernels.vectorized();
+        if (kernels == null) {
+            throw new IllegalStateException(
+                "The Vector API is not available; "
+                + "run with --add-modules jdk.incubator.vector");
+        }
+
+        int[] sizes = args.length > 0
+            ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+            : new int[]{1, 12, 48};
+
+        System.out.printf("%d int lanes (ns per pixel, best of %d)%n",
+                          kernels.lanes(), RUNS);
+        System.out.printf("%-6s %-10s %10s %10s %8s%n",
+                          "MP", "filter", "scalar", "vector", "speedup");
+
+        String[] names = {"grayScale", "sepia", "tint"};
+        Filter[] scalar = {
+            p -> Filters.grayScaleScalar(p, 0, p.length, true, progress()),
+            p -> Filters.sepiaScalar(p, 0, p.length, true, progress()),
+            p -> Filters.tintScalar(p, 0, p.length, true, .2f, .5f, .8f, progress())
+        };
+        Filter[] vector = {
+            p -> kernels.grayScale(p, 0, p.length, true, progress()),
+            p -> kernels.sepia(p, 0, p.length, true, progress()),
+            p -> kernels.tint(p, 0, p.length, true, .2f, .5f, .8f, progress())
+        };
+
+        int[] warmup = randomPixels(1_000_000);
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            for (int f = 0; f < names.length; f++) {
+                scalar[f].apply(warmup.clone());
+                vector[f].apply(warmup.clone());
+            }
+        }
+
+        for (int megapixels : sizes) {
+            int[] source = randomPixels(megapixels * 1_000_000);
+            int[] pixels = new int[source.length];
+
+            for (int f = 0; f < names.length; f++) {
+                compare(megapixels, names[f], source, pixels, scalar[f], vector[f]);
+            }
+        }
+    }
+
+    private static void compare(int megapixels,
+                                String name,
+                                int[] source,
+                                int[] pixels,
+                                Filter scalar,
+                                Filter vector) {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        scalar.apply(pixels);
+        int[] expected = pixels.clone();
+        System.arraycopy(source, 0, pixels, 0, source.length);
+        vector.apply(pixels);
+        if (!Arrays.equals(expected, pixels)) {
+            throw new AssertionError(name + ": vector result differs from scalar");
+        }
+
+        double scalarNs = time(scalar, source, pixels) / source.length;
+        double vectorNs = time(vector, source, pixels) / source.length;
+        System.out.printf("%-6d %-10s %10.3f %10.3f %7.1fx%n",
+                          megapixels, name, scalarNs, vectorNs,
+                          scalarNs / vectorNs);
+    }
+
+    /**
+     * @return The best time of {@link #RUNS} runs in nanoseconds.
+     */
+    private static double time(Filter filter, int[] source, int[] pixels) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            System.arraycopy(source, 0, pixels, 0, source.length);
+            long start = System.nanoTime();
+            filter.apply(pixels);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * @return A new progress sink for one filter call.
+     */
+    private static ProgressSink progress() {
+        return ProgressSink.percent(1, progress -> {
+            sLastProgress = progress;
+            return Unit.INSTANCE;
+        });
+    }
+
+    /**
+     * @return Random ARGB pixels, 1/16 of which are fully transparent.
+     */
+    private static int[] randomPixels(int count) {
+        Random random = new Random(42);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            int pixel = random.nextInt();
+            pixels[i] = (i & 15) == 0 ? pixel & 0x00FFFFFF : pixel | 0x01000000;
+        }
+        return pixels;
+    }
+}
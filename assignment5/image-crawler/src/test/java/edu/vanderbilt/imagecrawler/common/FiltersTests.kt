@@ -0,0 +1,36 @@
+package edu.vanderbilt.imagecrawler.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class FiltersTests {
+    @Test
+    fun `applyAll matches applying each filter on its own`() {
+        val filters = listOf(Filters.GRAY_SCALE,
+                             Filters.SEPIA,
+                             Filters.tintFilter(.3f, .6f, 1f),
+                             Filters.chain(Filters.GRAY_SCALE, Filters.SEPIA),
+                             Filters.SEPIA)
+
+        listOf(1000, ParallelFilter.PARALLEL_THRESHOLD + 4321).forEach { size ->
+            listOf(true, false).forEach { alpha ->
+                val source = Random(size).let { random -> IntArray(size) { random.nextInt() } }
+                val copy = source.copyOf()
+                var progress = 0f
+
+                val outputs = Filters.applyAll(source, alpha, filters, ProgressSink.percent(10) { progress = it })
+
+                assertThat(source).isEqualTo(copy)
+                assertThat(progress).isEqualTo(1f)
+                val expected = listOf(
+                    Filters.grayScale(copy.copyOf(), alpha, ProgressSink.NONE),
+                    Filters.sepia(copy.copyOf(), alpha, ProgressSink.NONE),
+                    Filters.tint(copy.copyOf(), alpha, .3f, .6f, 1f, ProgressSink.NONE),
+                    Filters.sepia(Filters.grayScale(copy.copyOf(), alpha, ProgressSink.NONE), alpha, ProgressSink.NONE),
+                    Filters.sepia(copy.copyOf(), alpha, ProgressSink.NONE))
+                outputs.zip(expected).forEach { (output, pixels) -> assertThat(output).isEqualTo(pixels) }
+            }
+        }
+    }
+}
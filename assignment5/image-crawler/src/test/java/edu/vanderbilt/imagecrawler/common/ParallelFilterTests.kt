@@ -0,0 +1,166 @@
+package edu.vanderbilt.imagecrawler.common
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.random.Random
+
+class ParallelFilterTests {
+    /**
+     * An image just small enough to be filtered on the calling thread,
+     * and one that is split into many stripes (with a partial tile at
+     * the end).
+     */
+    private val sizes = listOf(ParallelFilter.PARALLEL_THRESHOLD - 1,
+                               4 * ParallelFilter.PARALLEL_THRESHOLD + 123)
+
+    private fun pixels(size: Int) = Random(size).let { random -> IntArray(size) { random.nextInt() } }
+
+    /**
+     * The ranges of pixels each kernel call was given.
+     */
+    private val stripes = Collections.synchronizedList(mutableListOf<IntRange>())
+
+    /**
+     * Applies [filter] to [pixels] in stripes as if there were
+     * [PARALLELISM] CPUs, recording the stripes.
+     */
+    private fun parallel(pixels: IntArray,
+                         progress: ProgressSink = ProgressSink.NONE,
+                         filter: (IntArray, Int, Int, ProgressSink) -> Unit) =
+        ParallelFilter.apply(pixels, progress, { stripe, from, to, stripeProgress ->
+            stripes.add(from until to)
+            filter(stripe, from, to, stripeProgress)
+        }, PARALLELISM)
+
+    @After
+    fun after() {
+        setCancelled(false)
+        Thread.interrupted()
+    }
+
+    private fun setCancelled(cancelled: Boolean) {
+        ImageCrawler::class.java.getDeclaredField("mCancelled").run {
+            isAccessible = true
+            setBoolean(null, cancelled)
+        }
+    }
+
+    @Test
+    fun `parallel filters match the sequential filters`() {
+        sizes.forEach { size ->
+            listOf(true, false).forEach { alpha ->
+                val source = pixels(size)
+                fun check(parallel: (IntArray, Int, Int, ProgressSink) -> Unit,
+                          sequential: (IntArray) -> Unit) {
+                    val expected = source.copyOf().also(sequential)
+                    assertThat(parallel(source.copyOf(), filter = parallel)).isEqualTo(expected)
+                }
+
+                check({ p, from, to, s -> Filters.grayScale(p, from, to, alpha, s) },
+                      { Filters.grayScaleScalar(it, 0, size, alpha, ProgressSink.NONE) })
+                check({ p, from, to, s -> Filters.sepia(p, from, to, alpha, s) },
+                      { Filters.sepiaScalar(it, 0, size, alpha, ProgressSink.NONE) })
+                check({ p, from, to, s -> Filters.tint(p, from, to, alpha, .2f, .5f, 1f, s) },
+                      { Filters.tintScalar(it, 0, size, alpha, .2f, .5f, 1f, ProgressSink.NONE) })
+                check({ p, from, to, s -> Filters.tint(p, from, to, alpha, 1.5f, .5f, 0f, s) },
+                      { Filters.tintScalar(it, 0, size, alpha, 1.5f, .5f, 0f, ProgressSink.NONE) })
+            }
+        }
+    }
+
+    @Test
+    fun `the public filters match the sequential filters`() {
+        sizes.forEach { size ->
+            val source = pixels(size)
+            assertThat(Filters.grayScale(source.copyOf(), true, ProgressSink.NONE))
+                .isEqualTo(Filters.grayScaleScalar(source.copyOf(), 0, size, true, ProgressSink.NONE))
+            assertThat(Filters.sepia(source.copyOf(), false, ProgressSink.NONE))
+                .isEqualTo(Filters.sepiaScalar(source.copyOf(), 0, size, false, ProgressSink.NONE))
+        }
+    }
+
+    @Test
+    fun `small images are filtered on the calling thread in one range`() {
+        val caller = Thread.currentThread()
+        val threads = mutableListOf<Thread>()
+        parallel(IntArray(sizes[0])) { _, _, _, _ -> threads.add(Thread.currentThread()) }
+
+        assertThat(stripes).containsExactly(0 until sizes[0])
+        assertThat(threads).containsExactly(caller)
+    }
+
+    @Test
+    fun `large images are split into aligned stripes covering every pixel once`() {
+        val size = sizes[1]
+        val counts = parallel(IntArray(size)) { pixels, from, to, _ ->
+            for (i in from until to) pixels[i]++
+        }
+
+        assertThat(counts).containsOnly(1)
+        assertThat(stripes.size).isGreaterThan(1)
+        stripes.forEach {
+            assertThat(it.first % Filters.TILE).isZero()
+            assertThat(it.count()).isGreaterThanOrEqualTo(ParallelFilter.MIN_STRIPE / 2)
+        }
+    }
+
+    @Test
+    fun `progress of all stripes is combined`() {
+        val size = sizes[1]
+        val reports = mutableListOf<Pair<Int, Int>>()
+        val inside = AtomicBoolean()
+        val overlapped = AtomicBoolean()
+
+        parallel(IntArray(size), { done, total ->
+            if (!inside.compareAndSet(false, true)) overlapped.set(true)
+            reports.add(done to total)
+            inside.set(false)
+        }) { pixels, from, to, progress ->
+            // Report per tile, except for the last (partial) tile of
+            // each stripe, which the filter must make up for.
+            for (start in from until to step Filters.TILE) {
+                if (start + Filters.TILE < to) {
+                    progress.progress(start + Filters.TILE - from, to - from)
+                }
+            }
+        }
+
+        assertThat(overlapped.get()).isFalse()
+        assertThat(reports.map { it.second }).containsOnly(size)
+        assertThat(reports.map { it.first }).isSorted()
+        assertThat(reports.last().first).isEqualTo(size)
+        assertThat(reports.size).isGreaterThan(stripes.size)
+    }
+
+    @Test
+    fun `a failing stripe fails the whole filter`() {
+        assertThatThrownBy {
+            parallel(IntArray(sizes[1])) { _, from, _, _ ->
+                if (from > 0) throw CancellationException("stopped")
+            }
+        }.isInstanceOf(CancellationException::class.java)
+    }
+
+    @Test
+    fun `a cancelled crawl interrupts the caller of a parallel filter`() {
+        setCancelled(true)
+        val source = pixels(sizes[1])
+
+        val result = parallel(source.copyOf()) { p, from, to, s -> Filters.sepia(p, from, to, true, s) }
+
+        // The stripes run to completion, and the cancellation seen by
+        // the pool threads is reported to the caller.
+        assertThat(Thread.interrupted()).isTrue()
+        assertThat(result).isEqualTo(Filters.sepiaScalar(source, 0, source.size, true, ProgressSink.NONE))
+    }
+
+    private companion object {
+        const val PARALLELISM = 4
+    }
+}
@@ -0,0 +1,95 @@
+package edu.vanderbilt.imagecrawler.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+
+class ProgressSinkTests {
+    private val reports = mutableListOf<Float>()
+
+    /**
+     * Reports progress to [sink] every [step] pixels of [total].
+     */
+    private fun feed(sink: ProgressSink, total: Int, step: Int) {
+        for (done in step..total step step) {
+            sink.progress(done, total)
+        }
+        if (total % step != 0) {
+            sink.progress(total, total)
+        }
+    }
+
+    @Test
+    fun `percent sinks report once per stride`() {
+        feed(ProgressSink.percent(10) { reports.add(it) }, 1000, 7)
+
+        // Only the final update may come sooner.
+        assertThat(reports.size).isBetween(10, 11)
+        reports.dropLast(1).zipWithNext().forEach { (previous, next) ->
+            assertThat(next - previous).isGreaterThanOrEqualTo(.1f - 1e-6f)
+        }
+        assertThat(reports.last()).isEqualTo(1f)
+    }
+
+    @Test
+    fun `row sinks report once per stride of rows`() {
+        // 3 rows of 100 pixels per report.
+        feed(ProgressSink.rows(3, 100) { reports.add(it) }, 100 * 100, 50)
+
+        assertThat(reports.first()).isEqualTo(.005f)
+        reports.dropLast(1).zipWithNext().forEach { (previous, next) ->
+            assertThat(next - previous).isGreaterThanOrEqualTo(.03f - 1e-6f)
+        }
+        assertThat(reports.size).isEqualTo(35)
+        assertThat(reports.last()).isEqualTo(1f)
+    }
+
+    @Test
+    fun `the final update always fires`() {
+        val sink = ProgressSink.percent(50) { reports.add(it) }
+        sink.progress(600, 1000)
+        sink.progress(900, 1000)
+        sink.progress(1000, 1000)
+
+        assertThat(reports).containsExactly(.6f, 1f)
+
+        // A stride larger than the image.
+        reports.clear()
+        feed(ProgressSink.rows(1000, 1000) { reports.add(it) }, 5000, 1000)
+        assertThat(reports).containsExactly(.2f, 1f)
+    }
+
+    @Test
+    fun `tiny images report every update`() {
+        feed(ProgressSink.percent(1) { reports.add(it) }, 4, 1)
+
+        assertThat(reports).containsExactly(.25f, .5f, .75f, 1f)
+    }
+
+    @Test
+    fun `strides must be positive`() {
+        assertThatThrownBy { ProgressSink.percent(0) {} }
+            .isInstanceOf(IllegalArgumentException::class.java)
+        assertThatThrownBy { ProgressSink.rows(0, 10) {} }
+            .isInstanceOf(IllegalArgumentException::class.java)
+        assertThatThrownBy { ProgressSink.rows(1, 0) {} }
+            .isInstanceOf(IllegalArgumentException::class.java)
+    }
+
+    @Test
+    fun `float progress callbacks are still called`() {
+        val size = 10 * Filters.TILE + 17
+        listOf<(IntArray, (Float) -> Unit) -> Unit>(
+            { pixels, progress -> Filters.grayScale(pixels, true, progress) },
+            { pixels, progress -> Filters.sepia(pixels, false, progress) },
+            { pixels, progress -> Filters.tint(pixels, true, .5f, .5f, .5f, progress) }
+        ).forEach { filter ->
+            reports.clear()
+            filter(IntArray(size)) { reports.add(it) }
+
+            assertThat(reports).isNotEmpty()
+            assertThat(reports).isSorted()
+            assertThat(reports.last()).isEqualTo(1f)
+        }
+    }
+}
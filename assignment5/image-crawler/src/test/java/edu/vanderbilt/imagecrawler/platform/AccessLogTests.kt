@@ -0,0 +1,124 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.Collections
+import java.util.concurrent.TimeUnit
+import javax.imageio.ImageIO
+
+class AccessLogTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var dir: File
+    private lateinit var cache: Cache
+
+    private val platform = JavaPlatform()
+
+    /**
+     * A small decodable image, so that items can be prefetched into
+     * the in-memory tier.
+     */
+    private val png = ByteArrayOutputStream().also {
+        ImageIO.write(BufferedImage(2, 2, BufferedImage.TYPE_INT_ARGB), "png", it)
+    }.toByteArray()
+
+    private fun uri(i: Int) = "http://host/$i.png"
+
+    @Before
+    fun before() {
+        dir = folder.newFolder("cache")
+        cache = newTestCache(dir)
+        repeat(5) { cache.add(uri(it), bytes = png) }
+    }
+
+    @After
+    fun after() {
+        cache.stopWarmStart()
+    }
+
+    /**
+     * Touches the items in [order] while the access log is recording
+     * and saves the log.
+     */
+    private fun record(vararg order: Int) {
+        cache.startAccessLog()
+        order.forEach { cache.getItem(uri(it), null) }
+        cache.stopAccessLog()
+        assertThat(cache.saveAccessLog()).isEqualTo(order.distinct().size)
+    }
+
+    private fun key(i: Int) = cache.getItem(uri(i), null)!!.key
+
+    @Test
+    fun `the saved log keeps the first touch order across a reload`() {
+        record(3, 1, 3, 4, 1, 0)
+        val expected = listOf(3, 1, 4, 0).map { key(it) }
+
+        cache = newTestCache(dir)
+        val log = AccessLog(dir, AccessLog.DEFAULT_MAX_ENTRIES)
+
+        assertThat(log.load(Int.MAX_VALUE)).isEqualTo(expected)
+        assertThat(log.load(2)).isEqualTo(expected.take(2))
+        assertThat(File(dir.parentFile, dir.name + ".access")).exists()
+    }
+
+    @Test
+    fun `accesses are only recorded while the log is recording`() {
+        cache.getItem(uri(0), null)
+        record(2)
+        cache.getItem(uri(1), null)
+
+        assertThat(AccessLog(dir, 10).load(10)).containsExactly(key(2))
+    }
+
+    @Test
+    fun `the log stops at its maximum number of entries`() {
+        val log = AccessLog(dir, 2)
+        log.start()
+        (0 until 5).forEach { log.record(cache.getItem(uri(it), null)) }
+
+        assertThat(log.size()).isEqualTo(2)
+        assertThat(log.save()).isEqualTo(2)
+        assertThat(log.load(10)).containsExactly(key(0), key(1))
+    }
+
+    @Test
+    fun `the prefetcher reads the logged items in first touch order`() {
+        record(4, 2, 0, 3)
+        cache = newTestCache(dir)
+        cache.setDecodedImageCapacity(1L shl 20)
+        val keys = AccessLog(dir, AccessLog.DEFAULT_MAX_ENTRIES).load(Int.MAX_VALUE)
+
+        val prefetched = Collections.synchronizedList(mutableListOf<String>())
+        val prefetcher = CachePrefetcher(cache, 1)
+        prefetcher.start(keys) { buffer, item ->
+            prefetched.add(item.key)
+            platform.newImage(buffer, item)
+        }
+
+        assertThat(prefetcher.await(10, TimeUnit.SECONDS)).isTrue()
+        assertThat(prefetched).isEqualTo(listOf(4, 2, 0, 3).map { key(it) })
+        assertThat(prefetcher.prefetchedCount).isEqualTo(4)
+        keys.forEach { assertThat(cache.isDecoded(cache.peekItem(it)!!)).isTrue() }
+    }
+
+    @Test
+    fun `a warm start skips logged items that are no longer cached`() {
+        record(0, 1, 2)
+        cache = newTestCache(dir)
+        cache.remove(key(1))
+
+        assertThat(cache.warmStart(10, null)).isEqualTo(3)
+        assertThat(cache.awaitWarmStart(10, TimeUnit.SECONDS)).isTrue()
+        assertThat(cache.prefetchedCount).isEqualTo(2)
+    }
+}
@@ -0,0 +1,98 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.transforms.Transform
+import edu.vanderbilt.imagecrawler.transforms.TransformImageDecorator
+import edu.vanderbilt.imagecrawler.utils.Image
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import javax.imageio.ImageIO
+
+class CacheDedupTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private val platform = JavaPlatform()
+
+    private val png = ByteArrayOutputStream().also {
+        val image = BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB).apply {
+            repeat(4) { x -> repeat(4) { y -> setRGB(x, y, 0xff000000.toInt() or (x * 60 shl 16) or (y * 60 shl 8)) } }
+        }
+        ImageIO.write(image, "png", it)
+    }.toByteArray()
+
+    /**
+     * A store that can't share files, like one on a file system
+     * without hard links.
+     */
+    private class CopyingStore : FileCacheStore() {
+        override fun link(item: Cache.Item, source: Cache.Item) = false
+    }
+
+    private fun Cache.Item.isSameFile(other: Cache.Item) =
+        Files.isSameFile(file.toPath(), other.file.toPath())
+
+    @Test
+    fun `identical downloads share one file`() {
+        val cache = newTestCache(folder.newFolder("cache"))
+        val a = cache.add("http://host/a.png", bytes = png)
+        val b = cache.add("http://host/b.png", bytes = png)
+        val c = cache.add("http://host/c.png", bytes = png + 0)
+
+        assertThat(b.digest).isEqualTo(a.digest)
+        assertThat(a.isSameFile(b)).isTrue()
+        assertThat(c.isSameFile(a)).isFalse()
+
+        // The other item keeps the shared bytes.
+        cache.remove(a.key)
+        assertThat(b.read()).isEqualTo(png)
+    }
+
+    @Test
+    fun `identical downloads are copied if the store can't share them`() {
+        val cache = newTestCache(folder.newFolder("cache"), CopyingStore())
+        val a = cache.add("http://host/a.png", bytes = png)
+        val b = cache.add("http://host/b.png", bytes = png)
+
+        assertThat(b.digest).isEqualTo(a.digest)
+        assertThat(a.isSameFile(b)).isFalse()
+        assertThat(b.read()).isEqualTo(a.read())
+    }
+
+    @Test
+    fun `a transform of identical content reuses the first result`() {
+        listOf(FileCacheStore(), CopyingStore()).forEachIndexed { i, store ->
+            val cache = newTestCache(folder.newFolder("cache$i"), store)
+            var transforms = 0
+            val transform = object : Transform("gray") {
+                override fun applyTransform(image: Image, item: Cache.Item): Image {
+                    transforms++
+                    return Image(image.platformImage
+                                     .applyTransform(Transform.Type.GRAY_SCALE_TRANSFORM, item))
+                }
+            }
+
+            fun transform(uri: String): Pair<Cache.Item, Image?> {
+                val source = cache.add(uri, bytes = png)
+                val image = Image(platform.newImage(source.getByteBuffer(Cache.Operation.READ), source))
+                val item = cache.addNewItem(uri, "gray")!!
+                return item to TransformImageDecorator(transform, image, platform::newImage).run(item)
+            }
+
+            val (first, _) = transform("http://host/a.png")
+            val (second, image) = transform("http://host/b.png")
+
+            assertThat(transforms).isEqualTo(1)
+            assertThat(cache.getItem("http://host/b.png", null)!!.findDerived("gray")).isSameAs(first)
+            assertThat(second.read()).isEqualTo(first.read())
+            assertThat(second.digest).isEqualTo(first.digest)
+            assertThat(second.isSameFile(first)).isEqualTo(store !is CopyingStore)
+            assertThat(image!!.platformImage.cacheItem).isSameAs(second)
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CacheInFlightTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var cache: Cache
+
+    private val uri = "http://host/0.png"
+
+    private val downloads = AtomicInteger()
+
+    @Before
+    fun before() {
+        cache = newTestCache(folder.newFolder("cache"))
+    }
+
+    /**
+     * Starts [THREADS] threads that all request [uri] at once. The
+     * first download blocks until every thread has made its request,
+     * so that they all find the key in flight, and then runs [download].
+     *
+     * @return The futures of the threads' results.
+     */
+    private fun requestAll(download: (Cache.Item) -> Unit): List<Future<Cache.Item>> {
+        val executor = Executors.newFixedThreadPool(THREADS)
+        val requested = CountDownLatch(THREADS)
+        try {
+            return (0 until THREADS).map {
+                executor.submit<Cache.Item> {
+                    requested.countDown()
+                    cache.addOrGetItem(uri, null) { item ->
+                        downloads.incrementAndGet()
+                        requested.await(10, TimeUnit.SECONDS)
+                        // Give the last threads time to reach the
+                        // in-flight table.
+                        Thread.sleep(50)
+                        download(item)
+                    }
+                }
+            }.onEach { future ->
+                try {
+                    future.get(10, TimeUnit.SECONDS)
+                } catch (e: ExecutionException) {
+                    // Checked by the caller.
+                }
+            }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    @Test
+    fun `concurrent requests for one key download it once`() {
+        val items = requestAll { it.write(ByteArray(100) { 1 }) }.map { it.get() }
+
+        assertThat(downloads.get()).isEqualTo(1)
+        assertThat(items).hasSize(THREADS)
+        items.forEach { assertThat(it).isSameAs(items[0]) }
+        assertThat(items[0].read()).isEqualTo(ByteArray(100) { 1 })
+        assertThat(cache.cacheSize).isEqualTo(1)
+
+        val stats = cache.stats
+        assertThat(stats.missCount).isEqualTo(1)
+        assertThat(stats.addCount).isEqualTo(1)
+        assertThat(stats.hitCount).isEqualTo(THREADS - 1L)
+    }
+
+    @Test
+    fun `a failed download fails every waiting request and is retried later`() {
+        val failures = requestAll { throw IllegalStateException("download failed") }.map {
+            try {
+                it.get()
+                null
+            } catch (e: ExecutionException) {
+                e.cause
+            }
+        }
+
+        assertThat(downloads.get()).isEqualTo(1)
+        assertThat(failures[0]).hasStackTraceContaining("IllegalStateException: download failed")
+        failures.forEach { assertThat(it).isSameAs(failures[0]) }
+        assertThat(cache.cacheSize).isZero()
+        assertThat(cache.stats.failureCount).isEqualTo(1)
+
+        val item = cache.add(uri)
+        assertThat(cache.getItem(uri, null)).isSameAs(item)
+        assertThat(cache.stats.addCount).isEqualTo(1)
+    }
+
+    private companion object {
+        const val THREADS = 16
+    }
+}
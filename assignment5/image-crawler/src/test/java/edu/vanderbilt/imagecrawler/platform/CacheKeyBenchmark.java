@@ -0,0 +1,128 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import edu.vanderbilt.imagecrawler.utils.Options;
+
+/**
+ * Lookup benchmark for {@link CacheKey} and {@link Cache#getItem}.
+ * Each run looks up random items of a populated cache from an
+ * increasing number of threads and reports the throughput of building
+ * keys from a uri and tag ({@link CacheKey#of}), parsing encoded keys
+ * ({@link CacheKey#parse}), and complete {@link Cache#getItem} hits,
+ * which reuse interned keys.
+ * <p>
+ * This is not a unit test. Run it from the IDE or with
+ * <pre>
+ *   java ... edu.vanderbilt.imagecrawler.platform.CacheKeyBenchmark [items] [seconds]
+ * </pre>
+ */
+public class CacheKeyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        if (Options.mRootUrl == null) {
+            Options.mRootUrl = "https://www.dre.vanderbilt.edu/~schmidt";
+        }
+        File dir = Files.createTempDirectory("cache-key-benchmark").toFile();
+        Cache cache = new Cache(dir);
+
+        String[] uris = new String[items];
+        String[] tags = new String[items];
+        String[] encoded = new String[items];
+        for (int i = 0; i < items; i++) {
+            uris[i] = "https://www.dre.vanderbilt.edu/~schmidt/img-" + i + ".png";
+            tags[i] = i % 4 == 0 ? null : "tag" + (i % 4);
+            encoded[i] = cache.addNewItem(uris[i], tags[i]).getKey();
+        }
+
+        Map<String, IntConsumer> lookups = new LinkedHashMap<>();
+        lookups.put("CacheKey.of", i -> CacheKey.of(uris[i], tags[i]));
+        lookups.put("CacheKey.parse", i -> CacheKey.parse(encoded[i]));
+        lookups.put("Cache.getItem", i -> {
+            if (cache.getItem(uris[i], tags[i]) == null) {
+                throw new IllegalStateException("Missing item: " + uris[i]);
+            }
+        });
+
+        int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d items, %.1f s per run (Mops/s)%n", items, seconds);
+        System.out.printf("%-16s", "threads");
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            System.out.printf("%10d", threads);
+        }
+        System.out.println();
+
+        try {
+            for (Map.Entry<String, IntConsumer> entry : lookups.entrySet()) {
+                System.out.printf("%-16s", entry.getKey());
+                for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                    // Warm up and then measure.
+                    run(entry.getValue(), items, threads, seconds / 2);
+                    double mops = run(entry.getValue(), items, threads, seconds);
+                    System.out.printf("%10.2f", mops);
+                }
+                System.out.println();
+            }
+        } finally {
+            cache.clear();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Runs the lookup on random item indexes for the specified time.
+     *
+     * @return The throughput in millions of lookups per second.
+     */
+    private static double run(IntConsumer lookup,
+                              int items,
+                              int threads,
+                              double seconds) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                while (!stop.get()) {
+                    for (int i = 0; i < 1024; i++) {
+                        lookup.accept(random.nextInt(items));
+                    }
+                    count += 1024;
+                }
+                ops.add(count);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep((long) (seconds * 1000));
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        return ops.sum() / elapsed / 1e6;
+    }
+}
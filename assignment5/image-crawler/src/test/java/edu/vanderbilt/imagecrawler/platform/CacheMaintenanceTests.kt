@@ -0,0 +1,152 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.TimeUnit
+
+class CacheMaintenanceTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    /**
+     * The current time in nanoseconds, advanced by [advance].
+     */
+    private var now = 0L
+
+    private lateinit var cache: Cache
+    private lateinit var maintenance: CacheMaintenance
+
+    @Before
+    fun before() {
+        cache = newTestCache(folder.newFolder("cache"))
+        maintenance = CacheMaintenance(cache) { now }
+    }
+
+    private fun advance(millis: Long) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis)
+    }
+
+    private fun seconds(seconds: Long) = TimeUnit.SECONDS.toNanos(seconds)
+
+    /**
+     * The numbers of the items added by [add], by key.
+     */
+    private val numbers = mutableMapOf<String, Int>()
+
+    /**
+     * Adds item [i] of [size] bytes created [i] seconds after time 0.
+     */
+    private fun add(i: Int, tag: String? = null, size: Int = 16) =
+        cache.add("http://host/$i.png", tag, ByteArray(size)).apply {
+            mTimeStamp = seconds(i.toLong())
+            numbers[key] = i
+        }
+
+    /**
+     * @return The numbers of the cached items in ascending order.
+     */
+    private fun cached() = cache.items().map { numbers[it.key] }.sorted().toList()
+
+    @Test
+    fun `items are expired once they outlive their tag's TTL`() {
+        (0 until 3).forEach { add(it, "short") }
+        (3 until 5).forEach { add(it, "long") }
+        add(5)
+        maintenance.setTimeToLive("short", seconds(10))
+        maintenance.setTimeToLive("long", seconds(20))
+
+        advance(9_999)
+        assertThat(maintenance.runPass()).isZero()
+
+        advance(1)
+        assertThat(maintenance.runPass()).isEqualTo(1)
+        assertThat(cached()).doesNotContain(0)
+
+        advance(13_000)
+        assertThat(maintenance.runPass()).isEqualTo(3)
+        assertThat(cached()).containsExactly(4, 5)
+        assertThat(cache.stats.expirationCount).isEqualTo(4)
+    }
+
+    @Test
+    fun `the default TTL applies to tags without their own TTL`() {
+        add(0, "kept")
+        add(1)
+        add(2, "other")
+        maintenance.setTimeToLive("kept", CacheMaintenance.NONE)
+        maintenance.setTimeToLive("kept", seconds(60))
+        maintenance.setDefaultTimeToLive(seconds(5))
+
+        advance(10_000)
+
+        assertThat(maintenance.runPass()).isEqualTo(2)
+        assertThat(cached()).containsExactly(0)
+    }
+
+    @Test
+    fun `deletions are throttled by the token bucket`() {
+        (0 until 10).forEach { add(it) }
+        maintenance.setDefaultTimeToLive(seconds(1))
+        maintenance.setMaxDeletionRate(2)
+
+        // A long idle period earns at most one second's worth of tokens.
+        advance(60_000)
+        assertThat(maintenance.runPass()).isEqualTo(2)
+        assertThat(maintenance.runPass()).isZero()
+
+        advance(500)
+        assertThat(maintenance.runPass()).isEqualTo(1)
+
+        advance(250)
+        assertThat(maintenance.runPass()).isZero()
+        advance(250)
+        assertThat(maintenance.runPass()).isEqualTo(1)
+
+        // The oldest items went first.
+        assertThat(cached()).isEqualTo((4 until 10).toList())
+    }
+
+    @Test
+    fun `compaction removes the oldest items down to the target`() {
+        (0 until 10).forEach { add(it, size = 100) }
+        val itemBytes = cache.cacheBytes / 10
+        maintenance.setTargetBytes(4 * itemBytes + itemBytes / 2)
+
+        assertThat(maintenance.runPass()).isEqualTo(6)
+        assertThat(cached()).isEqualTo((6 until 10).toList())
+        assertThat(cache.cacheBytes).isEqualTo(4 * itemBytes)
+
+        // Nothing more to do once the cache is below the target.
+        assertThat(maintenance.runPass()).isZero()
+    }
+
+    @Test
+    fun `compaction shares the deletion budget with expiry`() {
+        (0 until 10).forEach { add(it, size = 100) }
+        val itemBytes = cache.cacheBytes / 10
+        maintenance.setTargetBytes(5 * itemBytes)
+        maintenance.setTimeToLive("gone", seconds(1))
+        add(10, "gone", size = 100).mTimeStamp = 0
+        maintenance.setMaxDeletionRate(3)
+
+        advance(5_000)
+        assertThat(maintenance.runPass()).isEqualTo(3)
+        assertThat(cached()).doesNotContain(10, 0, 1)
+
+        advance(1_000)
+        assertThat(maintenance.runPass()).isEqualTo(3)
+        assertThat(cached()).isEqualTo((5 until 10).toList())
+    }
+
+    @Test
+    fun `compaction is disabled without a target`() {
+        (0 until 5).forEach { add(it, size = 100) }
+
+        assertThat(maintenance.runPass()).isZero()
+        assertThat(cache.cacheSize).isEqualTo(5)
+    }
+}
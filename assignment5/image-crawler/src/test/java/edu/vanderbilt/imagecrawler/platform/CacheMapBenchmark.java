@@ -0,0 +1,128 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Contention benchmark for the {@link CacheMap} implementations that
+ * can be passed to the {@link Cache} constructor. Each run hammers a
+ * map with a mix of lookups and updates on a shared set of cache keys
+ * from an increasing number of threads and reports the throughput, so
+ * that the best map for a given deployment can be chosen.
+ * <p>
+ * This is not a unit test. Run it from the IDE or with
+ * <pre>
+ *   java ... edu.vanderbilt.imagecrawler.platform.CacheMapBenchmark [readPercent] [seconds]
+ * </pre>
+ */
+public class CacheMapBenchmark {
+    /**
+     * Number of distinct keys in the working set.
+     */
+    private static final int KEYS = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int readPercent = args.length > 0 ? Integer.parseInt(args[0]) : 90;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        Map<String, Supplier<CacheMap<CacheKey, String>>> maps =
+            new LinkedHashMap<>();
+        maps.put("Synchronized", SynchronizedCacheMap::new);
+        maps.put("Concurrent", ConcurrentCacheMap::new);
+        maps.put("Striped", StripedCacheMap::new);
+        maps.put("OpenAddressing", OpenAddressingCacheMap::new);
+
+        CacheKey[] keys = new CacheKey[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = CacheKey.of("https://www.dre.vanderbilt.edu/~schmidt/img-"
+                                  + i + ".png", "tag" + (i % 4));
+        }
+
+        int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d%% reads, %d keys, %.1f s per run (Mops/s)%n",
+                          readPercent, KEYS, seconds);
+        System.out.printf("%-16s", "threads");
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            System.out.printf("%10d", threads);
+        }
+        System.out.println();
+
+        for (Map.Entry<String, Supplier<CacheMap<CacheKey, String>>> entry
+                 : maps.entrySet()) {
+            System.out.printf("%-16s", entry.getKey());
+            for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                CacheMap<CacheKey, String> map = entry.getValue().get();
+                for (CacheKey key : keys) {
+                    map.put(key, key.getEncoded());
+                }
+
+                // Warm up and then measure.
+                run(map, keys, threads, readPercent, seconds / 2);
+                double mops = run(map, keys, threads, readPercent, seconds);
+                System.out.printf("%10.2f", mops);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Runs the workload on the passed map for the specified time.
+     *
+     * @return The throughput in millions of operations per second.
+     */
+    private static double run(CacheMap<CacheKey, String> map,
+                              CacheKey[] keys,
+                              int threads,
+                              int readPercent,
+                              double seconds) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                while (!stop.get()) {
+                    for (int i = 0; i < 1024; i++) {
+                        CacheKey key = keys[random.nextInt(keys.length)];
+                        int op = random.nextInt(100);
+                        if (op < readPercent) {
+                            map.get(key);
+                        } else if ((op & 1) == 0) {
+                            map.remove(key);
+                        } else {
+                            map.put(key, key.getEncoded());
+                        }
+                    }
+                    count += 1024;
+                }
+                ops.add(count);
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep((long) (seconds * 1000));
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        return ops.sum() / elapsed / 1e6;
+    }
+}
@@ -0,0 +1,52 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class CacheStatsTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var cache: Cache
+
+    @Before
+    fun before() {
+        cache = newTestCache(folder.newFolder("cache"))
+    }
+
+    @Test
+    fun `addNewItem counts a single miss`() {
+        cache.addNewItem("http://host/0.png", "gray")
+
+        val stats = cache.getStats("gray")
+        assertThat(stats.missCount).isEqualTo(1)
+        assertThat(stats.hitCount).isZero()
+        assertThat(stats.addCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `addOrGetItem counts a miss when adding and a hit when getting`() {
+        cache.add("http://host/0.png")
+        assertThat(cache.getStats(null).missCount).isEqualTo(1)
+        assertThat(cache.getStats(null).hitCount).isZero()
+
+        cache.add("http://host/0.png")
+        assertThat(cache.getStats(null).missCount).isEqualTo(1)
+        assertThat(cache.getStats(null).hitCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `getItem counts each lookup once`() {
+        assertThat(cache.getItem("http://host/0.png", null)).isNull()
+        cache.add("http://host/0.png")
+        assertThat(cache.getItem("http://host/0.png", null)).isNotNull()
+
+        val stats = cache.getStats(null)
+        assertThat(stats.missCount).isEqualTo(2)
+        assertThat(stats.hitCount).isEqualTo(1)
+    }
+}
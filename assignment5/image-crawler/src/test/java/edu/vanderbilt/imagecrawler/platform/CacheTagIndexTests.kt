@@ -0,0 +1,116 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.atomic.AtomicReference
+import kotlin.streams.toList
+
+class CacheTagIndexTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var dir: File
+    private lateinit var cache: Cache
+
+    @Before
+    fun before() {
+        dir = folder.newFolder("cache")
+        cache = newTestCache(dir)
+    }
+
+    private fun uris(tag: String?) = cache.itemsForTag(tag).map { it.sourceUri }.toList().sorted()
+
+    private fun populate() {
+        repeat(3) {
+            cache.add("http://host/$it.png")
+            cache.add("http://host/$it.png", "gray")
+            cache.add("http://host/$it.png", "tint")
+        }
+    }
+
+    @Test
+    fun `itemsForTag only visits items with the tag`() {
+        populate()
+
+        assertThat(cache.itemsForTag("gray").toList()).allMatch { it.tag == "gray" }
+        assertThat(uris("gray")).containsExactly("http://host/0.png", "http://host/1.png", "http://host/2.png")
+        assertThat(uris(null)).hasSize(3)
+        assertThat(uris("missing")).isEmpty()
+    }
+
+    @Test
+    fun `removeTagged removes the tagged items and their files`() {
+        populate()
+        val files = cache.itemsForTag("gray").map { it.file }.toList()
+
+        cache.removeTagged("gray")
+
+        assertThat(uris("gray")).isEmpty()
+        assertThat(files).noneMatch { it.exists() }
+        assertThat(uris("tint")).hasSize(3)
+        assertThat(uris(null)).hasSize(3)
+        assertThat(cache.cacheSize).isEqualTo(6)
+    }
+
+    @Test
+    fun `removed and evicted items leave the index`() {
+        populate()
+        cache.remove(cache.getItem("http://host/1.png", "tint")!!.key)
+        assertThat(uris("tint")).containsExactly("http://host/0.png", "http://host/2.png")
+
+        cache.setCapacity(Long.MAX_VALUE, 4)
+
+        val indexed = listOf(null, "gray", "tint").sumOf { cache.itemsForTag(it).count() }
+        assertThat(indexed).isEqualTo(cache.cacheSize.toLong()).isLessThanOrEqualTo(4)
+    }
+
+    @Test
+    fun `the index is rebuilt on reload and emptied by clear`() {
+        populate()
+
+        cache = newTestCache(dir)
+        assertThat(uris("gray")).hasSize(3)
+        assertThat(uris("tint")).hasSize(3)
+
+        cache.clear()
+        assertThat(uris("gray")).isEmpty()
+        assertThat(uris(null)).isEmpty()
+    }
+
+    @Test
+    fun `concurrent adds and removes keep the index consistent`() {
+        val threads = 4
+        val barrier = CyclicBarrier(threads)
+        val failure = AtomicReference<Throwable>()
+        (0 until threads).map { thread ->
+            Thread {
+                try {
+                    barrier.await()
+                    repeat(200) {
+                        // Threads share uris, so adds and removes race.
+                        val uri = "http://host/${it % 50}.png"
+                        val tag = if (thread % 2 == 0) "gray" else "tint"
+                        val item = cache.add(uri, tag)
+                        if (it % 3 == 0) {
+                            cache.remove(item.key)
+                        }
+                    }
+                } catch (t: Throwable) {
+                    failure.compareAndSet(null, t)
+                }
+            }.apply { start() }
+        }.forEach { it.join() }
+        failure.get()?.let { throw it }
+
+        listOf("gray", "tint").forEach { tag ->
+            val cached = (0 until 50).count { cache.getItem("http://host/$it.png", tag) != null }
+            assertThat(cache.itemsForTag(tag).count()).isEqualTo(cached.toLong())
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class EvictionPolicyTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var cache: Cache
+
+    @Before
+    fun before() {
+        cache = newTestCache(folder.newFolder("cache"))
+    }
+
+    @Test
+    fun `entry budget is enforced`() {
+        cache.setCapacity(Long.MAX_VALUE, 10)
+        repeat(50) { cache.add("http://host/$it.png") }
+
+        assertThat(cache.cacheSize).isEqualTo(10)
+        assertThat(cache.cacheBytes).isEqualTo(10 * 16L)
+    }
+
+    @Test
+    fun `byte budget is enforced`() {
+        cache.setCapacity(1000, Int.MAX_VALUE)
+        repeat(50) { cache.add("http://host/$it.png", bytes = ByteArray(100)) }
+
+        assertThat(cache.cacheBytes).isLessThanOrEqualTo(1000)
+        assertThat(cache.cacheSize).isEqualTo(10)
+    }
+
+    @Test
+    fun `lowering the budget evicts items`() {
+        repeat(20) { cache.add("http://host/$it.png") }
+        cache.setCapacity(Long.MAX_VALUE, 5)
+
+        assertThat(cache.cacheSize).isEqualTo(5)
+    }
+
+    @Test
+    fun `popular items are kept`() {
+        cache.setCapacity(Long.MAX_VALUE, 4)
+        repeat(4) { cache.add("http://host/$it.png") }
+        repeat(10) { cache.getItem("http://host/0.png", null) }
+
+        (4 until 20).forEach { cache.add("http://host/$it.png") }
+
+        assertThat(cache.getItem("http://host/0.png", null)).isNotNull
+    }
+
+    @Test
+    fun `an item being added is never evicted by its own admission`() {
+        cache.setCapacity(Long.MAX_VALUE, 1)
+        cache.add("http://host/a.png")
+        repeat(5) { cache.getItem("http://host/a.png", null) }
+
+        val bytes = byteArrayOf(1, 2, 3)
+        val b = cache.add("http://host/b.png", bytes = bytes)
+
+        assertThat(cache.getItem("http://host/b.png", null)).isSameAs(b)
+        assertThat(b.read()).isEqualTo(bytes)
+        assertThat(cache.getItem("http://host/a.png", null)).isNull()
+        assertThat(cache.cacheSize).isEqualTo(1)
+    }
+
+    @Test
+    fun `an item larger than the byte budget is kept until the next add`() {
+        cache.setCapacity(100, Int.MAX_VALUE)
+        val big = cache.add("http://host/big.png", bytes = ByteArray(500))
+
+        assertThat(big.read()).hasSize(500)
+        assertThat(cache.cacheSize).isEqualTo(1)
+
+        cache.add("http://host/small.png", bytes = ByteArray(10))
+
+        assertThat(cache.getItem("http://host/big.png", null)).isNull()
+        assertThat(cache.cacheBytes).isEqualTo(10)
+    }
+}
@@ -0,0 +1,286 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class FileCacheStoreTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var dir: File
+    private lateinit var store: FileCacheStore
+    private lateinit var cache: Cache
+
+    private val manifest get() = File(dir.parentFile, dir.name + ".manifest")
+    private val journal get() = File(dir.parentFile, dir.name + ".journal")
+
+    @Before
+    fun before() {
+        dir = folder.newFolder("cache")
+        reload()
+    }
+
+    @After
+    fun after() {
+        store.close()
+    }
+
+    /**
+     * Closes the current store and loads the cache with a new one,
+     * which uses [layout] and is durable unless [commitInterval] is
+     * NOT_DURABLE.
+     */
+    private fun reload(commitInterval: Long = FileCacheStore.NOT_DURABLE,
+                       layout: CacheLayout = CacheLayout.FLAT) {
+        if (::store.isInitialized) {
+            store.close()
+        }
+        store = FileCacheStore(layout, commitInterval)
+        cache = newTestCache(dir, store)
+    }
+
+    /**
+     * Appends the start of a journal record, as if the process had
+     * crashed while writing it.
+     */
+    private fun tearJournal() {
+        journal.appendBytes(byteArrayOf(1, 0, 40, 'h'.code.toByte()))
+    }
+
+    /**
+     * Writes a valid cache file that the manifest doesn't list.
+     */
+    private fun writeRogueFile() {
+        cache.mapKeyToFile(CacheKey.of("http://host/rogue.png", null).encoded)
+            .writeBytes(ByteArray(16))
+    }
+
+    private fun tempFiles() = dir.listFiles()!!.filter { it.name.startsWith("~") }
+
+    private fun uris() = mutableListOf<String>().also { uris ->
+        cache.itemsForTag(null).forEach { uris.add(it.sourceUri) }
+    }.sorted()
+
+    @Test
+    fun `items are loaded from the manifest without a scan`() {
+        repeat(3) { cache.add("http://host/$it.png") }
+
+        writeRogueFile()
+
+        reload()
+        assertThat(cache.cacheSize).isEqualTo(3)
+
+        manifest.delete()
+        reload()
+        assertThat(cache.cacheSize).isEqualTo(4)
+    }
+
+    @Test
+    fun `deleted items stay deleted after a reload`() {
+        repeat(3) { cache.add("http://host/$it.png") }
+        cache.remove(cache.getItem("http://host/1.png", null)!!.key)
+
+        reload()
+
+        assertThat(uris()).containsExactly("http://host/0.png", "http://host/2.png")
+    }
+
+    @Test
+    fun `unclosed writes are not listed`() {
+        cache.add("http://host/done.png")
+        val item = cache.addNewItem("http://host/partial.png", null)!!
+        item.getOutputStream(Cache.Operation.WRITE, 16).use { out ->
+            out.write(ByteArray(16))
+            out.flush()
+
+            reload()
+        }
+
+        assertThat(uris()).containsExactly("http://host/done.png")
+    }
+
+    @Test
+    fun `a corrupt manifest falls back to a scan`() {
+        repeat(3) { cache.add("http://host/$it.png") }
+        val bytes = manifest.readBytes()
+        bytes[bytes.size - 1] = (bytes[bytes.size - 1] + 1).toByte()
+        manifest.writeBytes(bytes)
+
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(3)
+    }
+
+    @Test
+    fun `a journal record written after the snapshot is replayed`() {
+        cache.add("http://host/0.png")
+        reload()
+        cache.add("http://host/1.png")
+        assertThat(journal.length()).isGreaterThan(0)
+
+        reload()
+
+        assertThat(uris()).containsExactly("http://host/0.png", "http://host/1.png")
+    }
+
+    @Test
+    fun `clear resets the manifest`() {
+        repeat(3) { cache.add("http://host/$it.png") }
+        cache.clear()
+
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(0)
+    }
+
+    @Test
+    fun `a torn journal record forces a rescan without durable writes`() {
+        repeat(2) { cache.add("http://host/$it.png") }
+        writeRogueFile()
+        tearJournal()
+
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(3)
+    }
+
+    @Test
+    fun `a torn journal record keeps the committed items in durable mode`() {
+        reload(0)
+        cache.add("http://host/0.png")
+        reload(0)
+        repeat(2) { cache.add("http://host/${it + 1}.png") }
+        store.sync()
+
+        // Crash after an item was renamed but before it was journaled.
+        writeRogueFile()
+        tearJournal()
+        reload(0)
+
+        assertThat(uris()).containsExactly("http://host/0.png", "http://host/1.png", "http://host/2.png")
+    }
+
+    @Test
+    fun `temporary files left by a crash are swept on every load`() {
+        reload(0)
+        repeat(2) { cache.add("http://host/$it.png") }
+        File(dir, "~write~1~2").writeBytes(ByteArray(16))
+        File(dir, "~link~3~4").writeBytes(ByteArray(16))
+
+        reload(0)
+
+        assertThat(manifest).exists()
+        assertThat(tempFiles()).isEmpty()
+        assertThat(cache.cacheSize).isEqualTo(2)
+    }
+
+    @Test
+    fun `a load keeps the temporary files of writes in progress`() {
+        reload(0)
+        val item = cache.addNewItem("http://host/partial.png", null)!!
+        item.getOutputStream(Cache.Operation.WRITE, 16).use { out ->
+            out.write(ByteArray(16))
+            out.flush()
+
+            cache.loadFromDisk()
+            assertThat(tempFiles()).hasSize(1)
+        }
+        store.sync()
+
+        assertThat(tempFiles()).isEmpty()
+        assertThat(item.read()).hasSize(16)
+    }
+
+    /**
+     * Adds items with and without a tag, each with its own bytes.
+     *
+     * @return The bytes of each item by uri and tag.
+     */
+    private fun addItems(): Map<Pair<String, String?>, ByteArray> =
+        (0 until 20).associate {
+            val uri = "http://host/$it.png"
+            val tag = if (it % 3 == 0) "gray" else null
+            val bytes = ByteArray(16 + it) { b -> (it + b).toByte() }
+            cache.add(uri, tag, bytes)
+            (uri to tag) to bytes
+        }
+
+    /**
+     * Checks that every item in [items] can be read from its file in
+     * [layout], and that no other files are left in the cache.
+     */
+    private fun assertLayout(items: Map<Pair<String, String?>, ByteArray>, layout: CacheLayout) {
+        assertThat(cache.cacheSize).isEqualTo(items.size)
+        items.forEach { (id, bytes) ->
+            val item = cache.getItem(id.first, id.second)!!
+            assertThat(item.read()).isEqualTo(bytes)
+            assertThat(item.file).isEqualTo(layout.getFile(dir, item.key))
+        }
+
+        val files = dir.walk().filter { it.isFile }.toList()
+        assertThat(files).hasSize(items.size)
+        if (layout.isFlat) {
+            assertThat(dir.listFiles()!!.filter { it.isDirectory }).isEmpty()
+        }
+    }
+
+    @Test
+    fun `a flat cache is moved to a hashed layout`() {
+        val items = addItems()
+        assertLayout(items, CacheLayout.FLAT)
+
+        reload(layout = CacheLayout.hashed(2, 16))
+        assertLayout(items, CacheLayout.hashed(2, 16))
+
+        // The next load uses the manifest written for the new layout.
+        reload(layout = CacheLayout.hashed(2, 16))
+        assertLayout(items, CacheLayout.hashed(2, 16))
+    }
+
+    @Test
+    fun `a hashed cache is moved to a flat layout`() {
+        reload(layout = CacheLayout.hashed(2, 16))
+        val items = addItems()
+        assertLayout(items, CacheLayout.hashed(2, 16))
+
+        reload()
+        assertLayout(items, CacheLayout.FLAT)
+    }
+
+    @Test
+    fun `a cache without a manifest is moved between hashed layouts`() {
+        reload(layout = CacheLayout.hashed(1, 4))
+        val items = addItems()
+        store.close()
+        manifest.delete()
+        journal.delete()
+
+        reload(layout = CacheLayout.hashed(2, 16))
+        assertLayout(items, CacheLayout.hashed(2, 16))
+        // The old single level buckets only hold the new second level.
+        assertThat(dir.listFiles()!!.flatMap { it.listFiles()!!.toList() }).allMatch { it.isDirectory }
+    }
+
+    @Test
+    fun `close commits outstanding writes and stops the commit thread`() {
+        fun commitThreads() = Thread.getAllStackTraces().keys.count { it.name == "Cache-Group-Commit" }
+        val before = commitThreads()
+
+        reload(60_000)
+        val item = cache.add("http://host/0.png")
+        assertThat(tempFiles()).hasSize(1)
+        assertThat(commitThreads()).isEqualTo(before + 1)
+
+        store.close()
+
+        assertThat(commitThreads()).isEqualTo(before)
+        assertThat(tempFiles()).isEmpty()
+        assertThat(item.file.length()).isEqualTo(16)
+    }
+}
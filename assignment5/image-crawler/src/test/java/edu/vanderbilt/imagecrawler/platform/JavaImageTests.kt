@@ -0,0 +1,59 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.transforms.Transform
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayOutputStream
+import javax.imageio.ImageIO
+import kotlin.random.Random
+
+class JavaImageTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private val platform = JavaPlatform()
+
+    private val types = listOf(Transform.Type.GRAY_SCALE_TRANSFORM,
+                               Transform.Type.SEPIA_TRANSFORM,
+                               Transform.Type.TINT_TRANSFORM)
+
+    /**
+     * @return The exact pixels of [image] (the raw storage format).
+     */
+    private fun pixels(image: PlatformImage) =
+        ByteArrayOutputStream().also { image.writeImage(it, StorageCodec.RAW) }.toByteArray()
+
+    @Test
+    fun `fused transforms match the separate transforms`() {
+        val cache = newTestCache(folder.newFolder("cache"))
+        val random = Random(5)
+
+        // A small image of each type and one that is filtered in
+        // parallel stripes.
+        listOf(Triple(BufferedImage.TYPE_INT_ARGB, 31, 17),
+               Triple(BufferedImage.TYPE_INT_RGB, 31, 17),
+               Triple(BufferedImage.TYPE_3BYTE_BGR, 31, 17),
+               Triple(BufferedImage.TYPE_INT_ARGB, 600, 512)).forEachIndexed { i, (type, width, height) ->
+            val source = BufferedImage(width, height, type).apply {
+                repeat(width) { x -> repeat(height) { y -> setRGB(x, y, random.nextInt()) } }
+            }
+            val png = ByteArrayOutputStream().also { ImageIO.write(source, "png", it) }.toByteArray()
+            val item = cache.add("http://host/$i.png", bytes = png)
+            val image = platform.newImage(item.getByteBuffer(Cache.Operation.READ), item)
+
+            val fused = image.applyTransforms(types + types.reversed(), item)
+
+            assertThat(fused).hasSize(2 * types.size)
+            (types + types.reversed()).forEachIndexed { t, transformType ->
+                assertThat(pixels(fused[t]))
+                    .describedAs("$transformType of image $i")
+                    .isEqualTo(pixels(image.applyTransform(transformType, item)))
+            }
+            assertThat(pixels(image)).isEqualTo(pixels(platform.newImage(item.getByteBuffer(Cache.Operation.READ), item)))
+        }
+    }
+}
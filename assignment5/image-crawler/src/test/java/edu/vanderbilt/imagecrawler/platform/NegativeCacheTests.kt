@@ -0,0 +1,148 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.FileNotFoundException
+import java.util.concurrent.CancellationException
+import java.util.concurrent.TimeUnit
+
+class NegativeCacheTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    /**
+     * The current time in nanoseconds, advanced by [advance].
+     */
+    private var now = 0L
+
+    private val cache = NegativeCache { now }.apply {
+        setBackoff(10, 35, TimeUnit.SECONDS)
+    }
+
+    private val uri = "http://host/missing.png"
+
+    private fun advance(seconds: Long) {
+        now += TimeUnit.SECONDS.toNanos(seconds)
+    }
+
+    private fun fail(target: String = uri) =
+        cache.recordFailure(target, RuntimeException(FileNotFoundException(target)))
+
+    /**
+     * Records a failure and waits for its backoff to expire.
+     *
+     * @return The backoff of the failure in seconds.
+     */
+    private fun failAndExpire(): Long {
+        val backoff = fail()!!.getRemainingBackoff(TimeUnit.SECONDS)
+        advance(backoff)
+        assertThat(cache.isKnownBad(uri)).isFalse()
+        return backoff
+    }
+
+    @Test
+    fun `a failure is remembered until its backoff expires`() {
+        assertThat(cache.isKnownBad(uri)).isFalse()
+
+        val failure = fail()!!
+        assertThat(failure.count).isEqualTo(1)
+        assertThat(failure.reason).isEqualTo("FileNotFoundException: $uri")
+        assertThat(cache.get(uri)).isSameAs(failure)
+
+        advance(9)
+        assertThat(cache.isKnownBad(uri)).isTrue()
+        assertThat(failure.getRemainingBackoff(TimeUnit.SECONDS)).isEqualTo(1)
+
+        advance(1)
+        assertThat(cache.isKnownBad(uri)).isFalse()
+        assertThat(failure.getRemainingBackoff(TimeUnit.SECONDS)).isZero()
+    }
+
+    @Test
+    fun `consecutive failures double the backoff up to the maximum`() {
+        assertThat((1..4).map { failAndExpire() }).containsExactly(10, 20, 35, 35)
+        assertThat(fail()!!.count).isEqualTo(5)
+    }
+
+    @Test
+    fun `failures during the backoff don't extend it`() {
+        val failure = fail()!!
+        advance(5)
+
+        assertThat(fail()).isSameAs(failure)
+        assertThat(failure.count).isEqualTo(1)
+
+        advance(5)
+        assertThat(cache.isKnownBad(uri)).isFalse()
+    }
+
+    @Test
+    fun `a success resets the backoff`() {
+        failAndExpire()
+        failAndExpire()
+
+        cache.recordSuccess(uri)
+        assertThat(cache.size()).isZero()
+
+        val failure = fail()!!
+        assertThat(failure.count).isEqualTo(1)
+        assertThat(failure.getRemainingBackoff(TimeUnit.SECONDS)).isEqualTo(10)
+    }
+
+    @Test
+    fun `cancelled fetches are not recorded`() {
+        assertThat(cache.recordFailure(uri, RuntimeException(CancellationException()))).isNull()
+        assertThat(cache.recordFailure(uri, RuntimeException(InterruptedException()))).isNull()
+
+        Thread.currentThread().interrupt()
+        try {
+            assertThat(fail()).isNull()
+        } finally {
+            Thread.interrupted()
+        }
+
+        assertThat(cache.size()).isZero()
+    }
+
+    @Test
+    fun `a full cache purges expired failures to make room`() {
+        cache.setMaxEntries(2)
+        fail("http://host/0.png")
+        advance(5)
+        fail("http://host/1.png")
+
+        assertThat(fail("http://host/2.png")).isNull()
+        assertThat(cache.size()).isEqualTo(2)
+
+        advance(5)
+        assertThat(fail("http://host/2.png")).isNotNull()
+        assertThat(cache.isKnownBad("http://host/0.png")).isFalse()
+        assertThat(cache.isKnownBad("http://host/1.png")).isTrue()
+        assertThat(cache.size()).isEqualTo(2)
+    }
+
+    @Test
+    fun `clear forgets all failures`() {
+        fail("http://host/0.png")
+        fail("http://host/1.png")
+
+        cache.clear()
+
+        assertThat(cache.size()).isZero()
+        assertThat(cache.isKnownBad("http://host/0.png")).isFalse()
+        assertThat(fail("http://host/0.png")!!.count).isEqualTo(1)
+    }
+
+    @Test
+    fun `the cache clears its negative cache`() {
+        val cache = newTestCache(folder.newFolder("cache"))
+        cache.negativeCache.recordFailure(uri, RuntimeException("broken"))
+
+        cache.clear()
+
+        assertThat(cache.negativeCache.size()).isZero()
+    }
+}
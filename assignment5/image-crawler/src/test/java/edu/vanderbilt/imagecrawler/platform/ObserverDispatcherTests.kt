@@ -0,0 +1,146 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.CLOSE
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.CREATE
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.LOAD
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.WRITE
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+
+class ObserverDispatcherTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var a: Cache.Item
+    private lateinit var b: Cache.Item
+
+    /**
+     * Delivered events. The sink counts down [entered] and then blocks
+     * until [release] is counted down, so events posted meanwhile are
+     * drained as one batch.
+     */
+    private val events = Collections.synchronizedList(mutableListOf<Triple<Cache.Item, Cache.Operation, Float?>>())
+    private val entered = CountDownLatch(1)
+    private val release = CountDownLatch(1)
+    private lateinit var dispatcher: ObserverDispatcher
+
+    /**
+     * Warnings logged by the dispatcher.
+     */
+    private val warnings = Collections.synchronizedList(mutableListOf<String>())
+
+    @Before
+    fun before() {
+        val cache = newTestCache(folder.newFolder("cache"))
+        a = cache.add("http://host/a.png")
+        b = cache.add("http://host/b.png")
+    }
+
+    @After
+    fun after() {
+        release.countDown()
+        dispatcher.shutdown()
+    }
+
+    private fun start(capacity: Int) {
+        dispatcher = ObserverDispatcher({ item, operation, progress ->
+            entered.countDown()
+            release.await()
+            events.add(Triple(item, operation, progress))
+        }, { warnings.add(it) }, capacity)
+    }
+
+    @Test
+    fun `progress events are coalesced to the latest value`() {
+        start(64)
+        dispatcher.post(a, LOAD, 1f)
+        entered.await()
+        (1..10).forEach {
+            dispatcher.post(a, WRITE, it / 10f)
+            dispatcher.post(b, WRITE, it / 10f)
+        }
+        dispatcher.post(a, CLOSE, 1f)
+        dispatcher.post(b, WRITE, 2f)
+
+        release.countDown()
+        dispatcher.shutdown()
+
+        assertThat(events).containsExactly(Triple(a, LOAD, 1f),
+                                           Triple(a, WRITE, 1f),
+                                           Triple(a, CLOSE, 1f),
+                                           Triple(b, WRITE, 2f))
+    }
+
+    @Test
+    fun `progress is not coalesced across lifecycle events`() {
+        start(64)
+        dispatcher.post(a, LOAD, 1f)
+        entered.await()
+        dispatcher.post(a, WRITE, 0.5f)
+        dispatcher.post(a, CLOSE, 1f)
+        dispatcher.post(a, WRITE, 0.7f)
+
+        release.countDown()
+        dispatcher.shutdown()
+
+        assertThat(events.map { it.second }).containsExactly(LOAD, WRITE, CLOSE, WRITE)
+    }
+
+    @Test
+    fun `progress events are dropped when the ring is full`() {
+        start(4)
+        repeat(100) { dispatcher.post(a, WRITE, it.toFloat()) }
+        dispatcher.post(a, CLOSE, 1f)
+
+        assertThat(dispatcher.droppedCount).isGreaterThan(0)
+        release.countDown()
+        dispatcher.shutdown()
+
+        assertThat(events.size).isLessThanOrEqualTo(5)
+        assertThat(events.last()).isEqualTo(Triple(a, CLOSE, 1f))
+    }
+
+    @Test
+    fun `lifecycle events are never dropped or reordered`() {
+        start(4)
+        val posted = (0 until 100).map { if (it % 2 == 0) Triple(a, CREATE, it.toFloat()) else Triple(b, CLOSE, it.toFloat()) }
+        val poster = Thread { posted.forEach { dispatcher.post(it.first, it.second, it.third) } }
+        poster.start()
+
+        // The ring and overflow queue hold 8 events, after which the
+        // poster waits for the dispatcher.
+        Thread.sleep(100)
+        assertThat(poster.isAlive).isTrue()
+
+        release.countDown()
+        poster.join()
+        dispatcher.shutdown()
+
+        assertThat(events).isEqualTo(posted)
+    }
+
+    @Test
+    fun `observer failures are logged and later events are still delivered`() {
+        release.countDown()
+        dispatcher = ObserverDispatcher({ item, operation, progress ->
+            if (operation == CREATE) throw IllegalStateException("observer broke")
+            events.add(Triple(item, operation, progress))
+        }, { warnings.add(it) }, 64)
+
+        dispatcher.post(a, LOAD, 1f)
+        dispatcher.post(a, CREATE, 1f)
+        dispatcher.post(b, CLOSE, 1f)
+        dispatcher.shutdown()
+
+        assertThat(events).containsExactly(Triple(a, LOAD, 1f), Triple(b, CLOSE, 1f))
+        assertThat(warnings).hasSize(1)
+        assertThat(warnings[0]).contains("CREATE").contains("observer broke")
+    }
+}
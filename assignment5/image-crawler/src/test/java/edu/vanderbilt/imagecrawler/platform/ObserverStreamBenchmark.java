@@ -0,0 +1,164 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.vanderbilt.imagecrawler.utils.Options;
+
+/**
+ * Write and read throughput benchmark for the observer streams
+ * returned by {@link Cache.Item#getOutputStream} and {@link
+ * Cache.Item#getInputStream}. Each run writes and then reads back a
+ * set of items in fixed size chunks, with an observer counting the
+ * notifications, once with progress reported on every call and once
+ * with the default progress stride, and reports the throughput for
+ * synchronous and asynchronous observer dispatch.
+ * <p>
+ * This is not a unit test. Run it from the IDE or with
+ * <pre>
+ *   java ... edu.vanderbilt.imagecrawler.platform.ObserverStreamBenchmark [itemKB] [items] [rounds]
+ * </pre>
+ */
+public class ObserverStreamBenchmark {
+    /**
+     * Chunk sizes passed to each write and read call.
+     */
+    private static final int[] CHUNKS = {256, 4096, 65536};
+
+    public static void main(String[] args) throws Exception {
+        int itemBytes = (args.length > 0 ? Integer.parseInt(args[0]) : 1024) * 1024;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        if (Options.mRootUrl == null) {
+            Options.mRootUrl = "http://localhost";
+        }
+        File dir = Files.createTempDirectory("observer-stream-benchmark").toFile();
+        Cache cache = new Cache(dir);
+        // The cache holds observers weakly, so keep a reference.
+        LongAdder events = new LongAdder();
+        Cache.Observer observer = (operation, item, progress) -> events.increment();
+        cache.startWatching(observer, false);
+        int strideBytes = cache.getProgressStrideBytes();
+        float strideFraction = cache.getProgressStrideFraction();
+
+        byte[] bytes = new byte[itemBytes];
+        Cache.Item[] cached = new Cache.Item[items];
+        for (int i = 0; i < items; i++) {
+            cached[i] = cache.addNewItem("http://localhost/img-" + i + ".png", null);
+        }
+
+        System.out.printf("%d items of %d KB, %d rounds (MB/s, events per item)%n",
+                          items, itemBytes / 1024, rounds);
+        System.out.printf("%-24s%10s%10s%10s%10s%n",
+                          "dispatch/stride/chunk", "write", "events", "read", "events");
+
+        try {
+            for (boolean async : new boolean[]{false, true}) {
+                cache.setAsyncObserverDispatch(async);
+                for (boolean stride : new boolean[]{false, true}) {
+                    if (stride) {
+                        cache.setProgressStride(strideBytes, strideFraction);
+                    } else {
+                        cache.setProgressStride(0, 0f);
+                    }
+
+                    for (int chunk : CHUNKS) {
+                        // Warm up and then measure.
+                        write(cached, bytes, chunk, 1);
+                        read(cached, chunk, 1);
+
+                        flush(cache);
+                        events.reset();
+                        double write = write(cached, bytes, chunk, rounds);
+                        flush(cache);
+                        long writeEvents = events.sumThenReset();
+                        double read = read(cached, chunk, rounds);
+                        flush(cache);
+                        long readEvents = events.sumThenReset();
+
+                        System.out.printf("%-24s%10.1f%10d%10.1f%10d%n",
+                                          (async ? "async" : "sync")
+                                          + (stride ? "/stride/" : "/every/")
+                                          + chunk,
+                                          write,
+                                          writeEvents / ((long) rounds * items),
+                                          read,
+                                          readEvents / ((long) rounds * items));
+                    }
+                }
+            }
+        } finally {
+            cache.setAsyncObserverDispatch(false);
+            cache.stopWatching(observer);
+            cache.clear();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Writes every item {@code rounds} times in {@code chunk} byte calls.
+     *
+     * @return The throughput in MB per second.
+     */
+    private static double write(Cache.Item[] items,
+                                byte[] bytes,
+                                int chunk,
+                                int rounds) throws IOException {
+        long begin = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (Cache.Item item : items) {
+                try (OutputStream out =
+                     item.getOutputStream(Cache.Operation.WRITE, bytes.length)) {
+                    for (int off = 0; off < bytes.length; off += chunk) {
+                        out.write(bytes, off, Math.min(chunk, bytes.length - off));
+                    }
+                }
+            }
+        }
+        return throughput((long) rounds * items.length * bytes.length, begin);
+    }
+
+    /**
+     * Reads every item {@code rounds} times in {@code chunk} byte calls.
+     *
+     * @return The throughput in MB per second.
+     */
+    private static double read(Cache.Item[] items,
+                               int chunk,
+                               int rounds) throws IOException {
+        byte[] buffer = new byte[chunk];
+        long total = 0;
+        long begin = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (Cache.Item item : items) {
+                try (InputStream in = item.getInputStream(Cache.Operation.READ)) {
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        total += n;
+                    }
+                }
+            }
+        }
+        return throughput(total, begin);
+    }
+
+    /**
+     * Waits until all events posted to the asynchronous dispatcher (if
+     * enabled) have been delivered, so that they are counted for the
+     * run that posted them. The throughput doesn't include this wait.
+     */
+    private static void flush(Cache cache) {
+        if (cache.isAsyncObserverDispatch()) {
+            cache.setAsyncObserverDispatch(false);
+            cache.setAsyncObserverDispatch(true);
+        }
+    }
+
+    private static double throughput(long bytes, long begin) {
+        return bytes / ((System.nanoTime() - begin) / 1e9) / (1 << 20);
+    }
+}
@@ -0,0 +1,163 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+class OpenAddressingCacheMapTests {
+    private val map = OpenAddressingCacheMap<String, String>(2)
+
+    /**
+     * Runs [body] on [threads] threads that start together and
+     * rethrows the first failure.
+     */
+    private fun concurrently(threads: Int = THREADS, body: (Int) -> Unit) {
+        val barrier = CyclicBarrier(threads)
+        val failure = AtomicReference<Throwable>()
+        (0 until threads).map { thread ->
+            Thread {
+                try {
+                    barrier.await()
+                    body(thread)
+                } catch (t: Throwable) {
+                    failure.compareAndSet(null, t)
+                }
+            }.apply { start() }
+        }.forEach { it.join() }
+        failure.get()?.let { throw it }
+    }
+
+    @Test
+    fun `entries survive repeated resizes`() {
+        repeat(10_000) { assertThat(map.put("key-$it", "value-$it")).isNull() }
+        (0 until 10_000 step 2).forEach { map.remove("key-$it") }
+
+        assertThat(map.size()).isEqualTo(5_000)
+        repeat(10_000) {
+            assertThat(map.get("key-$it")).isEqualTo(if (it % 2 == 0) null else "value-$it")
+        }
+    }
+
+    @Test
+    fun `concurrent puts during resizes are never lost`() {
+        concurrently { thread ->
+            repeat(PER_THREAD) { map.put("key-$thread-$it", "value-$thread-$it") }
+        }
+
+        assertThat(map.size()).isEqualTo(THREADS * PER_THREAD)
+        repeat(THREADS) { thread ->
+            repeat(PER_THREAD) {
+                assertThat(map.get("key-$thread-$it")).isEqualTo("value-$thread-$it")
+            }
+        }
+    }
+
+    @Test
+    fun `concurrent puts and removes keep the size consistent`() {
+        concurrently { thread ->
+            repeat(PER_THREAD) {
+                val key = "key-$thread-$it"
+                assertThat(map.put(key, "first")).isNull()
+                assertThat(map.put(key, "second")).isEqualTo("first")
+                assertThat(map.get(key)).isEqualTo("second")
+                if (it % 2 == 0) {
+                    assertThat(map.remove(key)).isEqualTo("second")
+                    assertThat(map.get(key)).isNull()
+                    assertThat(map.remove(key)).isNull()
+                }
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(THREADS * PER_THREAD / 2)
+        val keys = Collections.synchronizedSet(mutableSetOf<String>())
+        map.forEach { key, value ->
+            assertThat(value).isEqualTo("second")
+            keys.add(key)
+        }
+        assertThat(keys).hasSize(THREADS * PER_THREAD / 2)
+    }
+
+    @Test
+    fun `readers never miss stable entries while the table is migrated`() {
+        repeat(100) { map.put("stable-$it", "value-$it") }
+        val done = AtomicBoolean()
+        val started = CountDownLatch(1)
+
+        concurrently { thread ->
+            if (thread == 0) {
+                // Churn the table so that it is migrated repeatedly.
+                started.countDown()
+                try {
+                    repeat(20) { round ->
+                        repeat(2_000) { map.put("churn-$round-$it", "x") }
+                        repeat(2_000) { map.remove("churn-$round-$it") }
+                    }
+                } finally {
+                    done.set(true)
+                }
+            } else {
+                started.await()
+                while (!done.get()) {
+                    repeat(100) {
+                        assertThat(map.get("stable-$it")).isEqualTo("value-$it")
+                    }
+                }
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(100)
+    }
+
+    @Test
+    fun `racing computeIfAbsent calls agree on one value`() {
+        val results = Collections.synchronizedList(mutableListOf<Pair<Int, String>>())
+        concurrently { thread ->
+            repeat(1_000) { results.add(it to map.computeIfAbsent("key-$it") { "value-$thread" }!!) }
+        }
+
+        assertThat(map.size()).isEqualTo(1_000)
+        results.forEach { (key, value) -> assertThat(value).isEqualTo(map.get("key-$key")) }
+    }
+
+    @Test
+    fun `conditional removes compare values by identity`() {
+        val first = String(charArrayOf('v'))
+        val second = String(charArrayOf('v'))
+        map.put("key", first)
+        map.put("key", second)
+
+        assertThat(map.remove("key", first)).isFalse()
+        assertThat(map.get("key")).isSameAs(second)
+        assertThat(map.remove("key", second)).isTrue()
+        assertThat(map.remove("key", second)).isFalse()
+        assertThat(map.size()).isZero()
+    }
+
+    @Test
+    fun `racing conditional removes succeed once per entry`() {
+        val values = (0 until PER_THREAD).map { "value-$it" }
+        values.forEachIndexed { i, value -> map.put("key-$i", value) }
+        val removed = AtomicInteger()
+
+        concurrently {
+            values.forEachIndexed { i, value ->
+                if (map.remove("key-$i", value)) {
+                    removed.incrementAndGet()
+                }
+            }
+        }
+
+        assertThat(removed.get()).isEqualTo(PER_THREAD)
+        assertThat(map.size()).isZero()
+    }
+
+    private companion object {
+        const val THREADS = 4
+        const val PER_THREAD = 5_000
+    }
+}
@@ -0,0 +1,112 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.awt.Rectangle
+import java.awt.image.BufferedImage
+import kotlin.random.Random
+
+class RasterPixelsTests {
+    private val random = Random(11)
+
+    private val types = mapOf(BufferedImage.TYPE_INT_ARGB to "INT_ARGB",
+                              BufferedImage.TYPE_INT_RGB to "INT_RGB",
+                              BufferedImage.TYPE_3BYTE_BGR to "3BYTE_BGR",
+                              BufferedImage.TYPE_4BYTE_ABGR to "4BYTE_ABGR",
+                              BufferedImage.TYPE_BYTE_GRAY to "BYTE_GRAY")
+
+    private val width = 23
+    private val height = 13
+
+    /**
+     * The whole image, regions whose rows are contiguous in the data
+     * buffer, and regions that aren't.
+     */
+    private val regions = listOf(Rectangle(0, 0, width, height),
+                                 Rectangle(0, 0, width, height - 3),
+                                 Rectangle(0, 4, width, height - 4),
+                                 Rectangle(3, 2, width - 5, height - 4),
+                                 Rectangle(width - 1, 0, 1, height))
+
+    private fun newImage(type: Int) = BufferedImage(width, height, type).apply {
+        setRGB(0, 0, width, height, IntArray(width * height) { random.nextInt() }, 0, width)
+    }
+
+    private fun BufferedImage.copy() =
+        BufferedImage(colorModel, copyData(null), isAlphaPremultiplied, null)
+
+    private fun BufferedImage.rgb() = getRGB(0, 0, width, height, null, 0, width)
+
+    private fun BufferedImage.region(region: Rectangle) =
+        getSubimage(region.x, region.y, region.width, region.height)
+
+    @Test
+    fun `getPixels matches getRGB`() {
+        types.forEach { (type, name) ->
+            val image = newImage(type)
+            regions.forEach { region ->
+                val sub = image.region(region)
+                assertThat(RasterPixels.getPixels(sub, null))
+                    .describedAs("$name $region")
+                    .isEqualTo(sub.rgb())
+
+                // A provided array is filled and returned.
+                val pixels = IntArray(region.width * region.height)
+                assertThat(RasterPixels.getPixels(sub, pixels)).isSameAs(pixels).isEqualTo(sub.rgb())
+            }
+        }
+    }
+
+    @Test
+    fun `setPixels matches setRGB and leaves the rest of the image alone`() {
+        types.forEach { (type, name) ->
+            regions.forEach { region ->
+                val image = newImage(type)
+                val expected = image.copy()
+                val pixels = IntArray(region.width * region.height) { random.nextInt() }
+
+                RasterPixels.setPixels(image.region(region), pixels)
+                expected.region(region).setRGB(0, 0, region.width, region.height, pixels, 0, region.width)
+
+                assertThat(image.rgb())
+                    .describedAs("$name $region")
+                    .isEqualTo(expected.rgb())
+            }
+        }
+    }
+
+    @Test
+    fun `only whole int ARGB images expose their data array`() {
+        val image = newImage(BufferedImage.TYPE_INT_ARGB)
+        val data = RasterPixels.argbData(image)!!
+        assertThat(data).isEqualTo(image.rgb())
+
+        // Filtering the data array changes the image.
+        data[0] = 0x12345678
+        assertThat(image.getRGB(0, 0)).isEqualTo(0x12345678)
+        RasterPixels.setPixels(image, data)
+        assertThat(image.getRGB(0, 0)).isEqualTo(0x12345678)
+
+        assertThat(RasterPixels.argbData(image.region(regions[3]))).isNull()
+        assertThat(RasterPixels.argbData(image.region(regions[2]))).isNull()
+        assertThat(RasterPixels.argbData(newImage(BufferedImage.TYPE_INT_RGB))).isNull()
+    }
+
+    @Test
+    fun `compatible images have the same type and size`() {
+        types.keys.forEach { type ->
+            regions.forEach { region ->
+                val sub = newImage(type).region(region)
+                val compatible = RasterPixels.createCompatibleImage(sub)
+
+                assertThat(compatible.type).isEqualTo(sub.type)
+                assertThat(compatible.width).isEqualTo(region.width)
+                assertThat(compatible.height).isEqualTo(region.height)
+
+                // Pixels copied through the compatible image survive.
+                RasterPixels.setPixels(compatible, RasterPixels.getPixels(sub, null))
+                assertThat(compatible.rgb()).isEqualTo(sub.rgb())
+            }
+        }
+    }
+}
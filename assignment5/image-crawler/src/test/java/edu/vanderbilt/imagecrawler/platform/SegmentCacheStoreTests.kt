@@ -0,0 +1,244 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.atomic.AtomicReference
+
+class SegmentCacheStoreTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    private lateinit var dir: File
+    private lateinit var store: SegmentCacheStore
+    private lateinit var cache: Cache
+
+    @Before
+    fun before() {
+        dir = folder.newFolder("cache")
+        reload()
+    }
+
+    private fun reload(durable: Boolean = false) {
+        store = SegmentCacheStore(SEGMENT_SIZE, durable)
+        cache = newTestCache(dir, store)
+    }
+
+    private val indexLog get() = File(dir, "segment-index.log")
+
+    private fun bytes(seed: Int, size: Int = 100) = ByteArray(size) { (seed + it).toByte() }
+
+    private fun segments() = dir.list()!!.filter { it.startsWith("segment-") && it.endsWith(".dat") }.sorted()
+
+    @Test
+    fun `items survive a reload`() {
+        repeat(25) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+
+        cache = newTestCache(dir, SegmentCacheStore(SEGMENT_SIZE))
+
+        assertThat(cache.cacheSize).isEqualTo(25)
+        repeat(25) {
+            assertThat(cache.getItem("http://host/$it.png", null)!!.read()).isEqualTo(bytes(it))
+        }
+    }
+
+    @Test
+    fun `positional reads return the item bytes`() {
+        repeat(3) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+
+        repeat(3) {
+            cache.getItem("http://host/$it.png", null)!!
+                .getPooledBuffer(Cache.Operation.READ).use { pooled ->
+                    val buffer = pooled.buffer()
+                    assertThat(ByteArray(buffer.remaining()).also { buffer.get(it) })
+                        .isEqualTo(bytes(it))
+                }
+        }
+    }
+
+    @Test
+    fun `concurrent writers stream to separate segments`() {
+        val a = cache.addNewItem("http://host/a.png", null)!!
+        val b = cache.addNewItem("http://host/b.png", null)!!
+
+        // Write chunks larger than the cache's stream buffer so that
+        // both items are streamed to the store at the same time.
+        a.getOutputStream(Cache.Operation.WRITE, 3 * CHUNK).use { outA ->
+            b.getOutputStream(Cache.Operation.WRITE, 3 * CHUNK).use { outB ->
+                repeat(3) {
+                    outA.write(bytes(it, CHUNK))
+                    outB.write(bytes(it + 50, CHUNK))
+                }
+            }
+        }
+
+        assertThat(a.read()).isEqualTo(bytes(0, CHUNK) + bytes(1, CHUNK) + bytes(2, CHUNK))
+        assertThat(b.read()).isEqualTo(bytes(50, CHUNK) + bytes(51, CHUNK) + bytes(52, CHUNK))
+        assertThat(segments()).hasSize(2)
+    }
+
+    @Test
+    fun `a reader keeps a deleted segment open`() {
+        repeat(10) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+        cache.add("http://host/next.png", bytes = bytes(10))
+        assertThat(segments()).contains("segment-00000.dat")
+
+        val item = cache.getItem("http://host/0.png", null)!!
+        item.getInputStream(Cache.Operation.READ).use { input ->
+            repeat(10) { cache.remove(cache.getItem("http://host/$it.png", null)!!.key) }
+            assertThat(segments()).doesNotContain("segment-00000.dat")
+
+            assertThat(input.readBytes()).isEqualTo(bytes(0))
+        }
+    }
+
+    @Test
+    fun `sparse segments are compacted`() {
+        repeat(10) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+        cache.add("http://host/next.png", bytes = bytes(10))
+
+        // Leave 2 of the 10 items (20%) of the full first segment live.
+        repeat(8) { cache.remove(cache.getItem("http://host/$it.png", null)!!.key) }
+        store.awaitCompaction()
+
+        assertThat(segments()).doesNotContain("segment-00000.dat")
+        assertThat(cache.getItem("http://host/8.png", null)!!.read()).isEqualTo(bytes(8))
+        assertThat(cache.getItem("http://host/9.png", null)!!.read()).isEqualTo(bytes(9))
+
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(3)
+        assertThat(cache.getItem("http://host/8.png", null)!!.read()).isEqualTo(bytes(8))
+        assertThat(cache.getItem("http://host/9.png", null)!!.read()).isEqualTo(bytes(9))
+        assertThat(cache.getItem("http://host/next.png", null)!!.read()).isEqualTo(bytes(10))
+    }
+
+    @Test
+    fun `write times are kept in the index across compaction and reloads`() {
+        val before = System.currentTimeMillis()
+        val times = (0 until 11).associateWith {
+            Thread.sleep(2)
+            store.lastModified(cache.add("http://host/$it.png", bytes = bytes(it)))
+        }
+        assertThat(times.values).allMatch { it in before..System.currentTimeMillis() }
+        assertThat(times.values.toSet()).hasSize(11)
+
+        // Compact the first segment, which moves items 8 and 9.
+        repeat(8) { cache.remove(cache.getItem("http://host/$it.png", null)!!.key) }
+        store.awaitCompaction()
+        assertThat(segments()).doesNotContain("segment-00000.dat")
+
+        reload()
+
+        (8 until 11).forEach {
+            assertThat(store.lastModified(cache.getItem("http://host/$it.png", null)!!))
+                .isEqualTo(times[it])
+        }
+    }
+
+    @Test
+    fun `items written and removed during compactions stay consistent`() {
+        val threads = 4
+        val barrier = CyclicBarrier(threads)
+        val failure = AtomicReference<Throwable>()
+        (0 until threads).map { thread ->
+            Thread {
+                try {
+                    barrier.await()
+                    repeat(300) {
+                        // Each thread removes most of its items, which
+                        // keeps segments sparse and compacting.
+                        val uri = "http://host/$thread-$it.png"
+                        cache.add(uri, bytes = bytes(it))
+                        if (it % 5 != 0) {
+                            cache.remove(cache.getItem(uri, null)!!.key)
+                        }
+                        if (it % 7 == 0) {
+                            val kept = "http://host/$thread-${it / 5 * 5}.png"
+                            assertThat(cache.getItem(kept, null)!!.read()).isEqualTo(bytes(it / 5 * 5))
+                        }
+                    }
+                } catch (t: Throwable) {
+                    failure.compareAndSet(null, t)
+                }
+            }.apply { start() }
+        }.forEach { it.join() }
+        failure.get()?.let { throw it }
+        store.awaitCompaction()
+
+        fun verify() {
+            assertThat(cache.cacheSize).isEqualTo(threads * 60)
+            repeat(threads) { thread ->
+                (0 until 300 step 5).forEach {
+                    assertThat(cache.getItem("http://host/$thread-$it.png", null)!!.read())
+                        .isEqualTo(bytes(it))
+                }
+            }
+        }
+        verify()
+        assertThat(segments().size).isLessThan(threads * 60 * 100 / SEGMENT_SIZE.toInt() * 4)
+
+        reload()
+        store.awaitCompaction()
+        verify()
+    }
+
+    @Test
+    fun `a corrupt last index record is dropped on load`() {
+        repeat(3) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+        val log = indexLog.readBytes()
+        log[log.size - 1] = (log[log.size - 1].toInt() xor 1).toByte()
+        indexLog.writeBytes(log)
+
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(2)
+        repeat(2) {
+            assertThat(cache.getItem("http://host/$it.png", null)!!.read()).isEqualTo(bytes(it))
+        }
+        assertThat(cache.getItem("http://host/2.png", null)).isNull()
+    }
+
+    @Test
+    fun `a torn index log tail is ignored and the log is rebuilt`() {
+        repeat(3) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+
+        // A PUT record whose key is not valid modified UTF-8, which
+        // fails the replay with an IOException other than EOF.
+        indexLog.appendBytes(byteArrayOf(1, 0, 2, -1, -1, 0, 0))
+        reload()
+        assertThat(cache.cacheSize).isEqualTo(3)
+
+        cache.add("http://host/3.png", bytes = bytes(3))
+        reload()
+
+        assertThat(cache.cacheSize).isEqualTo(4)
+        repeat(4) {
+            assertThat(cache.getItem("http://host/$it.png", null)!!.read()).isEqualTo(bytes(it))
+        }
+    }
+
+    @Test
+    fun `durable items survive a reload`() {
+        reload(durable = true)
+        repeat(5) { cache.add("http://host/$it.png", bytes = bytes(it)) }
+        cache.remove(cache.getItem("http://host/0.png", null)!!.key)
+
+        reload(durable = true)
+
+        assertThat(cache.cacheSize).isEqualTo(4)
+        (1 until 5).forEach {
+            assertThat(cache.getItem("http://host/$it.png", null)!!.read()).isEqualTo(bytes(it))
+        }
+    }
+
+    private companion object {
+        const val SEGMENT_SIZE = 1000L
+        const val CHUNK = 10_000
+    }
+}
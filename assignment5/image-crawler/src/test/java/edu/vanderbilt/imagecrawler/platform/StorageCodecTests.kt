@@ -0,0 +1,107 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.BufferPool
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import javax.imageio.ImageIO
+import kotlin.random.Random
+
+class StorageCodecTests {
+    @Rule
+    @JvmField
+    val folder = TemporaryFolder()
+
+    @Test
+    fun `the default codec only applies to transform tags`() {
+        val cache = newTestCache(folder.newFolder("cache"))
+
+        cache.setDefaultStorageCodec(StorageCodec.LZ)
+        assertThat(cache.getStorageCodec(null)).isEqualTo(StorageCodec.PNG)
+        assertThat(cache.getStorageCodec("gray")).isEqualTo(StorageCodec.LZ)
+
+        cache.setStorageCodec(null, StorageCodec.RAW)
+        cache.setStorageCodec("gray", StorageCodec.PNG)
+        assertThat(cache.getStorageCodec(null)).isEqualTo(StorageCodec.RAW)
+        assertThat(cache.getStorageCodec("gray")).isEqualTo(StorageCodec.PNG)
+        assertThat(cache.getStorageCodec("tint")).isEqualTo(StorageCodec.LZ)
+    }
+
+    @Test
+    fun `raw headers are detected`() {
+        val buffer = ByteBuffer.allocate(StorageCodec.HEADER_LENGTH)
+        StorageCodec.writeHeader(buffer, StorageCodec.LZ, 3, 5, true)
+        buffer.flip()
+
+        assertThat(StorageCodec.detect(buffer)).isEqualTo(StorageCodec.LZ)
+        assertThat(StorageCodec.getWidth(buffer)).isEqualTo(3)
+        assertThat(StorageCodec.getHeight(buffer)).isEqualTo(5)
+        assertThat(StorageCodec.hasAlpha(buffer)).isTrue()
+        assertThat(StorageCodec.detect(ByteBuffer.wrap(byteArrayOf(0x89.toByte(), 'P'.code.toByte()))))
+            .isEqualTo(StorageCodec.PNG)
+    }
+
+    private val platform = JavaPlatform()
+
+    private fun decode(bytes: ByteArray) = platform.newImage(ByteBuffer.wrap(bytes), null)
+
+    private fun PlatformImage.encode(codec: StorageCodec) =
+        ByteArrayOutputStream().also { writeImage(it, codec) }.toByteArray()
+
+    private fun BufferedImage.pixels() = getRGB(0, 0, width, height, null, 0, width)
+
+    /**
+     * @return The pixels of [image] after exporting it as a PNG.
+     */
+    private fun pixels(image: PlatformImage) =
+        ImageIO.read(ByteArrayInputStream(image.encode(StorageCodec.PNG))).pixels()
+
+    @Test
+    fun `raw and lz images are read back pixel for pixel`() {
+        val random = Random(3)
+        listOf(BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB).forEach { type ->
+            // Noise on the left, flat runs on the right.
+            val source = BufferedImage(37, 23, type).apply {
+                repeat(width) { x ->
+                    repeat(height) { y -> setRGB(x, y, if (x < 20) random.nextInt() else 0x7f102030 + y) }
+                }
+            }
+            val png = ByteArrayOutputStream().also { ImageIO.write(source, "png", it) }.toByteArray()
+
+            listOf(StorageCodec.RAW, StorageCodec.LZ).forEach { codec ->
+                val stored = decode(png).encode(codec)
+                assertThat(StorageCodec.detect(ByteBuffer.wrap(stored))).isEqualTo(codec)
+                assertThat(StorageCodec.hasAlpha(ByteBuffer.wrap(stored)))
+                    .isEqualTo(type == BufferedImage.TYPE_INT_ARGB)
+
+                assertThat(pixels(decode(stored))).isEqualTo(source.pixels())
+                assertThat(pixels(platform.newImage(ByteArrayInputStream(stored), null)))
+                    .isEqualTo(source.pixels())
+            }
+        }
+    }
+
+    @Test
+    fun `images beyond the largest pooled buffer don't allocate direct buffers`() {
+        val width = 2048
+        val height = BufferPool.MAX_POOLED_CAPACITY / 4 / width + 1
+        val raw = ByteBuffer.allocate(StorageCodec.HEADER_LENGTH + 4 * width * height)
+        StorageCodec.writeHeader(raw, StorageCodec.RAW, width, height, true)
+        while (raw.hasRemaining()) {
+            raw.putInt(raw.position() / 1024 * 0x01020304)
+        }
+        val pool = BufferPool.instance()
+        val allocated = pool.allocatedBytes
+
+        val lz = decode(raw.array()).encode(StorageCodec.LZ)
+        assertThat(lz.size).isLessThan(raw.capacity() / 10)
+        assertThat(decode(lz).encode(StorageCodec.RAW)).isEqualTo(raw.array())
+
+        assertThat(pool.allocatedBytes - allocated).isLessThan(BufferPool.MAX_POOLED_CAPACITY.toLong())
+    }
+}
@@ -0,0 +1,43 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.Options
+import java.io.File
+
+/**
+ * Creates a [Cache] rooted at [dir] for a unit test. The cache is a
+ * singleton in the crawler, so the flag enforcing this is reset
+ * first, and the root url used by [Cache.Item.toString] is set if no
+ * crawl has configured it.
+ */
+fun newTestCache(dir: File,
+                 store: CacheStore = FileCacheStore(),
+                 map: CacheMap<CacheKey, Cache.Item> = ConcurrentCacheMap()): Cache {
+    if (Options.mRootUrl == null) {
+        Options.mRootUrl = "http://localhost"
+    }
+    Cache::class.java.getDeclaredField("mCreated").run {
+        isAccessible = true
+        setBoolean(null, false)
+    }
+    return Cache(dir, store, map)
+}
+
+/**
+ * Adds (or gets) the item for [uri] and [tag], writing [bytes] if the
+ * item is new.
+ */
+fun Cache.add(uri: String, tag: String? = null, bytes: ByteArray = ByteArray(16)): Cache.Item =
+    addOrGetItem(uri, tag) { it.write(bytes) }
+
+/**
+ * Replaces the contents of the item with [bytes].
+ */
+fun Cache.Item.write(bytes: ByteArray) {
+    getOutputStream(Cache.Operation.WRITE, bytes.size).use { it.write(bytes) }
+}
+
+/**
+ * @return The stored contents of the item.
+ */
+fun Cache.Item.read(): ByteArray =
+    getInputStream(Cache.Operation.READ).use { it.readBytes() }
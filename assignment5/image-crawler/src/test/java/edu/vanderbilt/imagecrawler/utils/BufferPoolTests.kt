@@ -0,0 +1,130 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.platform.JavaPlatform
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.lang.management.ManagementFactory
+import java.util.Collections
+import javax.imageio.ImageIO
+
+class BufferPoolTests {
+    /**
+     * The crawled images (tests run from the module directory).
+     */
+    private val images = File("web-pages").walk()
+        .filter { it.isFile && (it.name.endsWith(".png") || it.name.endsWith(".jpg")) }
+        .toList()
+
+    private val platform = JavaPlatform()
+
+    /**
+     * Pushes every image through the download, decode, encode, and
+     * store path, either with the original heap copies or with buffers
+     * leased from the shared pool.
+     *
+     * @return The heap bytes allocated by the calling thread.
+     */
+    private fun run(pooled: Boolean): Long {
+        val before = allocatedBytes()
+        images.forEach { file ->
+            file.inputStream().use { input ->
+                if (pooled) {
+                    IOUtils.toPooledBuffer(input).use { buffer ->
+                        platform.newImage(buffer.buffer(), null)
+                            .writeImage(OutputStream.nullOutputStream())
+                    }
+                } else {
+                    val bytes = ByteArrayOutputStream()
+                    IOUtils.copy(input, bytes)
+                    val image = ImageUtils.toBufferedImage(bytes.toByteArray())
+                    ImageIO.write(image, "png", OutputStream.nullOutputStream())
+                }
+            }
+        }
+        return allocatedBytes() - before
+    }
+
+    private fun allocatedBytes() =
+        (ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean)
+            .getThreadAllocatedBytes(Thread.currentThread().id)
+
+    @Test
+    fun `pooled buffers reduce the bytes allocated per image`() {
+        assertThat(images).isNotEmpty()
+
+        // Warm up both paths (and the pool) before measuring.
+        repeat(3) {
+            run(false)
+            run(true)
+        }
+
+        val pool = BufferPool.instance()
+        var heap = 0L
+        var pooledHeap = 0L
+        var direct = 0L
+        repeat(ROUNDS) {
+            heap += run(false)
+            val before = pool.allocatedBytes
+            pooledHeap += run(true)
+            direct += pool.allocatedBytes - before
+        }
+
+        val count = ROUNDS * images.size
+        val report = String.format("KB allocated per image: heap path %.1f, pooled path %.1f heap + %.1f direct",
+                                   heap / 1024.0 / count,
+                                   pooledHeap / 1024.0 / count,
+                                   direct / 1024.0 / count)
+        println(report)
+
+        assertThat(pooledHeap).describedAs(report).isLessThan(heap)
+        assertThat(direct).describedAs(report).isZero()
+    }
+
+    @Test
+    fun `closed leases are recycled`() {
+        val pool = BufferPool(1L shl 20)
+
+        pool.acquire(1000).close()
+        assertThat(pool.idleBytes).isEqualTo(4096)
+        pool.acquire(4096).use { assertThat(it.buffer().capacity()).isEqualTo(4096) }
+
+        assertThat(pool.hitCount).isEqualTo(1)
+        assertThat(pool.allocatedBytes).isEqualTo(4096)
+        assertThat(pool.leasedBytes).isZero()
+    }
+
+    @Test
+    fun `leaked leases are reported and their buffers are dropped`() {
+        val pool = BufferPool(1L shl 20)
+        val reports = Collections.synchronizedList(mutableListOf<String>())
+        pool.setLogger { reports.add(it) }
+        pool.setLeakTracking(true)
+
+        leak(pool)
+        val deadline = System.nanoTime() + 10_000_000_000L
+        while (pool.leakCount == 0L && System.nanoTime() < deadline) {
+            System.gc()
+            Thread.sleep(10)
+        }
+
+        assertThat(pool.leakCount).isEqualTo(1)
+        assertThat(reports).hasSize(1)
+        assertThat(reports[0]).contains("4096 bytes").contains("BufferPoolTests.leak")
+        assertThat(pool.leasedBytes).isZero()
+        assertThat(pool.idleBytes).isZero()
+    }
+
+    /**
+     * Acquires a lease that is never closed.
+     */
+    private fun leak(pool: BufferPool) {
+        pool.acquire(4096).buffer().put(0, 1)
+    }
+
+    private companion object {
+        const val ROUNDS = 3
+    }
+}
@@ -0,0 +1,120 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import java.io.IOException
+import java.nio.ByteBuffer
+import kotlin.random.Random
+
+class LzCompressorTests {
+    /**
+     * Compresses [input] and decompresses the result, checking both
+     * buffer positions, and returns the compressed length.
+     */
+    private fun roundTrip(input: ByteArray, direct: Boolean = false): Int {
+        fun allocate(capacity: Int) =
+            if (direct) ByteBuffer.allocateDirect(capacity) else ByteBuffer.allocate(capacity)
+
+        // Offset the data in both buffers to check that positions
+        // are respected.
+        val src = allocate(input.size + 3).apply { position(3); put(input); position(3) }
+        val packed = allocate(LzCompressor.maxCompressedLength(input.size) + 7).apply { position(7) }
+
+        val length = LzCompressor.compress(src, packed)
+        assertThat(src.remaining()).isZero()
+        assertThat(packed.position()).isEqualTo(7 + length)
+        assertThat(length).isLessThanOrEqualTo(LzCompressor.maxCompressedLength(input.size))
+
+        packed.limit(packed.position()).position(7)
+        val out = allocate(input.size + 5).apply { position(5); limit(5 + input.size) }
+        assertThat(LzCompressor.decompress(packed, out)).isEqualTo(input.size)
+        assertThat(packed.remaining()).isZero()
+        assertThat(out.position()).isEqualTo(5 + input.size)
+
+        out.position(5)
+        assertThat(ByteArray(input.size).also { out.get(it) }).isEqualTo(input)
+        return length
+    }
+
+    @Test
+    fun `empty input round trips`() {
+        assertThat(roundTrip(ByteArray(0))).isEqualTo(1)
+    }
+
+    @Test
+    fun `inputs too short to hold a match round trip as literals`() {
+        (1..12).forEach { size ->
+            assertThat(roundTrip(ByteArray(size) { 7 })).isEqualTo(size + 1)
+        }
+        (13..20).forEach { size -> roundTrip(ByteArray(size) { 7 }) }
+    }
+
+    @Test
+    fun `incompressible input round trips within the bound`() {
+        val random = Random(42)
+        listOf(13, 255, 1000, 100_000).forEach { size ->
+            assertThat(roundTrip(random.nextBytes(size)))
+                .isGreaterThanOrEqualTo(size)
+            assertThat(roundTrip(random.nextBytes(size), direct = true))
+                .isGreaterThanOrEqualTo(size)
+        }
+    }
+
+    @Test
+    fun `runs of a single byte round trip as overlapping matches`() {
+        // Each run is encoded as a literal and a match at offset 1.
+        val zeros = ByteArray(1 shl 20)
+        assertThat(roundTrip(zeros)).isLessThan(5000)
+        assertThat(roundTrip(zeros, direct = true)).isLessThan(5000)
+    }
+
+    @Test
+    fun `short periodic patterns round trip as overlapping matches`() {
+        listOf(2, 3, 5, 7, 64).forEach { period ->
+            val input = ByteArray(10_000) { (it % period * 31).toByte() }
+            assertThat(roundTrip(input)).isLessThan(200)
+        }
+    }
+
+    @Test
+    fun `repeated blocks far apart round trip`() {
+        val random = Random(7)
+        val block = random.nextBytes(4096)
+        // The last copy is beyond the maximum match offset.
+        val input = block + random.nextBytes(1000) + block + random.nextBytes(70_000) + block
+        assertThat(roundTrip(input)).isLessThan(input.size - block.size / 2)
+    }
+
+    @Test
+    fun `mixed pixel-like input round trips`() {
+        val random = Random(1)
+        val input = ByteArray(256 * 1024) {
+            if ((it / 4096) % 2 == 0) (it / 64).toByte() else random.nextInt().toByte()
+        }
+        roundTrip(input)
+        roundTrip(input, direct = true)
+    }
+
+    @Test
+    fun `corrupt blocks are rejected`() {
+        val input = ByteArray(1000) { (it % 10).toByte() }
+        val packed = ByteBuffer.allocate(LzCompressor.maxCompressedLength(input.size))
+        LzCompressor.compress(ByteBuffer.wrap(input), packed)
+        packed.flip()
+
+        // Too small a destination.
+        assertThatThrownBy { LzCompressor.decompress(packed.duplicate(), ByteBuffer.allocate(999)) }
+            .isInstanceOf(IOException::class.java)
+
+        // A match offset pointing before the start of the output.
+        val badOffset = ByteBuffer.wrap(byteArrayOf(0x10, 1, 5, 0, 0))
+        assertThatThrownBy { LzCompressor.decompress(badOffset, ByteBuffer.allocate(100)) }
+            .isInstanceOf(IOException::class.java)
+
+        // A truncated block.
+        val truncated = packed.duplicate().apply { limit(limit() - 3) }
+        assertThatThrownBy { LzCompressor.decompress(truncated, ByteBuffer.allocate(1000)) }
+            .isInstanceOf(IOException::class.java)
+    }
+}